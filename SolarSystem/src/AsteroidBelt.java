@@ -0,0 +1,568 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Defines an asteroid belt as a body template shared by every asteroid in it, and the displacement and velocity of
+ * each asteroid kept in a body store, which may be on the heap, off the heap, or in a memory mapped file. An asteroid
+ * is known by the id the store keeps for it, so it needs no name or object of its own, which keeps a belt of millions
+ * of asteroids down to its positions and velocities, plus two ints for each one once they are reordered. Asteroids are
+ * treated as test particles: they are pulled by the celestial bodies of the solar system, but are too light to pull on
+ * anything themselves. Asteroids can be moved to other slots so that asteroids near each other in space are near each
+ * other in memory, while their ids stay the same. Operations include generating a belt of asteroids on circular orbits,
+ * moving every asteroid over a time interval, and reordering the asteroids along a space filling curve.
+ */
+public class AsteroidBelt {
+    // each axis is divided into 2^15 cells for the curve, so that the interleaved cell numbers fit in 30 bits
+    private static final int CURVE_BITS_PER_AXIS = 15;
+    private static final int CURVE_CELLS_PER_AXIS = 1 << CURVE_BITS_PER_AXIS;
+    // ranges of slots this short are sorted by insertion rather than split any further
+    private static final int INSERTION_SORT_SLOTS = 16;
+
+    private final BodyTemplate template;
+    // the belt is generated from these, so saving them is enough to make the same belt again
+    private final double innerRadiusMeters;
+    private final double outerRadiusMeters;
+    private final long seed;
+
+    private final int numberOfAsteroids;
+    private final BodyStore store;
+    // the box the curve is drawn through while the asteroids are being reordered, in cells per meter
+    private double curveXCellsPerMeter;
+    private double curveYCellsPerMeter;
+
+    // the box that every asteroid is inside of and the greatest displacement, found each time the belt is moved
+    private double minimumXDisplacement;
+    private double maximumXDisplacement;
+    private double minimumYDisplacement;
+    private double maximumYDisplacement;
+    private double greatestDisplacementSquared;
+
+    /**
+     * Creates a new asteroid belt with every asteroid at rest at the center, the asteroids are then placed by generate
+     * or by a snapshot being restored
+     *
+     * @param template the template shared by every asteroid
+     * @param store the store holding the asteroids, it has one slot for each asteroid
+     * @param innerRadiusMeters the inner radius of the belt
+     * @param outerRadiusMeters the outer radius of the belt
+     * @param seed the seed the asteroids were placed with
+     * @return None
+     */
+    public AsteroidBelt(BodyTemplate template, BodyStore store, double innerRadiusMeters, double outerRadiusMeters,
+                        long seed){
+        this.template = template;
+        this.store = store;
+        this.numberOfAsteroids = store.getCapacity();
+        this.innerRadiusMeters = innerRadiusMeters;
+        this.outerRadiusMeters = outerRadiusMeters;
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a copy of the belt that shares nothing that can change with it, used for snapshots. The copy is kept in
+     * the same kind of memory, so a copy of a memory mapped belt is mapped to a file of its own
+     *
+     * @return the copy
+     */
+    public AsteroidBelt copy(){
+        // the store copies the ids with the asteroids
+        AsteroidBelt copy = new AsteroidBelt(template, store.copy(), innerRadiusMeters, outerRadiusMeters, seed);
+        copy.calculateBounds();
+
+        return copy;
+    }
+
+    /**
+     * Creates a copy of the belt that shares nothing that can change with it, kept in a chosen kind of memory
+     *
+     * @param storeType the kind of memory to keep the copy in
+     * @return the copy
+     * @throws IOException if the memory for the copy could not be set up
+     */
+    public AsteroidBelt copy(BodyStoreType storeType) throws IOException {
+        // a store of the same kind can copy itself exactly, which matters for a compact store since copying it slot by
+        // slot could round its values again
+        if (storeType == store.getType()){
+            return copy();
+        }
+
+        BodyStore copyStore = storeType.createStore(numberOfAsteroids);
+
+        for (int i = 0; i < numberOfAsteroids; i++){
+            copyStore.set(i, store.getXDisplacement(i), store.getYDisplacement(i), store.getXVelocity(i),
+                    store.getYVelocity(i));
+        }
+        // the copy keeps every asteroid in the same slot, so that nothing but the kind of memory changes
+        if (store.isReordered()){
+            for (int i = 0; i < numberOfAsteroids; i++){
+                copyStore.setId(i, store.getId(i));
+            }
+        }
+
+        AsteroidBelt copy = new AsteroidBelt(template, copyStore, innerRadiusMeters, outerRadiusMeters, seed);
+        copy.calculateBounds();
+
+        return copy;
+    }
+
+    /**
+     * Gets the slot an asteroid is in
+     *
+     * @param id the id of the asteroid
+     * @return the slot of the asteroid
+     */
+    private int getSlot(int id){
+        return store.getSlot(id);
+    }
+
+    /**
+     * Reorders the asteroids along a Morton curve through the box they are in. Asteroids are moved in slot order, so
+     * once asteroids near each other in space are in nearby slots, the memory the force loop reads is read in order
+     * and a compact store's blocks each cover a small part of the belt. The asteroids are sorted in place by swapping
+     * slots in the store, with each asteroid's place on the curve worked out from its displacement whenever it is
+     * compared, so reordering needs no memory beyond the ids the store keeps. A full precision store swaps every value
+     * exactly, so reordering never changes where its asteroids go
+     *
+     * @return None
+     */
+    public void reorderAlongCurve(){
+        if (numberOfAsteroids < 2){
+            return;
+        }
+
+        // the box is the one found the last time the belt was moved, so that it does not need a pass of its own. A
+        // box with no width puts every asteroid in the same column, which is still a valid order
+        double width = maximumXDisplacement - minimumXDisplacement;
+        double height = maximumYDisplacement - minimumYDisplacement;
+        curveXCellsPerMeter = width > 0 ? CURVE_CELLS_PER_AXIS / width : 0;
+        curveYCellsPerMeter = height > 0 ? CURVE_CELLS_PER_AXIS / height : 0;
+
+        sortAlongCurve(0, numberOfAsteroids - 1);
+        // a compact store rounds the values again relative to its new blocks
+        calculateBounds();
+    }
+
+    /**
+     * Sorts a range of slots by their place on the curve with a quicksort. The pivot is the middle slot, which splits
+     * a range that is already mostly in order evenly, as it is on every reorder after the first, and slots level with
+     * the pivot are swapped from both sides, so even a belt where every asteroid is in the same cell splits evenly.
+     * The smaller side is sorted first, so the recursion is never deeper than the logarithm of the number of asteroids
+     *
+     * @param first the first slot of the range
+     * @param last the last slot of the range
+     * @return None
+     */
+    private void sortAlongCurve(int first, int last){
+        while (last - first >= INSERTION_SORT_SLOTS){
+            long pivot = getCurvePosition((first + last) >>> 1);
+            int low = first - 1;
+            int high = last + 1;
+
+            // Hoare's partition, every slot up to high ends up at or before the pivot and every slot after it at or
+            // after the pivot. A compact store can round a swapped asteroid into the next cell, so the scans are kept
+            // inside the range rather than trusting the swapped slots to stop them
+            while (true){
+                do {
+                    low++;
+                } while (low < last && getCurvePosition(low) < pivot);
+                do {
+                    high--;
+                } while (high > first && getCurvePosition(high) > pivot);
+
+                if (low >= high){
+                    break;
+                }
+                store.swap(low, high);
+            }
+
+            if (high - first < last - high){
+                sortAlongCurve(first, high);
+                first = high + 1;
+            } else {
+                sortAlongCurve(high + 1, last);
+                last = high;
+            }
+        }
+
+        for (int slot = first + 1; slot <= last; slot++){
+            long position = getCurvePosition(slot);
+
+            for (int previous = slot; previous > first && getCurvePosition(previous - 1) > position; previous--){
+                store.swap(previous - 1, previous);
+            }
+        }
+    }
+
+    /**
+     * Finds the place on the curve of the asteroid in a slot
+     *
+     * @param slot the number of the slot
+     * @return the interleaved cell numbers of the asteroid
+     */
+    private long getCurvePosition(int slot){
+        int xCell = (int) Math.min(CURVE_CELLS_PER_AXIS - 1,
+                (store.getXDisplacement(slot) - minimumXDisplacement) * curveXCellsPerMeter);
+        int yCell = (int) Math.min(CURVE_CELLS_PER_AXIS - 1,
+                (store.getYDisplacement(slot) - minimumYDisplacement) * curveYCellsPerMeter);
+
+        return interleaveBits(xCell) | interleaveBits(yCell) << 1;
+    }
+
+    /**
+     * Spreads the bits of a cell number out so that there is a zero between each of them, which lets the bits of two
+     * cell numbers be interleaved with an or
+     *
+     * @param cell the cell number, it must fit in 16 bits
+     * @return the spread out bits
+     */
+    private static long interleaveBits(int cell){
+        long bits = cell & 0xFFFF;
+
+        // each line moves half of the remaining groups of bits up, halving the size of the groups
+        bits = (bits | (bits << 8)) & 0x00FF00FFL;
+        bits = (bits | (bits << 4)) & 0x0F0F0F0FL;
+        bits = (bits | (bits << 2)) & 0x33333333L;
+        bits = (bits | (bits << 1)) & 0x55555555L;
+
+        return bits;
+    }
+
+    /**
+     * Places every asteroid on a circular orbit around a central body, at a random angle and a random distance between
+     * the inner and outer radius. The same seed always places the asteroids in the same way
+     *
+     * @param centralXDisplacement the x-displacement of the central body
+     * @param centralYDisplacement the y-displacement of the central body
+     * @param centralMass the mass of the central body
+     * @return None
+     */
+    public void generate(double centralXDisplacement, double centralYDisplacement, double centralMass){
+        Random random = new Random(seed);
+        double gravitationalParameter = SolarSystem.GRAVITATION_CONSTANT * centralMass;
+
+        for (int i = 0; i < numberOfAsteroids; i++){
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = innerRadiusMeters + random.nextDouble() * (outerRadiusMeters - innerRadiusMeters);
+            // the speed of a circular orbit, v = sqrt(GM / r)
+            double speed = Math.sqrt(gravitationalParameter / distance);
+
+            // the velocity is at a right angle to the displacement from the central body, counterclockwise like the
+            // planets in the default solar system
+            store.set(getSlot(i), centralXDisplacement + distance * Math.cos(angle),
+                    centralYDisplacement + distance * Math.sin(angle), -speed * Math.sin(angle),
+                    speed * Math.cos(angle));
+        }
+
+        calculateBounds();
+    }
+
+    /**
+     * Moves every asteroid over a time interval, the same way that planets are moved: the velocity is changed by the
+     * acceleration first and then the displacement is changed by the new velocity
+     *
+     * @param timeSeconds the time interval in seconds
+     * @param massiveXDisplacements the x-displacements of the celestial bodies pulling on the asteroids
+     * @param massiveYDisplacements the y-displacements of the celestial bodies pulling on the asteroids
+     * @param gravitationalParameters the mass of each celestial body multiplied by the gravitational constant
+     * @param numberOfMassiveBodies the number of celestial bodies pulling on the asteroids
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity
+     * @return None
+     */
+    public void move(double timeSeconds, double[] massiveXDisplacements, double[] massiveYDisplacements,
+                     double[] gravitationalParameters, int numberOfMassiveBodies, double softeningLengthSquared){
+        resetBounds();
+
+        for (int i = 0; i < numberOfAsteroids; i++){
+            double x = store.getXDisplacement(i);
+            double y = store.getYDisplacement(i);
+            double accelerationX = 0;
+            double accelerationY = 0;
+
+            for (int j = 0; j < numberOfMassiveBodies; j++){
+                double dx = massiveXDisplacements[j] - x;
+                double dy = massiveYDisplacements[j] - y;
+                // softening adds to every distance, so an asteroid passing through a celestial body is pulled hard
+                // but not flung away
+                double distanceSquared = dx * dx + dy * dy + softeningLengthSquared;
+
+                // a = GM / r^2 towards the body, multiplying the direction (dx, dy) / r by that gives GM dx / r^3 so
+                // no angles are needed
+                double scale = gravitationalParameters[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                accelerationX += scale * dx;
+                accelerationY += scale * dy;
+            }
+
+            double xVelocity = store.getXVelocity(i) + accelerationX * timeSeconds;
+            double yVelocity = store.getYVelocity(i) + accelerationY * timeSeconds;
+            x += xVelocity * timeSeconds;
+            y += yVelocity * timeSeconds;
+            // the whole record is written at once, so an off-heap store touches each asteroid's memory only once
+            store.set(i, x, y, xVelocity, yVelocity);
+
+            // the bounds are found as each asteroid is moved so that they never need a separate pass
+            includeInBounds(x, y);
+        }
+    }
+
+    /**
+     * Resets the bounds to those of a belt with no asteroids
+     *
+     * @return None
+     */
+    private void resetBounds(){
+        minimumXDisplacement = Double.POSITIVE_INFINITY;
+        maximumXDisplacement = Double.NEGATIVE_INFINITY;
+        minimumYDisplacement = Double.POSITIVE_INFINITY;
+        maximumYDisplacement = Double.NEGATIVE_INFINITY;
+        greatestDisplacementSquared = 0;
+    }
+
+    /**
+     * Extends the bounds to include a displacement
+     *
+     * @param x the x-displacement
+     * @param y the y-displacement
+     * @return None
+     */
+    private void includeInBounds(double x, double y){
+        minimumXDisplacement = Math.min(minimumXDisplacement, x);
+        maximumXDisplacement = Math.max(maximumXDisplacement, x);
+        minimumYDisplacement = Math.min(minimumYDisplacement, y);
+        maximumYDisplacement = Math.max(maximumYDisplacement, y);
+        greatestDisplacementSquared = Math.max(greatestDisplacementSquared, x * x + y * y);
+    }
+
+    /**
+     * Finds the box that every asteroid is inside of and the greatest displacement
+     *
+     * @return None
+     */
+    private void calculateBounds(){
+        resetBounds();
+
+        for (int i = 0; i < numberOfAsteroids; i++){
+            includeInBounds(store.getXDisplacement(i), store.getYDisplacement(i));
+        }
+    }
+
+    /**
+     * Gets the template shared by every asteroid in the belt
+     *
+     * @return the template
+     */
+    public BodyTemplate getTemplate(){
+        return template;
+    }
+
+    /**
+     * Gets the number of asteroids in the belt
+     *
+     * @return the number of asteroids
+     */
+    public int getNumberOfAsteroids(){
+        return numberOfAsteroids;
+    }
+
+    /**
+     * Gets the inner radius the belt was generated with
+     *
+     * @return the inner radius in meters
+     */
+    public double getInnerRadiusMeters(){
+        return innerRadiusMeters;
+    }
+
+    /**
+     * Gets the outer radius the belt was generated with
+     *
+     * @return the outer radius in meters
+     */
+    public double getOuterRadiusMeters(){
+        return outerRadiusMeters;
+    }
+
+    /**
+     * Gets the seed the belt was generated with
+     *
+     * @return the seed
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Gets the store the asteroids are kept in, used by snapshots to write a store in its own format
+     *
+     * @return the body store
+     */
+    BodyStore getStore(){
+        return store;
+    }
+
+    /**
+     * Gets the kind of memory the asteroids are kept in
+     *
+     * @return the type of the body store
+     */
+    public BodyStoreType getStoreType(){
+        return store.getType();
+    }
+
+    /**
+     * Gets the name of an asteroid
+     *
+     * @param id the id of the asteroid
+     * @return the name of the asteroid
+     */
+    public String getAsteroidName(int id){
+        return template.getBodyName(id);
+    }
+
+    /**
+     * Prints the information of an asteroid
+     *
+     * @param id the id of the asteroid
+     * @return None
+     */
+    public void printAsteroidInformation(int id){
+        System.out.println();
+        System.out.println("-------------- ASTEROID --------------");
+        System.out.println("Name: " + getAsteroidName(id));
+        System.out.println("Image Path: " + template.getImagePath());
+        System.out.println("Display priority: " + template.getDisplayPriority());
+        System.out.printf("Mass: %.2f kg \n", template.getMass());
+        System.out.printf("Radius: %.2f m \n", template.getRadius());
+        System.out.printf("Current distance from the sun: %.2f m \n",
+                Math.hypot(getXDisplacement(id), getYDisplacement(id)));
+        System.out.println("Type: " + template.getType());
+        System.out.printf("Current speed: %.2f m/s \n", Math.hypot(getXVelocity(id), getYVelocity(id)));
+        System.out.println();
+    }
+
+    /**
+     * Gets the x-displacement of an asteroid
+     *
+     * @param id the id of the asteroid
+     * @return the x-displacement in meters
+     */
+    public double getXDisplacement(int id){
+        return store.getXDisplacement(getSlot(id));
+    }
+
+    /**
+     * Gets the y-displacement of an asteroid
+     *
+     * @param id the id of the asteroid
+     * @return the y-displacement in meters
+     */
+    public double getYDisplacement(int id){
+        return store.getYDisplacement(getSlot(id));
+    }
+
+    /**
+     * Gets the x-velocity of an asteroid
+     *
+     * @param id the id of the asteroid
+     * @return the x-velocity in meters per second
+     */
+    public double getXVelocity(int id){
+        return store.getXVelocity(getSlot(id));
+    }
+
+    /**
+     * Gets the y-velocity of an asteroid
+     *
+     * @param id the id of the asteroid
+     * @return the y-velocity in meters per second
+     */
+    public double getYVelocity(int id){
+        return store.getYVelocity(getSlot(id));
+    }
+
+    /**
+     * Sets the state of an asteroid, used when a snapshot is restored
+     *
+     * @param id the id of the asteroid
+     * @param xDisplacement the x-displacement in meters
+     * @param yDisplacement the y-displacement in meters
+     * @param xVelocity the x-velocity in meters per second
+     * @param yVelocity the y-velocity in meters per second
+     * @return None
+     */
+    public void setAsteroid(int id, double xDisplacement, double yDisplacement, double xVelocity, double yVelocity){
+        store.set(getSlot(id), xDisplacement, yDisplacement, xVelocity, yVelocity);
+    }
+
+    /**
+     * Finds the bounds again after asteroids have been set one at a time
+     *
+     * @return None
+     */
+    public void updateBounds(){
+        calculateBounds();
+    }
+
+    /**
+     * Gets the smallest x-displacement of any asteroid
+     *
+     * @return the smallest x-displacement in meters
+     */
+    public double getMinimumXDisplacement(){
+        return minimumXDisplacement;
+    }
+
+    /**
+     * Gets the greatest x-displacement of any asteroid
+     *
+     * @return the greatest x-displacement in meters
+     */
+    public double getMaximumXDisplacement(){
+        return maximumXDisplacement;
+    }
+
+    /**
+     * Gets the smallest y-displacement of any asteroid
+     *
+     * @return the smallest y-displacement in meters
+     */
+    public double getMinimumYDisplacement(){
+        return minimumYDisplacement;
+    }
+
+    /**
+     * Gets the greatest y-displacement of any asteroid
+     *
+     * @return the greatest y-displacement in meters
+     */
+    public double getMaximumYDisplacement(){
+        return maximumYDisplacement;
+    }
+
+    /**
+     * Gets the square of the greatest displacement of any asteroid
+     *
+     * @return the greatest displacement squared in square meters
+     */
+    public double getGreatestDisplacementSquared(){
+        return greatestDisplacementSquared;
+    }
+
+    /**
+     * Estimates how much memory the belt takes up
+     *
+     * @return the estimated number of bytes
+     */
+    public long getEstimatedBytes(){
+        // the template is shared so it is not counted
+        return store.getEstimatedBytes();
+    }
+
+    /**
+     * Releases the memory the asteroids are kept in, the belt must not be used afterwards
+     *
+     * @return None
+     */
+    public void close(){
+        store.close();
+    }
+}
@@ -0,0 +1,315 @@
+import java.util.Arrays;
+
+/**
+ * Defines an auto-tuning force engine as a force engine that picks which of a set of other engines to use by timing
+ * them on the bodies it is actually given. For the first few calculations with a new number of bodies every engine
+ * that is still in the running is timed, and its pulls are checked against exact pulls added up for a sample of the
+ * bodies. After that the fastest engine whose median relative error is within the tolerance is used on its own until
+ * the number of bodies changes, which happens when planets are added or removed or when bodies merge. Operations
+ * include calculating the acceleration of every body and getting the engine that was picked.
+ */
+public class AutoTuningForceEngine implements ForceEngine {
+    // the number of calculations each engine is timed over, the fastest of which counts, so that a run slowed by the
+    // JIT compiler or a garbage collection doesn't count against an engine
+    private static final int TRIAL_CALCULATIONS = 3;
+    // the exact pulls are only added up for at most this many bodies, so checking the engines costs a small part of a
+    // direct sum however many bodies there are
+    private static final int MAXIMUM_SAMPLED_BODIES = 1000;
+    // an engine that takes this many times as long as the fastest engine that is exact enough isn't timed again, so
+    // a slow engine only costs one calculation
+    private static final double SLOWEST_TRIAL_FACTOR = 4;
+
+    private final ForceEngine[] engines;
+    private final double tolerance;
+    // the number of bodies the engines were last timed with, and the index of the engine picked for them
+    private int tunedNumberOfBodies;
+    private int chosenEngine;
+    // the number of calculations left before an engine is picked, 0 once it has been
+    private int trialsLeft;
+    // the fastest time and the greatest error of each engine over the calculations so far, and whether it is still
+    // being timed
+    private final double[] trialSeconds;
+    private final double[] trialErrors;
+    private final boolean[] inTrial;
+
+    private double[] trialXAccelerations;
+    private double[] trialYAccelerations;
+    private double[] bestXAccelerations;
+    private double[] bestYAccelerations;
+    // the exact pulls on each sampled body, added up once for each calculation and checked against every engine
+    private double[] exactXAccelerations;
+    private double[] exactYAccelerations;
+    private double[] errors;
+
+    /**
+     * Creates a new auto-tuning force engine
+     *
+     * @param engines the engines to pick from. If none of them is exact enough the most exact one is used, so the
+     * direct sum should usually be one of them
+     * @param tolerance the greatest median relative error in the pulls an engine can have and still be picked
+     * @return None
+     */
+    public AutoTuningForceEngine(ForceEngine[] engines, double tolerance){
+        this.engines = engines.clone();
+        this.tolerance = Math.max(0, tolerance);
+        tunedNumberOfBodies = -1;
+        chosenEngine = 0;
+        trialSeconds = new double[engines.length];
+        trialErrors = new double[engines.length];
+        inTrial = new boolean[engines.length];
+        trialXAccelerations = new double[0];
+        trialYAccelerations = new double[0];
+        bestXAccelerations = new double[0];
+        bestYAccelerations = new double[0];
+        exactXAccelerations = new double[0];
+        exactYAccelerations = new double[0];
+        errors = new double[0];
+    }
+
+    /**
+     * Calculates the acceleration of every body with the engine that was picked, or while the engines are still being
+     * timed, with the fastest engine so far that is exact enough
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    @Override
+    public void calculateAccelerations(double[] xDisplacements, double[] yDisplacements,
+                                       double[] gravitationalParameters, int numberOfBodies,
+                                       double softeningLengthSquared, double[] xAccelerations,
+                                       double[] yAccelerations){
+        if (numberOfBodies != tunedNumberOfBodies){
+            tunedNumberOfBodies = numberOfBodies;
+            trialsLeft = TRIAL_CALCULATIONS;
+            Arrays.fill(trialSeconds, Double.POSITIVE_INFINITY);
+            Arrays.fill(trialErrors, 0);
+            Arrays.fill(inTrial, true);
+        }
+
+        if (trialsLeft == 0){
+            engines[chosenEngine].calculateAccelerations(xDisplacements, yDisplacements, gravitationalParameters,
+                    numberOfBodies, softeningLengthSquared, xAccelerations, yAccelerations);
+            return;
+        }
+
+        if (trialXAccelerations.length < numberOfBodies){
+            trialXAccelerations = new double[numberOfBodies];
+            trialYAccelerations = new double[numberOfBodies];
+            bestXAccelerations = new double[numberOfBodies];
+            bestYAccelerations = new double[numberOfBodies];
+        }
+
+        int sampleSpacing = Math.max(1, numberOfBodies / MAXIMUM_SAMPLED_BODIES);
+        int numberOfSamples = numberOfBodies == 0 ? 0 : (numberOfBodies - 1) / sampleSpacing + 1;
+        if (errors.length < numberOfSamples){
+            exactXAccelerations = new double[numberOfSamples];
+            exactYAccelerations = new double[numberOfSamples];
+            errors = new double[numberOfSamples];
+        }
+        calculateExactAccelerations(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies,
+                softeningLengthSquared, sampleSpacing);
+
+        // the pulls of the best engine of this calculation are kept, so every calculation while the engines are
+        // timed is as exact as the engine that will be picked
+        int bestEngine = -1;
+        for (int engine = 0; engine < engines.length; engine++){
+            if (!inTrial[engine]){
+                continue;
+            }
+
+            long start = System.nanoTime();
+            engines[engine].calculateAccelerations(xDisplacements, yDisplacements, gravitationalParameters,
+                    numberOfBodies, softeningLengthSquared, trialXAccelerations, trialYAccelerations);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            trialSeconds[engine] = Math.min(trialSeconds[engine], seconds);
+            trialErrors[engine] = Math.max(trialErrors[engine], calculateRelativeError(numberOfBodies, sampleSpacing));
+
+            if (bestEngine == -1 || isBetter(engine, bestEngine)){
+                bestEngine = engine;
+                System.arraycopy(trialXAccelerations, 0, bestXAccelerations, 0, numberOfBodies);
+                System.arraycopy(trialYAccelerations, 0, bestYAccelerations, 0, numberOfBodies);
+            }
+        }
+        System.arraycopy(bestXAccelerations, 0, xAccelerations, 0, numberOfBodies);
+        System.arraycopy(bestYAccelerations, 0, yAccelerations, 0, numberOfBodies);
+
+        // an engine's error only ever grows over the calculations, so one that isn't exact enough never will be
+        for (int engine = 0; engine < engines.length; engine++){
+            if (engine != bestEngine && (trialErrors[engine] > tolerance || trialErrors[bestEngine] <= tolerance &&
+                    trialSeconds[engine] > SLOWEST_TRIAL_FACTOR * trialSeconds[bestEngine])){
+                inTrial[engine] = false;
+            }
+        }
+
+        trialsLeft--;
+        if (trialsLeft == 0){
+            chosenEngine = bestEngine;
+            System.out.printf("Force engine for %d bodies: %s (%.3f ms, error %.2e)\n", numberOfBodies,
+                    engines[chosenEngine].getName(), trialSeconds[chosenEngine] * 1000, trialErrors[chosenEngine]);
+        }
+    }
+
+    /**
+     * Adds up the exact pulls on a sample of the bodies, which every engine's pulls are then checked against
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational parameter of each body
+     * @param numberOfBodies the number of bodies
+     * @param softeningLengthSquared the square of the softening length
+     * @param sampleSpacing the number of bodies from one sampled body to the next
+     * @return None
+     */
+    private void calculateExactAccelerations(double[] xDisplacements, double[] yDisplacements,
+                                             double[] gravitationalParameters, int numberOfBodies,
+                                             double softeningLengthSquared, int sampleSpacing){
+        for (int i = 0, sample = 0; i < numberOfBodies; i += sampleSpacing, sample++){
+            double exactX = 0;
+            double exactY = 0;
+
+            for (int j = 0; j < numberOfBodies; j++){
+                if (j != i && gravitationalParameters[j] != 0){
+                    double dx = xDisplacements[j] - xDisplacements[i];
+                    double dy = yDisplacements[j] - yDisplacements[i];
+                    double distanceSquared = dx * dx + dy * dy + softeningLengthSquared;
+                    double scale = gravitationalParameters[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                    exactX += scale * dx;
+                    exactY += scale * dy;
+                }
+            }
+
+            exactXAccelerations[sample] = exactX;
+            exactYAccelerations[sample] = exactY;
+        }
+    }
+
+    /**
+     * Calculates the median relative error of the pulls in the trial arrays over the sampled bodies, against the exact
+     * pulls on those bodies
+     *
+     * @param numberOfBodies the number of bodies
+     * @param sampleSpacing the number of bodies from one sampled body to the next
+     * @return the median relative error, 0 if no sampled body is pulled at all
+     */
+    private double calculateRelativeError(int numberOfBodies, int sampleSpacing){
+        int numberOfErrors = 0;
+
+        for (int i = 0, sample = 0; i < numberOfBodies; i += sampleSpacing, sample++){
+            // a body nothing pulls has no relative error to speak of
+            double exact = Math.hypot(exactXAccelerations[sample], exactYAccelerations[sample]);
+            if (exact > 0){
+                errors[numberOfErrors++] = Math.hypot(trialXAccelerations[i] - exactXAccelerations[sample],
+                        trialYAccelerations[i] - exactYAccelerations[sample]) / exact;
+            }
+        }
+
+        if (numberOfErrors == 0){
+            return 0;
+        }
+        Arrays.sort(errors, 0, numberOfErrors);
+        return errors[numberOfErrors / 2];
+    }
+
+    /**
+     * Checks whether one engine is a better pick than another so far: an engine that is exact enough beats one that
+     * isn't, the faster of two engines that are exact enough wins, and the more exact of two that aren't wins
+     *
+     * @param engine the index of the engine
+     * @param otherEngine the index of the engine to compare it with
+     * @return whether the engine is the better pick
+     */
+    private boolean isBetter(int engine, int otherEngine){
+        boolean exactEnough = trialErrors[engine] <= tolerance;
+        boolean otherExactEnough = trialErrors[otherEngine] <= tolerance;
+
+        if (exactEnough != otherExactEnough){
+            return exactEnough;
+        }
+        if (exactEnough){
+            return trialSeconds[engine] < trialSeconds[otherEngine];
+        }
+        return trialErrors[engine] < trialErrors[otherEngine];
+    }
+
+    /**
+     * Gets the engine that was picked for the current number of bodies
+     *
+     * @return the engine, or null while the engines are still being timed
+     */
+    public ForceEngine getChosenEngine(){
+        return trialsLeft == 0 && tunedNumberOfBodies != -1 ? engines[chosenEngine] : null;
+    }
+
+    /**
+     * Gets the engines that are picked from
+     *
+     * @return a copy of the array of engines
+     */
+    public ForceEngine[] getEngines(){
+        return engines.clone();
+    }
+
+    /**
+     * Gets the greatest median relative error an engine can have and still be picked
+     *
+     * @return the tolerance
+     */
+    public double getTolerance(){
+        return tolerance;
+    }
+
+    /**
+     * Gets the number of bodies the engine was picked for
+     *
+     * @return the number of bodies, or -1 while the engines are still being timed
+     */
+    int getTunedNumberOfBodies(){
+        return trialsLeft == 0 ? tunedNumberOfBodies : -1;
+    }
+
+    /**
+     * Gets the index of the engine that was picked
+     *
+     * @return the index in the array of engines, or -1 while the engines are still being timed
+     */
+    int getChosenEngineIndex(){
+        return trialsLeft == 0 && tunedNumberOfBodies != -1 ? chosenEngine : -1;
+    }
+
+    /**
+     * Picks an engine without timing any, which is how a restored checkpoint carries on with the engine picked before
+     * it was written. The pick is timing-based, so timing the engines again could pick another one and the restored
+     * run would no longer follow the original bit for bit
+     *
+     * @param numberOfBodies the number of bodies the engine was picked for
+     * @param chosenEngine the index of the engine that was picked, out of range indexes are ignored
+     * @return None
+     */
+    void restoreChoice(int numberOfBodies, int chosenEngine){
+        if (numberOfBodies < 0 || chosenEngine < 0 || chosenEngine >= engines.length){
+            return;
+        }
+
+        tunedNumberOfBodies = numberOfBodies;
+        this.chosenEngine = chosenEngine;
+        trialsLeft = 0;
+    }
+
+    /**
+     * Gets the name of the engine along with its tolerance and the engine it picked
+     *
+     * @return the name
+     */
+    @Override
+    public String getName(){
+        ForceEngine chosen = getChosenEngine();
+        return "Auto-tuned (tolerance " + tolerance + "): " + (chosen == null ? "not picked yet" : chosen.getName());
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+/**
+ * Defines a Barnes-Hut force engine as a tree code: the bodies are put in a quad tree, and each body is pulled by a
+ * far away square as if all of the square's bodies were at its center of mass. A square counts as far away when its
+ * radius is less than the opening angle times its distance, so a smaller opening angle is more exact and slower. The
+ * time it takes grows with n log n, and the error of each far pull is about the opening angle squared. Operations
+ * include calculating the acceleration of every body, and the gravitational potential at every body by the same walk.
+ */
+public class BarnesHutForceEngine implements ForceEngine {
+    // leaves this small keep the direct pulls few without making the tree much deeper
+    private static final int MAXIMUM_BODIES_PER_LEAF = 8;
+
+    private final double openingAngle;
+    private final QuadTree tree;
+    // the squares still to be visited for the body being pulled, a square is only ever replaced by its children so
+    // the stack never holds more than 3 squares for each level of the tree
+    private int[] stack;
+
+    /**
+     * Creates a new Barnes-Hut force engine
+     *
+     * @param openingAngle the largest ratio of a square's radius to its distance for the square to be treated as a
+     * whole, between 0 and 1, where 0 adds up every pull directly
+     * @return None
+     */
+    public BarnesHutForceEngine(double openingAngle){
+        // above 1 a body could be pulled by a square it is in as if it weren't in it
+        this.openingAngle = Math.max(0, Math.min(1, openingAngle));
+        tree = new QuadTree(MAXIMUM_BODIES_PER_LEAF);
+        stack = new int[256];
+    }
+
+    /**
+     * Calculates the acceleration of every body by walking the quad tree once for each body
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    @Override
+    public void calculateAccelerations(double[] xDisplacements, double[] yDisplacements,
+                                       double[] gravitationalParameters, int numberOfBodies,
+                                       double softeningLengthSquared, double[] xAccelerations,
+                                       double[] yAccelerations){
+        tree.build(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies);
+        walkTree(numberOfBodies, softeningLengthSquared, xAccelerations, yAccelerations, null);
+    }
+
+    /**
+     * Calculates the gravitational potential at every body, the potential energy per kilogram of the body due to every
+     * other body, by walking the quad tree once for each body the same way the pulls are found
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity
+     * @param potentials an array the potential at each body in joules per kilogram is put in
+     * @return None
+     */
+    public void calculatePotentials(double[] xDisplacements, double[] yDisplacements,
+                                    double[] gravitationalParameters, int numberOfBodies,
+                                    double softeningLengthSquared, double[] potentials){
+        tree.build(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies);
+        walkTree(numberOfBodies, softeningLengthSquared, null, null, potentials);
+    }
+
+    /**
+     * Walks the quad tree that was just built once for each body, adding up either the pulls on it or the potential
+     * at it
+     *
+     * @param numberOfBodies the number of bodies
+     * @param softeningLengthSquared the square of the Plummer softening length
+     * @param xAccelerations an array the x-acceleration of each body is put in, or null to find the potentials
+     * @param yAccelerations an array the y-acceleration of each body is put in, or null to find the potentials
+     * @param potentials an array the potential at each body is put in, or null to find the pulls
+     * @return None
+     */
+    private void walkTree(int numberOfBodies, double softeningLengthSquared, double[] xAccelerations,
+                          double[] yAccelerations, double[] potentials){
+        double openingAngleSquared = openingAngle * openingAngle;
+
+        // the bodies are pulled in tree order, so bodies pulled one after another walk almost the same squares
+        for (int place = 0; place < numberOfBodies; place++){
+            double x = tree.getXDisplacement(place);
+            double y = tree.getYDisplacement(place);
+            double accelerationX = 0;
+            double accelerationY = 0;
+            double potential = 0;
+
+            int stackSize = 0;
+            stack[stackSize++] = 0;
+            while (stackSize > 0){
+                int cell = stack[--stackSize];
+                double dx = tree.getCellXCenter(cell) - x;
+                double dy = tree.getCellYCenter(cell) - y;
+                double distanceSquared = dx * dx + dy * dy;
+                double radius = tree.getCellRadius(cell);
+
+                // a square the body is in always has a radius at least as big as the body's distance, so it is
+                // never treated as a whole
+                if (radius * radius < openingAngleSquared * distanceSquared){
+                    distanceSquared += softeningLengthSquared;
+                    if (potentials == null){
+                        double scale = tree.getCellGravitationalParameter(cell) /
+                                (distanceSquared * Math.sqrt(distanceSquared));
+                        accelerationX += scale * dx;
+                        accelerationY += scale * dy;
+                    } else {
+                        potential -= tree.getCellGravitationalParameter(cell) / Math.sqrt(distanceSquared);
+                    }
+                } else if (tree.getNumberOfChildren(cell) == 0){
+                    for (int other = tree.getFirstBody(cell); other < tree.getEndBody(cell); other++){
+                        if (other == place){
+                            continue;
+                        }
+
+                        double otherDx = tree.getXDisplacement(other) - x;
+                        double otherDy = tree.getYDisplacement(other) - y;
+                        double otherDistanceSquared = otherDx * otherDx + otherDy * otherDy +
+                                softeningLengthSquared;
+                        if (potentials == null){
+                            double scale = tree.getGravitationalParameter(other) /
+                                    (otherDistanceSquared * Math.sqrt(otherDistanceSquared));
+                            accelerationX += scale * otherDx;
+                            accelerationY += scale * otherDy;
+                        } else {
+                            potential -= tree.getGravitationalParameter(other) / Math.sqrt(otherDistanceSquared);
+                        }
+                    }
+                } else {
+                    if (stackSize + 4 > stack.length){
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+
+                    int firstChild = tree.getFirstChild(cell);
+                    for (int child = firstChild; child < firstChild + tree.getNumberOfChildren(cell); child++){
+                        stack[stackSize++] = child;
+                    }
+                }
+            }
+
+            int body = tree.getBody(place);
+            if (potentials == null){
+                xAccelerations[body] = accelerationX;
+                yAccelerations[body] = accelerationY;
+            } else {
+                potentials[body] = potential;
+            }
+        }
+    }
+
+    /**
+     * Gets the largest ratio of a square's radius to its distance for the square to be treated as a whole
+     *
+     * @return the opening angle
+     */
+    public double getOpeningAngle(){
+        return openingAngle;
+    }
+
+    /**
+     * Gets the name of the engine along with its opening angle
+     *
+     * @return the name
+     */
+    @Override
+    public String getName(){
+        return "Barnes-Hut tree code (opening angle " + openingAngle + ")";
+    }
+}
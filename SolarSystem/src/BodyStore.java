@@ -0,0 +1,134 @@
+/**
+ * Defines a body store as somewhere the displacement and velocity of a fixed number of bodies are kept, each body in
+ * its own numbered slot. Asteroid belts keep their asteroids in a body store, so where that memory lives can be chosen
+ * without changing how the asteroids are moved. Every body also has an id, which starts out as the number of its slot
+ * and stays with the body when it is swapped into another slot. The ids are kept in the same kind of memory as the
+ * bodies, and only once a body has first been swapped, so a store that is never reordered pays nothing for them.
+ * Operations include reading and writing the state of a slot, swapping two slots, finding a body by its id, copying
+ * the store, and releasing it.
+ */
+public interface BodyStore {
+    /**
+     * Gets the number of slots in the store
+     *
+     * @return the number of slots
+     */
+    int getCapacity();
+
+    /**
+     * Gets the x-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-displacement in meters
+     */
+    double getXDisplacement(int slot);
+
+    /**
+     * Gets the y-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-displacement in meters
+     */
+    double getYDisplacement(int slot);
+
+    /**
+     * Gets the x-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-velocity in meters per second
+     */
+    double getXVelocity(int slot);
+
+    /**
+     * Gets the y-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-velocity in meters per second
+     */
+    double getYVelocity(int slot);
+
+    /**
+     * Sets the displacement and velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @param xDisplacement the x-displacement in meters
+     * @param yDisplacement the y-displacement in meters
+     * @param xVelocity the x-velocity in meters per second
+     * @param yVelocity the y-velocity in meters per second
+     * @return None
+     */
+    void set(int slot, double xDisplacement, double yDisplacement, double xVelocity, double yVelocity);
+
+    /**
+     * Swaps the bodies in two slots, ids included
+     *
+     * @param firstSlot the number of one slot
+     * @param secondSlot the number of the other slot
+     * @return None
+     */
+    void swap(int firstSlot, int secondSlot);
+
+    /**
+     * Gets the id of the body in a slot
+     *
+     * @param slot the number of the slot
+     * @return the id of the body
+     */
+    int getId(int slot);
+
+    /**
+     * Gets the slot a body is in
+     *
+     * @param id the id of the body
+     * @return the number of the slot
+     */
+    int getSlot(int id);
+
+    /**
+     * Puts a body's id in a slot, used when a store is filled from a copy or a checkpoint. Every id must end up in
+     * exactly one slot
+     *
+     * @param slot the number of the slot
+     * @param id the id of the body in the slot
+     * @return None
+     */
+    void setId(int slot, int id);
+
+    /**
+     * Checks whether the store keeps ids, which it only does once a body has been moved out of the slot matching its
+     * id
+     *
+     * @return false if every body is in the slot matching its id
+     */
+    boolean isReordered();
+
+    /**
+     * Gets the type of the store
+     *
+     * @return the type of the store
+     */
+    BodyStoreType getType();
+
+    /**
+     * Creates a copy of the store that shares nothing that can change with it, the copy is kept in the same kind of
+     * memory so that a copy of a file backed store is backed by a file of its own
+     *
+     * @return the copy
+     */
+    BodyStore copy();
+
+    /**
+     * Estimates how much memory the store takes up, wherever that memory is
+     *
+     * @return the estimated number of bytes
+     */
+    long getEstimatedBytes();
+
+    /**
+     * Releases the memory outside of the heap and any file the store is backed by, the store must not be used
+     * afterwards
+     *
+     * @return None
+     */
+    void close();
+}
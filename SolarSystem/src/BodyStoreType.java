@@ -0,0 +1,41 @@
+import java.io.IOException;
+
+/**
+ * The kinds of memory a body store can keep bodies in. HEAP keeps them in arrays of doubles on the Java heap. OFF_HEAP
+ * keeps them in direct buffers outside of the heap, so the garbage collector never has to scan or move them.
+ * MAPPED_FILE keeps them in a memory mapped temporary file, so the operating system can page them out and a belt can be
+ * bigger than the heap and the direct memory limit. COMPACT keeps them on the heap as floats relative to a double
+ * origin for each block of bodies, which halves their size at the cost of some precision.
+ */
+public enum BodyStoreType {
+    HEAP,
+    OFF_HEAP,
+    MAPPED_FILE,
+    COMPACT;
+
+    // where the files backing MAPPED_FILE stores are put
+    static final String MAPPED_FILE_DIRECTORY = "BodyStores/";
+
+    /**
+     * Creates an empty body store of this type
+     *
+     * @param capacity the number of slots in the store
+     * @return the new body store
+     * @throws IOException if the memory for the store could not be set up
+     */
+    public BodyStore createStore(int capacity) throws IOException {
+        switch (this){
+            case OFF_HEAP:
+                return new OffHeapBodyStore(capacity);
+
+            case MAPPED_FILE:
+                return new OffHeapBodyStore(capacity, MAPPED_FILE_DIRECTORY);
+
+            case COMPACT:
+                return new CompactBodyStore(capacity);
+
+            default:
+                return new HeapBodyStore(capacity);
+        }
+    }
+}
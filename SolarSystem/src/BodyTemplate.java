@@ -0,0 +1,156 @@
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Defines a body template as the attributes shared by every body generated from it: a name, mass, radius, image path,
+ * display priority, and type. Templates are interned, so every belt made with the same attributes shares one template
+ * object, and a generated body only has to store its own displacement and velocity. Generated bodies are named by
+ * their template's name followed by their number. Operations include interning a template and naming a body made
+ * from it.
+ */
+public final class BodyTemplate {
+    // every template that has been interned, mapped to itself so an equal template can be swapped for the shared one
+    private static final HashMap<BodyTemplate, BodyTemplate> INTERNED_TEMPLATES = new HashMap<>();
+
+    private final String name;
+    private final double mass;
+    private final double radius;
+    private final String imagePath;
+    private final int displayPriority;
+    private final String type;
+
+    /**
+     * Creates a new body template, use intern to get a shared one instead
+     *
+     * @param name the name that bodies made from the template are numbered after
+     * @param mass the mass of each body
+     * @param radius the radius of each body
+     * @param imagePath the image path of each body
+     * @param displayPriority the display priority of each body
+     * @param type the type of each body
+     * @return None
+     */
+    private BodyTemplate(String name, double mass, double radius, String imagePath, int displayPriority, String type){
+        this.name = name;
+        this.mass = mass;
+        this.radius = radius;
+        this.imagePath = imagePath;
+        this.displayPriority = displayPriority;
+        this.type = type;
+    }
+
+    /**
+     * Gets the shared template with the given attributes, creating it the first time it is asked for
+     *
+     * @param name the name that bodies made from the template are numbered after
+     * @param mass the mass of each body
+     * @param radius the radius of each body
+     * @param imagePath the image path of each body
+     * @param displayPriority the display priority of each body
+     * @param type the type of each body
+     * @return the shared template
+     */
+    public static synchronized BodyTemplate intern(String name, double mass, double radius, String imagePath,
+                                                   int displayPriority, String type){
+        BodyTemplate template = new BodyTemplate(name, mass, radius, imagePath, displayPriority, type);
+        BodyTemplate interned = INTERNED_TEMPLATES.putIfAbsent(template, template);
+
+        return interned == null ? template : interned;
+    }
+
+    /**
+     * Gets the name of a body made from the template. Names are only made when asked for, so a body does not need to
+     * store one
+     *
+     * @param id the number of the body
+     * @return the name of the body
+     */
+    public String getBodyName(int id){
+        return name + " #" + id;
+    }
+
+    /**
+     * Gets the name of the template
+     *
+     * @return the name of the template
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Gets the mass of each body made from the template
+     *
+     * @return the mass in kilograms
+     */
+    public double getMass(){
+        return mass;
+    }
+
+    /**
+     * Gets the radius of each body made from the template
+     *
+     * @return the radius in meters
+     */
+    public double getRadius(){
+        return radius;
+    }
+
+    /**
+     * Gets the image path of each body made from the template
+     *
+     * @return the image path
+     */
+    public String getImagePath(){
+        return imagePath;
+    }
+
+    /**
+     * Gets the display priority of each body made from the template
+     *
+     * @return the display priority
+     */
+    public int getDisplayPriority(){
+        return displayPriority;
+    }
+
+    /**
+     * Gets the type of each body made from the template
+     *
+     * @return the type
+     */
+    public String getType(){
+        return type;
+    }
+
+    /**
+     * Checks whether another object is a template with the same attributes
+     *
+     * @param o the object to compare to
+     * @return whether the object is a template with the same attributes
+     */
+    @Override
+    public boolean equals(Object o){
+        if (this == o){
+            return true;
+        }
+        if (!(o instanceof BodyTemplate)){
+            return false;
+        }
+
+        BodyTemplate other = (BodyTemplate) o;
+        return Double.compare(mass, other.mass) == 0 && Double.compare(radius, other.radius) == 0 &&
+                displayPriority == other.displayPriority && name.equals(other.name) &&
+                imagePath.equals(other.imagePath) && type.equals(other.type);
+    }
+
+    /**
+     * Calculates a hash code from the attributes of the template
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode(){
+        return Objects.hash(name, mass, radius, imagePath, displayPriority, type);
+    }
+}
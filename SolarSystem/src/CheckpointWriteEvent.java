@@ -0,0 +1,32 @@
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Defines a checkpoint write event as a flight recorder event for writing a checkpoint on the checkpoint writer's
+ * thread, from creating the temporary file to renaming it over the checkpoint file.
+ */
+@Name("SolarSystem.CheckpointWrite")
+@Label("Checkpoint Write")
+@Description("A checkpoint written to the disk")
+public class CheckpointWriteEvent extends SimulationEvent {
+    @Label("Step Count")
+    long stepCount;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Fills in which checkpoint was written and how big it is
+     *
+     * @param stepCount the step count of the checkpoint
+     * @param bytes the size of the checkpoint file
+     * @return None
+     */
+    public void setCheckpoint(long stepCount, long bytes){
+        this.stepCount = stepCount;
+        this.bytes = bytes;
+    }
+}
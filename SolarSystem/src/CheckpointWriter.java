@@ -0,0 +1,183 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Defines a checkpoint writer as a single background thread that writes solar system snapshots to a checkpoint file.
+ * Each checkpoint is written to a temporary file first and then renamed over the checkpoint file, so the checkpoint
+ * file always holds either the previous checkpoint or the new one, never a partly written one. A snapshot is closed
+ * once it has been written or replaced, so the memory of its asteroid belts is given back right away. Operations
+ * include submitting a snapshot to be written, reading the latest checkpoint back, and shutting the writer down.
+ */
+public class CheckpointWriter {
+    private final Path checkpointPath;
+    private final Path temporaryPath;
+    private final ThreadPoolExecutor executor;
+    // only one checkpoint can be waiting at a time, if a new one is submitted while the previous one is still waiting
+    // the older one is closed without being written since it would be replaced right away anyway. This means that
+    // submitting never blocks the simulation, even when the disk is slow
+    private final AtomicReference<PendingCheckpoint> pendingCheckpoint;
+    // volatile since it is written by the background thread and read by the thread running the simulation
+    private volatile long lastWrittenStepCount;
+
+    /**
+     * Creates a new checkpoint writer
+     *
+     * @param checkpointPath the file path of the checkpoint file
+     * @return None
+     */
+    public CheckpointWriter(String checkpointPath){
+        this.checkpointPath = Paths.get(checkpointPath);
+        temporaryPath = Paths.get(checkpointPath + ".tmp");
+        lastWrittenStepCount = -1;
+        pendingCheckpoint = new AtomicReference<>();
+
+        // a write is only queued when a checkpoint starts waiting, so the queue never holds more than one or two.
+        // Anything submitted after the writer is shut down is dropped
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "checkpoint-writer");
+                    // the writer should never keep the program running after the user exits
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Submits a snapshot to be written on the background thread
+     *
+     * @param snapshot the snapshot to write
+     * @param forceEngine the name of whatever found the pulls in the run the snapshot was taken from, which is only
+     * used for the flight recorder
+     * @return None
+     */
+    public void submit(SolarSystemSnapshot snapshot, String forceEngine){
+        PendingCheckpoint replaced = pendingCheckpoint.getAndSet(new PendingCheckpoint(snapshot, forceEngine));
+
+        // if nothing was waiting a write has to be queued for the new one, otherwise the write already queued for the
+        // replaced one takes the new one instead
+        if (replaced == null){
+            executor.execute(this::writePending);
+        } else {
+            replaced.snapshot.close();
+        }
+    }
+
+    /**
+     * Writes the checkpoint that is waiting, if it was not already written by an earlier queued write, and closes it
+     *
+     * @return None
+     */
+    private void writePending(){
+        PendingCheckpoint pending = pendingCheckpoint.getAndSet(null);
+
+        if (pending != null){
+            write(pending.snapshot, pending.forceEngine);
+            pending.snapshot.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot to the temporary file and then renames it over the checkpoint file
+     *
+     * @param snapshot the snapshot to write
+     * @param forceEngine the name of whatever found the pulls in the run the snapshot was taken from
+     * @return None
+     */
+    private void write(SolarSystemSnapshot snapshot, String forceEngine){
+        CheckpointWriteEvent event = new CheckpointWriteEvent();
+        event.begin();
+
+        try {
+            Path parent = checkpointPath.toAbsolutePath().getParent();
+            if (parent != null){
+                Files.createDirectories(parent);
+            }
+
+            try (FileOutputStream out = new FileOutputStream(temporaryPath.toFile(), false)){
+                snapshot.writeTo(out);
+                // make sure the bytes are on the disk before the rename makes them the current checkpoint
+                out.getChannel().force(true);
+            }
+
+            try {
+                Files.move(temporaryPath, checkpointPath, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException amnse){
+                // some file systems can't rename atomically, a plain replace is the best that can be done there
+                Files.move(temporaryPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            lastWrittenStepCount = snapshot.getStepCount();
+
+            event.end();
+            if (event.shouldCommit()){
+                // the asteroids are counted without overflowing an int, which the body count always fits in
+                event.describe((int) Math.min(Integer.MAX_VALUE, snapshot.getNumberOfBodies()), forceEngine);
+                event.setCheckpoint(snapshot.getStepCount(), Files.size(checkpointPath));
+                event.commit();
+            }
+        } catch (IOException iox){
+            System.out.println("Error writing checkpoint!");
+        }
+    }
+
+    /**
+     * Gets the step count of the last checkpoint that was completely written
+     *
+     * @return the step count of the last checkpoint written or -1 if no checkpoint has been written
+     */
+    public long getLastWrittenStepCount(){
+        return lastWrittenStepCount;
+    }
+
+    /**
+     * Reads the checkpoint file
+     *
+     * @param checkpointPath the file path of the checkpoint file
+     * @return the snapshot stored in the checkpoint file
+     * @throws IOException if the checkpoint could not be read or is corrupted
+     */
+    public static SolarSystemSnapshot readCheckpoint(String checkpointPath) throws IOException {
+        try (InputStream in = Files.newInputStream(Paths.get(checkpointPath))){
+            return SolarSystemSnapshot.readFrom(in);
+        }
+    }
+
+    /**
+     * Waits for any checkpoint that is being written to finish and stops the background thread
+     *
+     * @return None
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Defines a pending checkpoint as a snapshot waiting to be written and the name of whatever found its pulls, which
+     * are replaced together so the name always matches the snapshot
+     */
+    private static class PendingCheckpoint {
+        private final SolarSystemSnapshot snapshot;
+        private final String forceEngine;
+
+        /**
+         * Creates a new pending checkpoint
+         *
+         * @param snapshot the snapshot to write
+         * @param forceEngine the name of whatever found the pulls in the run the snapshot was taken from
+         * @return None
+         */
+        private PendingCheckpoint(SolarSystemSnapshot snapshot, String forceEngine){
+            this.snapshot = snapshot;
+            this.forceEngine = forceEngine;
+        }
+    }
+}
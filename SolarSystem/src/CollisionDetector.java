@@ -0,0 +1,467 @@
+import java.util.Arrays;
+
+/**
+ * Defines a collision detector as a spatial hash of the boxes that moving circles sweep through during a step. The
+ * cell size is chosen from how big those boxes are, so most bodies fall in one to four cells, and only bodies that
+ * share a cell are compared. Bodies far bigger than the rest, like a sun, are compared with every other body instead of
+ * being spread over a huge number of cells. Each pair that shares a cell is then checked exactly by treating both
+ * bodies as circles moving in straight lines over the step, so fast bodies that pass through each other between the
+ * start and end of a step are still caught. Operations include finding every colliding pair, ordered by when in the
+ * step they first touch.
+ */
+public class CollisionDetector {
+    // the share of bodies whose boxes the cell size is chosen to fit, the rest cover more cells or are compared with
+    // every body
+    private static final double CELL_SIZE_PERCENTILE = 0.9;
+    // a box covering more cells than this along either axis is compared with every body instead of put in cells
+    private static final int MAXIMUM_CELLS_PER_AXIS = 4;
+
+    // the box each body sweeps through during the step
+    private double[] minimumXs;
+    private double[] minimumYs;
+    private double[] maximumXs;
+    private double[] maximumYs;
+    private double[] boxSizes;
+
+    // every cell a body's box covers is an entry, and the entries of each hash bucket are stored next to each other.
+    // The entries of bucket i are bucketEntries[bucketStarts[i]] up to bucketEntries[bucketStarts[i + 1]]
+    private int[] entryBodies;
+    private long[] entryColumns;
+    private long[] entryRows;
+    private int[] entryBuckets;
+    private int[] bucketStarts;
+    private int[] bucketEntries;
+    // the bodies too big to be put in cells
+    private int[] largeBodies;
+
+    private int numberOfCollisions;
+    private int[] firstBodies;
+    private int[] secondBodies;
+    private double[] contactTimes;
+    private Integer[] order;
+
+    /**
+     * Creates a new collision detector that has found no collisions
+     *
+     * @return None
+     */
+    public CollisionDetector(){
+        minimumXs = new double[0];
+        minimumYs = new double[0];
+        maximumXs = new double[0];
+        maximumYs = new double[0];
+        boxSizes = new double[0];
+        entryBodies = new int[0];
+        entryColumns = new long[0];
+        entryRows = new long[0];
+        entryBuckets = new int[0];
+        bucketStarts = new int[0];
+        bucketEntries = new int[0];
+        largeBodies = new int[0];
+        firstBodies = new int[0];
+        secondBodies = new int[0];
+        contactTimes = new double[0];
+        order = new Integer[0];
+    }
+
+    /**
+     * Finds every pair of bodies that touch at some point during a step, with each body moving in a straight line from
+     * where it started the step to where it ended it. The arrays are only read while this runs
+     *
+     * @param startXDisplacements the x-displacement of each body at the start of the step
+     * @param startYDisplacements the y-displacement of each body at the start of the step
+     * @param endXDisplacements the x-displacement of each body at the end of the step
+     * @param endYDisplacements the y-displacement of each body at the end of the step
+     * @param radii the radius of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @return the number of colliding pairs found
+     */
+    public int detect(double[] startXDisplacements, double[] startYDisplacements, double[] endXDisplacements,
+                      double[] endYDisplacements, double[] radii, int numberOfBodies){
+        numberOfCollisions = 0;
+
+        if (minimumXs.length < numberOfBodies){
+            minimumXs = new double[numberOfBodies];
+            minimumYs = new double[numberOfBodies];
+            maximumXs = new double[numberOfBodies];
+            maximumYs = new double[numberOfBodies];
+            boxSizes = new double[numberOfBodies];
+            largeBodies = new int[numberOfBodies];
+        }
+
+        // the box of each body covers the circle where it starts and the circle where it ends, and so every circle in
+        // between
+        int numberOfFiniteBodies = 0;
+        for (int i = 0; i < numberOfBodies; i++){
+            minimumXs[i] = Math.min(startXDisplacements[i], endXDisplacements[i]) - radii[i];
+            minimumYs[i] = Math.min(startYDisplacements[i], endYDisplacements[i]) - radii[i];
+            maximumXs[i] = Math.max(startXDisplacements[i], endXDisplacements[i]) + radii[i];
+            maximumYs[i] = Math.max(startYDisplacements[i], endYDisplacements[i]) + radii[i];
+
+            // a body flung off to infinity by a close encounter can't be put in a cell or collide with anything
+            if (isFinite(i)){
+                boxSizes[numberOfFiniteBodies++] = Math.max(maximumXs[i] - minimumXs[i], maximumYs[i] - minimumYs[i]);
+            }
+        }
+
+        if (numberOfFiniteBodies < 2){
+            return 0;
+        }
+
+        // most boxes fit in a cell, so they cover at most four cells. Bodies that are all points that don't move
+        // have no size at all, any cell size works for them
+        Arrays.sort(boxSizes, 0, numberOfFiniteBodies);
+        double cellSize = boxSizes[(int) ((numberOfFiniteBodies - 1) * CELL_SIZE_PERCENTILE)];
+        if (!(cellSize > 0)){
+            cellSize = Math.max(boxSizes[numberOfFiniteBodies - 1], 1);
+        }
+
+        int numberOfEntries = 0;
+        int numberOfLargeBodies = 0;
+        for (int i = 0; i < numberOfBodies; i++){
+            if (!isFinite(i)){
+                continue;
+            }
+
+            if (coversTooManyCells(i, cellSize)){
+                largeBodies[numberOfLargeBodies++] = i;
+            } else {
+                numberOfEntries += (int) ((getCell(maximumXs[i], cellSize) - getCell(minimumXs[i], cellSize) + 1) *
+                        (getCell(maximumYs[i], cellSize) - getCell(minimumYs[i], cellSize) + 1));
+            }
+        }
+
+        int numberOfBuckets = fillBuckets(numberOfBodies, numberOfEntries, cellSize);
+
+        // pairs that share a cell, compared only in the cell holding the corner where their boxes start to overlap so
+        // that a pair sharing several cells is only found once
+        for (int bucket = 0; bucket < numberOfBuckets; bucket++){
+            for (int a = bucketStarts[bucket]; a < bucketStarts[bucket + 1]; a++){
+                int entry = bucketEntries[a];
+
+                for (int b = a + 1; b < bucketStarts[bucket + 1]; b++){
+                    int other = bucketEntries[b];
+
+                    // different cells can share a bucket
+                    if (entryColumns[entry] == entryColumns[other] && entryRows[entry] == entryRows[other]){
+                        int first = Math.min(entryBodies[entry], entryBodies[other]);
+                        int second = Math.max(entryBodies[entry], entryBodies[other]);
+
+                        if (boxesOverlap(first, second) &&
+                                getCell(Math.max(minimumXs[first], minimumXs[second]), cellSize) ==
+                                        entryColumns[entry] &&
+                                getCell(Math.max(minimumYs[first], minimumYs[second]), cellSize) == entryRows[entry]){
+                            checkPair(first, second, startXDisplacements, startYDisplacements, endXDisplacements,
+                                    endYDisplacements, radii);
+                        }
+                    }
+                }
+            }
+        }
+
+        // the large bodies are few, so comparing each with every body keeps the whole search close to linear
+        for (int l = 0; l < numberOfLargeBodies; l++){
+            int large = largeBodies[l];
+
+            for (int i = 0; i < numberOfBodies; i++){
+                // a pair of large bodies is only compared from the first of them
+                if (i == large || !isFinite(i) || (isLarge(i, numberOfLargeBodies) && i < large)){
+                    continue;
+                }
+
+                if (boxesOverlap(large, i)){
+                    checkPair(Math.min(large, i), Math.max(large, i), startXDisplacements, startYDisplacements,
+                            endXDisplacements, endYDisplacements, radii);
+                }
+            }
+        }
+
+        sortByContactTime();
+
+        return numberOfCollisions;
+    }
+
+    /**
+     * Puts an entry for every cell each body's box covers into the hash buckets with a counting sort
+     *
+     * @param numberOfBodies the number of bodies
+     * @param numberOfEntries the number of entries, found by counting the cells each box covers
+     * @param cellSize the side of each cell
+     * @return the number of buckets used
+     */
+    private int fillBuckets(int numberOfBodies, int numberOfEntries, double cellSize){
+        // about two buckets for each entry keeps different cells from sharing a bucket most of the time, and a power
+        // of two lets the hash be masked instead of divided
+        int numberOfBuckets = Integer.highestOneBit(Math.max(1, numberOfEntries) * 2);
+
+        if (entryBodies.length < numberOfEntries){
+            entryBodies = new int[numberOfEntries];
+            entryColumns = new long[numberOfEntries];
+            entryRows = new long[numberOfEntries];
+            entryBuckets = new int[numberOfEntries];
+            bucketEntries = new int[numberOfEntries];
+        }
+        if (bucketStarts.length < numberOfBuckets + 1){
+            bucketStarts = new int[numberOfBuckets + 1];
+        } else {
+            Arrays.fill(bucketStarts, 0, numberOfBuckets + 1, 0);
+        }
+
+        int entry = 0;
+        for (int i = 0; i < numberOfBodies; i++){
+            if (!isFinite(i) || coversTooManyCells(i, cellSize)){
+                continue;
+            }
+
+            long firstColumn = getCell(minimumXs[i], cellSize);
+            long lastColumn = getCell(maximumXs[i], cellSize);
+            long firstRow = getCell(minimumYs[i], cellSize);
+            long lastRow = getCell(maximumYs[i], cellSize);
+
+            for (long column = firstColumn; column <= lastColumn; column++){
+                for (long row = firstRow; row <= lastRow; row++){
+                    entryBodies[entry] = i;
+                    entryColumns[entry] = column;
+                    entryRows[entry] = row;
+                    entryBuckets[entry] = hash(column, row) & (numberOfBuckets - 1);
+                    bucketStarts[entryBuckets[entry] + 1]++;
+                    entry++;
+                }
+            }
+        }
+
+        // a counting sort: turn the counts into where each bucket starts, then place each entry at the next free spot
+        // of its bucket
+        for (int i = 0; i < numberOfBuckets; i++){
+            bucketStarts[i + 1] += bucketStarts[i];
+        }
+        int[] nextFree = Arrays.copyOf(bucketStarts, numberOfBuckets);
+        for (int i = 0; i < numberOfEntries; i++){
+            bucketEntries[nextFree[entryBuckets[i]]++] = i;
+        }
+
+        return numberOfBuckets;
+    }
+
+    /**
+     * Checks whether a body's box is at a finite position
+     *
+     * @param body the body
+     * @return whether every side of the body's box is finite
+     */
+    private boolean isFinite(int body){
+        return Double.isFinite(minimumXs[body]) && Double.isFinite(minimumYs[body]) &&
+                Double.isFinite(maximumXs[body]) && Double.isFinite(maximumYs[body]);
+    }
+
+    /**
+     * Checks whether a body's box covers too many cells to be put in them
+     *
+     * @param body the body
+     * @param cellSize the side of each cell
+     * @return whether the body should be compared with every body instead
+     */
+    private boolean coversTooManyCells(int body, double cellSize){
+        long columns = getCell(maximumXs[body], cellSize) - getCell(minimumXs[body], cellSize) + 1;
+        long rows = getCell(maximumYs[body], cellSize) - getCell(minimumYs[body], cellSize) + 1;
+
+        // a box so far out that its cell numbers overflow is treated as large too
+        return !(1 <= columns && columns <= MAXIMUM_CELLS_PER_AXIS && 1 <= rows && rows <= MAXIMUM_CELLS_PER_AXIS);
+    }
+
+    /**
+     * Checks whether a body is one of the large bodies compared with every body
+     *
+     * @param body the body
+     * @param numberOfLargeBodies the number of large bodies
+     * @return whether the body is a large body
+     */
+    private boolean isLarge(int body, int numberOfLargeBodies){
+        // the large bodies were found in order, so they can be searched
+        return Arrays.binarySearch(largeBodies, 0, numberOfLargeBodies, body) >= 0;
+    }
+
+    /**
+     * Checks whether the boxes of two bodies overlap
+     *
+     * @param first the first body
+     * @param second the second body
+     * @return whether the boxes overlap
+     */
+    private boolean boxesOverlap(int first, int second){
+        return minimumXs[first] <= maximumXs[second] && minimumXs[second] <= maximumXs[first] &&
+                minimumYs[first] <= maximumYs[second] && minimumYs[second] <= maximumYs[first];
+    }
+
+    /**
+     * Gets the cell a distance along an axis is in
+     *
+     * @param displacement the distance along the axis
+     * @param cellSize the side of each cell
+     * @return the number of the cell, which may be negative
+     */
+    private static long getCell(double displacement, double cellSize){
+        return (long) Math.floor(displacement / cellSize);
+    }
+
+    /**
+     * Mixes the column and row of a cell into a hash, so that cells near each other land in unrelated buckets
+     *
+     * @param column the column of the cell
+     * @param row the row of the cell
+     * @return the hash
+     */
+    private static int hash(long column, long row){
+        long h = column * 0x9E3779B97F4A7C15L + row * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ h >>> 32);
+    }
+
+    /**
+     * Checks whether two bodies touch during the step and adds them to the collisions if they do
+     *
+     * @param first the first body
+     * @param second the second body
+     * @param startXDisplacements the x-displacement of each body at the start of the step
+     * @param startYDisplacements the y-displacement of each body at the start of the step
+     * @param endXDisplacements the x-displacement of each body at the end of the step
+     * @param endYDisplacements the y-displacement of each body at the end of the step
+     * @param radii the radius of each body
+     * @return None
+     */
+    private void checkPair(int first, int second, double[] startXDisplacements, double[] startYDisplacements,
+                           double[] endXDisplacements, double[] endYDisplacements, double[] radii){
+        double contactTime = findContactTime(startXDisplacements[first], startYDisplacements[first],
+                endXDisplacements[first], endYDisplacements[first], startXDisplacements[second],
+                startYDisplacements[second], endXDisplacements[second], endYDisplacements[second],
+                radii[first] + radii[second]);
+
+        if (contactTime == -1){
+            return;
+        }
+
+        if (numberOfCollisions == firstBodies.length){
+            int capacity = Math.max(4, numberOfCollisions * 2);
+            firstBodies = Arrays.copyOf(firstBodies, capacity);
+            secondBodies = Arrays.copyOf(secondBodies, capacity);
+            contactTimes = Arrays.copyOf(contactTimes, capacity);
+            order = Arrays.copyOf(order, capacity);
+        }
+
+        firstBodies[numberOfCollisions] = first;
+        secondBodies[numberOfCollisions] = second;
+        contactTimes[numberOfCollisions] = contactTime;
+        numberOfCollisions++;
+    }
+
+    /**
+     * Finds when two circles moving in straight lines over a step first touch. Only how the second circle moves
+     * relative to the first matters, so this solves for when that relative position is as far from the first circle
+     * as the sum of the radii
+     *
+     * @param firstStartX the x-displacement of the first circle at the start of the step
+     * @param firstStartY the y-displacement of the first circle at the start of the step
+     * @param firstEndX the x-displacement of the first circle at the end of the step
+     * @param firstEndY the y-displacement of the first circle at the end of the step
+     * @param secondStartX the x-displacement of the second circle at the start of the step
+     * @param secondStartY the y-displacement of the second circle at the start of the step
+     * @param secondEndX the x-displacement of the second circle at the end of the step
+     * @param secondEndY the y-displacement of the second circle at the end of the step
+     * @param contactDistance the sum of the radii
+     * @return the fraction of the step at which the circles first touch, 0 if they already overlap at the start, or
+     * -1 if they never touch during the step
+     */
+    static double findContactTime(double firstStartX, double firstStartY, double firstEndX, double firstEndY,
+                                  double secondStartX, double secondStartY, double secondEndX, double secondEndY,
+                                  double contactDistance){
+        double startX = secondStartX - firstStartX;
+        double startY = secondStartY - firstStartY;
+        double movedX = (secondEndX - secondStartX) - (firstEndX - firstStartX);
+        double movedY = (secondEndY - secondStartY) - (firstEndY - firstStartY);
+
+        // |start + moved * t|^2 = contactDistance^2 written as a * t^2 + b * t + c = 0
+        double a = movedX * movedX + movedY * movedY;
+        double b = 2 * (startX * movedX + startY * movedY);
+        double c = startX * startX + startY * startY - contactDistance * contactDistance;
+
+        if (c <= 0){
+            return 0;
+        }
+        // the circles are apart and not getting closer
+        if (b >= 0){
+            return -1;
+        }
+
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0){
+            return -1;
+        }
+
+        // the smaller root written so that nothing close to equal is subtracted, b is negative so the denominator is
+        // a sum of positive numbers
+        double contactTime = 2 * c / (-b + Math.sqrt(discriminant));
+
+        return contactTime <= 1 ? contactTime : -1;
+    }
+
+    /**
+     * Sorts the collisions by when in the step they happen, with ties in order of the bodies so that the order never
+     * depends on how the bodies were hashed
+     *
+     * @return None
+     */
+    private void sortByContactTime(){
+        for (int i = 0; i < numberOfCollisions; i++){
+            order[i] = i;
+        }
+
+        // collisions are rare, so sorting them as objects costs nothing next to finding them
+        Arrays.sort(order, 0, numberOfCollisions, (i, j) -> {
+            int byTime = Double.compare(contactTimes[i], contactTimes[j]);
+            if (byTime != 0){
+                return byTime;
+            }
+
+            return firstBodies[i] != firstBodies[j] ? Integer.compare(firstBodies[i], firstBodies[j]) :
+                    Integer.compare(secondBodies[i], secondBodies[j]);
+        });
+    }
+
+    /**
+     * Gets the number of colliding pairs found by the last call to detect
+     *
+     * @return the number of collisions
+     */
+    public int getNumberOfCollisions(){
+        return numberOfCollisions;
+    }
+
+    /**
+     * Gets the body with the smaller number in a collision
+     *
+     * @param collision the collision, collisions are numbered in order of when in the step they happen
+     * @return the first body
+     */
+    public int getFirstBody(int collision){
+        return firstBodies[order[collision]];
+    }
+
+    /**
+     * Gets the body with the greater number in a collision
+     *
+     * @param collision the collision, collisions are numbered in order of when in the step they happen
+     * @return the second body
+     */
+    public int getSecondBody(int collision){
+        return secondBodies[order[collision]];
+    }
+
+    /**
+     * Gets when in the step the bodies of a collision first touch
+     *
+     * @param collision the collision, collisions are numbered in order of when in the step they happen
+     * @return the fraction of the step at which they touch, 0 if they already overlapped at the start
+     */
+    public double getContactTime(int collision){
+        return contactTimes[order[collision]];
+    }
+}
@@ -0,0 +1,402 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Defines a compact body store that keeps the displacement and velocity of each slot as floats, relative to an origin
+ * kept as doubles for each block of slots. Asteroids near each other in a block only need the precision of a float
+ * relative to the size of the block rather than relative to the size of the solar system, and each slot takes 16 bytes
+ * instead of 32, which halves the memory the force loop has to stream through. Values read from the store are doubles,
+ * so all arithmetic on them is still done in double precision, only what is stored is rounded. When a value would be
+ * too far from its block's origin, the block is moved to a new origin in the middle of its slots. Operations include
+ * reading and writing the state of a slot, swapping two slots, copying the store, and writing it to and reading it from
+ * a stream exactly.
+ */
+public class CompactBodyStore implements BodyStore {
+    // 256 slots per block, so the origins add less than a byte to each slot
+    private static final int SLOTS_PER_BLOCK_SHIFT = 8;
+    private static final int SLOTS_PER_BLOCK = 1 << SLOTS_PER_BLOCK_SHIFT;
+    // the four floats of a slot are next to each other so that reading a slot touches one place in memory
+    private static final int FLOATS_PER_SLOT = 4;
+    // a block is moved to a new origin once a value is this many times further from the origin than the furthest value
+    // was when the origin was chosen
+    private static final double REBASE_FACTOR = 2;
+    // keeps a block whose values were all equal from being moved to a new origin on every change, as a fraction of the
+    // size of the origin
+    private static final double MINIMUM_RELATIVE_RADIUS = 1e-6;
+
+    private final int capacity;
+    private final float[] offsets;
+    // all of these have one element for each block
+    private final double[] originXDisplacements;
+    private final double[] originYDisplacements;
+    private final double[] originXVelocities;
+    private final double[] originYVelocities;
+    private final double[] displacementRadii;
+    private final double[] velocityRadii;
+    // one more than the highest slot that has been written to. Stores are filled from the first slot to the last, and
+    // slots past this are left out when a block is moved to a new origin so that the block is not stretched to reach
+    // the center they start at
+    private int writtenSlots;
+    // which body is in each slot and which slot each body is in, both null until a body is first swapped
+    private int[] idsBySlot;
+    private int[] slotsById;
+
+    // reused each time a block is moved to a new origin, so that moving a block in the middle of a step does not need
+    // a new array for its values
+    private final double[] blockValues;
+
+    /**
+     * Creates a new compact body store with every slot at rest at the center
+     *
+     * @param capacity the number of slots
+     * @return None
+     */
+    public CompactBodyStore(int capacity){
+        this.capacity = capacity;
+        int numberOfBlocks = (capacity + SLOTS_PER_BLOCK - 1) >>> SLOTS_PER_BLOCK_SHIFT;
+
+        offsets = new float[FLOATS_PER_SLOT * capacity];
+        originXDisplacements = new double[numberOfBlocks];
+        originYDisplacements = new double[numberOfBlocks];
+        originXVelocities = new double[numberOfBlocks];
+        originYVelocities = new double[numberOfBlocks];
+        displacementRadii = new double[numberOfBlocks];
+        velocityRadii = new double[numberOfBlocks];
+        blockValues = new double[FLOATS_PER_SLOT * SLOTS_PER_BLOCK];
+    }
+
+    /**
+     * Gets the number of slots in the store
+     *
+     * @return the number of slots
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Gets the x-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-displacement in meters
+     */
+    public double getXDisplacement(int slot){
+        return originXDisplacements[slot >>> SLOTS_PER_BLOCK_SHIFT] + offsets[FLOATS_PER_SLOT * slot];
+    }
+
+    /**
+     * Gets the y-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-displacement in meters
+     */
+    public double getYDisplacement(int slot){
+        return originYDisplacements[slot >>> SLOTS_PER_BLOCK_SHIFT] + offsets[FLOATS_PER_SLOT * slot + 1];
+    }
+
+    /**
+     * Gets the x-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-velocity in meters per second
+     */
+    public double getXVelocity(int slot){
+        return originXVelocities[slot >>> SLOTS_PER_BLOCK_SHIFT] + offsets[FLOATS_PER_SLOT * slot + 2];
+    }
+
+    /**
+     * Gets the y-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-velocity in meters per second
+     */
+    public double getYVelocity(int slot){
+        return originYVelocities[slot >>> SLOTS_PER_BLOCK_SHIFT] + offsets[FLOATS_PER_SLOT * slot + 3];
+    }
+
+    /**
+     * Sets the displacement and velocity in a slot, rounded to floats relative to the origin of its block
+     *
+     * @param slot the number of the slot
+     * @param xDisplacement the x-displacement in meters
+     * @param yDisplacement the y-displacement in meters
+     * @param xVelocity the x-velocity in meters per second
+     * @param yVelocity the y-velocity in meters per second
+     * @return None
+     */
+    public void set(int slot, double xDisplacement, double yDisplacement, double xVelocity, double yVelocity){
+        int block = slot >>> SLOTS_PER_BLOCK_SHIFT;
+        writtenSlots = Math.max(writtenSlots, slot + 1);
+        double xOffset = xDisplacement - originXDisplacements[block];
+        double yOffset = yDisplacement - originYDisplacements[block];
+        double xVelocityOffset = xVelocity - originXVelocities[block];
+        double yVelocityOffset = yVelocity - originYVelocities[block];
+
+        // a float only has 24 bits of precision, so an offset much bigger than the rest of the block would lose more
+        // than the block was chosen to keep
+        if (Math.max(Math.abs(xOffset), Math.abs(yOffset)) > REBASE_FACTOR * displacementRadii[block] ||
+                Math.max(Math.abs(xVelocityOffset), Math.abs(yVelocityOffset)) > REBASE_FACTOR * velocityRadii[block]){
+            rebase(block, slot, xDisplacement, yDisplacement, xVelocity, yVelocity);
+            return;
+        }
+
+        int position = FLOATS_PER_SLOT * slot;
+        offsets[position] = (float) xOffset;
+        offsets[position + 1] = (float) yOffset;
+        offsets[position + 2] = (float) xVelocityOffset;
+        offsets[position + 3] = (float) yVelocityOffset;
+    }
+
+    /**
+     * Moves a block to a new origin in the middle of the box around its values, including a value about to be set,
+     * and stores every slot in the block again relative to it
+     *
+     * @param block the index of the block
+     * @param slot the number of the slot being set
+     * @param xDisplacement the x-displacement being set in meters
+     * @param yDisplacement the y-displacement being set in meters
+     * @param xVelocity the x-velocity being set in meters per second
+     * @param yVelocity the y-velocity being set in meters per second
+     * @return None
+     */
+    private void rebase(int block, int slot, double xDisplacement, double yDisplacement, double xVelocity,
+                        double yVelocity){
+        int firstSlot = block << SLOTS_PER_BLOCK_SHIFT;
+        int slotsInBlock = Math.min(SLOTS_PER_BLOCK, capacity - firstSlot);
+        int writtenSlotsInBlock = Math.min(slotsInBlock, writtenSlots - firstSlot);
+
+        for (int i = 0; i < slotsInBlock; i++){
+            blockValues[FLOATS_PER_SLOT * i] = getXDisplacement(firstSlot + i);
+            blockValues[FLOATS_PER_SLOT * i + 1] = getYDisplacement(firstSlot + i);
+            blockValues[FLOATS_PER_SLOT * i + 2] = getXVelocity(firstSlot + i);
+            blockValues[FLOATS_PER_SLOT * i + 3] = getYVelocity(firstSlot + i);
+        }
+        int position = FLOATS_PER_SLOT * (slot - firstSlot);
+        blockValues[position] = xDisplacement;
+        blockValues[position + 1] = yDisplacement;
+        blockValues[position + 2] = xVelocity;
+        blockValues[position + 3] = yVelocity;
+
+        // the middle of the box keeps the furthest value as close to the origin as it can be
+        double[] origin = new double[FLOATS_PER_SLOT];
+        double[] radius = new double[FLOATS_PER_SLOT];
+        for (int j = 0; j < FLOATS_PER_SLOT; j++){
+            double minimum = Double.POSITIVE_INFINITY;
+            double maximum = Double.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < writtenSlotsInBlock; i++){
+                minimum = Math.min(minimum, blockValues[FLOATS_PER_SLOT * i + j]);
+                maximum = Math.max(maximum, blockValues[FLOATS_PER_SLOT * i + j]);
+            }
+
+            origin[j] = minimum + (maximum - minimum) / 2;
+            radius[j] = (maximum - minimum) / 2;
+        }
+
+        originXDisplacements[block] = origin[0];
+        originYDisplacements[block] = origin[1];
+        originXVelocities[block] = origin[2];
+        originYVelocities[block] = origin[3];
+        displacementRadii[block] = Math.max(Math.max(radius[0], radius[1]),
+                MINIMUM_RELATIVE_RADIUS * Math.max(Math.abs(origin[0]), Math.abs(origin[1])));
+        velocityRadii[block] = Math.max(Math.max(radius[2], radius[3]),
+                MINIMUM_RELATIVE_RADIUS * Math.max(Math.abs(origin[2]), Math.abs(origin[3])));
+
+        for (int i = 0; i < slotsInBlock; i++){
+            for (int j = 0; j < FLOATS_PER_SLOT; j++){
+                offsets[FLOATS_PER_SLOT * (firstSlot + i) + j] = (float) (blockValues[FLOATS_PER_SLOT * i + j] -
+                        origin[j]);
+            }
+        }
+    }
+
+    /**
+     * Swaps the bodies in two slots, ids included. Slots in the same block share an origin, so their floats are swapped
+     * exactly, while a body moved to another block is rounded again relative to that block's origin
+     *
+     * @param firstSlot the number of one slot
+     * @param secondSlot the number of the other slot
+     * @return None
+     */
+    public void swap(int firstSlot, int secondSlot){
+        if (firstSlot >>> SLOTS_PER_BLOCK_SHIFT == secondSlot >>> SLOTS_PER_BLOCK_SHIFT){
+            for (int j = 0; j < FLOATS_PER_SLOT; j++){
+                float offset = offsets[FLOATS_PER_SLOT * firstSlot + j];
+                offsets[FLOATS_PER_SLOT * firstSlot + j] = offsets[FLOATS_PER_SLOT * secondSlot + j];
+                offsets[FLOATS_PER_SLOT * secondSlot + j] = offset;
+            }
+        } else {
+            double xDisplacement = getXDisplacement(firstSlot);
+            double yDisplacement = getYDisplacement(firstSlot);
+            double xVelocity = getXVelocity(firstSlot);
+            double yVelocity = getYVelocity(firstSlot);
+
+            set(firstSlot, getXDisplacement(secondSlot), getYDisplacement(secondSlot), getXVelocity(secondSlot),
+                    getYVelocity(secondSlot));
+            set(secondSlot, xDisplacement, yDisplacement, xVelocity, yVelocity);
+        }
+
+        createIds();
+        int firstId = idsBySlot[firstSlot];
+        setId(firstSlot, idsBySlot[secondSlot]);
+        setId(secondSlot, firstId);
+    }
+
+    /**
+     * Creates the ids with every body in the slot matching its id, if they have not been created yet
+     *
+     * @return None
+     */
+    private void createIds(){
+        if (idsBySlot == null){
+            idsBySlot = new int[capacity];
+            slotsById = new int[capacity];
+
+            for (int i = 0; i < capacity; i++){
+                idsBySlot[i] = i;
+                slotsById[i] = i;
+            }
+        }
+    }
+
+    /**
+     * Gets the id of the body in a slot
+     *
+     * @param slot the number of the slot
+     * @return the id of the body
+     */
+    public int getId(int slot){
+        return idsBySlot == null ? slot : idsBySlot[slot];
+    }
+
+    /**
+     * Gets the slot a body is in
+     *
+     * @param id the id of the body
+     * @return the number of the slot
+     */
+    public int getSlot(int id){
+        return slotsById == null ? id : slotsById[id];
+    }
+
+    /**
+     * Puts a body's id in a slot
+     *
+     * @param slot the number of the slot
+     * @param id the id of the body in the slot
+     * @return None
+     */
+    public void setId(int slot, int id){
+        createIds();
+        idsBySlot[slot] = id;
+        slotsById[id] = slot;
+    }
+
+    /**
+     * Checks whether the store keeps ids
+     *
+     * @return false if every body is in the slot matching its id
+     */
+    public boolean isReordered(){
+        return idsBySlot != null;
+    }
+
+    /**
+     * Gets the type of the store
+     *
+     * @return BodyStoreType.COMPACT
+     */
+    public BodyStoreType getType(){
+        return BodyStoreType.COMPACT;
+    }
+
+    /**
+     * Creates an exact copy of the store that shares nothing that can change with it
+     *
+     * @return the copy
+     */
+    public BodyStore copy(){
+        CompactBodyStore copy = new CompactBodyStore(capacity);
+        copy.writtenSlots = writtenSlots;
+
+        System.arraycopy(offsets, 0, copy.offsets, 0, offsets.length);
+        System.arraycopy(originXDisplacements, 0, copy.originXDisplacements, 0, originXDisplacements.length);
+        System.arraycopy(originYDisplacements, 0, copy.originYDisplacements, 0, originYDisplacements.length);
+        System.arraycopy(originXVelocities, 0, copy.originXVelocities, 0, originXVelocities.length);
+        System.arraycopy(originYVelocities, 0, copy.originYVelocities, 0, originYVelocities.length);
+        System.arraycopy(displacementRadii, 0, copy.displacementRadii, 0, displacementRadii.length);
+        System.arraycopy(velocityRadii, 0, copy.velocityRadii, 0, velocityRadii.length);
+        if (idsBySlot != null){
+            copy.idsBySlot = idsBySlot.clone();
+            copy.slotsById = slotsById.clone();
+        }
+
+        return copy;
+    }
+
+    /**
+     * Estimates how much memory the store takes up
+     *
+     * @return four floats for each slot and six doubles for each block, and two ints for each slot once the store keeps
+     * ids
+     */
+    public long getEstimatedBytes(){
+        return (long) Float.BYTES * offsets.length + 6L * Double.BYTES * originXDisplacements.length +
+                (idsBySlot == null ? 0 : 2L * Integer.BYTES * capacity);
+    }
+
+    /**
+     * Does nothing, the arrays are freed by the garbage collector once nothing refers to them
+     *
+     * @return None
+     */
+    public void close(){
+    }
+
+    /**
+     * Writes the origins and offsets exactly as they are stored, so that reading them back gives the same floats
+     * rather than rounding every value a second time
+     *
+     * @param out the stream to write to
+     * @return None
+     * @throws IOException if the store could not be written
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        for (int i = 0; i < originXDisplacements.length; i++){
+            out.writeDouble(originXDisplacements[i]);
+            out.writeDouble(originYDisplacements[i]);
+            out.writeDouble(originXVelocities[i]);
+            out.writeDouble(originYVelocities[i]);
+            out.writeDouble(displacementRadii[i]);
+            out.writeDouble(velocityRadii[i]);
+        }
+        for (float offset : offsets){
+            out.writeFloat(offset);
+        }
+    }
+
+    /**
+     * Reads the origins and offsets that were written by writeTo into the store, the ids are left as they are
+     *
+     * @param in the stream to read from
+     * @return None
+     * @throws IOException if the store could not be read
+     */
+    void readFrom(DataInputStream in) throws IOException {
+        // every slot of a store that was written out has been set
+        writtenSlots = capacity;
+
+        for (int i = 0; i < originXDisplacements.length; i++){
+            originXDisplacements[i] = in.readDouble();
+            originYDisplacements[i] = in.readDouble();
+            originXVelocities[i] = in.readDouble();
+            originYVelocities[i] = in.readDouble();
+            displacementRadii[i] = in.readDouble();
+            velocityRadii[i] = in.readDouble();
+        }
+        for (int i = 0; i < offsets.length; i++){
+            offsets[i] = in.readFloat();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Defines a conservation monitor as a check on how far a run's total energy, momentum, and angular momentum have
+ * drifted from where they started, which tells whether a run with a long time interval or an approximate force engine
+ * still means anything. The kinetic terms are added up by the solar system while it moves the planets, so they are
+ * known after every step for almost nothing. The potential energy needs every pair of bodies, so it is only found
+ * every few steps, either exactly or with a Barnes-Hut tree walk. A sun is held in place, which pushes on the planets
+ * without being pushed back, so the momentum is only checked when there is no sun and the angular momentum, which is
+ * measured around the sun, only when there is at most one. Operations include starting the monitor from the current
+ * state, checking it after a step, and reading the drifts.
+ */
+public class ConservationMonitor {
+    private final int potentialIntervalSteps;
+    private final double openingAngle;
+    private final double tolerance;
+    // walks its quad tree to find the potential at each body when the opening angle isn't 0
+    private final BarnesHutForceEngine treeEngine;
+
+    private double[] xDisplacements;
+    private double[] yDisplacements;
+    private double[] masses;
+    private double[] gravitationalParameters;
+    private double[] potentials;
+
+    // the state the drifts are measured from
+    private double startEnergy;
+    private double startXMomentum;
+    private double startYMomentum;
+    private double startAngularMomentum;
+    // the sum of the sizes of every planet's momentum and angular momentum at the start, which the drifts are divided
+    // by since the totals can be close to 0 when the planets move in different directions
+    private double momentumScale;
+    private double angularMomentumScale;
+    // what the monitor was started with, if any of these changes the drifts no longer mean anything
+    private int startNumberOfCelestialBodies;
+    private long startNumberOfMerges;
+    private long lastStepCount;
+
+    private double potentialEnergy;
+    private double energyDrift;
+    private double momentumDrift;
+    private double angularMomentumDrift;
+    // whether each drift has gone over the tolerance since the monitor was started. Only the first time raises an
+    // alert, since the energy and angular momentum of a symplectic integrator wobble up and down every orbit and
+    // would go over again and again
+    private boolean energyAlert;
+    private boolean momentumAlert;
+    private boolean angularMomentumAlert;
+
+    /**
+     * Creates a new conservation monitor, use start before checking it
+     *
+     * @param potentialIntervalSteps the number of steps between finding the potential energy, at least 1
+     * @param openingAngle the opening angle of the tree walk that finds the potential energy, 0 adds up every pair
+     * exactly
+     * @param tolerance the greatest relative drift of any of the quantities before an alert is raised
+     * @return None
+     */
+    public ConservationMonitor(int potentialIntervalSteps, double openingAngle, double tolerance){
+        this.potentialIntervalSteps = Math.max(1, potentialIntervalSteps);
+        this.openingAngle = Math.max(0, Math.min(1, openingAngle));
+        this.tolerance = Math.max(0, tolerance);
+        treeEngine = new BarnesHutForceEngine(this.openingAngle);
+        xDisplacements = new double[0];
+        yDisplacements = new double[0];
+        masses = new double[0];
+        gravitationalParameters = new double[0];
+        potentials = new double[0];
+    }
+
+    /**
+     * Starts measuring the drifts from the current state of a solar system
+     *
+     * @param solarSystem the solar system
+     * @return None
+     */
+    public void start(SolarSystem solarSystem){
+        solarSystem.updateConservedQuantities();
+        potentialEnergy = calculatePotentialEnergy(solarSystem);
+
+        startEnergy = solarSystem.getKineticEnergy() + potentialEnergy;
+        startXMomentum = solarSystem.getXMomentum();
+        startYMomentum = solarSystem.getYMomentum();
+        startAngularMomentum = solarSystem.getAngularMomentum();
+
+        momentumScale = 0;
+        angularMomentumScale = 0;
+        int sunIndex = solarSystem.getSunIndex();
+        double originX = sunIndex == -1 ? 0 : solarSystem.getCelestialBodyXDisplacement(sunIndex);
+        double originY = sunIndex == -1 ? 0 : solarSystem.getCelestialBodyYDisplacement(sunIndex);
+        for (int i = 0; i < solarSystem.getNumberOfCelestialBodies(); i++){
+            double mass = solarSystem.getCelestialBodyMass(i);
+            double xVelocity = solarSystem.getCelestialBodyXVelocity(i);
+            double yVelocity = solarSystem.getCelestialBodyYVelocity(i);
+            momentumScale += mass * Math.hypot(xVelocity, yVelocity);
+            angularMomentumScale += mass * Math.abs((solarSystem.getCelestialBodyXDisplacement(i) - originX) *
+                    yVelocity - (solarSystem.getCelestialBodyYDisplacement(i) - originY) * xVelocity);
+        }
+
+        startNumberOfCelestialBodies = solarSystem.getNumberOfCelestialBodies();
+        startNumberOfMerges = solarSystem.getNumberOfMerges();
+        lastStepCount = solarSystem.getStepCount();
+        energyDrift = 0;
+        momentumDrift = 0;
+        angularMomentumDrift = 0;
+        energyAlert = false;
+        momentumAlert = false;
+        angularMomentumAlert = false;
+    }
+
+    /**
+     * Checks the drifts after a step, and prints an alert for each one that has just gone over the tolerance. If
+     * bodies were added, removed, or merged, or the run was moved back in time, the monitor starts again from the
+     * current state, since merging loses energy and the other changes aren't part of the run
+     *
+     * @param solarSystem the solar system, after it has been moved
+     * @return whether an alert was printed
+     */
+    public boolean check(SolarSystem solarSystem){
+        if (solarSystem.getNumberOfCelestialBodies() != startNumberOfCelestialBodies ||
+                solarSystem.getNumberOfMerges() != startNumberOfMerges ||
+                solarSystem.getStepCount() <= lastStepCount){
+            start(solarSystem);
+            return false;
+        }
+        lastStepCount = solarSystem.getStepCount();
+
+        boolean alerted = false;
+        int numberOfSuns = solarSystem.getNumberOfCelestialBodies() - solarSystem.getNumberOfPlanets();
+
+        if (numberOfSuns == 0 && momentumScale > 0){
+            momentumDrift = Math.hypot(solarSystem.getXMomentum() - startXMomentum,
+                    solarSystem.getYMomentum() - startYMomentum) / momentumScale;
+            if (momentumDrift > tolerance && !momentumAlert){
+                momentumAlert = true;
+                alerted = alert("Momentum", momentumDrift, solarSystem);
+            }
+        }
+
+        if (numberOfSuns <= 1 && angularMomentumScale > 0){
+            angularMomentumDrift = Math.abs(solarSystem.getAngularMomentum() - startAngularMomentum) /
+                    angularMomentumScale;
+            if (angularMomentumDrift > tolerance && !angularMomentumAlert){
+                angularMomentumAlert = true;
+                alerted = alert("Angular momentum", angularMomentumDrift, solarSystem);
+            }
+        }
+
+        // the kinetic energy is known every step but the total isn't until the potential energy is found again
+        if (solarSystem.getStepCount() % potentialIntervalSteps == 0 && startEnergy != 0){
+            potentialEnergy = calculatePotentialEnergy(solarSystem);
+            energyDrift = Math.abs(solarSystem.getKineticEnergy() + potentialEnergy - startEnergy) /
+                    Math.abs(startEnergy);
+            if (energyDrift > tolerance && !energyAlert){
+                energyAlert = true;
+                alerted = alert("Energy", energyDrift, solarSystem);
+            }
+        }
+
+        return alerted;
+    }
+
+    /**
+     * Prints an alert that a quantity has drifted too far
+     *
+     * @param quantity the name of the quantity
+     * @param drift the relative drift
+     * @param solarSystem the solar system
+     * @return true
+     */
+    private boolean alert(String quantity, double drift, SolarSystem solarSystem){
+        System.out.printf("Warning: %s has drifted by %.2e at step %d, over the tolerance of %.2e \n", quantity, drift,
+                solarSystem.getStepCount(), tolerance);
+        return true;
+    }
+
+    /**
+     * Calculates the potential energy of every pair of celestial bodies, softened the same way as their pulls
+     *
+     * @param solarSystem the solar system
+     * @return the potential energy in joules
+     */
+    private double calculatePotentialEnergy(SolarSystem solarSystem){
+        int numberOfBodies = solarSystem.getNumberOfCelestialBodies();
+        double softeningLengthSquared = solarSystem.getSofteningLengthMeters() * solarSystem.getSofteningLengthMeters();
+
+        if (xDisplacements.length < numberOfBodies){
+            xDisplacements = new double[numberOfBodies];
+            yDisplacements = new double[numberOfBodies];
+            masses = new double[numberOfBodies];
+            gravitationalParameters = new double[numberOfBodies];
+            potentials = new double[numberOfBodies];
+        }
+        for (int i = 0; i < numberOfBodies; i++){
+            xDisplacements[i] = solarSystem.getCelestialBodyXDisplacement(i);
+            yDisplacements[i] = solarSystem.getCelestialBodyYDisplacement(i);
+            masses[i] = solarSystem.getCelestialBodyMass(i);
+            gravitationalParameters[i] = SolarSystem.GRAVITATION_CONSTANT * masses[i];
+        }
+
+        if (openingAngle == 0){
+            double potential = 0;
+            for (int i = 0; i < numberOfBodies; i++){
+                for (int j = i + 1; j < numberOfBodies; j++){
+                    double dx = xDisplacements[j] - xDisplacements[i];
+                    double dy = yDisplacements[j] - yDisplacements[i];
+                    potential -= masses[i] * gravitationalParameters[j] /
+                            Math.sqrt(dx * dx + dy * dy + softeningLengthSquared);
+                }
+            }
+            return potential;
+        }
+
+        // every pair is counted from both of its bodies, so the sum is halved
+        treeEngine.calculatePotentials(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies,
+                softeningLengthSquared, potentials);
+        double potential = 0;
+        for (int i = 0; i < numberOfBodies; i++){
+            potential += masses[i] * potentials[i];
+        }
+        return potential / 2;
+    }
+
+    /**
+     * Gets the potential energy when it was last found
+     *
+     * @return the potential energy in joules
+     */
+    public double getPotentialEnergy(){
+        return potentialEnergy;
+    }
+
+    /**
+     * Gets how far the total energy had drifted when the potential energy was last found, relative to the starting
+     * energy
+     *
+     * @return the relative drift
+     */
+    public double getEnergyDrift(){
+        return energyDrift;
+    }
+
+    /**
+     * Gets how far the momentum has drifted, relative to the sum of the sizes of the planets' starting momenta
+     *
+     * @return the relative drift, 0 if there is a sun since a sun pushing on the planets changes their momentum
+     */
+    public double getMomentumDrift(){
+        return momentumDrift;
+    }
+
+    /**
+     * Gets how far the angular momentum around the sun has drifted, relative to the sum of the sizes of the planets'
+     * starting angular momenta
+     *
+     * @return the relative drift, 0 if there is more than one sun
+     */
+    public double getAngularMomentumDrift(){
+        return angularMomentumDrift;
+    }
+
+    /**
+     * Gets the greatest relative drift before an alert is raised
+     *
+     * @return the tolerance
+     */
+    public double getTolerance(){
+        return tolerance;
+    }
+}
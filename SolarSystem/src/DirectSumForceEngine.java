@@ -0,0 +1,64 @@
+import java.util.Arrays;
+
+/**
+ * Defines a direct sum force engine as a force engine that adds up the pull between every pair of bodies, the same way
+ * the solar system does. It is exact up to rounding, so it is what the other engines are measured against, but the
+ * time it takes grows with the square of the number of bodies. Operations include calculating the acceleration of
+ * every body.
+ */
+public class DirectSumForceEngine implements ForceEngine {
+    /**
+     * Calculates the acceleration of every body by adding up the pull between every pair of bodies
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    @Override
+    public void calculateAccelerations(double[] xDisplacements, double[] yDisplacements,
+                                       double[] gravitationalParameters, int numberOfBodies,
+                                       double softeningLengthSquared, double[] xAccelerations,
+                                       double[] yAccelerations){
+        Arrays.fill(xAccelerations, 0, numberOfBodies, 0);
+        Arrays.fill(yAccelerations, 0, numberOfBodies, 0);
+
+        for (int i = 0; i < numberOfBodies; i++){
+            double x = xDisplacements[i];
+            double y = yDisplacements[i];
+            double gravitationalParameter = gravitationalParameters[i];
+            double accelerationX = xAccelerations[i];
+            double accelerationY = yAccelerations[i];
+
+            // each pair is visited once and pulls both ways, which halves the number of square roots
+            for (int j = i + 1; j < numberOfBodies; j++){
+                double dx = xDisplacements[j] - x;
+                double dy = yDisplacements[j] - y;
+                double distanceSquared = dx * dx + dy * dy + softeningLengthSquared;
+                double inverseDistanceCubed = 1 / (distanceSquared * Math.sqrt(distanceSquared));
+
+                accelerationX += gravitationalParameters[j] * inverseDistanceCubed * dx;
+                accelerationY += gravitationalParameters[j] * inverseDistanceCubed * dy;
+                xAccelerations[j] -= gravitationalParameter * inverseDistanceCubed * dx;
+                yAccelerations[j] -= gravitationalParameter * inverseDistanceCubed * dy;
+            }
+
+            xAccelerations[i] = accelerationX;
+            yAccelerations[i] = accelerationY;
+        }
+    }
+
+    /**
+     * Gets the name of the engine
+     *
+     * @return the name
+     */
+    @Override
+    public String getName(){
+        return "Direct sum";
+    }
+}
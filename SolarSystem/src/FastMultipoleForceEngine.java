@@ -0,0 +1,577 @@
+import java.util.Arrays;
+
+/**
+ * Defines a fast multipole force engine as a force engine that puts the bodies in a quad tree and works out the pull
+ * between whole squares instead of between bodies. The bodies of each square are summed up by their multipole moments
+ * about the square's center of mass, and the pull of far away squares on a square is turned into a local expansion: a
+ * Taylor series of the pull around the square's center, which is handed down to its children and finally evaluated at
+ * each body. Pairs of squares are walked together, so each square only meets a handful of others at each level, and
+ * the time it takes grows with n instead of n log n.
+ * <p>
+ * The bodies pull each other with the 1 / r^2 gravity of the solar system, not the 1 / r gravity of a truly flat
+ * world, so the expansions are Taylor series in x and y of 1 / r rather than complex power series, which only work for
+ * the flat kind. The expansion order is the highest power kept in those series, and every two orders make the far
+ * pulls about ten times as exact. Far pulls are unsoftened, which only matters when the softening length is a sizeable
+ * fraction of the distance between squares far enough apart to be expanded. Operations include calculating the
+ * acceleration of every body.
+ */
+public class FastMultipoleForceEngine implements ForceEngine {
+    // two squares are far enough apart to be expanded when the sum of their radii is less than this much of the
+    // distance between their centers. Smaller is more exact but meets more squares, and the expansion order is the
+    // cheaper way to be more exact
+    private static final double OPENING_ANGLE = 0.5;
+    // leaves big enough that the direct pulls inside them cost about as much as the expansions around them
+    private static final int MAXIMUM_BODIES_PER_LEAF = 64;
+
+    private final int expansionOrder;
+    private final QuadTree tree;
+    // the moments of order below the expansion order are kept for each square, the moments of the expansion order
+    // itself would only add to the potential and not the pull
+    private final int numberOfMoments;
+    private final int numberOfTerms;
+    // binomials[n][k] is n choose k
+    private final double[][] binomials;
+    // the derivatives of 1 / r divided by the factorials of their orders, at the displacement between two squares
+    private final double[] derivatives;
+    private final double[] xPowers;
+    private final double[] yPowers;
+
+    private double[] moments;
+    private double[] localTerms;
+    private double[] nearXAccelerations;
+    private double[] nearYAccelerations;
+    // the pairs of squares still to be visited, first of the pair at even places and second at odd places
+    private int[] pairStack;
+
+    /**
+     * Creates a new fast multipole force engine
+     *
+     * @param expansionOrder the highest power kept in the expansions, at least 1. Order 1 treats every far square as a
+     * point, like a tree code, and every two orders after that make the far pulls about ten times as exact
+     * @return None
+     */
+    public FastMultipoleForceEngine(int expansionOrder){
+        this.expansionOrder = Math.max(1, expansionOrder);
+        tree = new QuadTree(MAXIMUM_BODIES_PER_LEAF);
+        numberOfMoments = getNumberOfCoefficients(this.expansionOrder - 1);
+        numberOfTerms = getNumberOfCoefficients(this.expansionOrder);
+
+        binomials = new double[this.expansionOrder + 1][this.expansionOrder + 1];
+        for (int n = 0; n <= this.expansionOrder; n++){
+            binomials[n][0] = 1;
+            for (int k = 1; k <= n; k++){
+                binomials[n][k] = binomials[n - 1][k - 1] + (k < n ? binomials[n - 1][k] : 0);
+            }
+        }
+
+        derivatives = new double[numberOfTerms];
+        xPowers = new double[this.expansionOrder + 1];
+        yPowers = new double[this.expansionOrder + 1];
+        moments = new double[0];
+        localTerms = new double[0];
+        nearXAccelerations = new double[0];
+        nearYAccelerations = new double[0];
+        pairStack = new int[256];
+    }
+
+    /**
+     * Calculates the acceleration of every body: moments are found from the leaves up, every pair of squares is either
+     * expanded or split until it is a pair of leaves that pull directly, and the expansions are handed down to the
+     * bodies
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    @Override
+    public void calculateAccelerations(double[] xDisplacements, double[] yDisplacements,
+                                       double[] gravitationalParameters, int numberOfBodies,
+                                       double softeningLengthSquared, double[] xAccelerations,
+                                       double[] yAccelerations){
+        if (numberOfBodies == 0){
+            return;
+        }
+
+        tree.build(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies);
+        int numberOfCells = tree.getNumberOfCells();
+
+        if (moments.length < numberOfCells * numberOfMoments){
+            moments = new double[numberOfCells * numberOfMoments * 2];
+            localTerms = new double[numberOfCells * numberOfTerms * 2];
+        }
+        if (nearXAccelerations.length < numberOfBodies){
+            nearXAccelerations = new double[numberOfBodies];
+            nearYAccelerations = new double[numberOfBodies];
+        }
+        Arrays.fill(localTerms, 0, numberOfCells * numberOfTerms, 0);
+        Arrays.fill(nearXAccelerations, 0, numberOfBodies, 0);
+        Arrays.fill(nearYAccelerations, 0, numberOfBodies, 0);
+
+        // children are numbered after their parent, so backwards reaches every child before its parent
+        for (int cell = numberOfCells - 1; cell >= 0; cell--){
+            if (tree.getNumberOfChildren(cell) == 0){
+                calculateLeafMoments(cell);
+            } else {
+                shiftChildMoments(cell);
+            }
+        }
+
+        visitPairs(softeningLengthSquared);
+
+        // and forwards reaches every parent before its children
+        for (int cell = 0; cell < numberOfCells; cell++){
+            if (tree.getNumberOfChildren(cell) == 0){
+                evaluateLocalTerms(cell, xAccelerations, yAccelerations);
+            } else {
+                shiftLocalTerms(cell);
+            }
+        }
+    }
+
+    /**
+     * Finds the moments of a leaf from its bodies, each moment is the sum of every body's gravitational parameter
+     * times a power of its x and y displacement from the square's center
+     *
+     * @param cell the number of the leaf
+     * @return None
+     */
+    private void calculateLeafMoments(int cell){
+        int offset = cell * numberOfMoments;
+        Arrays.fill(moments, offset, offset + numberOfMoments, 0);
+
+        for (int place = tree.getFirstBody(cell); place < tree.getEndBody(cell); place++){
+            calculatePowers(tree.getXDisplacement(place) - tree.getCellXCenter(cell),
+                    tree.getYDisplacement(place) - tree.getCellYCenter(cell), expansionOrder - 1);
+            double gravitationalParameter = tree.getGravitationalParameter(place);
+
+            int index = offset;
+            for (int order = 0; order < expansionOrder; order++){
+                for (int yPower = 0; yPower <= order; yPower++){
+                    moments[index++] += gravitationalParameter * xPowers[order - yPower] * yPowers[yPower];
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the moments of a square from its children's moments, moving each child's moments to the square's center
+     * with the binomial expansion of the powers
+     *
+     * @param cell the number of the square
+     * @return None
+     */
+    private void shiftChildMoments(int cell){
+        int offset = cell * numberOfMoments;
+        Arrays.fill(moments, offset, offset + numberOfMoments, 0);
+
+        int firstChild = tree.getFirstChild(cell);
+        for (int child = firstChild; child < firstChild + tree.getNumberOfChildren(cell); child++){
+            calculatePowers(tree.getCellXCenter(child) - tree.getCellXCenter(cell),
+                    tree.getCellYCenter(child) - tree.getCellYCenter(cell), expansionOrder - 1);
+            int childOffset = child * numberOfMoments;
+
+            int index = offset;
+            for (int order = 0; order < expansionOrder; order++){
+                for (int yPower = 0; yPower <= order; yPower++){
+                    int xPower = order - yPower;
+                    double moment = 0;
+
+                    for (int childXPower = 0; childXPower <= xPower; childXPower++){
+                        for (int childYPower = 0; childYPower <= yPower; childYPower++){
+                            moment += binomials[xPower][childXPower] * binomials[yPower][childYPower] *
+                                    xPowers[xPower - childXPower] * yPowers[yPower - childYPower] *
+                                    moments[childOffset + getIndex(childXPower, childYPower)];
+                        }
+                    }
+
+                    moments[index++] += moment;
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks every pair of squares that could pull each other, starting from the root paired with itself. Each pair is
+     * expanded if the squares are far enough apart, pulled directly if both are leaves, and otherwise the bigger
+     * square is split and its children paired with the other
+     *
+     * @param softeningLengthSquared the square of the softening length for the direct pulls
+     * @return None
+     */
+    private void visitPairs(double softeningLengthSquared){
+        double openingAngleSquared = OPENING_ANGLE * OPENING_ANGLE;
+        int stackSize = 0;
+        pairStack[stackSize++] = 0;
+        pairStack[stackSize++] = 0;
+
+        while (stackSize > 0){
+            int second = pairStack[--stackSize];
+            int first = pairStack[--stackSize];
+            boolean firstIsLeaf = tree.getNumberOfChildren(first) == 0;
+            boolean secondIsLeaf = tree.getNumberOfChildren(second) == 0;
+
+            // a square paired with itself is split into every pair of its children, each pair once
+            if (first == second){
+                if (firstIsLeaf){
+                    pullWithinLeaf(first, softeningLengthSquared);
+                } else {
+                    int firstChild = tree.getFirstChild(first);
+                    int endChild = firstChild + tree.getNumberOfChildren(first);
+                    stackSize = ensureStackCapacity(stackSize, 20);
+
+                    for (int i = firstChild; i < endChild; i++){
+                        for (int j = i; j < endChild; j++){
+                            pairStack[stackSize++] = i;
+                            pairStack[stackSize++] = j;
+                        }
+                    }
+                }
+                continue;
+            }
+
+            double dx = tree.getCellXCenter(first) - tree.getCellXCenter(second);
+            double dy = tree.getCellYCenter(first) - tree.getCellYCenter(second);
+            double radii = tree.getCellRadius(first) + tree.getCellRadius(second);
+
+            if (radii * radii < openingAngleSquared * (dx * dx + dy * dy) && !(firstIsLeaf && secondIsLeaf &&
+                    isCheaperToPullDirectly(first, second))){
+                expandPair(first, second, dx, dy);
+            } else if (firstIsLeaf && secondIsLeaf){
+                pullBetweenLeaves(first, second, softeningLengthSquared);
+            } else {
+                // splitting the bigger square shrinks the sum of the radii fastest
+                boolean splitFirst = secondIsLeaf || (!firstIsLeaf &&
+                        tree.getCellRadius(first) >= tree.getCellRadius(second));
+                int split = splitFirst ? first : second;
+                int other = splitFirst ? second : first;
+                int firstChild = tree.getFirstChild(split);
+                stackSize = ensureStackCapacity(stackSize, 8);
+
+                for (int child = firstChild; child < firstChild + tree.getNumberOfChildren(split); child++){
+                    pairStack[stackSize++] = child;
+                    pairStack[stackSize++] = other;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether pulling every body of two leaves directly takes less work than expanding them, which is the case
+     * for leaves with only a few bodies. Expanding a pair takes about one step for every pairing of a moment with a
+     * term
+     *
+     * @param first the number of the first leaf
+     * @param second the number of the second leaf
+     * @return true if the direct pulls are cheaper
+     */
+    private boolean isCheaperToPullDirectly(int first, int second){
+        long firstBodies = tree.getEndBody(first) - tree.getFirstBody(first);
+        long secondBodies = tree.getEndBody(second) - tree.getFirstBody(second);
+
+        return firstBodies * secondBodies <= (long) numberOfMoments * numberOfTerms;
+    }
+
+    /**
+     * Makes sure the pair stack has room for more values, keeping the values already in it
+     *
+     * @param stackSize the number of values in the stack
+     * @param extraValues the number of values about to be pushed
+     * @return the number of values in the stack, which is unchanged
+     */
+    private int ensureStackCapacity(int stackSize, int extraValues){
+        if (stackSize + extraValues > pairStack.length){
+            pairStack = Arrays.copyOf(pairStack, Math.max(pairStack.length * 2, stackSize + extraValues));
+        }
+
+        return stackSize;
+    }
+
+    /**
+     * Adds the pull of each of two far apart squares to the other's local expansion. The derivatives of 1 / r at the
+     * displacement between them are found once, since turning them around only flips the sign of the odd ones
+     *
+     * @param first the number of the first square
+     * @param second the number of the second square
+     * @param dx the x-displacement from the second square's center to the first's
+     * @param dy the y-displacement from the second square's center to the first's
+     * @return None
+     */
+    private void expandPair(int first, int second, double dx, double dy){
+        calculateDerivatives(dx, dy);
+        int firstMoments = first * numberOfMoments;
+        int secondMoments = second * numberOfMoments;
+        int firstTerms = first * numberOfTerms;
+        int secondTerms = second * numberOfTerms;
+
+        // the term with no powers only adds to the potential, so the terms start at order 1
+        for (int order = 1; order <= expansionOrder; order++){
+            double orderSign = order % 2 == 0 ? 1 : -1;
+
+            for (int yPower = 0; yPower <= order; yPower++){
+                int xPower = order - yPower;
+                double firstTerm = 0;
+                double secondTerm = 0;
+
+                for (int momentOrder = 0; momentOrder <= expansionOrder - order; momentOrder++){
+                    double momentSign = momentOrder % 2 == 0 ? 1 : -1;
+                    int derivativeOrder = order + momentOrder;
+                    int derivativeOffset = derivativeOrder * (derivativeOrder + 1) / 2 + yPower;
+                    int momentOffset = momentOrder * (momentOrder + 1) / 2;
+
+                    for (int momentYPower = 0; momentYPower <= momentOrder; momentYPower++){
+                        int momentXPower = momentOrder - momentYPower;
+                        double derivative = binomials[xPower + momentXPower][xPower] *
+                                binomials[yPower + momentYPower][yPower] *
+                                derivatives[derivativeOffset + momentYPower];
+
+                        firstTerm += momentSign * moments[secondMoments + momentOffset + momentYPower] * derivative;
+                        secondTerm += moments[firstMoments + momentOffset + momentYPower] * derivative;
+                    }
+                }
+
+                localTerms[firstTerms + getIndex(xPower, yPower)] += firstTerm;
+                localTerms[secondTerms + getIndex(xPower, yPower)] += orderSign * secondTerm;
+            }
+        }
+    }
+
+    /**
+     * Adds a square's local expansion to each of its children's, moving it to each child's center with the binomial
+     * expansion of the powers
+     *
+     * @param cell the number of the square
+     * @return None
+     */
+    private void shiftLocalTerms(int cell){
+        int offset = cell * numberOfTerms;
+        int firstChild = tree.getFirstChild(cell);
+
+        for (int child = firstChild; child < firstChild + tree.getNumberOfChildren(cell); child++){
+            calculatePowers(tree.getCellXCenter(child) - tree.getCellXCenter(cell),
+                    tree.getCellYCenter(child) - tree.getCellYCenter(cell), expansionOrder);
+            int childOffset = child * numberOfTerms;
+
+            for (int order = 1; order <= expansionOrder; order++){
+                for (int yPower = 0; yPower <= order; yPower++){
+                    int xPower = order - yPower;
+                    double term = 0;
+
+                    // every term of the parent with at least these powers has some of them left over at the child
+                    for (int parentOrder = order; parentOrder <= expansionOrder; parentOrder++){
+                        int parentOffset = offset + parentOrder * (parentOrder + 1) / 2;
+
+                        for (int parentYPower = yPower; parentYPower <= parentOrder - xPower; parentYPower++){
+                            int parentXPower = parentOrder - parentYPower;
+                            term += binomials[parentXPower][xPower] * binomials[parentYPower][yPower] *
+                                    xPowers[parentXPower - xPower] * yPowers[parentYPower - yPower] *
+                                    localTerms[parentOffset + parentYPower];
+                        }
+                    }
+
+                    localTerms[childOffset + getIndex(xPower, yPower)] += term;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the gradient of a leaf's local expansion at each of its bodies, which is the pull of everything far
+     * away, and adds the direct pulls of everything near
+     *
+     * @param cell the number of the leaf
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    private void evaluateLocalTerms(int cell, double[] xAccelerations, double[] yAccelerations){
+        int offset = cell * numberOfTerms;
+
+        for (int place = tree.getFirstBody(cell); place < tree.getEndBody(cell); place++){
+            calculatePowers(tree.getXDisplacement(place) - tree.getCellXCenter(cell),
+                    tree.getYDisplacement(place) - tree.getCellYCenter(cell), expansionOrder - 1);
+            double accelerationX = nearXAccelerations[place];
+            double accelerationY = nearYAccelerations[place];
+
+            for (int order = 1; order <= expansionOrder; order++){
+                int orderOffset = offset + order * (order + 1) / 2;
+
+                for (int yPower = 0; yPower <= order; yPower++){
+                    int xPower = order - yPower;
+                    double term = localTerms[orderOffset + yPower];
+
+                    if (xPower > 0){
+                        accelerationX += xPower * term * xPowers[xPower - 1] * yPowers[yPower];
+                    }
+                    if (yPower > 0){
+                        accelerationY += yPower * term * xPowers[xPower] * yPowers[yPower - 1];
+                    }
+                }
+            }
+
+            int body = tree.getBody(place);
+            xAccelerations[body] = accelerationX;
+            yAccelerations[body] = accelerationY;
+        }
+    }
+
+    /**
+     * Adds the pull between every pair of bodies in a leaf
+     *
+     * @param cell the number of the leaf
+     * @param softeningLengthSquared the square of the softening length
+     * @return None
+     */
+    private void pullWithinLeaf(int cell, double softeningLengthSquared){
+        int endBody = tree.getEndBody(cell);
+
+        for (int i = tree.getFirstBody(cell); i < endBody; i++){
+            for (int j = i + 1; j < endBody; j++){
+                pullBetweenBodies(i, j, softeningLengthSquared);
+            }
+        }
+    }
+
+    /**
+     * Adds the pull between every body of one leaf and every body of another
+     *
+     * @param first the number of the first leaf
+     * @param second the number of the second leaf
+     * @param softeningLengthSquared the square of the softening length
+     * @return None
+     */
+    private void pullBetweenLeaves(int first, int second, double softeningLengthSquared){
+        int firstEnd = tree.getEndBody(first);
+        int secondEnd = tree.getEndBody(second);
+
+        for (int i = tree.getFirstBody(first); i < firstEnd; i++){
+            for (int j = tree.getFirstBody(second); j < secondEnd; j++){
+                pullBetweenBodies(i, j, softeningLengthSquared);
+            }
+        }
+    }
+
+    /**
+     * Adds the pull of each of two bodies on the other
+     *
+     * @param i the place of the first body in the tree order
+     * @param j the place of the second body in the tree order
+     * @param softeningLengthSquared the square of the softening length
+     * @return None
+     */
+    private void pullBetweenBodies(int i, int j, double softeningLengthSquared){
+        double dx = tree.getXDisplacement(j) - tree.getXDisplacement(i);
+        double dy = tree.getYDisplacement(j) - tree.getYDisplacement(i);
+        double distanceSquared = dx * dx + dy * dy + softeningLengthSquared;
+        double inverseDistanceCubed = 1 / (distanceSquared * Math.sqrt(distanceSquared));
+        double iScale = tree.getGravitationalParameter(j) * inverseDistanceCubed;
+        double jScale = tree.getGravitationalParameter(i) * inverseDistanceCubed;
+
+        nearXAccelerations[i] += iScale * dx;
+        nearYAccelerations[i] += iScale * dy;
+        nearXAccelerations[j] -= jScale * dx;
+        nearYAccelerations[j] -= jScale * dy;
+    }
+
+    /**
+     * Finds the derivatives of 1 / r up to the expansion order at a displacement, each divided by the factorials of
+     * its powers, with the recurrence that follows from 1 / r solving Laplace's equation
+     *
+     * @param dx the x part of the displacement
+     * @param dy the y part of the displacement
+     * @return None
+     */
+    private void calculateDerivatives(double dx, double dy){
+        double inverseDistanceSquared = 1 / (dx * dx + dy * dy);
+        derivatives[0] = Math.sqrt(inverseDistanceSquared);
+
+        for (int order = 1; order <= expansionOrder; order++){
+            int offset = order * (order + 1) / 2;
+            int previousOffset = (order - 1) * order / 2;
+            int secondPreviousOffset = (order - 2) * (order - 1) / 2;
+
+            for (int yPower = 0; yPower <= order; yPower++){
+                int xPower = order - yPower;
+                double sum = 0;
+
+                if (xPower > 0){
+                    sum += (2 * order - 1) * dx * derivatives[previousOffset + yPower];
+                }
+                if (yPower > 0){
+                    sum += (2 * order - 1) * dy * derivatives[previousOffset + yPower - 1];
+                }
+                if (xPower > 1){
+                    sum += (order - 1) * derivatives[secondPreviousOffset + yPower];
+                }
+                if (yPower > 1){
+                    sum += (order - 1) * derivatives[secondPreviousOffset + yPower - 2];
+                }
+
+                derivatives[offset + yPower] = -sum * inverseDistanceSquared / order;
+            }
+        }
+    }
+
+    /**
+     * Finds the powers of the parts of a displacement
+     *
+     * @param dx the x part of the displacement
+     * @param dy the y part of the displacement
+     * @param highestPower the highest power needed
+     * @return None
+     */
+    private void calculatePowers(double dx, double dy, int highestPower){
+        xPowers[0] = 1;
+        yPowers[0] = 1;
+        for (int power = 1; power <= highestPower; power++){
+            xPowers[power] = xPowers[power - 1] * dx;
+            yPowers[power] = yPowers[power - 1] * dy;
+        }
+    }
+
+    /**
+     * Gets where the coefficient of x^xPower y^yPower is kept among a square's coefficients, which are kept by
+     * order and then by the power of y
+     *
+     * @param xPower the power of x
+     * @param yPower the power of y
+     * @return the index of the coefficient
+     */
+    private static int getIndex(int xPower, int yPower){
+        int order = xPower + yPower;
+        return order * (order + 1) / 2 + yPower;
+    }
+
+    /**
+     * Gets how many coefficients there are up to an order
+     *
+     * @param order the highest order
+     * @return the number of coefficients
+     */
+    private static int getNumberOfCoefficients(int order){
+        return (order + 1) * (order + 2) / 2;
+    }
+
+    /**
+     * Gets the highest power kept in the expansions
+     *
+     * @return the expansion order
+     */
+    public int getExpansionOrder(){
+        return expansionOrder;
+    }
+
+    /**
+     * Gets the name of the engine along with its expansion order
+     *
+     * @return the name
+     */
+    @Override
+    public String getName(){
+        return "Fast multipole (order " + expansionOrder + ")";
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Defines a force engine as a way of calculating the pull of every body on every other body at once, given where the
+ * bodies are and how heavy they are. Bodies pull each other with Newton's gravity, softened the same way the solar
+ * system softens it, so engines can be swapped for each other and differ only in how fast and how exactly they find
+ * the pulls. Operations include calculating the acceleration of every body and getting the engine's name.
+ */
+public interface ForceEngine {
+    /**
+     * Calculates the acceleration of every body caused by the pull of every other body. A body with a gravitational
+     * parameter of 0 is still pulled but doesn't pull anything, which lets a body be left out of the pulls without
+     * copying the arrays
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    void calculateAccelerations(double[] xDisplacements, double[] yDisplacements, double[] gravitationalParameters,
+                                int numberOfBodies, double softeningLengthSquared, double[] xAccelerations,
+                                double[] yAccelerations);
+
+    /**
+     * Gets the name of the engine along with its settings
+     *
+     * @return the name
+     */
+    String getName();
+}
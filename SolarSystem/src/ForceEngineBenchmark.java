@@ -0,0 +1,233 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Defines a force engine benchmark as how long each of a set of force engines takes to find the pulls between the
+ * same bodies, and how far its pulls are from the exact ones, for a range of numbers of bodies. The bodies are spread
+ * evenly over a disk about the size of the sample solar system, with the same seed every time so that runs can be
+ * compared. The exact pulls are only added up for a sample of the bodies, so the errors can be found for far more
+ * bodies than the direct sum could handle. Operations include running the benchmark, reading the times and errors,
+ * and finding the number of bodies from which one engine is faster than another.
+ */
+public class ForceEngineBenchmark {
+    // the radius of the disk the bodies are spread over, and the mass of each body
+    private static final double DISK_RADIUS_METERS = 1500;
+    private static final double BODY_MASS = 1e10;
+    private static final long SEED = 42;
+    // the errors are measured on at most this many bodies, which is plenty for a median
+    private static final int MAXIMUM_SAMPLED_BODIES = 1000;
+    // each engine is run again and again for at least this long, so short runs are still timed accurately
+    private static final double MINIMUM_TIMED_SECONDS = 0.5;
+    // an engine that takes longer than this for one calculation is not run for any more bodies, since it would only
+    // get slower
+    private static final double MAXIMUM_SECONDS_PER_CALCULATION = 5;
+
+    private final String[] engineNames;
+    private final int[] numbersOfBodies;
+    // secondsPerCalculation[engine][size], NaN where the engine was too slow to be run
+    private final double[][] secondsPerCalculation;
+    private final double[][] relativeErrors;
+
+    /**
+     * Creates a new force engine benchmark, use run to make one
+     *
+     * @param engineNames the name of each engine
+     * @param numbersOfBodies each number of bodies the engines were run with
+     * @param secondsPerCalculation the time each engine took with each number of bodies
+     * @param relativeErrors the median relative error of each engine with each number of bodies
+     * @return None
+     */
+    private ForceEngineBenchmark(String[] engineNames, int[] numbersOfBodies, double[][] secondsPerCalculation,
+                                 double[][] relativeErrors){
+        this.engineNames = engineNames;
+        this.numbersOfBodies = numbersOfBodies;
+        this.secondsPerCalculation = secondsPerCalculation;
+        this.relativeErrors = relativeErrors;
+    }
+
+    /**
+     * Runs every engine on every number of bodies, from the fewest bodies to the most
+     *
+     * @param engines the engines to compare
+     * @param numbersOfBodies the numbers of bodies to run them with, in increasing order
+     * @return the benchmark
+     */
+    public static ForceEngineBenchmark run(ForceEngine[] engines, int[] numbersOfBodies){
+        String[] engineNames = new String[engines.length];
+        double[][] secondsPerCalculation = new double[engines.length][numbersOfBodies.length];
+        double[][] relativeErrors = new double[engines.length][numbersOfBodies.length];
+        boolean[] tooSlow = new boolean[engines.length];
+
+        for (int engine = 0; engine < engines.length; engine++){
+            engineNames[engine] = engines[engine].getName();
+        }
+
+        for (int size = 0; size < numbersOfBodies.length; size++){
+            int numberOfBodies = numbersOfBodies[size];
+            double[] xDisplacements = new double[numberOfBodies];
+            double[] yDisplacements = new double[numberOfBodies];
+            double[] gravitationalParameters = new double[numberOfBodies];
+            double[] xAccelerations = new double[numberOfBodies];
+            double[] yAccelerations = new double[numberOfBodies];
+            Random random = new Random(SEED);
+
+            for (int i = 0; i < numberOfBodies; i++){
+                // the square root spreads the bodies evenly over the area of the disk rather than bunching them in
+                // the middle
+                double distance = DISK_RADIUS_METERS * Math.sqrt(random.nextDouble());
+                double angle = 2 * Math.PI * random.nextDouble();
+                xDisplacements[i] = distance * Math.cos(angle);
+                yDisplacements[i] = distance * Math.sin(angle);
+                gravitationalParameters[i] = SolarSystem.GRAVITATION_CONSTANT * BODY_MASS;
+            }
+
+            int sampleSpacing = Math.max(1, numberOfBodies / MAXIMUM_SAMPLED_BODIES);
+            double[] exactXAccelerations = new double[numberOfBodies];
+            double[] exactYAccelerations = new double[numberOfBodies];
+            for (int i = 0; i < numberOfBodies; i += sampleSpacing){
+                for (int j = 0; j < numberOfBodies; j++){
+                    if (j != i){
+                        double dx = xDisplacements[j] - xDisplacements[i];
+                        double dy = yDisplacements[j] - yDisplacements[i];
+                        double distanceSquared = dx * dx + dy * dy;
+                        double scale = gravitationalParameters[j] / (distanceSquared * Math.sqrt(distanceSquared));
+                        exactXAccelerations[i] += scale * dx;
+                        exactYAccelerations[i] += scale * dy;
+                    }
+                }
+            }
+
+            for (int engine = 0; engine < engines.length; engine++){
+                if (tooSlow[engine]){
+                    secondsPerCalculation[engine][size] = Double.NaN;
+                    relativeErrors[engine][size] = Double.NaN;
+                    continue;
+                }
+
+                // the first run lets the engine set up its memory, and is long enough on its own to tell whether the
+                // engine is worth timing more carefully
+                long start = System.nanoTime();
+                engines[engine].calculateAccelerations(xDisplacements, yDisplacements, gravitationalParameters,
+                        numberOfBodies, 0, xAccelerations, yAccelerations);
+                double firstSeconds = (System.nanoTime() - start) / 1e9;
+
+                int runs = 0;
+                double timedSeconds = 0;
+                if (firstSeconds < MINIMUM_TIMED_SECONDS){
+                    start = System.nanoTime();
+                    while (timedSeconds < MINIMUM_TIMED_SECONDS){
+                        engines[engine].calculateAccelerations(xDisplacements, yDisplacements,
+                                gravitationalParameters, numberOfBodies, 0, xAccelerations, yAccelerations);
+                        runs++;
+                        timedSeconds = (System.nanoTime() - start) / 1e9;
+                    }
+                } else {
+                    runs = 1;
+                    timedSeconds = firstSeconds;
+                }
+
+                // the median is used rather than the root mean square because a body that happens to be right next
+                // to another has a pull so big that it would outweigh every other body in the sample
+                double[] errors = new double[(numberOfBodies - 1) / sampleSpacing + 1];
+                for (int i = 0, sample = 0; i < numberOfBodies; i += sampleSpacing, sample++){
+                    errors[sample] = Math.hypot(xAccelerations[i] - exactXAccelerations[i],
+                            yAccelerations[i] - exactYAccelerations[i]) /
+                            Math.hypot(exactXAccelerations[i], exactYAccelerations[i]);
+                }
+                Arrays.sort(errors);
+
+                secondsPerCalculation[engine][size] = timedSeconds / runs;
+                relativeErrors[engine][size] = errors[errors.length / 2];
+                tooSlow[engine] = secondsPerCalculation[engine][size] > MAXIMUM_SECONDS_PER_CALCULATION;
+            }
+        }
+
+        return new ForceEngineBenchmark(engineNames, numbersOfBodies, secondsPerCalculation, relativeErrors);
+    }
+
+    /**
+     * Finds the fewest bodies from which one engine is faster than another for every larger number of bodies run. An
+     * engine that was too slow to be run for a number of bodies counts as slower there
+     *
+     * @param engine the index of the engine that should be faster
+     * @param otherEngine the index of the engine to compare it with
+     * @return the number of bodies, or -1 if the engine wasn't faster for the most bodies run
+     */
+    public int findCrossover(int engine, int otherEngine){
+        int crossover = -1;
+
+        for (int size = numbersOfBodies.length - 1; size >= 0; size--){
+            double seconds = secondsPerCalculation[engine][size];
+            double otherSeconds = secondsPerCalculation[otherEngine][size];
+            boolean faster = !Double.isNaN(seconds) && (Double.isNaN(otherSeconds) || seconds < otherSeconds);
+
+            if (!faster){
+                break;
+            }
+            crossover = numbersOfBodies[size];
+        }
+
+        return crossover;
+    }
+
+    /**
+     * Gets the number of engines that were compared
+     *
+     * @return the number of engines
+     */
+    public int getNumberOfEngines(){
+        return engineNames.length;
+    }
+
+    /**
+     * Gets the name of an engine
+     *
+     * @param engine the index of the engine
+     * @return the name along with its settings
+     */
+    public String getEngineName(int engine){
+        return engineNames[engine];
+    }
+
+    /**
+     * Gets the number of different numbers of bodies the engines were run with
+     *
+     * @return the number of sizes
+     */
+    public int getNumberOfSizes(){
+        return numbersOfBodies.length;
+    }
+
+    /**
+     * Gets one of the numbers of bodies the engines were run with
+     *
+     * @param size the index of the size
+     * @return the number of bodies
+     */
+    public int getNumberOfBodies(int size){
+        return numbersOfBodies[size];
+    }
+
+    /**
+     * Gets how long an engine took to find every pull once
+     *
+     * @param engine the index of the engine
+     * @param size the index of the number of bodies
+     * @return the time in seconds, or NaN if the engine was too slow to be run
+     */
+    public double getSecondsPerCalculation(int engine, int size){
+        return secondsPerCalculation[engine][size];
+    }
+
+    /**
+     * Gets how far an engine's pulls were from the exact ones, as the median over the sampled bodies of the error in
+     * each body's pull divided by its exact pull
+     *
+     * @param engine the index of the engine
+     * @param size the index of the number of bodies
+     * @return the relative error, or NaN if the engine was too slow to be run
+     */
+    public double getRelativeError(int engine, int size){
+        return relativeErrors[engine][size];
+    }
+}
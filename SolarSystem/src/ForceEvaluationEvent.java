@@ -0,0 +1,19 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Defines a force evaluation event as a flight recorder event for finding the pulls between the celestial bodies once.
+ * Wisdom-Holman finds them all at once with the force engine twice a step, while semi-implicit Euler adds up each
+ * planet's pulls as it moves the planets, so for it an evaluation is the whole move. There can be thousands of these a
+ * second, so by default only evaluations over a millisecond are recorded, and none of them take a stack trace.
+ */
+@Name("SolarSystem.ForceEvaluation")
+@Label("Force Evaluation")
+@Description("The pulls between the celestial bodies found once")
+@Threshold("1 ms")
+@StackTrace(false)
+public class ForceEvaluationEvent extends SimulationEvent {
+}
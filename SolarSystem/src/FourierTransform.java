@@ -0,0 +1,151 @@
+/**
+ * Defines a Fourier transform as a fast Fourier transform of a fixed power of two length, done in place on separate
+ * arrays of real and imaginary parts. The sines and cosines are worked out once when the transform is created rather
+ * than built up by repeated multiplication, which would lose precision on long transforms. Operations include
+ * transforming a run of values and transforming a square grid of values.
+ */
+public class FourierTransform {
+    // 32 by 32 doubles is 8 KB, so a block and the block it is swapped with fit in the cache together
+    private static final int TRANSPOSE_BLOCK_SIZE = 32;
+
+    private final int length;
+    // the cosine and sine of 2 pi k / length for k up to half of the length
+    private final double[] cosines;
+    private final double[] sines;
+    // the place each value is moved to before the butterflies, which is its place with the bits reversed
+    private final int[] reversedPlaces;
+
+    /**
+     * Creates a new Fourier transform
+     *
+     * @param length the number of values transformed at once, a power of two
+     * @return None
+     */
+    public FourierTransform(int length){
+        this.length = Integer.highestOneBit(Math.max(1, length));
+        cosines = new double[this.length / 2 + 1];
+        sines = new double[this.length / 2 + 1];
+        for (int k = 0; k <= this.length / 2; k++){
+            cosines[k] = Math.cos(2 * Math.PI * k / this.length);
+            sines[k] = Math.sin(2 * Math.PI * k / this.length);
+        }
+
+        reversedPlaces = new int[this.length];
+        int bits = Integer.numberOfTrailingZeros(this.length);
+        for (int place = 0; place < this.length; place++){
+            reversedPlaces[place] = bits == 0 ? 0 : Integer.reverse(place) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Transforms a run of values that are evenly spaced in the arrays. The forward transform uses e^(-2 pi i k n / N)
+     * and the inverse divides by the length, so an inverse transform undoes a forward one
+     *
+     * @param real the real parts
+     * @param imaginary the imaginary parts
+     * @param offset the place of the first value
+     * @param stride the distance between one value and the next
+     * @param inverse true for the inverse transform
+     * @return None
+     */
+    public void transform(double[] real, double[] imaginary, int offset, int stride, boolean inverse){
+        for (int place = 0; place < length; place++){
+            int reversedPlace = reversedPlaces[place];
+
+            // each pair is swapped once, from the smaller place
+            if (place < reversedPlace){
+                int i = offset + place * stride;
+                int j = offset + reversedPlace * stride;
+                double swappedReal = real[i];
+                double swappedImaginary = imaginary[i];
+                real[i] = real[j];
+                imaginary[i] = imaginary[j];
+                real[j] = swappedReal;
+                imaginary[j] = swappedImaginary;
+            }
+        }
+
+        double sign = inverse ? 1 : -1;
+        for (int size = 2; size <= length; size *= 2){
+            int half = size / 2;
+            int tableStep = length / size;
+
+            for (int start = 0; start < length; start += size){
+                for (int k = 0; k < half; k++){
+                    double cosine = cosines[k * tableStep];
+                    double sine = sign * sines[k * tableStep];
+                    int i = offset + (start + k) * stride;
+                    int j = i + half * stride;
+
+                    double twiddledReal = real[j] * cosine - imaginary[j] * sine;
+                    double twiddledImaginary = real[j] * sine + imaginary[j] * cosine;
+                    real[j] = real[i] - twiddledReal;
+                    imaginary[j] = imaginary[i] - twiddledImaginary;
+                    real[i] += twiddledReal;
+                    imaginary[i] += twiddledImaginary;
+                }
+            }
+        }
+
+        if (inverse){
+            for (int place = 0; place < length; place++){
+                real[offset + place * stride] /= length;
+                imaginary[offset + place * stride] /= length;
+            }
+        }
+    }
+
+    /**
+     * Transforms a square grid of values with as many rows and columns as the length, kept row by row, by
+     * transforming every row and then every column. The columns are transformed as rows of the transposed grid, since
+     * reading down a column of a big grid misses the cache on every value
+     *
+     * @param real the real parts
+     * @param imaginary the imaginary parts
+     * @param inverse true for the inverse transform
+     * @return None
+     */
+    public void transformGrid(double[] real, double[] imaginary, boolean inverse){
+        for (int pass = 0; pass < 2; pass++){
+            for (int row = 0; row < length; row++){
+                transform(real, imaginary, row * length, 1, inverse);
+            }
+            transpose(real);
+            transpose(imaginary);
+        }
+    }
+
+    /**
+     * Swaps the rows and columns of a square grid in place, a block at a time so that both the rows being read and
+     * the columns being written stay in the cache
+     *
+     * @param values the grid, kept row by row
+     * @return None
+     */
+    private void transpose(double[] values){
+        for (int blockRow = 0; blockRow < length; blockRow += TRANSPOSE_BLOCK_SIZE){
+            for (int blockColumn = blockRow; blockColumn < length; blockColumn += TRANSPOSE_BLOCK_SIZE){
+                for (int row = blockRow; row < Math.min(length, blockRow + TRANSPOSE_BLOCK_SIZE); row++){
+                    // on the diagonal only the values above it are swapped, or each pair would be swapped back
+                    int firstColumn = blockRow == blockColumn ? row + 1 : blockColumn;
+
+                    for (int column = firstColumn; column < Math.min(length, blockColumn + TRANSPOSE_BLOCK_SIZE);
+                         column++){
+                        double value = values[row * length + column];
+                        values[row * length + column] = values[column * length + row];
+                        values[column * length + row] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of values transformed at once
+     *
+     * @return the length
+     */
+    public int getLength(){
+        return length;
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Defines a heap body store as parallel arrays of doubles holding the displacement and velocity of each slot.
+ * Operations include reading and writing the state of a slot, swapping two slots, and copying the store.
+ */
+public class HeapBodyStore implements BodyStore {
+    private final double[] xDisplacements;
+    private final double[] yDisplacements;
+    private final double[] xVelocities;
+    private final double[] yVelocities;
+    // which body is in each slot and which slot each body is in, both null until a body is first swapped
+    private int[] idsBySlot;
+    private int[] slotsById;
+
+    /**
+     * Creates a new heap body store with every slot at rest at the center
+     *
+     * @param capacity the number of slots
+     * @return None
+     */
+    public HeapBodyStore(int capacity){
+        xDisplacements = new double[capacity];
+        yDisplacements = new double[capacity];
+        xVelocities = new double[capacity];
+        yVelocities = new double[capacity];
+    }
+
+    /**
+     * Gets the number of slots in the store
+     *
+     * @return the number of slots
+     */
+    public int getCapacity(){
+        return xDisplacements.length;
+    }
+
+    /**
+     * Gets the x-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-displacement in meters
+     */
+    public double getXDisplacement(int slot){
+        return xDisplacements[slot];
+    }
+
+    /**
+     * Gets the y-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-displacement in meters
+     */
+    public double getYDisplacement(int slot){
+        return yDisplacements[slot];
+    }
+
+    /**
+     * Gets the x-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-velocity in meters per second
+     */
+    public double getXVelocity(int slot){
+        return xVelocities[slot];
+    }
+
+    /**
+     * Gets the y-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-velocity in meters per second
+     */
+    public double getYVelocity(int slot){
+        return yVelocities[slot];
+    }
+
+    /**
+     * Sets the displacement and velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @param xDisplacement the x-displacement in meters
+     * @param yDisplacement the y-displacement in meters
+     * @param xVelocity the x-velocity in meters per second
+     * @param yVelocity the y-velocity in meters per second
+     * @return None
+     */
+    public void set(int slot, double xDisplacement, double yDisplacement, double xVelocity, double yVelocity){
+        xDisplacements[slot] = xDisplacement;
+        yDisplacements[slot] = yDisplacement;
+        xVelocities[slot] = xVelocity;
+        yVelocities[slot] = yVelocity;
+    }
+
+    /**
+     * Swaps the bodies in two slots, ids included
+     *
+     * @param firstSlot the number of one slot
+     * @param secondSlot the number of the other slot
+     * @return None
+     */
+    public void swap(int firstSlot, int secondSlot){
+        swapValues(xDisplacements, firstSlot, secondSlot);
+        swapValues(yDisplacements, firstSlot, secondSlot);
+        swapValues(xVelocities, firstSlot, secondSlot);
+        swapValues(yVelocities, firstSlot, secondSlot);
+
+        createIds();
+        int firstId = idsBySlot[firstSlot];
+        setId(firstSlot, idsBySlot[secondSlot]);
+        setId(secondSlot, firstId);
+    }
+
+    /**
+     * Swaps two elements of an array
+     *
+     * @param values the array
+     * @param first the index of one element
+     * @param second the index of the other element
+     * @return None
+     */
+    private static void swapValues(double[] values, int first, int second){
+        double value = values[first];
+        values[first] = values[second];
+        values[second] = value;
+    }
+
+    /**
+     * Creates the ids with every body in the slot matching its id, if they have not been created yet
+     *
+     * @return None
+     */
+    private void createIds(){
+        if (idsBySlot == null){
+            idsBySlot = new int[getCapacity()];
+            slotsById = new int[getCapacity()];
+
+            for (int i = 0; i < idsBySlot.length; i++){
+                idsBySlot[i] = i;
+                slotsById[i] = i;
+            }
+        }
+    }
+
+    /**
+     * Gets the id of the body in a slot
+     *
+     * @param slot the number of the slot
+     * @return the id of the body
+     */
+    public int getId(int slot){
+        return idsBySlot == null ? slot : idsBySlot[slot];
+    }
+
+    /**
+     * Gets the slot a body is in
+     *
+     * @param id the id of the body
+     * @return the number of the slot
+     */
+    public int getSlot(int id){
+        return slotsById == null ? id : slotsById[id];
+    }
+
+    /**
+     * Puts a body's id in a slot
+     *
+     * @param slot the number of the slot
+     * @param id the id of the body in the slot
+     * @return None
+     */
+    public void setId(int slot, int id){
+        createIds();
+        idsBySlot[slot] = id;
+        slotsById[id] = slot;
+    }
+
+    /**
+     * Checks whether the store keeps ids
+     *
+     * @return false if every body is in the slot matching its id
+     */
+    public boolean isReordered(){
+        return idsBySlot != null;
+    }
+
+    /**
+     * Gets the type of the store
+     *
+     * @return BodyStoreType.HEAP
+     */
+    public BodyStoreType getType(){
+        return BodyStoreType.HEAP;
+    }
+
+    /**
+     * Creates a copy of the store that shares nothing that can change with it
+     *
+     * @return the copy
+     */
+    public BodyStore copy(){
+        HeapBodyStore copy = new HeapBodyStore(getCapacity());
+
+        System.arraycopy(xDisplacements, 0, copy.xDisplacements, 0, getCapacity());
+        System.arraycopy(yDisplacements, 0, copy.yDisplacements, 0, getCapacity());
+        System.arraycopy(xVelocities, 0, copy.xVelocities, 0, getCapacity());
+        System.arraycopy(yVelocities, 0, copy.yVelocities, 0, getCapacity());
+        if (idsBySlot != null){
+            copy.idsBySlot = idsBySlot.clone();
+            copy.slotsById = slotsById.clone();
+        }
+
+        return copy;
+    }
+
+    /**
+     * Estimates how much memory the store takes up
+     *
+     * @return four doubles for each slot, and two ints once the store keeps ids
+     */
+    public long getEstimatedBytes(){
+        return (idsBySlot == null ? 4L * Double.BYTES : 4L * Double.BYTES + 2 * Integer.BYTES) * getCapacity();
+    }
+
+    /**
+     * Does nothing, the arrays are freed by the garbage collector once nothing refers to them
+     *
+     * @return None
+     */
+    public void close(){
+    }
+}
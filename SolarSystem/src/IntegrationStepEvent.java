@@ -0,0 +1,41 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Defines an integration step event as a flight recorder event for one step of a solar system, which takes in moving
+ * the planets, merging colliding bodies, and moving the asteroids. There can be thousands of these a second, so by
+ * default only steps over a millisecond are recorded, and none of them take a stack trace.
+ */
+@Name("SolarSystem.IntegrationStep")
+@Label("Integration Step")
+@Description("One step of the solar system")
+@Threshold("1 ms")
+@StackTrace(false)
+public class IntegrationStepEvent extends SimulationEvent {
+    @Label("Integrator")
+    String integrator;
+
+    @Label("Step Count")
+    long stepCount;
+
+    // a timespan has to be a whole number of some unit, so the simulated seconds are a plain double
+    @Label("Time Interval Seconds")
+    double timeIntervalSeconds;
+
+    /**
+     * Fills in which step this was
+     *
+     * @param integrator the way the planets were moved
+     * @param stepCount the step count of the solar system after the step
+     * @param timeIntervalSeconds the simulated time the step moved the solar system over
+     * @return None
+     */
+    public void setStep(Integrator integrator, long stepCount, double timeIntervalSeconds){
+        this.integrator = integrator.toString();
+        this.stepCount = stepCount;
+        this.timeIntervalSeconds = timeIntervalSeconds;
+    }
+}
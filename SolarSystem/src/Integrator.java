@@ -0,0 +1,11 @@
+/**
+ * The ways the planets of a solar system can be moved each step. SEMI_IMPLICIT_EULER changes every planet's velocity by
+ * the pull of every other body and then its displacement by the new velocity, one planet after another. WISDOM_HOLMAN
+ * moves each planet along its orbit around the sun exactly, and only changes velocities by the much smaller pulls
+ * between planets, so a step can be a sizeable fraction of the shortest orbit. Moons are moved along their orbit around
+ * their planet while the pair's center of mass moves around the sun.
+ */
+public enum Integrator {
+    SEMI_IMPLICIT_EULER,
+    WISDOM_HOLMAN
+}
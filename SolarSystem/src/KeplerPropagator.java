@@ -0,0 +1,125 @@
+/**
+ * Moves a body along the orbit it would follow if the only force on it was the gravity of one central body, using the
+ * universal variable formulation of Kepler's problem. The universal variable works the same way for circular,
+ * elliptical, parabolic, and hyperbolic orbits, so there is no need to check which kind of orbit a body is on first.
+ * Positions and velocities are relative to the central body.
+ */
+public class KeplerPropagator {
+    private static final int MAXIMUM_ITERATIONS = 50;
+    private static final double TOLERANCE = 1E-12;
+    // below this size of z the Stumpff functions are calculated from their series, since the closed forms divide
+    // two numbers that are both close to 0
+    private static final double SERIES_THRESHOLD = 1E-6;
+
+    /**
+     * Moves a body over a time interval
+     *
+     * @param gravitationalParameter the gravitational constant times the mass of the central body
+     * @param x the x-displacement of the body from the central body
+     * @param y the y-displacement of the body from the central body
+     * @param xVelocity the x-velocity of the body relative to the central body
+     * @param yVelocity the y-velocity of the body relative to the central body
+     * @param timeSeconds the time interval in seconds, which can be negative to move the body backwards
+     * @param result an array of at least 4 values that the new x, y, x-velocity, and y-velocity are put in
+     * @return whether the solver converged, if false result is not changed
+     */
+    public static boolean propagate(double gravitationalParameter, double x, double y, double xVelocity,
+                                    double yVelocity, double timeSeconds, double[] result){
+        double r0 = Math.sqrt(x * x + y * y);
+
+        if (r0 == 0 || gravitationalParameter <= 0){
+            return false;
+        }
+
+        double sqrtMu = Math.sqrt(gravitationalParameter);
+        double speedSquared = xVelocity * xVelocity + yVelocity * yVelocity;
+        // the radial velocity, the part of the velocity pointing away from the central body
+        double radialVelocity = (x * xVelocity + y * yVelocity) / r0;
+        // the reciprocal of the semi-major axis, positive for ellipses, 0 for parabolas, and negative for hyperbolas
+        double alpha = 2 / r0 - speedSquared / gravitationalParameter;
+
+        // a good first guess for ellipses, and a reasonable one for other orbits
+        double chi = sqrtMu * Math.abs(alpha) * timeSeconds;
+        double a = r0 * radialVelocity / sqrtMu;
+        double b = 1 - alpha * r0;
+
+        boolean converged = false;
+        double z = 0;
+        double c = 0.5;
+        double s = 1.0 / 6;
+
+        // Newton's method on the universal Kepler equation
+        for (int i = 0; i < MAXIMUM_ITERATIONS && !converged; i++){
+            z = alpha * chi * chi;
+            c = stumpffC(z);
+            s = stumpffS(z);
+
+            double f = a * chi * chi * c + b * chi * chi * chi * s + r0 * chi - sqrtMu * timeSeconds;
+            double derivative = a * chi * (1 - z * s) + b * chi * chi * c + r0;
+            double change = f / derivative;
+
+            chi -= change;
+            converged = Math.abs(change) <= TOLERANCE * Math.max(1, Math.abs(chi));
+        }
+
+        if (!converged || Double.isNaN(chi)){
+            return false;
+        }
+
+        z = alpha * chi * chi;
+        c = stumpffC(z);
+        s = stumpffS(z);
+
+        // the Lagrange coefficients give the new position and velocity as combinations of the old ones
+        double f = 1 - chi * chi / r0 * c;
+        double g = timeSeconds - chi * chi * chi / sqrtMu * s;
+
+        double newX = f * x + g * xVelocity;
+        double newY = f * y + g * yVelocity;
+        double r = Math.sqrt(newX * newX + newY * newY);
+
+        double fDot = sqrtMu / (r * r0) * (alpha * chi * chi * chi * s - chi);
+        double gDot = 1 - chi * chi / r * c;
+
+        result[0] = newX;
+        result[1] = newY;
+        result[2] = fDot * x + gDot * xVelocity;
+        result[3] = fDot * y + gDot * yVelocity;
+
+        return true;
+    }
+
+    /**
+     * Calculates the Stumpff function C(z)
+     *
+     * @param z the argument
+     * @return C(z)
+     */
+    static double stumpffC(double z){
+        if (z > SERIES_THRESHOLD){
+            return (1 - Math.cos(Math.sqrt(z))) / z;
+        } else if (z < -SERIES_THRESHOLD){
+            return (Math.cosh(Math.sqrt(-z)) - 1) / (-z);
+        }
+
+        return 0.5 - z / 24 + z * z / 720;
+    }
+
+    /**
+     * Calculates the Stumpff function S(z)
+     *
+     * @param z the argument
+     * @return S(z)
+     */
+    static double stumpffS(double z){
+        if (z > SERIES_THRESHOLD){
+            double sqrtZ = Math.sqrt(z);
+            return (sqrtZ - Math.sin(sqrtZ)) / (sqrtZ * sqrtZ * sqrtZ);
+        } else if (z < -SERIES_THRESHOLD){
+            double sqrtNegativeZ = Math.sqrt(-z);
+            return (Math.sinh(sqrtNegativeZ) - sqrtNegativeZ) / (sqrtNegativeZ * sqrtNegativeZ * sqrtNegativeZ);
+        }
+
+        return 1.0 / 6 - z / 120 + z * z / 5040;
+    }
+}
@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Defines an off-heap body store as direct byte buffers holding the displacement and velocity of each slot outside of
+ * the Java heap, optionally mapped to a temporary file. Each slot is a 32 byte record of four doubles, x, y, x-velocity,
+ * and y-velocity, starting on a 32 byte boundary so a record never straddles a cache line. A single buffer can hold at
+ * most 2 GB, so the records are split into chunks of a fixed power of two so that a slot's chunk and position are
+ * found with a shift and a mask. The ids are kept in chunks of the same kind beside the records. Operations include
+ * reading and writing the state of a slot, swapping two slots, copying the store, and releasing its memory and file.
+ */
+public class OffHeapBodyStore implements BodyStore {
+    private static final int RECORD_BYTES = 4 * Double.BYTES;
+    // 2^20 records of 32 bytes is a 32 MB chunk
+    private static final int RECORDS_PER_CHUNK_SHIFT = 20;
+    private static final int RECORDS_PER_CHUNK = 1 << RECORDS_PER_CHUNK_SHIFT;
+    private static final int SLOT_IN_CHUNK_MASK = RECORDS_PER_CHUNK - 1;
+    private static final int X_VELOCITY_OFFSET = 2 * Double.BYTES;
+    private static final int Y_VELOCITY_OFFSET = 3 * Double.BYTES;
+    // each slot has the id of the body in it, followed by the slot of the body whose id is the slot's number
+    private static final int ID_BYTES = 2 * Integer.BYTES;
+    // sun.misc.Unsafe.invokeCleaner gives back the memory of a direct or mapped buffer at once instead of whenever the
+    // garbage collector frees the buffer object, which may be long after a large store is closed. It is looked up by
+    // reflection since it is not a standard API, and both are null if it is missing so the buffers are left to the GC
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafe = unsafeField.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e){
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final int capacity;
+    private final ByteBuffer[] chunks;
+    // both ids of a slot are kept xor'd with the slot's number, so memory filled with zeros means every body is in the
+    // slot matching its id. Chunks in direct memory are only allocated once a body is first moved, while a file's are
+    // mapped with the records since the pages of a mapping are not touched until they are written to
+    private final ByteBuffer[] idChunks;
+    private boolean reordered;
+    // null if the store is not backed by a file
+    private final Path filePath;
+
+    /**
+     * Creates a new off-heap body store in direct memory with every slot at rest at the center
+     *
+     * @param capacity the number of slots
+     * @return None
+     */
+    public OffHeapBodyStore(int capacity){
+        this.capacity = capacity;
+        chunks = new ByteBuffer[getNumberOfChunks(capacity)];
+        idChunks = new ByteBuffer[chunks.length];
+        filePath = null;
+
+        for (int i = 0; i < chunks.length; i++){
+            // direct buffers are allocated outside of the heap and start out filled with zeros
+            chunks[i] = ByteBuffer.allocateDirect(getChunkRecords(i) * RECORD_BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Creates a new off-heap body store mapped to a new temporary file with every slot at rest at the center
+     *
+     * @param capacity the number of slots
+     * @param fileDirectory the directory to create the backing file in
+     * @return None
+     * @throws IOException if the backing file could not be created
+     */
+    public OffHeapBodyStore(int capacity, String fileDirectory) throws IOException {
+        this.capacity = capacity;
+        chunks = new ByteBuffer[getNumberOfChunks(capacity)];
+        idChunks = new ByteBuffer[chunks.length];
+
+        Files.createDirectories(Paths.get(fileDirectory));
+        filePath = Files.createTempFile(Paths.get(fileDirectory), "bodies-", ".bin");
+        // the file only holds the state of a running simulation, so it is not kept once the program exits
+        filePath.toFile().deleteOnExit();
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            for (int i = 0; i < chunks.length; i++){
+                // a mapping stays valid after its channel is closed, and mapping past the end of the file grows it
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * RECORDS_PER_CHUNK * RECORD_BYTES,
+                        (long) getChunkRecords(i) * RECORD_BYTES).order(ByteOrder.nativeOrder());
+            }
+
+            // the ids come after every record
+            long idsPosition = (long) capacity * RECORD_BYTES;
+            for (int i = 0; i < idChunks.length; i++){
+                idChunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        idsPosition + (long) i * RECORDS_PER_CHUNK * ID_BYTES, (long) getChunkRecords(i) * ID_BYTES)
+                        .order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    /**
+     * Calculates the number of chunks needed for a number of slots
+     *
+     * @param capacity the number of slots
+     * @return the number of chunks
+     */
+    private static int getNumberOfChunks(int capacity){
+        return (capacity + RECORDS_PER_CHUNK - 1) >>> RECORDS_PER_CHUNK_SHIFT;
+    }
+
+    /**
+     * Calculates the number of records in a chunk, every chunk is full except possibly the last one
+     *
+     * @param chunk the index of the chunk
+     * @return the number of records in the chunk
+     */
+    private int getChunkRecords(int chunk){
+        return Math.min(RECORDS_PER_CHUNK, capacity - chunk * RECORDS_PER_CHUNK);
+    }
+
+    /**
+     * Calculates the byte position of a slot's record within its chunk
+     *
+     * @param slot the number of the slot
+     * @return the byte position in the chunk
+     */
+    private static int getRecordPosition(int slot){
+        return (slot & SLOT_IN_CHUNK_MASK) * RECORD_BYTES;
+    }
+
+    /**
+     * Gets the number of slots in the store
+     *
+     * @return the number of slots
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Gets the x-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-displacement in meters
+     */
+    public double getXDisplacement(int slot){
+        return chunks[slot >>> RECORDS_PER_CHUNK_SHIFT].getDouble(getRecordPosition(slot));
+    }
+
+    /**
+     * Gets the y-displacement in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-displacement in meters
+     */
+    public double getYDisplacement(int slot){
+        return chunks[slot >>> RECORDS_PER_CHUNK_SHIFT].getDouble(getRecordPosition(slot) + Double.BYTES);
+    }
+
+    /**
+     * Gets the x-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the x-velocity in meters per second
+     */
+    public double getXVelocity(int slot){
+        return chunks[slot >>> RECORDS_PER_CHUNK_SHIFT].getDouble(getRecordPosition(slot) + X_VELOCITY_OFFSET);
+    }
+
+    /**
+     * Gets the y-velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @return the y-velocity in meters per second
+     */
+    public double getYVelocity(int slot){
+        return chunks[slot >>> RECORDS_PER_CHUNK_SHIFT].getDouble(getRecordPosition(slot) + Y_VELOCITY_OFFSET);
+    }
+
+    /**
+     * Sets the displacement and velocity in a slot
+     *
+     * @param slot the number of the slot
+     * @param xDisplacement the x-displacement in meters
+     * @param yDisplacement the y-displacement in meters
+     * @param xVelocity the x-velocity in meters per second
+     * @param yVelocity the y-velocity in meters per second
+     * @return None
+     */
+    public void set(int slot, double xDisplacement, double yDisplacement, double xVelocity, double yVelocity){
+        ByteBuffer chunk = chunks[slot >>> RECORDS_PER_CHUNK_SHIFT];
+        int position = getRecordPosition(slot);
+
+        chunk.putDouble(position, xDisplacement);
+        chunk.putDouble(position + Double.BYTES, yDisplacement);
+        chunk.putDouble(position + X_VELOCITY_OFFSET, xVelocity);
+        chunk.putDouble(position + Y_VELOCITY_OFFSET, yVelocity);
+    }
+
+    /**
+     * Swaps the bodies in two slots, ids included. The bits of each value are moved as they are, so a swap is exact
+     *
+     * @param firstSlot the number of one slot
+     * @param secondSlot the number of the other slot
+     * @return None
+     */
+    public void swap(int firstSlot, int secondSlot){
+        ByteBuffer firstChunk = chunks[firstSlot >>> RECORDS_PER_CHUNK_SHIFT];
+        ByteBuffer secondChunk = chunks[secondSlot >>> RECORDS_PER_CHUNK_SHIFT];
+        int firstPosition = getRecordPosition(firstSlot);
+        int secondPosition = getRecordPosition(secondSlot);
+
+        for (int offset = 0; offset < RECORD_BYTES; offset += Long.BYTES){
+            long value = firstChunk.getLong(firstPosition + offset);
+            firstChunk.putLong(firstPosition + offset, secondChunk.getLong(secondPosition + offset));
+            secondChunk.putLong(secondPosition + offset, value);
+        }
+
+        int firstId = getId(firstSlot);
+        setId(firstSlot, getId(secondSlot));
+        setId(secondSlot, firstId);
+    }
+
+    /**
+     * Gets the id of the body in a slot
+     *
+     * @param slot the number of the slot
+     * @return the id of the body
+     */
+    public int getId(int slot){
+        if (!reordered){
+            return slot;
+        }
+        return slot ^ idChunks[slot >>> RECORDS_PER_CHUNK_SHIFT].getInt((slot & SLOT_IN_CHUNK_MASK) * ID_BYTES);
+    }
+
+    /**
+     * Gets the slot a body is in
+     *
+     * @param id the id of the body
+     * @return the number of the slot
+     */
+    public int getSlot(int id){
+        if (!reordered){
+            return id;
+        }
+        return id ^ idChunks[id >>> RECORDS_PER_CHUNK_SHIFT].getInt((id & SLOT_IN_CHUNK_MASK) * ID_BYTES +
+                Integer.BYTES);
+    }
+
+    /**
+     * Puts a body's id in a slot
+     *
+     * @param slot the number of the slot
+     * @param id the id of the body in the slot
+     * @return None
+     */
+    public void setId(int slot, int id){
+        allocateIds();
+        reordered = true;
+
+        idChunks[slot >>> RECORDS_PER_CHUNK_SHIFT].putInt((slot & SLOT_IN_CHUNK_MASK) * ID_BYTES, slot ^ id);
+        idChunks[id >>> RECORDS_PER_CHUNK_SHIFT].putInt((id & SLOT_IN_CHUNK_MASK) * ID_BYTES + Integer.BYTES,
+                id ^ slot);
+    }
+
+    /**
+     * Allocates the chunks of ids in direct memory if they have not been allocated or mapped yet
+     *
+     * @return None
+     */
+    private void allocateIds(){
+        if (idChunks.length > 0 && idChunks[0] == null){
+            for (int i = 0; i < idChunks.length; i++){
+                // direct buffers start out filled with zeros, which is every body in the slot matching its id
+                idChunks[i] = ByteBuffer.allocateDirect(getChunkRecords(i) * ID_BYTES).order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    /**
+     * Checks whether the store keeps ids
+     *
+     * @return false if every body is in the slot matching its id
+     */
+    public boolean isReordered(){
+        return reordered;
+    }
+
+    /**
+     * Gets the type of the store
+     *
+     * @return BodyStoreType.MAPPED_FILE if the store is backed by a file, BodyStoreType.OFF_HEAP otherwise
+     */
+    public BodyStoreType getType(){
+        return filePath == null ? BodyStoreType.OFF_HEAP : BodyStoreType.MAPPED_FILE;
+    }
+
+    /**
+     * Creates a copy of the store in the same kind of memory, a copy of a file backed store is mapped to a new
+     * temporary file in the same directory so that copying a belt too big for direct memory does not run out of it
+     *
+     * @return the copy
+     */
+    public BodyStore copy(){
+        OffHeapBodyStore copy = null;
+        if (filePath != null){
+            try {
+                copy = new OffHeapBodyStore(capacity, filePath.getParent().toString());
+            } catch (IOException iox){
+                System.out.println("Error creating body store file!");
+            }
+        }
+        // a store in direct memory, or a file backed one whose copy could not be given a file, is copied to direct
+        // memory
+        if (copy == null) copy = new OffHeapBodyStore(capacity);
+
+        for (int i = 0; i < chunks.length; i++){
+            // duplicate so that the bulk copy does not move the position of the buffer being read by the simulation
+            copy.chunks[i].put(0, chunks[i].duplicate(), 0, getChunkRecords(i) * RECORD_BYTES);
+        }
+        if (reordered){
+            copy.allocateIds();
+            copy.reordered = true;
+            for (int i = 0; i < idChunks.length; i++){
+                copy.idChunks[i].put(0, idChunks[i].duplicate(), 0, getChunkRecords(i) * ID_BYTES);
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Estimates how much memory the store takes up
+     *
+     * @return four doubles for each slot, and two ints once the store keeps ids
+     */
+    public long getEstimatedBytes(){
+        return (long) (reordered ? RECORD_BYTES + ID_BYTES : RECORD_BYTES) * capacity;
+    }
+
+    /**
+     * Gives back the memory of the store's buffers and deletes the file backing it, the store must not be used after
+     * it is closed
+     *
+     * @return None
+     */
+    public void close(){
+        for (int i = 0; i < chunks.length; i++){
+            release(chunks[i]);
+            release(idChunks[i]);
+            // any later use fails on the missing chunk rather than reading memory that was given back
+            chunks[i] = null;
+            idChunks[i] = null;
+        }
+
+        // a file can only be deleted on some systems once nothing is mapped to it
+        if (filePath != null){
+            try {
+                Files.deleteIfExists(filePath);
+            } catch (IOException iox){
+                System.out.println("Error deleting body store file!");
+            }
+        }
+    }
+
+    /**
+     * Gives back the memory of a direct or mapped buffer at once, if the JVM allows it
+     *
+     * @param buffer the buffer to release, or null if there is none
+     * @return None
+     */
+    private static void release(ByteBuffer buffer){
+        if (buffer == null || INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e){
+            // the buffer is left for the garbage collector to free
+        }
+    }
+}
@@ -0,0 +1,597 @@
+import java.util.Arrays;
+
+/**
+ * Defines a particle-mesh force engine as a force engine that splits every pull into a smooth long range part and a
+ * short range part that dies off within a few grid spacings. The long range part is found on a grid: each body's mass
+ * is shared between the four grid points around it (cloud in cell), the masses are convolved with the long range pull
+ * using fast Fourier transforms, and each body's pull is read back from the same four points. The short range part is
+ * added up directly for every pair of bodies that is close enough, which together with the grid is known as P3M. The
+ * split is a Gaussian one, so the long range part is smooth enough for the grid to resolve and the short range part
+ * falls off like e^(-r^2).
+ * <p>
+ * The bodies pull each other with 1 / r^2 gravity in the x/y plane, which is not what Poisson's equation on a flat
+ * grid gives, so the grid is convolved with the pull itself rather than solving for a potential. The grid is padded
+ * to twice its size so that the convolution doesn't wrap around, which means bodies on opposite edges don't pull each
+ * other through the edge. The heaviest few bodies are kept off the grid and pull everything directly, so a sun and its
+ * planets are exact while a cloud around them is smoothed. The time it takes grows with n plus the grid's size times
+ * its logarithm, as long as there are only a few bodies within the short range of each one. Operations include
+ * calculating the acceleration of every body.
+ */
+public class ParticleMeshForceEngine implements ForceEngine {
+    // the width of the Gaussian that splits the pulls, in grid spacings. A narrower Gaussian leaves the grid a long
+    // range part it can't resolve, and a wider one makes the short range part reach more bodies
+    private static final double SPLIT_SCALE_SPACINGS = 1.5;
+    // the short range part is left out beyond this many widths, where it is under a hundredth of the whole pull
+    private static final double CUTOFF_SCALES = 5;
+    // the short range part is looked up in a table by r^2 rather than worked out with an exponential for every pair
+    private static final int SHORT_RANGE_TABLE_SIZE = 4096;
+
+    private final int gridSize;
+    private final int numberOfDirectBodies;
+    private final FourierTransform fourierTransform;
+    // the Fourier transform of the long range pull of a unit gravitational parameter in grid spacings, on the padded
+    // grid
+    private final double[] xKernelReal;
+    private final double[] xKernelImaginary;
+    private final double[] yKernelReal;
+    private final double[] yKernelImaginary;
+    // the fraction of the pull that is short range, at r^2 from 0 to the cutoff squared in even steps
+    private final double[] shortRangeFractions;
+
+    private final double[] meshReal;
+    private final double[] meshImaginary;
+    private final int[] directBodies;
+    private boolean[] direct;
+    // the bodies that aren't direct, sorted by the short range cell they are in, with the bodies of cell i from
+    // cellStarts[i] up to cellStarts[i + 1]. Their displacements and short range pulls are kept in the same order
+    private int[] cellStarts;
+    private int[] cellBodies;
+    private int[] bodyCells;
+    private double[] sortedXDisplacements;
+    private double[] sortedYDisplacements;
+    private double[] sortedGravitationalParameters;
+    private double[] sortedXAccelerations;
+    private double[] sortedYAccelerations;
+    private double cutoffSquared;
+
+    /**
+     * Creates a new particle-mesh force engine
+     *
+     * @param gridSize the number of grid points along each side, a power of two. A finer grid means fewer bodies in
+     * the short range of each body, but each grid point costs time and memory whether bodies are near it or not
+     * @param numberOfDirectBodies the number of heaviest bodies that are kept off the grid and pull every body
+     * directly
+     * @return None
+     */
+    public ParticleMeshForceEngine(int gridSize, int numberOfDirectBodies){
+        this.gridSize = Integer.highestOneBit(Math.max(2, gridSize));
+        this.numberOfDirectBodies = Math.max(0, numberOfDirectBodies);
+        fourierTransform = new FourierTransform(2 * this.gridSize);
+
+        int paddedSize = fourierTransform.getLength();
+        meshReal = new double[paddedSize * paddedSize];
+        meshImaginary = new double[paddedSize * paddedSize];
+        xKernelReal = new double[paddedSize * paddedSize];
+        xKernelImaginary = new double[paddedSize * paddedSize];
+        yKernelReal = new double[paddedSize * paddedSize];
+        yKernelImaginary = new double[paddedSize * paddedSize];
+
+        // the pull towards a point displacement d away is -d / |d|^3 times the long range fraction, and displacements
+        // past half of the padded grid are negative ones wrapped around
+        for (int row = 0; row < paddedSize; row++){
+            for (int column = 0; column < paddedSize; column++){
+                int dx = column < paddedSize / 2 ? column : column - paddedSize;
+                int dy = row < paddedSize / 2 ? row : row - paddedSize;
+                double distance = Math.hypot(dx, dy);
+
+                if (distance > 0){
+                    double scale = -(1 - calculateShortRangeFraction(distance / SPLIT_SCALE_SPACINGS)) /
+                            (distance * distance * distance);
+                    xKernelReal[row * paddedSize + column] = scale * dx;
+                    yKernelReal[row * paddedSize + column] = scale * dy;
+                }
+            }
+        }
+        fourierTransform.transformGrid(xKernelReal, xKernelImaginary, false);
+        fourierTransform.transformGrid(yKernelReal, yKernelImaginary, false);
+
+        // sharing the mass out and reading the pulls back each blur the grid by the same window, which in the
+        // transform is sinc^2 along each axis, so the kernel is sharpened by the square of that to undo both
+        for (int row = 0; row < paddedSize; row++){
+            for (int column = 0; column < paddedSize; column++){
+                double window = sinc(Math.PI * (column < paddedSize / 2 ? column : column - paddedSize) / paddedSize) *
+                        sinc(Math.PI * (row < paddedSize / 2 ? row : row - paddedSize) / paddedSize);
+                double sharpening = 1 / (window * window * window * window);
+                xKernelReal[row * paddedSize + column] *= sharpening;
+                xKernelImaginary[row * paddedSize + column] *= sharpening;
+                yKernelReal[row * paddedSize + column] *= sharpening;
+                yKernelImaginary[row * paddedSize + column] *= sharpening;
+            }
+        }
+
+        shortRangeFractions = new double[SHORT_RANGE_TABLE_SIZE + 2];
+        for (int i = 0; i < shortRangeFractions.length; i++){
+            double distanceFraction = Math.sqrt((double) i / SHORT_RANGE_TABLE_SIZE);
+            shortRangeFractions[i] = calculateShortRangeFraction(distanceFraction * CUTOFF_SCALES);
+        }
+
+        directBodies = new int[this.numberOfDirectBodies];
+        direct = new boolean[0];
+        cellStarts = new int[0];
+        cellBodies = new int[0];
+        bodyCells = new int[0];
+        sortedXDisplacements = new double[0];
+        sortedYDisplacements = new double[0];
+        sortedGravitationalParameters = new double[0];
+        sortedXAccelerations = new double[0];
+        sortedYAccelerations = new double[0];
+    }
+
+    /**
+     * Calculates the acceleration of every body as the long range pull read off the grid, the short range pull of
+     * every close body, and the pull of every direct body
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @param softeningLengthSquared the square of the Plummer softening length, 0 for unsoftened gravity. Only the
+     * short range and direct pulls are softened, which is close enough as long as the softening length is well under
+     * a grid spacing
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    @Override
+    public void calculateAccelerations(double[] xDisplacements, double[] yDisplacements,
+                                       double[] gravitationalParameters, int numberOfBodies,
+                                       double softeningLengthSquared, double[] xAccelerations,
+                                       double[] yAccelerations){
+        if (direct.length < numberOfBodies){
+            direct = new boolean[numberOfBodies];
+            bodyCells = new int[numberOfBodies];
+            cellBodies = new int[numberOfBodies];
+            sortedXDisplacements = new double[numberOfBodies];
+            sortedYDisplacements = new double[numberOfBodies];
+            sortedGravitationalParameters = new double[numberOfBodies];
+            sortedXAccelerations = new double[numberOfBodies];
+            sortedYAccelerations = new double[numberOfBodies];
+        }
+        int numberOfDirect = findDirectBodies(gravitationalParameters, numberOfBodies);
+
+        // the grid covers the direct bodies too, since they are pulled by the bodies on it
+        double minimumXDisplacement = Double.POSITIVE_INFINITY;
+        double minimumYDisplacement = Double.POSITIVE_INFINITY;
+        double maximumXDisplacement = Double.NEGATIVE_INFINITY;
+        double maximumYDisplacement = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numberOfBodies; i++){
+            // a body flung off to infinity by a close encounter would make every grid spacing infinite
+            if (Double.isFinite(xDisplacements[i]) && Double.isFinite(yDisplacements[i])){
+                minimumXDisplacement = Math.min(minimumXDisplacement, xDisplacements[i]);
+                minimumYDisplacement = Math.min(minimumYDisplacement, yDisplacements[i]);
+                maximumXDisplacement = Math.max(maximumXDisplacement, xDisplacements[i]);
+                maximumYDisplacement = Math.max(maximumYDisplacement, yDisplacements[i]);
+            }
+        }
+
+        double width = Math.max(maximumXDisplacement - minimumXDisplacement,
+                maximumYDisplacement - minimumYDisplacement);
+        if (!(width > 0)){
+            width = 1;
+            minimumXDisplacement = Double.isFinite(minimumXDisplacement) ? minimumXDisplacement : 0;
+            minimumYDisplacement = Double.isFinite(minimumYDisplacement) ? minimumYDisplacement : 0;
+        }
+        double spacing = width / (gridSize - 1);
+
+        calculateLongRangePulls(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies,
+                minimumXDisplacement, minimumYDisplacement, spacing, xAccelerations, yAccelerations);
+        calculateShortRangePulls(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies,
+                numberOfDirect, minimumXDisplacement, minimumYDisplacement, width, spacing, softeningLengthSquared, xAccelerations,
+                yAccelerations);
+
+        for (int k = 0; k < numberOfDirect; k++){
+            int d = directBodies[k];
+
+            for (int i = 0; i < numberOfBodies; i++){
+                if (i != d){
+                    double dx = xDisplacements[d] - xDisplacements[i];
+                    double dy = yDisplacements[d] - yDisplacements[i];
+                    double distanceSquared = dx * dx + dy * dy + softeningLengthSquared;
+                    double scale = gravitationalParameters[d] / (distanceSquared * Math.sqrt(distanceSquared));
+                    xAccelerations[i] += scale * dx;
+                    yAccelerations[i] += scale * dy;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the heaviest bodies, which are kept off the grid. A body that doesn't pull anything is never direct
+     *
+     * @param gravitationalParameters the gravitational parameter of each body
+     * @param numberOfBodies the number of bodies
+     * @return the number of direct bodies, which are put at the start of directBodies
+     */
+    private int findDirectBodies(double[] gravitationalParameters, int numberOfBodies){
+        Arrays.fill(direct, 0, numberOfBodies, false);
+        int numberOfDirect = 0;
+
+        // the direct bodies are kept from heaviest to lightest, so each body only has to be compared with the
+        // lightest of them and there are only ever a few to shift along
+        for (int i = 0; i < numberOfBodies; i++){
+            double gravitationalParameter = gravitationalParameters[i];
+            if (!(gravitationalParameter > 0)){
+                continue;
+            }
+
+            int place;
+            if (numberOfDirect < numberOfDirectBodies){
+                place = numberOfDirect++;
+            } else if (numberOfDirect > 0 &&
+                    gravitationalParameter > gravitationalParameters[directBodies[numberOfDirect - 1]]){
+                // the lightest direct body makes way
+                place = numberOfDirect - 1;
+            } else {
+                continue;
+            }
+
+            while (place > 0 && gravitationalParameters[directBodies[place - 1]] < gravitationalParameter){
+                directBodies[place] = directBodies[place - 1];
+                place--;
+            }
+            directBodies[place] = i;
+        }
+
+        for (int k = 0; k < numberOfDirect; k++){
+            direct[directBodies[k]] = true;
+        }
+
+        return numberOfDirect;
+    }
+
+    /**
+     * Shares the mass of every body that isn't direct between the grid points around it, convolves it with the long
+     * range pull, and reads the pull on every body back off the grid
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational parameter of each body
+     * @param numberOfBodies the number of bodies
+     * @param minimumXDisplacement the x-displacement of the first column of the grid
+     * @param minimumYDisplacement the y-displacement of the first row of the grid
+     * @param spacing the distance between grid points
+     * @param xAccelerations an array the x-acceleration of each body is put in
+     * @param yAccelerations an array the y-acceleration of each body is put in
+     * @return None
+     */
+    private void calculateLongRangePulls(double[] xDisplacements, double[] yDisplacements,
+                                         double[] gravitationalParameters, int numberOfBodies,
+                                         double minimumXDisplacement, double minimumYDisplacement, double spacing,
+                                         double[] xAccelerations, double[] yAccelerations){
+        int paddedSize = fourierTransform.getLength();
+        Arrays.fill(meshReal, 0);
+        Arrays.fill(meshImaginary, 0);
+
+        for (int i = 0; i < numberOfBodies; i++){
+            if (direct[i]){
+                continue;
+            }
+
+            double column = (xDisplacements[i] - minimumXDisplacement) / spacing;
+            double row = (yDisplacements[i] - minimumYDisplacement) / spacing;
+            int firstColumn = getFirstGridPoint(column);
+            int firstRow = getFirstGridPoint(row);
+            double xWeight = Math.max(0, Math.min(1, column - firstColumn));
+            double yWeight = Math.max(0, Math.min(1, row - firstRow));
+            int point = firstRow * paddedSize + firstColumn;
+
+            meshReal[point] += gravitationalParameters[i] * (1 - xWeight) * (1 - yWeight);
+            meshReal[point + 1] += gravitationalParameters[i] * xWeight * (1 - yWeight);
+            meshReal[point + paddedSize] += gravitationalParameters[i] * (1 - xWeight) * yWeight;
+            meshReal[point + paddedSize + 1] += gravitationalParameters[i] * xWeight * yWeight;
+        }
+
+        fourierTransform.transformGrid(meshReal, meshImaginary, false);
+
+        // both pulls are real, so the x pull can be the real part and the y pull the imaginary part of one inverse
+        // transform
+        for (int point = 0; point < meshReal.length; point++){
+            double real = meshReal[point];
+            double imaginary = meshImaginary[point];
+            double xReal = real * xKernelReal[point] - imaginary * xKernelImaginary[point];
+            double xImaginary = real * xKernelImaginary[point] + imaginary * xKernelReal[point];
+            double yReal = real * yKernelReal[point] - imaginary * yKernelImaginary[point];
+            double yImaginary = real * yKernelImaginary[point] + imaginary * yKernelReal[point];
+
+            meshReal[point] = xReal - yImaginary;
+            meshImaginary[point] = xImaginary + yReal;
+        }
+
+        fourierTransform.transformGrid(meshReal, meshImaginary, true);
+
+        // the kernel was in grid spacings, and a pull goes with 1 / distance^2
+        double scale = 1 / (spacing * spacing);
+        for (int i = 0; i < numberOfBodies; i++){
+            double column = (xDisplacements[i] - minimumXDisplacement) / spacing;
+            double row = (yDisplacements[i] - minimumYDisplacement) / spacing;
+            int firstColumn = getFirstGridPoint(column);
+            int firstRow = getFirstGridPoint(row);
+            double xWeight = Math.max(0, Math.min(1, column - firstColumn));
+            double yWeight = Math.max(0, Math.min(1, row - firstRow));
+            int point = firstRow * paddedSize + firstColumn;
+
+            // reading back with the same weights the mass was shared with means a body never pulls itself
+            xAccelerations[i] = scale * ((1 - xWeight) * (1 - yWeight) * meshReal[point] +
+                    xWeight * (1 - yWeight) * meshReal[point + 1] +
+                    (1 - xWeight) * yWeight * meshReal[point + paddedSize] +
+                    xWeight * yWeight * meshReal[point + paddedSize + 1]);
+            yAccelerations[i] = scale * ((1 - xWeight) * (1 - yWeight) * meshImaginary[point] +
+                    xWeight * (1 - yWeight) * meshImaginary[point + 1] +
+                    (1 - xWeight) * yWeight * meshImaginary[point + paddedSize] +
+                    xWeight * yWeight * meshImaginary[point + paddedSize + 1]);
+        }
+    }
+
+    /**
+     * Gets the grid point before a position along one side of the grid, keeping the point after it on the grid too
+     *
+     * @param position the position in grid spacings from the first grid point
+     * @return the number of the grid point
+     */
+    private int getFirstGridPoint(double position){
+        return Math.max(0, Math.min(gridSize - 2, (int) Math.floor(position)));
+    }
+
+    /**
+     * Adds the short range pull between every pair of bodies that aren't direct and are within the cutoff of each
+     * other, and the short range pull of those bodies on each direct body. The bodies are sorted into square cells as
+     * wide as the cutoff, so only the cells next to a body's cell need to be searched, and copied in that order so the
+     * search reads memory in order
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational parameter of each body
+     * @param numberOfBodies the number of bodies
+     * @param numberOfDirect the number of direct bodies
+     * @param minimumXDisplacement the x-displacement of the edge of the grid
+     * @param minimumYDisplacement the y-displacement of the edge of the grid
+     * @param width the width of the grid
+     * @param spacing the distance between grid points
+     * @param softeningLengthSquared the square of the softening length
+     * @param xAccelerations an array the x-acceleration of each body is added to
+     * @param yAccelerations an array the y-acceleration of each body is added to
+     * @return None
+     */
+    private void calculateShortRangePulls(double[] xDisplacements, double[] yDisplacements,
+                                          double[] gravitationalParameters, int numberOfBodies, int numberOfDirect,
+                                          double minimumXDisplacement, double minimumYDisplacement, double width,
+                                          double spacing, double softeningLengthSquared, double[] xAccelerations,
+                                          double[] yAccelerations){
+        double cutoff = CUTOFF_SCALES * SPLIT_SCALE_SPACINGS * spacing;
+        cutoffSquared = cutoff * cutoff;
+        int cellsPerSide = (int) (width / cutoff) + 1;
+        int numberOfCells = cellsPerSide * cellsPerSide;
+
+        if (cellStarts.length < numberOfCells + 1){
+            cellStarts = new int[numberOfCells + 1];
+        }
+        Arrays.fill(cellStarts, 0, numberOfCells + 1, 0);
+
+        // a counting sort: count the bodies of each cell, turn the counts into starts, then place each body
+        for (int i = 0; i < numberOfBodies; i++){
+            bodyCells[i] = getCell(xDisplacements[i], yDisplacements[i], minimumXDisplacement, minimumYDisplacement,
+                    cutoff, cellsPerSide);
+            if (!direct[i]){
+                cellStarts[bodyCells[i] + 1]++;
+            }
+        }
+        for (int cell = 0; cell < numberOfCells; cell++){
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+        for (int i = 0; i < numberOfBodies; i++){
+            if (!direct[i]){
+                int place = cellStarts[bodyCells[i]]++;
+                cellBodies[place] = i;
+                sortedXDisplacements[place] = xDisplacements[i];
+                sortedYDisplacements[place] = yDisplacements[i];
+                sortedGravitationalParameters[place] = gravitationalParameters[i];
+                sortedXAccelerations[place] = 0;
+                sortedYAccelerations[place] = 0;
+            }
+        }
+        // placing the bodies moved each start to the next cell's start
+        for (int cell = numberOfCells; cell > 0; cell--){
+            cellStarts[cell] = cellStarts[cell - 1];
+        }
+        cellStarts[0] = 0;
+
+        // each cell is paired with itself and the 4 neighbours after it, the cell right and the 3 cells above, so
+        // every pair of neighbouring cells is pulled once
+        for (int row = 0; row < cellsPerSide; row++){
+            for (int column = 0; column < cellsPerSide; column++){
+                int cell = row * cellsPerSide + column;
+                pullBetweenCells(cell, cell, softeningLengthSquared);
+
+                if (column + 1 < cellsPerSide){
+                    pullBetweenCells(cell, cell + 1, softeningLengthSquared);
+                }
+                if (row + 1 < cellsPerSide){
+                    for (int neighbourColumn = Math.max(0, column - 1);
+                         neighbourColumn <= Math.min(cellsPerSide - 1, column + 1); neighbourColumn++){
+                        pullBetweenCells(cell, cell + cellsPerSide - column + neighbourColumn,
+                                softeningLengthSquared);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < cellStarts[numberOfCells]; i++){
+            xAccelerations[cellBodies[i]] += sortedXAccelerations[i];
+            yAccelerations[cellBodies[i]] += sortedYAccelerations[i];
+        }
+
+        // a direct body is only pulled here, since its own pull on the bodies near it is added exactly afterwards
+        for (int k = 0; k < numberOfDirect; k++){
+            int d = directBodies[k];
+            int column = bodyCells[d] % cellsPerSide;
+            int row = bodyCells[d] / cellsPerSide;
+
+            for (int neighbourRow = Math.max(0, row - 1); neighbourRow <= Math.min(cellsPerSide - 1, row + 1);
+                 neighbourRow++){
+                for (int neighbourColumn = Math.max(0, column - 1);
+                     neighbourColumn <= Math.min(cellsPerSide - 1, column + 1); neighbourColumn++){
+                    int neighbour = neighbourRow * cellsPerSide + neighbourColumn;
+
+                    for (int place = cellStarts[neighbour]; place < cellStarts[neighbour + 1]; place++){
+                        double dx = sortedXDisplacements[place] - xDisplacements[d];
+                        double dy = sortedYDisplacements[place] - yDisplacements[d];
+                        double scale = sortedGravitationalParameters[place] *
+                                calculateShortRangeScale(dx * dx + dy * dy, softeningLengthSquared);
+                        xAccelerations[d] += scale * dx;
+                        yAccelerations[d] += scale * dy;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the short range pull between every body of one cell and every body of another, or between every pair of
+     * bodies in a cell
+     *
+     * @param first the number of the first cell
+     * @param second the number of the second cell, which may be the first
+     * @param softeningLengthSquared the square of the softening length
+     * @return None
+     */
+    private void pullBetweenCells(int first, int second, double softeningLengthSquared){
+        int firstEnd = cellStarts[first + 1];
+        int secondEnd = cellStarts[second + 1];
+
+        for (int i = cellStarts[first]; i < firstEnd; i++){
+            double x = sortedXDisplacements[i];
+            double y = sortedYDisplacements[i];
+            double accelerationX = 0;
+            double accelerationY = 0;
+
+            for (int j = first == second ? i + 1 : cellStarts[second]; j < secondEnd; j++){
+                double dx = sortedXDisplacements[j] - x;
+                double dy = sortedYDisplacements[j] - y;
+                double scale = calculateShortRangeScale(dx * dx + dy * dy, softeningLengthSquared);
+
+                accelerationX += sortedGravitationalParameters[j] * scale * dx;
+                accelerationY += sortedGravitationalParameters[j] * scale * dy;
+                sortedXAccelerations[j] -= sortedGravitationalParameters[i] * scale * dx;
+                sortedYAccelerations[j] -= sortedGravitationalParameters[i] * scale * dy;
+            }
+
+            sortedXAccelerations[i] += accelerationX;
+            sortedYAccelerations[i] += accelerationY;
+        }
+    }
+
+    /**
+     * Calculates the short range fraction of 1 / r^3 at a distance, which multiplied by a gravitational parameter and
+     * the displacement gives the short range pull. The fraction is interpolated in a table by r^2
+     *
+     * @param distanceSquared the square of the distance
+     * @param softeningLengthSquared the square of the softening length
+     * @return the scale of the pull, 0 beyond the cutoff
+     */
+    private double calculateShortRangeScale(double distanceSquared, double softeningLengthSquared){
+        if (distanceSquared >= cutoffSquared){
+            return 0;
+        }
+
+        double tablePosition = distanceSquared / cutoffSquared * SHORT_RANGE_TABLE_SIZE;
+        int tableIndex = (int) tablePosition;
+        double fraction = shortRangeFractions[tableIndex] + (tablePosition - tableIndex) *
+                (shortRangeFractions[tableIndex + 1] - shortRangeFractions[tableIndex]);
+        double softenedDistanceSquared = distanceSquared + softeningLengthSquared;
+
+        return fraction / (softenedDistanceSquared * Math.sqrt(softenedDistanceSquared));
+    }
+
+    /**
+     * Gets the short range cell a position is in, positions off the edges are put in the nearest cell
+     *
+     * @param x the x-displacement
+     * @param y the y-displacement
+     * @param minimumXDisplacement the x-displacement of the edge of the cells
+     * @param minimumYDisplacement the y-displacement of the edge of the cells
+     * @param cellWidth the width of a cell
+     * @param cellsPerSide the number of cells along each side
+     * @return the number of the cell
+     */
+    private static int getCell(double x, double y, double minimumXDisplacement, double minimumYDisplacement,
+                               double cellWidth, int cellsPerSide){
+        int column = (int) Math.max(0, Math.min(cellsPerSide - 1, (x - minimumXDisplacement) / cellWidth));
+        int row = (int) Math.max(0, Math.min(cellsPerSide - 1, (y - minimumYDisplacement) / cellWidth));
+
+        return row * cellsPerSide + column;
+    }
+
+    /**
+     * Calculates sin(x) / x
+     *
+     * @param x the value
+     * @return sinc(x), which is 1 at 0
+     */
+    private static double sinc(double x){
+        return x == 0 ? 1 : Math.sin(x) / x;
+    }
+
+    /**
+     * Calculates the fraction of the pull between two bodies that is short range, erfc(r / 2s) + r / (s sqrt(pi))
+     * e^(-r^2 / 4s^2) for a split width of s. The rest of the pull is smooth over distances of about s
+     *
+     * @param scaledDistance the distance between the bodies divided by the split width
+     * @return the short range fraction
+     */
+    private static double calculateShortRangeFraction(double scaledDistance){
+        double x = scaledDistance / 2;
+        return complementaryErrorFunction(x) + 2 * x / Math.sqrt(Math.PI) * Math.exp(-x * x);
+    }
+
+    /**
+     * Calculates the complementary error function of a value that isn't negative, using a Chebyshev fit that is
+     * exact to about 1 part in 10 million
+     *
+     * @param x the value
+     * @return erfc(x)
+     */
+    private static double complementaryErrorFunction(double x){
+        double t = 1 / (1 + 0.5 * x);
+        return t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 +
+                t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 +
+                t * (-0.82215223 + t * 0.17087277)))))))));
+    }
+
+    /**
+     * Gets the number of grid points along each side
+     *
+     * @return the grid size
+     */
+    public int getGridSize(){
+        return gridSize;
+    }
+
+    /**
+     * Gets the number of heaviest bodies that are kept off the grid
+     *
+     * @return the number of direct bodies
+     */
+    public int getNumberOfDirectBodies(){
+        return numberOfDirectBodies;
+    }
+
+    /**
+     * Gets the name of the engine along with its grid size and number of direct bodies
+     *
+     * @return the name
+     */
+    @Override
+    public String getName(){
+        return "Particle-mesh P3M (" + gridSize + " grid, " + numberOfDirectBodies + " direct bodies)";
+    }
+}
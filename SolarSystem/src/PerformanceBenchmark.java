@@ -0,0 +1,362 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Defines a performance benchmark as how long each of the simulation's hot paths takes for a range of numbers of
+ * bodies: moving the planets with each integrator, vector math, saving and loading solar system files, and moving the
+ * labels of a simulation. Each benchmark is warmed up first so the JIT compiler has compiled it, then timed over
+ * several iterations, so the mean and the spread between iterations can both be reported. Every solar system is
+ * generated from the same seed, so the numbers of one run can be compared with the numbers of another. Operations
+ * include running the benchmarks, generating a benchmark solar system, and reading the results.
+ */
+public class PerformanceBenchmark {
+    private static final long SEED = 42;
+    // the warm-up runs for this long before anything is timed, and each timed iteration runs for this long
+    private static final double WARM_UP_SECONDS = 0.5;
+    private static final double ITERATION_SECONDS = 0.25;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    // a benchmark that would take longer than this for one operation isn't run for any more bodies
+    private static final double MAXIMUM_SECONDS_PER_OPERATION = 2;
+    // the generated planets orbit between these distances from the sun, like the sample solar system
+    private static final double INNER_RADIUS_METERS = 300;
+    private static final double OUTER_RADIUS_METERS = 1500;
+    private static final double SUN_MASS = 1e14;
+    private static final double TIME_STEP_SECONDS = 0.01;
+
+    private static final String[] BENCHMARK_NAMES = {"movePlanetsOverTime, semi-implicit Euler",
+            "movePlanetsOverTime, Wisdom-Holman with Barnes-Hut", "Vector math", "saveSolarSystem", "loadSolarSystem",
+            "Simulation.updateLabelPosition"};
+    // how the time of each benchmark grows with the number of bodies, used to skip sizes that would be too slow. The
+    // Wisdom-Holman step grows with n^2 whatever its force engine, since every planet is checked against every other
+    // for the Hill sphere it is in
+    private static final int[] GROWTH_POWERS = {2, 2, 1, 1, 1, 1};
+
+    // the results of every benchmark are added here, so the JIT compiler can't leave out work whose result is unused
+    private static double sink;
+
+    private final int[] numbersOfBodies;
+    // nanosecondsPerOperation[benchmark][size], NaN where the benchmark was too slow or couldn't be run
+    private final double[][] nanosecondsPerOperation;
+    private final double[][] standardDeviations;
+
+    /**
+     * Creates a new performance benchmark, use run to make one
+     *
+     * @param numbersOfBodies each number of bodies the benchmarks were run with
+     * @param nanosecondsPerOperation the mean time of each benchmark with each number of bodies
+     * @param standardDeviations the standard deviation of that time between iterations
+     * @return None
+     */
+    private PerformanceBenchmark(int[] numbersOfBodies, double[][] nanosecondsPerOperation,
+                                 double[][] standardDeviations){
+        this.numbersOfBodies = numbersOfBodies;
+        this.nanosecondsPerOperation = nanosecondsPerOperation;
+        this.standardDeviations = standardDeviations;
+    }
+
+    /**
+     * Runs every benchmark on 10, 100, 1000 and so on bodies, up to a greatest number of bodies
+     *
+     * @param greatestNumberOfBodies the greatest number of bodies to run the benchmarks with
+     * @param simulation the simulation whose labels are moved, or null to leave that benchmark out. Its labels are
+     * cleared before and after
+     * @return the benchmark
+     */
+    public static PerformanceBenchmark run(int greatestNumberOfBodies, Simulation simulation){
+        int numberOfSizes = 0;
+        for (long numberOfBodies = 10; numberOfBodies <= greatestNumberOfBodies; numberOfBodies *= 10){
+            numberOfSizes++;
+        }
+
+        int[] numbersOfBodies = new int[numberOfSizes];
+        for (int size = 0, numberOfBodies = 10; size < numberOfSizes; size++, numberOfBodies *= 10){
+            numbersOfBodies[size] = numberOfBodies;
+        }
+
+        double[][] nanosecondsPerOperation = new double[BENCHMARK_NAMES.length][numberOfSizes];
+        double[][] standardDeviations = new double[BENCHMARK_NAMES.length][numberOfSizes];
+
+        for (int benchmark = 0; benchmark < BENCHMARK_NAMES.length; benchmark++){
+            double previousSeconds = 0;
+
+            for (int size = 0; size < numberOfSizes; size++){
+                int numberOfBodies = numbersOfBodies[size];
+                double predictedSeconds = size == 0 ? 0 :
+                        previousSeconds * Math.pow(10, GROWTH_POWERS[benchmark]);
+                Runnable operation = predictedSeconds > MAXIMUM_SECONDS_PER_OPERATION ? null :
+                        createOperation(benchmark, numberOfBodies, simulation);
+
+                if (operation == null){
+                    nanosecondsPerOperation[benchmark][size] = Double.NaN;
+                    standardDeviations[benchmark][size] = Double.NaN;
+                    previousSeconds = Double.POSITIVE_INFINITY;
+                    continue;
+                }
+
+                measure(operation, nanosecondsPerOperation[benchmark], standardDeviations[benchmark], size);
+                previousSeconds = nanosecondsPerOperation[benchmark][size] / 1e9;
+            }
+        }
+
+        if (simulation != null){
+            simulation.resetLabelsAndFrame();
+        }
+
+        return new PerformanceBenchmark(numbersOfBodies, nanosecondsPerOperation, standardDeviations);
+    }
+
+    /**
+     * Sets up a benchmark for a number of bodies and creates the operation that is timed
+     *
+     * @param benchmark the index of the benchmark
+     * @param numberOfBodies the number of bodies
+     * @param simulation the simulation whose labels are moved, or null
+     * @return the operation, or null if it can't be run
+     */
+    private static Runnable createOperation(int benchmark, int numberOfBodies, Simulation simulation){
+        switch (benchmark){
+            case 0:
+                SolarSystem eulerSolarSystem = createSolarSystem(numberOfBodies, SEED);
+                return () -> eulerSolarSystem.movePlanetsOverTime(TIME_STEP_SECONDS);
+
+            case 1:
+                SolarSystem wisdomHolmanSolarSystem = createSolarSystem(numberOfBodies, SEED);
+                wisdomHolmanSolarSystem.setIntegrator(Integrator.WISDOM_HOLMAN);
+                wisdomHolmanSolarSystem.setForceEngine(new BarnesHutForceEngine(0.5));
+                return () -> wisdomHolmanSolarSystem.movePlanetsOverTime(TIME_STEP_SECONDS);
+
+            case 2:
+                Vector[] vectors = createVectors(numberOfBodies, SEED);
+                return () -> {
+                    double total = 0;
+                    for (int i = 1; i < vectors.length; i++){
+                        total += vectors[i].distanceBetween(vectors[i - 1]) + vectors[i].getAngleBetween(
+                                vectors[i - 1]) + vectors[i].getMagnitude();
+                        // multiplying by 1 keeps the vectors the same from one operation to the next
+                        vectors[i].timesConstant(1);
+                    }
+                    sink += total;
+                };
+
+            case 3:
+            case 4:
+                File file;
+                try {
+                    file = File.createTempFile("benchmark", ".csv");
+                } catch (IOException e){
+                    System.out.println("Error creating benchmark file!");
+                    return null;
+                }
+                file.deleteOnExit();
+
+                SolarSystem savedSolarSystem = createSolarSystem(numberOfBodies, SEED);
+                savedSolarSystem.saveSolarSystem(file.getPath());
+                if (benchmark == 3){
+                    return () -> savedSolarSystem.saveSolarSystem(file.getPath());
+                }
+                SolarSystem loadedSolarSystem = new SolarSystem();
+                return () -> {
+                    loadedSolarSystem.loadSolarSystem(file.getPath());
+                    sink += loadedSolarSystem.getNumberOfCelestialBodies();
+                };
+
+            case 5:
+                if (simulation == null){
+                    return null;
+                }
+
+                SolarSystem labelledSolarSystem = createSolarSystem(numberOfBodies, SEED);
+                double greatestRadius = labelledSolarSystem.getGreatestCelestialBodyRadius();
+                double smallestRadius = labelledSolarSystem.getSmallestCelestialBodyRadius();
+                simulation.resetLabelsAndFrame();
+                for (int i = 0; i < numberOfBodies; i++){
+                    simulation.addLabel(labelledSolarSystem.getCelestialBodyImagePath(i),
+                            labelledSolarSystem.getCelestialBodyXDisplacement(i),
+                            labelledSolarSystem.getCelestialBodyYDisplacement(i),
+                            labelledSolarSystem.getCelestialBodyRadius(i), greatestRadius, smallestRadius);
+                }
+                return () -> {
+                    for (int i = 0; i < numberOfBodies; i++){
+                        simulation.updateLabelPosition(i, labelledSolarSystem.getCelestialBodyXDisplacement(i),
+                                labelledSolarSystem.getCelestialBodyYDisplacement(i),
+                                labelledSolarSystem.getCelestialBodyRadius(i), greatestRadius, smallestRadius);
+                    }
+                };
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Warms an operation up and then times it over several iterations
+     *
+     * @param operation the operation
+     * @param nanosecondsPerOperation an array the mean time of one operation is put in
+     * @param standardDeviations an array the standard deviation of that time between iterations is put in
+     * @param size the place in the arrays to put the results
+     * @return None
+     */
+    private static void measure(Runnable operation, double[] nanosecondsPerOperation, double[] standardDeviations,
+                                int size){
+        // an operation slower than the warm-up is only run once, since it has already been compiled by the time it
+        // finishes
+        long start = System.nanoTime();
+        operation.run();
+        double firstSeconds = (System.nanoTime() - start) / 1e9;
+        if (firstSeconds >= WARM_UP_SECONDS){
+            nanosecondsPerOperation[size] = firstSeconds * 1e9;
+            standardDeviations[size] = 0;
+            return;
+        }
+        timeIteration(operation, WARM_UP_SECONDS);
+
+        double[] iterationNanoseconds = new double[MEASUREMENT_ITERATIONS];
+        double total = 0;
+        for (int iteration = 0; iteration < MEASUREMENT_ITERATIONS; iteration++){
+            iterationNanoseconds[iteration] = timeIteration(operation, ITERATION_SECONDS);
+            total += iterationNanoseconds[iteration];
+        }
+
+        double mean = total / MEASUREMENT_ITERATIONS;
+        double sumOfSquares = 0;
+        for (double nanoseconds : iterationNanoseconds){
+            sumOfSquares += (nanoseconds - mean) * (nanoseconds - mean);
+        }
+
+        nanosecondsPerOperation[size] = mean;
+        standardDeviations[size] = Math.sqrt(sumOfSquares / (MEASUREMENT_ITERATIONS - 1));
+    }
+
+    /**
+     * Runs an operation again and again for at least a length of time
+     *
+     * @param operation the operation
+     * @param seconds the least time to run it for
+     * @return the mean time of one operation in nanoseconds
+     */
+    private static double timeIteration(Runnable operation, double seconds){
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+
+        do {
+            operation.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < seconds * 1e9);
+
+        return (double) elapsed / runs;
+    }
+
+    /**
+     * Generates a solar system of a sun and planets on circular orbits around it. The planets are spread evenly over
+     * a ring about the size of the sample solar system, and their masses are spread evenly over the powers of ten from
+     * an asteroid's to a gas giant's
+     *
+     * @param numberOfBodies the number of celestial bodies, the sun and one fewer planets
+     * @param seed the seed of the random numbers, the same seed always generates the same solar system
+     * @return the solar system
+     */
+    public static SolarSystem createSolarSystem(int numberOfBodies, long seed){
+        SolarSystem solarSystem = new SolarSystem();
+        Random random = new Random(seed);
+        double sunGravitationalParameter = SolarSystem.GRAVITATION_CONSTANT * SUN_MASS;
+
+        solarSystem.addSun("Sun", SUN_MASS, 50, "Images/sun.png", 0, 0, 0, 1000);
+        for (int i = 1; i < numberOfBodies; i++){
+            // the square root spreads the planets evenly over the area of the ring rather than bunching them inside
+            double distance = Math.sqrt(INNER_RADIUS_METERS * INNER_RADIUS_METERS + random.nextDouble() *
+                    (OUTER_RADIUS_METERS * OUTER_RADIUS_METERS - INNER_RADIUS_METERS * INNER_RADIUS_METERS));
+            double angle = 2 * Math.PI * random.nextDouble();
+            double speed = Math.sqrt(sunGravitationalParameter / distance);
+            double mass = Math.pow(10, 3 + 7 * random.nextDouble());
+
+            solarSystem.addPlanet("Planet " + i, mass, 10, "Images/earth.png", 1, distance * Math.cos(angle),
+                    distance * Math.sin(angle), "Terrestrial", -speed * Math.sin(angle), speed * Math.cos(angle));
+        }
+
+        return solarSystem;
+    }
+
+    /**
+     * Generates vectors spread evenly over a disk about the size of the sample solar system
+     *
+     * @param numberOfVectors the number of vectors
+     * @param seed the seed of the random numbers
+     * @return the vectors
+     */
+    private static Vector[] createVectors(int numberOfVectors, long seed){
+        Vector[] vectors = new Vector[numberOfVectors];
+        Random random = new Random(seed);
+
+        for (int i = 0; i < numberOfVectors; i++){
+            vectors[i] = new Vector((2 * random.nextDouble() - 1) * OUTER_RADIUS_METERS,
+                    (2 * random.nextDouble() - 1) * OUTER_RADIUS_METERS);
+        }
+
+        return vectors;
+    }
+
+    /**
+     * Gets the number of benchmarks
+     *
+     * @return the number of benchmarks
+     */
+    public int getNumberOfBenchmarks(){
+        return BENCHMARK_NAMES.length;
+    }
+
+    /**
+     * Gets the name of a benchmark
+     *
+     * @param benchmark the index of the benchmark
+     * @return the name
+     */
+    public String getBenchmarkName(int benchmark){
+        return BENCHMARK_NAMES[benchmark];
+    }
+
+    /**
+     * Gets the number of different numbers of bodies the benchmarks were run with
+     *
+     * @return the number of sizes
+     */
+    public int getNumberOfSizes(){
+        return numbersOfBodies.length;
+    }
+
+    /**
+     * Gets one of the numbers of bodies the benchmarks were run with
+     *
+     * @param size the index of the size
+     * @return the number of bodies
+     */
+    public int getNumberOfBodies(int size){
+        return numbersOfBodies[size];
+    }
+
+    /**
+     * Gets the mean time of one operation of a benchmark
+     *
+     * @param benchmark the index of the benchmark
+     * @param size the index of the number of bodies
+     * @return the time in nanoseconds, or NaN if the benchmark was too slow or couldn't be run
+     */
+    public double getNanosecondsPerOperation(int benchmark, int size){
+        return nanosecondsPerOperation[benchmark][size];
+    }
+
+    /**
+     * Gets the standard deviation between iterations of the time of one operation of a benchmark
+     *
+     * @param benchmark the index of the benchmark
+     * @param size the index of the number of bodies
+     * @return the standard deviation in nanoseconds, 0 if the operation was only run once, or NaN if the benchmark
+     * was too slow or couldn't be run
+     */
+    public double getStandardDeviation(int benchmark, int size){
+        return standardDeviations[benchmark][size];
+    }
+}
@@ -0,0 +1,453 @@
+import java.util.Arrays;
+
+/**
+ * Defines a quad tree as a square around a set of bodies that is split into four smaller squares, each of which is
+ * split again until it holds only a few bodies. The bodies are copied in an order where every square's bodies are
+ * next to each other, and every square's children are numbered next to each other after the square itself, so a
+ * square is always numbered before anything inside it. Each square keeps the combined gravitational parameter of its
+ * bodies, their center of mass, and how far the farthest of them is from it, which is what the tree force engines
+ * need to decide whether a square is far enough away to be treated as a whole. Operations include building the tree
+ * and reading its squares and bodies.
+ */
+public class QuadTree {
+    // squares this deep are a trillionth of the root's width, so the bodies left in them are on top of each other and
+    // splitting further would never separate them
+    private static final int MAXIMUM_DEPTH = 40;
+
+    private final int maximumBodiesPerLeaf;
+
+    // the bodies in tree order, with the number each had in the arrays the tree was built from
+    private int[] bodies;
+    private double[] xDisplacements;
+    private double[] yDisplacements;
+    private double[] gravitationalParameters;
+    private int numberOfBodies;
+
+    // the bodies of square i are bodies firstBodies[i] up to endBodies[i], and its children are squares
+    // firstChildren[i] up to firstChildren[i] + numbersOfChildren[i]
+    private int[] firstBodies;
+    private int[] endBodies;
+    private int[] firstChildren;
+    private int[] numbersOfChildren;
+    private double[] cellGravitationalParameters;
+    private double[] cellXCenters;
+    private double[] cellYCenters;
+    private double[] cellRadii;
+    private int numberOfCells;
+
+    /**
+     * Creates a new quad tree with no bodies
+     *
+     * @param maximumBodiesPerLeaf the most bodies a square can hold before it is split, unless its bodies are on top
+     * of each other
+     * @return None
+     */
+    public QuadTree(int maximumBodiesPerLeaf){
+        this.maximumBodiesPerLeaf = Math.max(1, maximumBodiesPerLeaf);
+        bodies = new int[0];
+        xDisplacements = new double[0];
+        yDisplacements = new double[0];
+        gravitationalParameters = new double[0];
+        firstBodies = new int[0];
+        endBodies = new int[0];
+        firstChildren = new int[0];
+        numbersOfChildren = new int[0];
+        cellGravitationalParameters = new double[0];
+        cellXCenters = new double[0];
+        cellYCenters = new double[0];
+        cellRadii = new double[0];
+    }
+
+    /**
+     * Builds the tree around a new set of bodies. The arrays are copied, so they can be changed afterwards
+     *
+     * @param xDisplacements the x-displacement of each body
+     * @param yDisplacements the y-displacement of each body
+     * @param gravitationalParameters the gravitational constant times the mass of each body
+     * @param numberOfBodies the number of bodies, which may be less than the length of the arrays
+     * @return None
+     */
+    public void build(double[] xDisplacements, double[] yDisplacements, double[] gravitationalParameters,
+                      int numberOfBodies){
+        this.numberOfBodies = numberOfBodies;
+        numberOfCells = 0;
+
+        if (bodies.length < numberOfBodies){
+            bodies = new int[numberOfBodies];
+            this.xDisplacements = new double[numberOfBodies];
+            this.yDisplacements = new double[numberOfBodies];
+            this.gravitationalParameters = new double[numberOfBodies];
+        }
+
+        double minimumXDisplacement = Double.POSITIVE_INFINITY;
+        double minimumYDisplacement = Double.POSITIVE_INFINITY;
+        double maximumXDisplacement = Double.NEGATIVE_INFINITY;
+        double maximumYDisplacement = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numberOfBodies; i++){
+            bodies[i] = i;
+            this.xDisplacements[i] = xDisplacements[i];
+            this.yDisplacements[i] = yDisplacements[i];
+            this.gravitationalParameters[i] = gravitationalParameters[i];
+
+            // a body flung off to infinity by a close encounter would make the square infinitely big, so it is left
+            // to end up in whichever corner the comparisons put it in
+            if (Double.isFinite(xDisplacements[i]) && Double.isFinite(yDisplacements[i])){
+                minimumXDisplacement = Math.min(minimumXDisplacement, xDisplacements[i]);
+                minimumYDisplacement = Math.min(minimumYDisplacement, yDisplacements[i]);
+                maximumXDisplacement = Math.max(maximumXDisplacement, xDisplacements[i]);
+                maximumYDisplacement = Math.max(maximumYDisplacement, yDisplacements[i]);
+            }
+        }
+
+        if (numberOfBodies == 0){
+            return;
+        }
+
+        double halfWidth = Math.max(maximumXDisplacement - minimumXDisplacement,
+                maximumYDisplacement - minimumYDisplacement) / 2;
+        if (!(halfWidth > 0)){
+            // every body is in the same place, or none of them are anywhere finite
+            halfWidth = 1;
+            minimumXDisplacement = Double.isFinite(minimumXDisplacement) ? minimumXDisplacement : 0;
+            minimumYDisplacement = Double.isFinite(minimumYDisplacement) ? minimumYDisplacement : 0;
+        }
+
+        numberOfCells = 1;
+        ensureCellCapacity(1);
+        splitCell(0, 0, numberOfBodies, minimumXDisplacement + halfWidth, minimumYDisplacement + halfWidth,
+                halfWidth, 0);
+        calculateCenters();
+    }
+
+    /**
+     * Sets up a square holding a run of bodies, splitting it into four if it holds too many. The bodies are reordered
+     * so that each child's bodies are next to each other
+     *
+     * @param cell the number of the square
+     * @param firstBody the first body in the square
+     * @param endBody one after the last body in the square
+     * @param xCenter the x-displacement of the middle of the square
+     * @param yCenter the y-displacement of the middle of the square
+     * @param halfWidth half of the width of the square
+     * @param depth how many times the root was split to make the square
+     * @return None
+     */
+    private void splitCell(int cell, int firstBody, int endBody, double xCenter, double yCenter, double halfWidth,
+                           int depth){
+        firstBodies[cell] = firstBody;
+        endBodies[cell] = endBody;
+        firstChildren[cell] = 0;
+        numbersOfChildren[cell] = 0;
+
+        if (endBody - firstBody <= maximumBodiesPerLeaf || depth == MAXIMUM_DEPTH){
+            return;
+        }
+
+        // the quarters are in the order left bottom, left top, right bottom, right top
+        int middle = partition(firstBody, endBody, true, xCenter);
+        int[] ends = {partition(firstBody, middle, false, yCenter), middle,
+                partition(middle, endBody, false, yCenter), endBody};
+
+        // the children are numbered together before any of them is split, so that they stay next to each other
+        int firstChild = numberOfCells;
+        int start = firstBody;
+        for (int quarter = 0; quarter < 4; quarter++){
+            if (ends[quarter] > start){
+                numberOfCells++;
+            }
+            start = ends[quarter];
+        }
+        ensureCellCapacity(numberOfCells);
+        firstChildren[cell] = firstChild;
+        numbersOfChildren[cell] = numberOfCells - firstChild;
+
+        double quarterWidth = halfWidth / 2;
+        int child = firstChild;
+        start = firstBody;
+        for (int quarter = 0; quarter < 4; quarter++){
+            if (ends[quarter] > start){
+                double childXCenter = quarter < 2 ? xCenter - quarterWidth : xCenter + quarterWidth;
+                double childYCenter = quarter % 2 == 0 ? yCenter - quarterWidth : yCenter + quarterWidth;
+                splitCell(child++, start, ends[quarter], childXCenter, childYCenter, quarterWidth, depth + 1);
+            }
+            start = ends[quarter];
+        }
+    }
+
+    /**
+     * Reorders a run of bodies so that the ones below a value on an axis come first
+     *
+     * @param firstBody the first body of the run
+     * @param endBody one after the last body of the run
+     * @param xAxis true to compare x-displacements, false to compare y-displacements
+     * @param value the value to compare with
+     * @return the first body that is not below the value
+     */
+    private int partition(int firstBody, int endBody, boolean xAxis, double value){
+        double[] displacements = xAxis ? xDisplacements : yDisplacements;
+        int low = firstBody;
+        int high = endBody - 1;
+
+        while (true){
+            while (low <= high && displacements[low] < value){
+                low++;
+            }
+            while (low <= high && !(displacements[high] < value)){
+                high--;
+            }
+            if (low >= high){
+                return low;
+            }
+            swapBodies(low++, high--);
+        }
+    }
+
+    /**
+     * Swaps two bodies in the tree order
+     *
+     * @param i the place of the first body
+     * @param j the place of the second body
+     * @return None
+     */
+    private void swapBodies(int i, int j){
+        int body = bodies[i];
+        bodies[i] = bodies[j];
+        bodies[j] = body;
+
+        double x = xDisplacements[i];
+        xDisplacements[i] = xDisplacements[j];
+        xDisplacements[j] = x;
+
+        double y = yDisplacements[i];
+        yDisplacements[i] = yDisplacements[j];
+        yDisplacements[j] = y;
+
+        double gravitationalParameter = gravitationalParameters[i];
+        gravitationalParameters[i] = gravitationalParameters[j];
+        gravitationalParameters[j] = gravitationalParameter;
+    }
+
+    /**
+     * Finds the combined gravitational parameter, center of mass, and radius of every square. Children are numbered
+     * after their parent, so going through the squares backwards reaches every child before its parent
+     *
+     * @return None
+     */
+    private void calculateCenters(){
+        for (int cell = numberOfCells - 1; cell >= 0; cell--){
+            int firstChild = firstChildren[cell];
+            int endChild = firstChild + numbersOfChildren[cell];
+            double gravitationalParameter = 0;
+            double xWeighted = 0;
+            double yWeighted = 0;
+
+            if (endChild == firstChild){
+                for (int i = firstBodies[cell]; i < endBodies[cell]; i++){
+                    gravitationalParameter += gravitationalParameters[i];
+                    xWeighted += gravitationalParameters[i] * xDisplacements[i];
+                    yWeighted += gravitationalParameters[i] * yDisplacements[i];
+                }
+            } else {
+                for (int child = firstChild; child < endChild; child++){
+                    gravitationalParameter += cellGravitationalParameters[child];
+                    xWeighted += cellGravitationalParameters[child] * cellXCenters[child];
+                    yWeighted += cellGravitationalParameters[child] * cellYCenters[child];
+                }
+            }
+
+            double xCenter;
+            double yCenter;
+            if (gravitationalParameter != 0){
+                xCenter = xWeighted / gravitationalParameter;
+                yCenter = yWeighted / gravitationalParameter;
+            } else {
+                // bodies that don't pull anything have no center of mass, so the middle of them is used instead
+                int count = endBodies[cell] - firstBodies[cell];
+                xCenter = 0;
+                yCenter = 0;
+                for (int i = firstBodies[cell]; i < endBodies[cell]; i++){
+                    xCenter += xDisplacements[i] / count;
+                    yCenter += yDisplacements[i] / count;
+                }
+            }
+
+            double radius = 0;
+            if (endChild == firstChild){
+                for (int i = firstBodies[cell]; i < endBodies[cell]; i++){
+                    radius = Math.max(radius, Math.hypot(xDisplacements[i] - xCenter, yDisplacements[i] - yCenter));
+                }
+            } else {
+                // every body of a child is within the child's radius of the child's center
+                for (int child = firstChild; child < endChild; child++){
+                    radius = Math.max(radius, Math.hypot(cellXCenters[child] - xCenter,
+                            cellYCenters[child] - yCenter) + cellRadii[child]);
+                }
+            }
+
+            cellGravitationalParameters[cell] = gravitationalParameter;
+            cellXCenters[cell] = xCenter;
+            cellYCenters[cell] = yCenter;
+            cellRadii[cell] = radius;
+        }
+    }
+
+    /**
+     * Makes sure the arrays of squares can hold a number of squares, keeping the squares already in them
+     *
+     * @param capacity the number of squares
+     * @return None
+     */
+    private void ensureCellCapacity(int capacity){
+        if (firstBodies.length >= capacity){
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, firstBodies.length * 2);
+        firstBodies = Arrays.copyOf(firstBodies, newCapacity);
+        endBodies = Arrays.copyOf(endBodies, newCapacity);
+        firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+        numbersOfChildren = Arrays.copyOf(numbersOfChildren, newCapacity);
+        cellGravitationalParameters = Arrays.copyOf(cellGravitationalParameters, newCapacity);
+        cellXCenters = Arrays.copyOf(cellXCenters, newCapacity);
+        cellYCenters = Arrays.copyOf(cellYCenters, newCapacity);
+        cellRadii = Arrays.copyOf(cellRadii, newCapacity);
+    }
+
+    /**
+     * Gets the number of squares, the root is square 0 whenever there are any bodies
+     *
+     * @return the number of squares
+     */
+    public int getNumberOfCells(){
+        return numberOfCells;
+    }
+
+    /**
+     * Gets the number of bodies in the tree
+     *
+     * @return the number of bodies
+     */
+    public int getNumberOfBodies(){
+        return numberOfBodies;
+    }
+
+    /**
+     * Gets the place in the tree order of the first body in a square
+     *
+     * @param cell the number of the square
+     * @return the place of the first body
+     */
+    public int getFirstBody(int cell){
+        return firstBodies[cell];
+    }
+
+    /**
+     * Gets the place in the tree order one after the last body in a square
+     *
+     * @param cell the number of the square
+     * @return the place after the last body
+     */
+    public int getEndBody(int cell){
+        return endBodies[cell];
+    }
+
+    /**
+     * Gets the number of the first child of a square
+     *
+     * @param cell the number of the square
+     * @return the number of the first child, meaningless if the square has no children
+     */
+    public int getFirstChild(int cell){
+        return firstChildren[cell];
+    }
+
+    /**
+     * Gets the number of children of a square, which is 0 for a square that wasn't split
+     *
+     * @param cell the number of the square
+     * @return the number of children
+     */
+    public int getNumberOfChildren(int cell){
+        return numbersOfChildren[cell];
+    }
+
+    /**
+     * Gets the combined gravitational parameter of the bodies in a square
+     *
+     * @param cell the number of the square
+     * @return the gravitational parameter
+     */
+    public double getCellGravitationalParameter(int cell){
+        return cellGravitationalParameters[cell];
+    }
+
+    /**
+     * Gets the x-displacement of the center of mass of a square
+     *
+     * @param cell the number of the square
+     * @return the x-displacement in meters
+     */
+    public double getCellXCenter(int cell){
+        return cellXCenters[cell];
+    }
+
+    /**
+     * Gets the y-displacement of the center of mass of a square
+     *
+     * @param cell the number of the square
+     * @return the y-displacement in meters
+     */
+    public double getCellYCenter(int cell){
+        return cellYCenters[cell];
+    }
+
+    /**
+     * Gets how far the farthest body in a square is from its center of mass
+     *
+     * @param cell the number of the square
+     * @return the radius in meters
+     */
+    public double getCellRadius(int cell){
+        return cellRadii[cell];
+    }
+
+    /**
+     * Gets the number a body had in the arrays the tree was built from
+     *
+     * @param place the place of the body in the tree order
+     * @return the number of the body
+     */
+    public int getBody(int place){
+        return bodies[place];
+    }
+
+    /**
+     * Gets the x-displacement of a body
+     *
+     * @param place the place of the body in the tree order
+     * @return the x-displacement in meters
+     */
+    public double getXDisplacement(int place){
+        return xDisplacements[place];
+    }
+
+    /**
+     * Gets the y-displacement of a body
+     *
+     * @param place the place of the body in the tree order
+     * @return the y-displacement in meters
+     */
+    public double getYDisplacement(int place){
+        return yDisplacements[place];
+    }
+
+    /**
+     * Gets the gravitational parameter of a body
+     *
+     * @param place the place of the body in the tree order
+     * @return the gravitational parameter
+     */
+    public double getGravitationalParameter(int place){
+        return gravitationalParameters[place];
+    }
+}
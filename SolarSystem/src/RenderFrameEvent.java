@@ -0,0 +1,30 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Defines a render frame event as a flight recorder event for one frame of the simulation window, which takes in the
+ * steps taken for the frame and drawing the bodies, but not the wait after it. A frame can be drawn every millisecond,
+ * so by default only frames over a millisecond are recorded, and none of them take a stack trace.
+ */
+@Name("SolarSystem.RenderFrame")
+@Label("Render Frame")
+@Description("One frame of the simulation window")
+@Threshold("1 ms")
+@StackTrace(false)
+public class RenderFrameEvent extends SimulationEvent {
+    @Label("Steps")
+    int steps;
+
+    /**
+     * Fills in the number of steps taken for the frame
+     *
+     * @param steps the number of steps
+     * @return None
+     */
+    public void setSteps(int steps){
+        this.steps = steps;
+    }
+}
@@ -0,0 +1,413 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Defines a scenario generator as a recipe for a large solar system: a sun at the origin, single bodies on circular
+ * orbits around it, and groups of bodies made from a template, either belts around the sun with a chosen spread of
+ * distances and eccentricities or rings around one of the single bodies. Every body is given the velocity of its orbit
+ * around the body it is generated around, so the system starts out close to how it would settle. The bodies are worked
+ * out one at a time as they are written, so a solar system far bigger than the heap can be written to a csv file or a
+ * snapshot. Each group has its own random numbers made from the seed, so the same seed always writes the same bodies
+ * whichever format they are written in. Operations include adding belts, ringed planets, and a companion star, and
+ * writing the solar system to a csv file or a snapshot.
+ */
+public class ScenarioGenerator {
+    private static final String SUN_NAME = "Sun";
+    private static final double SUN_RADIUS = 50;
+    private static final String SUN_IMAGE_PATH = "Images/sun.png";
+    private static final double SUN_LUMINOSITY = 1000;
+    // every group's seed is the scenario's seed mixed with the group's number by this odd constant, so groups that
+    // are next to each other don't get random numbers that are related
+    private static final long SEED_MIXER = 0x9E3779B97F4A7C15L;
+    // the csv file is written through a buffer this big, since each line is only about a hundred bytes
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final double sunMass;
+    private final long seed;
+
+    // the single bodies, each on a circular orbit around the sun at an angle picked from the seed
+    private final ArrayList<String> singleNames;
+    private final ArrayList<Double> singleMasses;
+    private final ArrayList<Double> singleRadii;
+    private final ArrayList<String> singleImagePaths;
+    private final ArrayList<Integer> singleDisplayPriorities;
+    private final ArrayList<String> singleTypes;
+    private final ArrayList<Double> singleOrbitRadii;
+
+    // the groups of bodies, each around the sun or around one of the single bodies
+    private final ArrayList<BodyTemplate> groupTemplates;
+    private final ArrayList<Integer> groupSizes;
+    // the single body each group is around, or -1 for the sun
+    private final ArrayList<Integer> groupHosts;
+    private final ArrayList<Double> groupInnerRadii;
+    private final ArrayList<Double> groupOuterRadii;
+    // the surface density of each group falls off with this power of the distance, 0 spreads the bodies evenly over
+    // the area of the group and 1 spreads them evenly over the distance
+    private final ArrayList<Double> groupDensityPowers;
+    private final ArrayList<Double> groupMaximumEccentricities;
+
+    // where the single bodies are once they have been placed
+    private double[] singleXDisplacements;
+    private double[] singleYDisplacements;
+    private double[] singleXVelocities;
+    private double[] singleYVelocities;
+
+    /**
+     * Creates a new scenario generator with only a sun
+     *
+     * @param sunMass the mass of the sun
+     * @param seed the seed of the random numbers, the same seed always writes the same bodies
+     * @return None
+     */
+    public ScenarioGenerator(double sunMass, long seed){
+        this.sunMass = sunMass;
+        this.seed = seed;
+        singleNames = new ArrayList<>();
+        singleMasses = new ArrayList<>();
+        singleRadii = new ArrayList<>();
+        singleImagePaths = new ArrayList<>();
+        singleDisplayPriorities = new ArrayList<>();
+        singleTypes = new ArrayList<>();
+        singleOrbitRadii = new ArrayList<>();
+        groupTemplates = new ArrayList<>();
+        groupSizes = new ArrayList<>();
+        groupHosts = new ArrayList<>();
+        groupInnerRadii = new ArrayList<>();
+        groupOuterRadii = new ArrayList<>();
+        groupDensityPowers = new ArrayList<>();
+        groupMaximumEccentricities = new ArrayList<>();
+    }
+
+    /**
+     * Adds a belt of bodies around the sun. Each body's semi-major axis is picked so that the surface density of the
+     * belt falls off with a power of the distance, and its eccentricity is picked evenly up to a maximum, with the
+     * direction of its closest approach and where it is along its orbit picked at random
+     *
+     * @param template the template each body of the belt is made from
+     * @param numberOfBodies the number of bodies in the belt
+     * @param innerRadiusMeters the smallest semi-major axis
+     * @param outerRadiusMeters the greatest semi-major axis
+     * @param densityPower the power of the distance the surface density falls off with, 0 for an even spread over the
+     * belt's area
+     * @param maximumEccentricity the greatest eccentricity, 0 for circular orbits, at most 0.99
+     * @return None
+     */
+    public void addBelt(BodyTemplate template, int numberOfBodies, double innerRadiusMeters, double outerRadiusMeters,
+                        double densityPower, double maximumEccentricity){
+        addGroup(template, numberOfBodies, -1, innerRadiusMeters, outerRadiusMeters, densityPower,
+                maximumEccentricity);
+    }
+
+    /**
+     * Adds a planet on a circular orbit around the sun along with a ring of bodies on circular orbits around the
+     * planet. The ring should be well inside the planet's Hill sphere, or the sun pulls the ring apart
+     *
+     * @param name the name of the planet
+     * @param mass the mass of the planet
+     * @param radius the radius of the planet
+     * @param imagePath the image path of the planet
+     * @param orbitRadiusMeters the distance of the planet from the sun
+     * @param ringTemplate the template each body of the ring is made from
+     * @param numberOfRingBodies the number of bodies in the ring, 0 for a planet without a ring
+     * @param innerRingRadiusMeters the distance of the inner edge of the ring from the planet
+     * @param outerRingRadiusMeters the distance of the outer edge of the ring from the planet
+     * @return None
+     */
+    public void addRingedPlanet(String name, double mass, double radius, String imagePath, double orbitRadiusMeters,
+                                BodyTemplate ringTemplate, int numberOfRingBodies, double innerRingRadiusMeters,
+                                double outerRingRadiusMeters){
+        addSingle(name, mass, radius, imagePath, 1, "Ringed", orbitRadiusMeters);
+        if (numberOfRingBodies > 0){
+            addGroup(ringTemplate, numberOfRingBodies, singleNames.size() - 1, innerRingRadiusMeters,
+                    outerRingRadiusMeters, 0, 0);
+        }
+    }
+
+    /**
+     * Adds a second star on a circular orbit around the sun, which makes the solar system a binary star. Only planets
+     * move in a solar system, so the second star is written as a planet of type Star
+     *
+     * @param name the name of the star
+     * @param mass the mass of the star
+     * @param radius the radius of the star
+     * @param orbitRadiusMeters the distance of the star from the sun
+     * @return None
+     */
+    public void addCompanionStar(String name, double mass, double radius, double orbitRadiusMeters){
+        addSingle(name, mass, radius, SUN_IMAGE_PATH, 0, "Star", orbitRadiusMeters);
+    }
+
+    /**
+     * Adds a single body on a circular orbit around the sun
+     *
+     * @param name the name of the body
+     * @param mass the mass of the body
+     * @param radius the radius of the body
+     * @param imagePath the image path of the body
+     * @param displayPriority the display priority of the body
+     * @param type the type of the body
+     * @param orbitRadiusMeters the distance of the body from the sun
+     * @return None
+     */
+    private void addSingle(String name, double mass, double radius, String imagePath, int displayPriority,
+                           String type, double orbitRadiusMeters){
+        singleNames.add(name);
+        singleMasses.add(Math.max(0, mass));
+        singleRadii.add(Math.max(0, radius));
+        singleImagePaths.add(imagePath);
+        singleDisplayPriorities.add(displayPriority);
+        singleTypes.add(type);
+        singleOrbitRadii.add(Math.max(0, orbitRadiusMeters));
+    }
+
+    /**
+     * Adds a group of bodies made from a template
+     *
+     * @param template the template each body is made from
+     * @param numberOfBodies the number of bodies
+     * @param host the single body the group is around, or -1 for the sun
+     * @param innerRadiusMeters the smallest semi-major axis
+     * @param outerRadiusMeters the greatest semi-major axis
+     * @param densityPower the power of the distance the surface density falls off with
+     * @param maximumEccentricity the greatest eccentricity
+     * @return None
+     */
+    private void addGroup(BodyTemplate template, int numberOfBodies, int host, double innerRadiusMeters,
+                          double outerRadiusMeters, double densityPower, double maximumEccentricity){
+        // the inner radius can't be 0 since the bodies would start inside what they orbit
+        double innerRadius = Math.max(Double.MIN_NORMAL, Math.min(innerRadiusMeters, outerRadiusMeters));
+
+        groupTemplates.add(template);
+        groupSizes.add(Math.max(0, numberOfBodies));
+        groupHosts.add(host);
+        groupInnerRadii.add(innerRadius);
+        groupOuterRadii.add(Math.max(innerRadius, outerRadiusMeters));
+        groupDensityPowers.add(densityPower);
+        // an orbit with an eccentricity of 1 or more never comes back
+        groupMaximumEccentricities.add(Math.max(0, Math.min(0.99, maximumEccentricity)));
+    }
+
+    /**
+     * Gets the number of celestial bodies that will be written, counting the sun
+     *
+     * @return the number of celestial bodies
+     */
+    public long getNumberOfCelestialBodies(){
+        long numberOfBodies = 1 + singleNames.size();
+        for (int size : groupSizes){
+            numberOfBodies += size;
+        }
+
+        return numberOfBodies;
+    }
+
+    /**
+     * Writes the solar system to a csv file in the format loadSolarSystem reads
+     *
+     * @param filePath the file path to write to
+     * @return whether the file was written
+     */
+    public boolean writeCsv(String filePath){
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(filePath, false), WRITE_BUFFER_BYTES)){
+            generate(out, null);
+            return true;
+        } catch (IOException iox){
+            System.out.println("Error writing generated solar system!");
+            return false;
+        }
+    }
+
+    /**
+     * Writes the solar system to a snapshot file in the format of a checkpoint, which keeps every double exactly
+     *
+     * @param filePath the file path to write to
+     * @return whether the file was written
+     */
+    public boolean writeSnapshot(String filePath){
+        // a snapshot only has room for an int of celestial bodies
+        if (getNumberOfCelestialBodies() > Integer.MAX_VALUE){
+            System.out.println("Error too many bodies for a snapshot!");
+            return false;
+        }
+
+        try (FileOutputStream file = new FileOutputStream(filePath, false)){
+            CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, WRITE_BUFFER_BYTES));
+
+            // a generated solar system starts with the settings of a new solar system
+            SolarSystemSnapshot.writeHeader(out, 0, 0, 0, Integrator.SEMI_IMPLICIT_EULER, 0, 1, false,
+                    new DirectSumForceEngine(), (int) getNumberOfCelestialBodies());
+            generate(null, out);
+            // a generated solar system has no asteroid belts, and the checksum must be taken after everything else
+            // has gone through the checked stream
+            out.writeInt(0);
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            return true;
+        } catch (IOException iox){
+            System.out.println("Error writing generated solar system!");
+            return false;
+        }
+    }
+
+    /**
+     * Works out every body in turn and writes it as soon as it is worked out
+     *
+     * @param csvOut the csv file to write to, or null
+     * @param snapshotOut the snapshot to write to, or null
+     * @return None
+     * @throws IOException if a body could not be written
+     */
+    private void generate(BufferedWriter csvOut, DataOutputStream snapshotOut) throws IOException {
+        double sunGravitationalParameter = SolarSystem.GRAVITATION_CONSTANT * sunMass;
+
+        if (csvOut != null){
+            csvOut.write("Sun," + SUN_NAME + "," + sunMass + "," + SUN_RADIUS + "," + SUN_IMAGE_PATH + ",0,0.0,0.0," +
+                    SUN_LUMINOSITY);
+            csvOut.newLine();
+        } else {
+            SolarSystemSnapshot.writeSun(snapshotOut, SUN_NAME, sunMass, SUN_RADIUS, SUN_IMAGE_PATH, 0, 0, 0,
+                    SUN_LUMINOSITY);
+        }
+
+        int numberOfSingles = singleNames.size();
+        singleXDisplacements = new double[numberOfSingles];
+        singleYDisplacements = new double[numberOfSingles];
+        singleXVelocities = new double[numberOfSingles];
+        singleYVelocities = new double[numberOfSingles];
+        Random random = new Random(seed);
+        double[] orbit = new double[4];
+
+        for (int i = 0; i < numberOfSingles; i++){
+            double orbitRadius = singleOrbitRadii.get(i);
+            placeOnOrbit(sunGravitationalParameter, orbitRadius, 0, 0, 2 * Math.PI * random.nextDouble(), orbit);
+            singleXDisplacements[i] = orbit[0];
+            singleYDisplacements[i] = orbit[1];
+            singleXVelocities[i] = orbit[2];
+            singleYVelocities[i] = orbit[3];
+
+            writePlanet(csvOut, snapshotOut, singleNames.get(i), singleMasses.get(i), singleRadii.get(i),
+                    singleImagePaths.get(i), singleDisplayPriorities.get(i), orbit[0], orbit[1], singleTypes.get(i),
+                    orbit[2], orbit[3]);
+        }
+
+        for (int group = 0; group < groupTemplates.size(); group++){
+            BodyTemplate template = groupTemplates.get(group);
+            int host = groupHosts.get(group);
+            double hostGravitationalParameter = host == -1 ? sunGravitationalParameter :
+                    SolarSystem.GRAVITATION_CONSTANT * singleMasses.get(host);
+            double hostX = host == -1 ? 0 : singleXDisplacements[host];
+            double hostY = host == -1 ? 0 : singleYDisplacements[host];
+            double hostXVelocity = host == -1 ? 0 : singleXVelocities[host];
+            double hostYVelocity = host == -1 ? 0 : singleYVelocities[host];
+            double innerRadius = groupInnerRadii.get(group);
+            double outerRadius = groupOuterRadii.get(group);
+            double densityPower = groupDensityPowers.get(group);
+            double maximumEccentricity = groupMaximumEccentricities.get(group);
+            Random groupRandom = new Random(seed ^ (group + 1) * SEED_MIXER);
+
+            for (int body = 0; body < groupSizes.get(group); body++){
+                double semiMajorAxis = pickSemiMajorAxis(innerRadius, outerRadius, densityPower,
+                        groupRandom.nextDouble());
+                double eccentricity = maximumEccentricity * groupRandom.nextDouble();
+                double periapsisAngle = 2 * Math.PI * groupRandom.nextDouble();
+                double trueAnomaly = 2 * Math.PI * groupRandom.nextDouble();
+                placeOnOrbit(hostGravitationalParameter, semiMajorAxis, eccentricity, periapsisAngle, trueAnomaly,
+                        orbit);
+
+                writePlanet(csvOut, snapshotOut, template.getBodyName(body), template.getMass(),
+                        template.getRadius(), template.getImagePath(), template.getDisplayPriority(),
+                        hostX + orbit[0], hostY + orbit[1], template.getType(), hostXVelocity + orbit[2],
+                        hostYVelocity + orbit[3]);
+            }
+        }
+    }
+
+    /**
+     * Picks a semi-major axis so that the surface density falls off with a power of the distance, by turning an even
+     * random number into the distance with that much of the group inside of it
+     *
+     * @param innerRadius the smallest semi-major axis
+     * @param outerRadius the greatest semi-major axis
+     * @param densityPower the power of the distance the surface density falls off with
+     * @param fraction an even random number from 0 to 1
+     * @return the semi-major axis
+     */
+    private static double pickSemiMajorAxis(double innerRadius, double outerRadius, double densityPower,
+                                            double fraction){
+        // the number of bodies within r grows with r^(2 - p), which is the logarithm of r when p is 2
+        double exponent = 2 - densityPower;
+        if (Math.abs(exponent) < 1e-9){
+            return innerRadius * Math.pow(outerRadius / innerRadius, fraction);
+        }
+
+        double innerPower = Math.pow(innerRadius, exponent);
+        return Math.pow(innerPower + fraction * (Math.pow(outerRadius, exponent) - innerPower), 1 / exponent);
+    }
+
+    /**
+     * Works out the displacement and velocity of a body on an orbit, relative to what it orbits, going anticlockwise
+     *
+     * @param gravitationalParameter the gravitational parameter of what the body orbits
+     * @param semiMajorAxis the semi-major axis of the orbit
+     * @param eccentricity the eccentricity of the orbit
+     * @param periapsisAngle the angle of the closest approach from the x-axis
+     * @param trueAnomaly the angle of the body from its closest approach
+     * @param orbit an array the x and y-displacement and the x and y-velocity are put in
+     * @return None
+     */
+    private static void placeOnOrbit(double gravitationalParameter, double semiMajorAxis, double eccentricity,
+                                     double periapsisAngle, double trueAnomaly, double[] orbit){
+        double semiLatusRectum = semiMajorAxis * (1 - eccentricity * eccentricity);
+        double distance = semiLatusRectum / (1 + eccentricity * Math.cos(trueAnomaly));
+        double angle = periapsisAngle + trueAnomaly;
+        // the speed along the orbit splits into a part away from what the body orbits and a part across it
+        double speedScale = semiLatusRectum > 0 ? Math.sqrt(gravitationalParameter / semiLatusRectum) : 0;
+        double radialSpeed = speedScale * eccentricity * Math.sin(trueAnomaly);
+        double crossSpeed = speedScale * (1 + eccentricity * Math.cos(trueAnomaly));
+        double cosine = Math.cos(angle);
+        double sine = Math.sin(angle);
+
+        orbit[0] = distance * cosine;
+        orbit[1] = distance * sine;
+        orbit[2] = radialSpeed * cosine - crossSpeed * sine;
+        orbit[3] = radialSpeed * sine + crossSpeed * cosine;
+    }
+
+    /**
+     * Writes a planet to whichever of the outputs is being written
+     *
+     * @param csvOut the csv file to write to, or null
+     * @param snapshotOut the snapshot to write to, or null
+     * @param name the name of the planet
+     * @param mass the mass of the planet
+     * @param radius the radius of the planet
+     * @param imagePath the image path of the planet
+     * @param displayPriority the display priority of the planet
+     * @param xDisplacement the x-displacement of the planet
+     * @param yDisplacement the y-displacement of the planet
+     * @param type the type of the planet
+     * @param xVelocity the x-velocity of the planet
+     * @param yVelocity the y-velocity of the planet
+     * @return None
+     * @throws IOException if the planet could not be written
+     */
+    private static void writePlanet(BufferedWriter csvOut, DataOutputStream snapshotOut, String name, double mass,
+                                    double radius, String imagePath, int displayPriority, double xDisplacement,
+                                    double yDisplacement, String type, double xVelocity, double yVelocity)
+            throws IOException {
+        if (csvOut != null){
+            // the same format saveSolarSystem writes
+            csvOut.write("Planet," + name + "," + mass + "," + radius + "," + imagePath + "," + displayPriority + "," +
+                    xDisplacement + "," + yDisplacement + "," + type + "," + xVelocity + "," + yVelocity);
+            csvOut.newLine();
+        } else {
+            SolarSystemSnapshot.writePlanet(snapshotOut, name, mass, radius, imagePath, displayPriority,
+                    xDisplacement, yDisplacement, type, xVelocity, yVelocity);
+        }
+    }
+}
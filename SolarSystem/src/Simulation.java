@@ -1,6 +1,12 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Defines a simulation as a JFrame with an ArrayList of JLabels containing images to display, a speed, distanceScale,
@@ -27,6 +33,37 @@ public class Simulation {
     // this is a speed determined experimentally for the main solar system for the project submission
     private static final double DEFAULT_SPEED = 10;
     private static final double DEFAULT_SCALE = 1;
+    // the height in pixels of the slider used to scrub through a replay
+    private static final int REPLAY_SLIDER_HEIGHT = 30;
+
+    // the replay fields are changed by the Swing event thread when the user presses a key or drags the slider, and
+    // read by the thread playing the replay, so they are volatile
+    // how many times faster than the recorded speed the replay is played, a negative rate plays it backwards
+    private volatile double replayRate;
+    private volatile boolean replayPaused;
+    // the frame the user scrubbed to with the slider, or -1 if they have not scrubbed since it was last taken
+    private volatile int requestedReplayFrame;
+    // only exists while a replay is being displayed
+    private JSlider replaySlider;
+    private JLabel replayTimeLabel;
+    // the keys bound to the replay controls, so the bindings can be removed once the replay is over
+    private ArrayList<KeyStroke> replayKeyStrokes;
+
+    // asteroids are drawn as single pixels on an image instead of each having a label, there can be millions of them.
+    // One image is drawn on while the other is displayed, and they are swapped when drawing is done
+    private static final int ASTEROID_COLOUR = 0xFFB4B4B4;
+    // only exists while a simulation with asteroids is being displayed
+    private JLabel asteroidLabel;
+    private BufferedImage displayedAsteroidImage;
+    private BufferedImage drawnAsteroidImage;
+    // the pixels of drawnAsteroidImage, written to directly since setting pixels one at a time through the image is slow
+    private int[] asteroidPixels;
+
+    // the pixel the user last clicked, set by the Swing event thread and taken by the thread running the simulation.
+    // Both coordinates are packed into one long so that they are always read together, NO_CLICK means there has been
+    // no click since it was last taken
+    private static final long NO_CLICK = -1;
+    private volatile long clickedPixel = NO_CLICK;
 
     /**
      * Creates a new Simulation
@@ -78,6 +115,34 @@ public class Simulation {
         distanceScale = (furthestDisplacement * 2) / smallest;
     }
 
+    /**
+     * Recalculates the distance scale if an object has moved off the frame, or if every object has moved so far in
+     * that it would still fit with the buffer around it twice over. Rescaling only in those cases keeps the scale from
+     * changing every time the frame is updated
+     *
+     * @param xExtent the greatest distance from the center along the x-axis, in meters, of an object being displayed
+     * @param yExtent the greatest distance from the center along the y-axis, in meters, of an object being displayed
+     * @param scaleBuffer how many times further out than the furthest object the edge of the frame is put
+     * @return true if the distance scale was changed, false otherwise
+     */
+    public boolean rescaleToFit(double xExtent, double yExtent, double scaleBuffer){
+        // the scale that would put the furthest object exactly on the edge of the frame, each axis is checked
+        // separately so a rectangular frame is filled on its longer side as well
+        double tightestScale = Math.max((xExtent * 2) / frame.getWidth(), (yExtent * 2) / frame.getHeight());
+
+        // if everything is at the center there is nothing to fit
+        if (tightestScale == 0){
+            return false;
+        }
+
+        if (tightestScale > distanceScale || tightestScale * scaleBuffer * 2 < distanceScale){
+            distanceScale = tightestScale * scaleBuffer;
+            return true;
+        }
+
+        return false;
+    }
+
     /**
      * Calculates the (square) dimensions that an image should have, linearly scaling given the greatest and smallest
      * object dimensions
@@ -139,6 +204,45 @@ public class Simulation {
         return middle - distanceFromCenter;
     }
 
+    /**
+     * Converts a pixel in the x direction to a distance, the reverse of xDistanceToPixels
+     *
+     * @param pixel the x position of the pixel in the frame
+     * @return the distance in meters from the center
+     */
+    public double xPixelsToDistance(int pixel){
+        return (pixel - frame.getWidth() / 2) * distanceScale;
+    }
+
+    /**
+     * Converts a pixel in the y direction to a distance, the reverse of yDistanceToPixels
+     *
+     * @param pixel the y position of the pixel in the frame
+     * @return the distance in meters from the center
+     */
+    public double yPixelsToDistance(int pixel){
+        // y = 0 is the top of the frame, but the bottom for distances
+        return (frame.getHeight() / 2 - pixel) * distanceScale;
+    }
+
+    /**
+     * Takes the position the user last clicked, so that each click is only acted on once. The pixel is converted with
+     * the scale at the time it is taken, which is the scale the bodies were last drawn with
+     *
+     * @return the x and y displacement in meters of the click, or null if the user has not clicked since this was last
+     * called
+     */
+    public double[] takeClickedDisplacement(){
+        long pixel = clickedPixel;
+        clickedPixel = NO_CLICK;
+
+        if (pixel == NO_CLICK){
+            return null;
+        }
+
+        return new double[] {xPixelsToDistance((int) (pixel >> 32)), yPixelsToDistance((int) pixel)};
+    }
+
     /**
      * Gets the speed of the simulation
      *
@@ -265,6 +369,212 @@ public class Simulation {
     public void resetLabelsAndFrame(){
         labels = new ArrayList<>();
         frame.getContentPane().removeAll();
+        removeReplayKeyBindings();
+        replaySlider = null;
+        replayTimeLabel = null;
+        asteroidLabel = null;
+    }
+
+    /**
+     * Adds an image covering the frame that asteroids are drawn on, behind every label
+     *
+     * @return None
+     */
+    public void addAsteroidLayer(){
+        displayedAsteroidImage = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        drawnAsteroidImage = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        asteroidPixels = ((DataBufferInt) drawnAsteroidImage.getRaster().getDataBuffer()).getData();
+
+        asteroidLabel = new JLabel(new ImageIcon(displayedAsteroidImage));
+        asteroidLabel.setBounds(0, 0, frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * Clears the asteroid image before the asteroids are drawn in their new positions
+     *
+     * @return None
+     */
+    public void clearAsteroids(){
+        if (asteroidLabel != null){
+            // 0 is a fully transparent pixel
+            Arrays.fill(asteroidPixels, 0);
+        }
+    }
+
+    /**
+     * Draws an asteroid as a single pixel, asteroids off the frame are not drawn
+     *
+     * @param xDisplacement the x-displacement in meters of the asteroid
+     * @param yDisplacement the y-displacement in meters of the asteroid
+     * @return None
+     */
+    public void drawAsteroid(double xDisplacement, double yDisplacement){
+        int x = xDistanceToPixels(xDisplacement);
+        int y = yDistanceToPixels(yDisplacement);
+        int width = drawnAsteroidImage.getWidth();
+
+        if (0 <= x && x < width && 0 <= y && y < drawnAsteroidImage.getHeight()){
+            asteroidPixels[y * width + x] = ASTEROID_COLOUR;
+        }
+    }
+
+    /**
+     * Displays the asteroids that have been drawn since clearAsteroids was last called
+     *
+     * @return None
+     */
+    public void showAsteroids(){
+        if (asteroidLabel == null){
+            return;
+        }
+
+        BufferedImage drawn = drawnAsteroidImage;
+        drawnAsteroidImage = displayedAsteroidImage;
+        displayedAsteroidImage = drawn;
+        asteroidPixels = ((DataBufferInt) drawnAsteroidImage.getRaster().getDataBuffer()).getData();
+
+        // Swing components should only be changed on the event thread
+        JLabel label = asteroidLabel;
+        SwingUtilities.invokeLater(() -> label.setIcon(new ImageIcon(drawn)));
+    }
+
+    /**
+     * Adds the controls for playing a replay to the simulation: a slider to scrub through the frames, the space bar to
+     * pause, the left and right arrow keys to play backwards and forwards, and the up and down arrow keys to double or
+     * halve the speed
+     *
+     * @param numberOfFrames the number of frames in the replay
+     * @return None
+     */
+    public void addReplayControls(int numberOfFrames){
+        replayRate = 1;
+        replayPaused = false;
+        requestedReplayFrame = -1;
+
+        replaySlider = new JSlider(0, Math.max(0, numberOfFrames - 1), 0);
+        replaySlider.setOpaque(false);
+        // the slider is placed along the bottom of the frame, leaving room for the title bar and window border
+        replaySlider.setBounds(10, frame.getHeight() - 2 * REPLAY_SLIDER_HEIGHT - 20, frame.getWidth() - 40,
+                REPLAY_SLIDER_HEIGHT);
+        replaySlider.addChangeListener(e -> {
+            // only a change made by the user dragging the slider is a request to jump, changes made by
+            // setReplayPosition are not
+            if (replaySlider.getValueIsAdjusting()){
+                requestedReplayFrame = replaySlider.getValue();
+            }
+        });
+        // the slider should not take the arrow keys away from the key bindings below
+        replaySlider.setFocusable(false);
+
+        replayTimeLabel = new JLabel();
+        replayTimeLabel.setForeground(Color.WHITE);
+        replayTimeLabel.setBounds(10, frame.getHeight() - 3 * REPLAY_SLIDER_HEIGHT - 20, frame.getWidth() - 40,
+                REPLAY_SLIDER_HEIGHT);
+
+        // key bindings work no matter which component in the window has focus
+        replayKeyStrokes = new ArrayList<>();
+        bindReplayKey("SPACE", "replayPause", () -> replayPaused = !replayPaused);
+        bindReplayKey("LEFT", "replayBackwards", () -> replayRate = -Math.abs(replayRate));
+        bindReplayKey("RIGHT", "replayForwards", () -> replayRate = Math.abs(replayRate));
+        bindReplayKey("UP", "replayFaster", () -> replayRate *= 2);
+        bindReplayKey("DOWN", "replaySlower", () -> replayRate /= 2);
+    }
+
+    /**
+     * Binds a key to a replay control for as long as the replay is shown
+     *
+     * @param key the key, as KeyStroke.getKeyStroke names it
+     * @param actionName the name the control is bound under
+     * @param control what pressing the key does
+     * @return None
+     */
+    private void bindReplayKey(String key, String actionName, Runnable control){
+        JRootPane rootPane = frame.getRootPane();
+        KeyStroke keyStroke = KeyStroke.getKeyStroke(key);
+
+        rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(keyStroke, actionName);
+        rootPane.getActionMap().put(actionName, new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                control.run();
+            }
+        });
+        replayKeyStrokes.add(keyStroke);
+    }
+
+    /**
+     * Removes the replay key bindings, if there are any
+     *
+     * @return None
+     */
+    private void removeReplayKeyBindings(){
+        // the bindings are on the root pane, which is kept when the frame is reset, so without this the arrow keys
+        // and space bar would still change a replay that is no longer being shown
+        if (replayKeyStrokes != null){
+            JRootPane rootPane = frame.getRootPane();
+            InputMap inputMap = rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+            for (KeyStroke keyStroke : replayKeyStrokes){
+                rootPane.getActionMap().remove(inputMap.get(keyStroke));
+                inputMap.remove(keyStroke);
+            }
+            replayKeyStrokes = null;
+        }
+    }
+
+    /**
+     * Gets how many times faster than the recorded speed the replay should be played
+     *
+     * @return the replay rate, negative if the replay should be played backwards
+     */
+    public double getReplayRate(){
+        return replayRate;
+    }
+
+    /**
+     * Checks whether the user has paused the replay
+     *
+     * @return whether the replay is paused
+     */
+    public boolean isReplayPaused(){
+        return replayPaused;
+    }
+
+    /**
+     * Takes the frame the user scrubbed to, so that each scrub is only acted on once
+     *
+     * @return the frame the user scrubbed to, or -1 if they have not scrubbed since this was last called
+     */
+    public int takeRequestedReplayFrame(){
+        int frameNumber = requestedReplayFrame;
+        requestedReplayFrame = -1;
+        return frameNumber;
+    }
+
+    /**
+     * Shows the frame being displayed on the replay slider along with its simulated time
+     *
+     * @param frameNumber the number of the frame being displayed
+     * @param timeSeconds the simulated time of the frame in seconds
+     * @return None
+     */
+    public void setReplayPosition(int frameNumber, double timeSeconds){
+        if (replaySlider == null){
+            return;
+        }
+
+        String text = String.format("t = %.2f s   speed x%s%s", timeSeconds, replayRate,
+                replayPaused ? "   (paused)" : "");
+
+        // Swing components should only be changed on the event thread
+        SwingUtilities.invokeLater(() -> {
+            // don't move the slider out from under the user while they are dragging it
+            if (replaySlider != null && !replaySlider.getValueIsAdjusting()){
+                replaySlider.setValue(frameNumber);
+            }
+            if (replayTimeLabel != null){
+                replayTimeLabel.setText(text);
+            }
+        });
     }
 
     /**
@@ -282,6 +592,18 @@ public class Simulation {
             allLabels.add(label, JLayeredPane.DEFAULT_LAYER);
         }
 
+        // labels added earlier in the same layer are displayed on top, so the asteroids are added after every
+        // celestial body and before the background
+        if (asteroidLabel != null){
+            allLabels.add(asteroidLabel, JLayeredPane.DEFAULT_LAYER);
+        }
+
+        // the replay controls go on a higher layer so the celestial bodies never cover them
+        if (replaySlider != null){
+            allLabels.add(replaySlider, JLayeredPane.PALETTE_LAYER);
+            allLabels.add(replayTimeLabel, JLayeredPane.PALETTE_LAYER);
+        }
+
         // adds the background from the BACKGROUND_IMAGE_PATH last so that it will be behind all other JLabels
         JLabel background = new JLabel();
         // the size of the background will be the size of the frame
@@ -293,8 +615,18 @@ public class Simulation {
 
         allLabels.setBounds(0,0,frame.getWidth(),frame.getHeight());
 
+        // the labels have no listeners of their own, so clicks anywhere on the simulation reach the layered pane
+        allLabels.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                clickedPixel = (long) e.getX() << 32 | (e.getY() & 0xFFFFFFFFL);
+            }
+        });
+
         // adds all the JLayeredPane with all the JLabels to the frame
         frame.add(allLabels);
+        // the frame may already be showing if the labels were reset while the simulation ran
+        frame.revalidate();
+        frame.repaint();
 
         // makes it so that the frame appears in a window for the user to view
         frame.setVisible(true);
@@ -0,0 +1,41 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Defines a simulation event as a JDK Flight Recorder event for one phase of the simulation, so a recording shows the
+ * simulation's own phases next to garbage collections and method samples. Every event carries the number of bodies
+ * involved and the name of whatever found the pulls between them. An event is begun before the phase and only filled
+ * in and committed if the recording wants it, so with no recording running, or with the event turned off, the
+ * allocation is optimized away and nothing is looked up. Operations include filling in the body count and engine name.
+ */
+@Category("Solar System")
+public abstract class SimulationEvent extends Event {
+    @Label("Body Count")
+    int bodyCount;
+
+    @Label("Force Engine")
+    String forceEngine;
+
+    /**
+     * Fills in the number of bodies and the name of whatever found the pulls between them
+     *
+     * @param bodyCount the number of bodies involved
+     * @param forceEngine the name of the force engine
+     * @return None
+     */
+    public void describe(int bodyCount, String forceEngine){
+        this.bodyCount = bodyCount;
+        this.forceEngine = forceEngine;
+    }
+
+    /**
+     * Fills in every body of a solar system, asteroids included, and the name of whatever finds the pulls between them
+     *
+     * @param solarSystem the solar system
+     * @return None
+     */
+    public void describe(SolarSystem solarSystem){
+        describe(solarSystem.getNumberOfBodies(), solarSystem.getForceEngineInUseName());
+    }
+}
@@ -0,0 +1,398 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Defines simulation metrics as the live counters and controls of a running simulation that are registered with the
+ * platform MBean server, so the simulation can be watched and steered over JMX. Only the thread running the simulation
+ * writes the counters, each into its own volatile field, so a JMX client reads them without any lock and the
+ * simulation never waits on a client. The rates are averaged over windows of about a second, so the simulation only
+ * works them out once a second rather than every step. Requests from a client are left in atomic fields and taken by
+ * the simulation at the end of a frame or step, and edits to the celestial bodies are passed on to the solar system's
+ * edit queue. Operations include recording a step or a frame, starting and ending a run, reading the counters, and
+ * making and taking requests.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+    // the name the metrics are registered under, which is how a JMX client finds them
+    public static final String OBJECT_NAME = "SolarSystem:type=SimulationMetrics";
+    private static final long RATE_WINDOW_NANOSECONDS = 1_000_000_000L;
+    // a frame whose work takes longer than this, which is 30 frames per second, is counted as dropped since the
+    // window visibly stutters. The time the simulation sleeps between frames to keep to its speed doesn't count
+    private static final long DROPPED_FRAME_NANOSECONDS = 1_000_000_000L / 30;
+    // the slowest and fastest speeds a client can ask for, the slowest waits a second between frames
+    private static final double MINIMUM_SPEED = 0.001;
+    private static final double MAXIMUM_SPEED = Integer.MAX_VALUE;
+    // how long listing the celestial bodies waits for a step boundary, a single step of a huge solar system can take
+    // a few seconds
+    private static final long SNAPSHOT_WAIT_SECONDS = 10;
+
+    private volatile double stepsPerSecond;
+    private volatile double simulatedTimeSeconds;
+    private volatile long stepCount;
+    private volatile int numberOfBodies;
+    private volatile double forceMillisecondsPerStep;
+    private volatile double framesPerSecond;
+    private volatile long droppedFrames;
+    private volatile double energyDrift;
+    private volatile double speed;
+    private volatile boolean paused;
+
+    // the requests a client has made that the simulation hasn't taken yet, a requested speed of NO_SPEED means none
+    private static final long NO_SPEED = Double.doubleToRawLongBits(Double.NaN);
+    private final AtomicLong requestedSpeed;
+    private final AtomicBoolean checkpointRequested;
+    private final SolarSystemEditQueue solarSystemEdits;
+
+    // the windows the rates are averaged over, only used by the thread running the simulation
+    private long stepWindowStartNanoseconds;
+    private long stepsInWindow;
+    private long forceNanosecondsInWindow;
+    private long frameWindowStartNanoseconds;
+    private long framesInWindow;
+
+    /**
+     * Creates new simulation metrics with nothing running
+     *
+     * @param solarSystemEdits the queue edits to the running solar system are submitted to
+     * @return None
+     */
+    public SimulationMetrics(SolarSystemEditQueue solarSystemEdits){
+        this.solarSystemEdits = solarSystemEdits;
+        energyDrift = Double.NaN;
+        requestedSpeed = new AtomicLong(NO_SPEED);
+        checkpointRequested = new AtomicBoolean(false);
+    }
+
+    /**
+     * Starts the windows the rates are averaged over, called when a run starts
+     *
+     * @param solarSystem the solar system about to be run
+     * @param speed the speed of the simulation window
+     * @return None
+     */
+    public void startRun(SolarSystem solarSystem, double speed){
+        simulatedTimeSeconds = solarSystem.getSimulatedTimeSeconds();
+        stepCount = solarSystem.getStepCount();
+        numberOfBodies = solarSystem.getNumberOfBodies();
+        this.speed = speed;
+        long now = System.nanoTime();
+        stepWindowStartNanoseconds = now;
+        stepsInWindow = 0;
+        forceNanosecondsInWindow = 0;
+        frameWindowStartNanoseconds = now;
+        framesInWindow = 0;
+        droppedFrames = 0;
+    }
+
+    /**
+     * Sets the rates to 0, called when a run ends, since nothing is being stepped or drawn anymore
+     *
+     * @return None
+     */
+    public void endRun(){
+        stepsPerSecond = 0;
+        framesPerSecond = 0;
+    }
+
+    /**
+     * Records a step the solar system has just taken
+     *
+     * @param solarSystem the solar system
+     * @param conservationMonitor the conservation monitor that checked the step, or null if it is off
+     * @return None
+     */
+    public void recordStep(SolarSystem solarSystem, ConservationMonitor conservationMonitor){
+        simulatedTimeSeconds = solarSystem.getSimulatedTimeSeconds();
+        stepCount = solarSystem.getStepCount();
+        energyDrift = conservationMonitor == null ? Double.NaN : conservationMonitor.getEnergyDrift();
+
+        stepsInWindow++;
+        forceNanosecondsInWindow += solarSystem.getForceNanoseconds();
+
+        long now = System.nanoTime();
+        long windowNanoseconds = now - stepWindowStartNanoseconds;
+        if (windowNanoseconds >= RATE_WINDOW_NANOSECONDS){
+            stepsPerSecond = stepsInWindow * 1e9 / windowNanoseconds;
+            forceMillisecondsPerStep = forceNanosecondsInWindow / 1e6 / stepsInWindow;
+            // adding up the asteroids in every belt is cheap, but not something to do every step
+            numberOfBodies = solarSystem.getNumberOfBodies();
+
+            stepWindowStartNanoseconds = now;
+            stepsInWindow = 0;
+            forceNanosecondsInWindow = 0;
+        }
+    }
+
+    /**
+     * Records a frame the simulation window has just drawn
+     *
+     * @param frameNanoseconds the time the frame's steps and drawing took, not counting the wait after it
+     * @return None
+     */
+    public void recordFrame(long frameNanoseconds){
+        framesInWindow++;
+        if (frameNanoseconds > DROPPED_FRAME_NANOSECONDS){
+            droppedFrames++;
+        }
+
+        long now = System.nanoTime();
+        long windowNanoseconds = now - frameWindowStartNanoseconds;
+        if (windowNanoseconds >= RATE_WINDOW_NANOSECONDS){
+            framesPerSecond = framesInWindow * 1e9 / windowNanoseconds;
+            frameWindowStartNanoseconds = now;
+            framesInWindow = 0;
+        }
+    }
+
+    /**
+     * Takes the speed a client asked for, so that each request is only acted on once
+     *
+     * @return the requested speed, or NaN if none has been asked for since this was last called
+     */
+    public double takeRequestedSpeed(){
+        double taken = Double.longBitsToDouble(requestedSpeed.getAndSet(NO_SPEED));
+
+        if (!Double.isNaN(taken)){
+            speed = taken;
+        }
+        return taken;
+    }
+
+    /**
+     * Takes a client's request for a checkpoint, so that each request is only acted on once
+     *
+     * @return whether a checkpoint has been asked for since this was last called
+     */
+    public boolean takeCheckpointRequest(){
+        return checkpointRequested.getAndSet(false);
+    }
+
+    /**
+     * Gets the number of steps taken per second of real time, averaged over about the last second
+     *
+     * @return the steps per second, 0 when no simulation is running
+     */
+    @Override
+    public double getStepsPerSecond(){
+        return stepsPerSecond;
+    }
+
+    /**
+     * Gets the simulated time of the solar system after its last step
+     *
+     * @return the simulated time in seconds
+     */
+    @Override
+    public double getSimulatedTimeSeconds(){
+        return simulatedTimeSeconds;
+    }
+
+    /**
+     * Gets the step count of the solar system after its last step
+     *
+     * @return the step count
+     */
+    @Override
+    public long getStepCount(){
+        return stepCount;
+    }
+
+    /**
+     * Gets the number of bodies in the solar system, asteroids included, as of about the last second
+     *
+     * @return the number of bodies
+     */
+    @Override
+    public int getNumberOfBodies(){
+        return numberOfBodies;
+    }
+
+    /**
+     * Gets the time spent finding the pulls between the celestial bodies each step, averaged over about the last
+     * second
+     *
+     * @return the time in milliseconds
+     */
+    @Override
+    public double getForceMillisecondsPerStep(){
+        return forceMillisecondsPerStep;
+    }
+
+    /**
+     * Gets the number of frames drawn per second of real time, averaged over about the last second
+     *
+     * @return the frames per second, 0 when no simulation window is running
+     */
+    @Override
+    public double getFramesPerSecond(){
+        return framesPerSecond;
+    }
+
+    /**
+     * Gets the number of frames that took too long to draw since the simulation window was opened
+     *
+     * @return the number of dropped frames
+     */
+    @Override
+    public long getDroppedFrames(){
+        return droppedFrames;
+    }
+
+    /**
+     * Gets how far the energy has drifted from where it was when the run started, relative to it
+     *
+     * @return the relative drift, NaN when the conservation monitor is off
+     */
+    @Override
+    public double getEnergyDrift(){
+        return energyDrift;
+    }
+
+    /**
+     * Gets the speed of the simulation window
+     *
+     * @return the speed
+     */
+    @Override
+    public double getSpeed(){
+        return speed;
+    }
+
+    /**
+     * Checks whether the simulation is paused
+     *
+     * @return whether it is paused
+     */
+    @Override
+    public boolean isPaused(){
+        return paused;
+    }
+
+    /**
+     * Pauses the simulation, the window is still drawn but no steps are taken
+     *
+     * @return None
+     */
+    @Override
+    public void pause(){
+        paused = true;
+    }
+
+    /**
+     * Resumes the simulation after it was paused
+     *
+     * @return None
+     */
+    @Override
+    public void resume(){
+        paused = false;
+    }
+
+    /**
+     * Asks for the speed of the simulation window to be changed at the next frame
+     *
+     * @param speed the new speed, which is kept between a thousandth and the greatest number of steps a frame can take
+     * @return None
+     */
+    @Override
+    public void changeSpeed(double speed){
+        // NaN would be taken as no request, so it is treated as the slowest speed
+        double clampedSpeed = Double.isNaN(speed) ? MINIMUM_SPEED :
+                Math.max(MINIMUM_SPEED, Math.min(MAXIMUM_SPEED, speed));
+        requestedSpeed.set(Double.doubleToRawLongBits(clampedSpeed));
+    }
+
+    /**
+     * Asks for a checkpoint of the running simulation to be written after its current step, whether or not one is due
+     *
+     * @return None
+     */
+    @Override
+    public void checkpoint(){
+        checkpointRequested.set(true);
+    }
+
+    /**
+     * Adds a planet to the running simulation at its next step boundary
+     *
+     * @param name the name of the planet
+     * @param mass the mass of the planet
+     * @param radius the radius of the planet
+     * @param imagePath the image path for the planet
+     * @param displayPriority the display priority of the planet
+     * @param xDisplacement the x-displacement of the planet
+     * @param yDisplacement the y-displacement of the planet
+     * @param type the type of planet
+     * @param xVelocity the x-velocity of the planet
+     * @param yVelocity the y-velocity of the planet
+     * @return None
+     */
+    @Override
+    public void addPlanet(String name, double mass, double radius, String imagePath, int displayPriority,
+                          double xDisplacement, double yDisplacement, String type, double xVelocity,
+                          double yVelocity){
+        solarSystemEdits.submitAddPlanet(name, mass, radius, imagePath, displayPriority, xDisplacement, yDisplacement,
+                type, xVelocity, yVelocity);
+    }
+
+    /**
+     * Changes the mass of a celestial body in the running simulation at its next step boundary
+     *
+     * @param nameOrImagePath the name or image path of the celestial body
+     * @param mass the new mass
+     * @return None
+     */
+    @Override
+    public void setCelestialBodyMass(String nameOrImagePath, double mass){
+        solarSystemEdits.submitSetCelestialBodyMass(nameOrImagePath, mass);
+    }
+
+    /**
+     * Removes a celestial body from the running simulation at its next step boundary
+     *
+     * @param nameOrImagePath the name or image path of the celestial body
+     * @return None
+     */
+    @Override
+    public void removeCelestialBody(String nameOrImagePath){
+        solarSystemEdits.submitRemoveCelestialBody(nameOrImagePath);
+    }
+
+    /**
+     * Lists the celestial bodies of the running simulation as they were at its next step boundary, after any edits
+     * waiting then. This is the one operation that waits on the simulation, since it needs a step to finish
+     *
+     * @return a line for each celestial body with its name, mass, displacement, and velocity, or a single line saying
+     * why there are none
+     */
+    @Override
+    public String[] listCelestialBodies(){
+        SolarSystemSnapshot snapshot;
+        try {
+            snapshot = solarSystemEdits.requestSnapshot().get(SNAPSHOT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException te){
+            // the request stays waiting, so a later call shares it and gets the solar system as the next run starts
+            return new String[] {"No simulation is running"};
+        } catch (InterruptedException ie){
+            // the caller's thread was interrupted while waiting, so it is left interrupted for whoever runs it
+            Thread.currentThread().interrupt();
+            return new String[] {"Error listing the celestial bodies!"};
+        } catch (ExecutionException ee){
+            return new String[] {"Error listing the celestial bodies!"};
+        }
+
+        String[] lines = new String[snapshot.getNumberOfCelestialBodies()];
+        for (int i = 0; i < lines.length; i++){
+            CelestialBody c = snapshot.createCelestialBody(i);
+            double xVelocity = c instanceof Planet ? ((Planet) c).getXVelocity() : 0;
+            double yVelocity = c instanceof Planet ? ((Planet) c).getYVelocity() : 0;
+
+            lines[i] = String.format("%s: mass %.4g kg, displacement (%.4g, %.4g) m, velocity (%.4g, %.4g) m/s",
+                    c.getName(), c.getMass(), c.getXDisplacement(), c.getYDisplacement(), xVelocity, yVelocity);
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Defines the management interface of the simulation metrics, which is what a JMX client like JConsole or VisualVM
+ * sees. Every getter is an attribute and every other method is an operation. Attributes read values the thread running
+ * the simulation has already published, and operations only leave requests for it to pick up at the end of a frame or
+ * step, so neither ever waits on the simulation. Operations include pausing, resuming, changing the speed of, and
+ * checkpointing the running simulation, and adding, changing, removing, and listing its celestial bodies while it runs.
+ */
+public interface SimulationMetricsMBean {
+    /**
+     * Gets the number of steps taken per second of real time, averaged over about the last second
+     *
+     * @return the steps per second, 0 when no simulation is running
+     */
+    double getStepsPerSecond();
+
+    /**
+     * Gets the simulated time of the solar system after its last step
+     *
+     * @return the simulated time in seconds
+     */
+    double getSimulatedTimeSeconds();
+
+    /**
+     * Gets the step count of the solar system after its last step
+     *
+     * @return the step count
+     */
+    long getStepCount();
+
+    /**
+     * Gets the number of bodies in the solar system, asteroids included, as of about the last second
+     *
+     * @return the number of bodies
+     */
+    int getNumberOfBodies();
+
+    /**
+     * Gets the time spent finding the pulls between the celestial bodies each step, averaged over about the last
+     * second
+     *
+     * @return the time in milliseconds
+     */
+    double getForceMillisecondsPerStep();
+
+    /**
+     * Gets the number of frames drawn per second of real time, averaged over about the last second
+     *
+     * @return the frames per second, 0 when no simulation window is running
+     */
+    double getFramesPerSecond();
+
+    /**
+     * Gets the number of frames that took too long to draw since the simulation window was opened
+     *
+     * @return the number of dropped frames
+     */
+    long getDroppedFrames();
+
+    /**
+     * Gets how far the energy has drifted from where it was when the run started, relative to it
+     *
+     * @return the relative drift, NaN when the conservation monitor is off
+     */
+    double getEnergyDrift();
+
+    /**
+     * Gets the speed of the simulation window
+     *
+     * @return the speed
+     */
+    double getSpeed();
+
+    /**
+     * Checks whether the simulation is paused
+     *
+     * @return whether it is paused
+     */
+    boolean isPaused();
+
+    /**
+     * Pauses the simulation, the window is still drawn but no steps are taken
+     *
+     * @return None
+     */
+    void pause();
+
+    /**
+     * Resumes the simulation after it was paused
+     *
+     * @return None
+     */
+    void resume();
+
+    /**
+     * Changes the speed of the simulation window, which takes effect at the next frame
+     *
+     * @param speed the new speed
+     * @return None
+     */
+    void changeSpeed(double speed);
+
+    /**
+     * Writes a checkpoint of the running simulation after its current step, whether or not one is due
+     *
+     * @return None
+     */
+    void checkpoint();
+
+    /**
+     * Adds a planet to the running simulation at its next step boundary
+     *
+     * @param name the name of the planet
+     * @param mass the mass of the planet
+     * @param radius the radius of the planet
+     * @param imagePath the image path for the planet
+     * @param displayPriority the display priority of the planet
+     * @param xDisplacement the x-displacement of the planet
+     * @param yDisplacement the y-displacement of the planet
+     * @param type the type of planet
+     * @param xVelocity the x-velocity of the planet
+     * @param yVelocity the y-velocity of the planet
+     * @return None
+     */
+    void addPlanet(String name, double mass, double radius, String imagePath, int displayPriority,
+                   double xDisplacement, double yDisplacement, String type, double xVelocity, double yVelocity);
+
+    /**
+     * Changes the mass of a celestial body in the running simulation at its next step boundary
+     *
+     * @param nameOrImagePath the name or image path of the celestial body
+     * @param mass the new mass
+     * @return None
+     */
+    void setCelestialBodyMass(String nameOrImagePath, double mass);
+
+    /**
+     * Removes a celestial body from the running simulation at its next step boundary
+     *
+     * @param nameOrImagePath the name or image path of the celestial body
+     * @return None
+     */
+    void removeCelestialBody(String nameOrImagePath);
+
+    /**
+     * Lists the celestial bodies of the running simulation as they were at its next step boundary, after any edits
+     * waiting then
+     *
+     * @return a line for each celestial body with its name, mass, displacement, and velocity, or a single line saying
+     * why there are none
+     */
+    String[] listCelestialBodies();
+}
@@ -0,0 +1,241 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Defines a simulation timeline as snapshots of a solar system taken every so many steps and kept in memory, so that
+ * the simulation can jump back to an earlier time or ahead to a later one. Jumping restores the last snapshot at or
+ * before the time being jumped to and then only moves the planets over the time left after it, which gives exactly
+ * the same state as running there would have. The snapshots are kept within a memory budget by forgetting the oldest
+ * ones first, and a snapshot that would be bigger than the whole budget on its own is never taken. Operations include
+ * recording a snapshot when one is due, jumping to a time, and forgetting snapshots.
+ */
+public class SimulationTimeline {
+    // snapshots sorted by the step count they were taken at
+    private final TreeMap<Long, SolarSystemSnapshot> keyframes;
+    private int keyframeIntervalSteps;
+    private long memoryBudgetBytes;
+    private long keyframeBytes;
+    // the number of snapshots that were due but not taken because they would not have fit in the budget on their own
+    private long skippedKeyframes;
+
+    /**
+     * Creates a new simulation timeline
+     *
+     * @param keyframeIntervalSteps the number of steps between snapshots
+     * @param memoryBudgetBytes the greatest number of bytes the snapshots can take up
+     * @return None
+     */
+    public SimulationTimeline(int keyframeIntervalSteps, long memoryBudgetBytes){
+        keyframes = new TreeMap<>();
+        this.keyframeIntervalSteps = keyframeIntervalSteps;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        keyframeBytes = 0;
+        skippedKeyframes = 0;
+    }
+
+    /**
+     * Records a snapshot of a solar system if the number of steps it has taken is a multiple of the keyframe interval,
+     * or if there are no snapshots yet. A snapshot is not taken again for a step that already has one, since moving
+     * forward from a restored snapshot gives the same state that was recorded the first time. A snapshot that would be
+     * bigger than the memory budget on its own is skipped, since keeping it would mean forgetting every other snapshot
+     * and still going over the budget
+     *
+     * @param solarSystem the solar system to take a snapshot of
+     * @return None
+     */
+    public void recordIfDue(SolarSystem solarSystem){
+        long stepCount = solarSystem.getStepCount();
+
+        if ((keyframes.isEmpty() || stepCount % keyframeIntervalSteps == 0) && !keyframes.containsKey(stepCount)){
+            // the size is estimated before the snapshot is taken, so a solar system too big for the budget is never
+            // copied just to be thrown away
+            if (solarSystem.getEstimatedSnapshotBytes() > memoryBudgetBytes){
+                skippedKeyframes++;
+                return;
+            }
+
+            SolarSystemSnapshot snapshot = solarSystem.createSnapshot();
+            keyframes.put(stepCount, snapshot);
+            keyframeBytes += snapshot.getEstimatedBytes();
+
+            forgetOldestOverBudget();
+        }
+    }
+
+    /**
+     * Forgets the oldest snapshots until the rest fit in the memory budget
+     *
+     * @return None
+     */
+    private void forgetOldestOverBudget(){
+        while (keyframeBytes > memoryBudgetBytes && !keyframes.isEmpty()){
+            SolarSystemSnapshot snapshot = keyframes.pollFirstEntry().getValue();
+            keyframeBytes -= snapshot.getEstimatedBytes();
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Moves a solar system to a simulated time. If the time is between the solar system's current time and the next
+     * snapshot, the solar system just keeps moving from where it is, otherwise the last snapshot at or before the time
+     * is restored first
+     *
+     * @param solarSystem the solar system to move
+     * @param targetTimeSeconds the simulated time in seconds to move to
+     * @param timeStepSeconds the time interval in seconds to move the planets over each step
+     * @return false if the time is before the earliest snapshot, true otherwise
+     */
+    public boolean seek(SolarSystem solarSystem, double targetTimeSeconds, double timeStepSeconds){
+        SolarSystemSnapshot keyframe = findKeyframe(targetTimeSeconds);
+
+        if (keyframe == null){
+            return false;
+        }
+
+        double currentTimeSeconds = solarSystem.getSimulatedTimeSeconds();
+        if (currentTimeSeconds < keyframe.getSimulatedTimeSeconds() || targetTimeSeconds < currentTimeSeconds){
+            solarSystem.restoreSnapshot(keyframe);
+        }
+
+        // stop at the step closest to the target time, the target is rarely a whole number of steps away
+        while (solarSystem.getSimulatedTimeSeconds() + timeStepSeconds / 2 <= targetTimeSeconds){
+            solarSystem.movePlanetsOverTime(timeStepSeconds);
+            recordIfDue(solarSystem);
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the last snapshot taken at or before a simulated time
+     *
+     * @param timeSeconds the simulated time in seconds
+     * @return the snapshot, or null if every snapshot is after the time
+     */
+    private SolarSystemSnapshot findKeyframe(double timeSeconds){
+        // simulated time only increases with the step count, so the snapshots are also sorted by time
+        for (Map.Entry<Long, SolarSystemSnapshot> entry : keyframes.descendingMap().entrySet()){
+            if (entry.getValue().getSimulatedTimeSeconds() <= timeSeconds){
+                return entry.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Forgets every snapshot taken after a step, used when the solar system is changed so that later snapshots no
+     * longer follow from it
+     *
+     * @param stepCount the step count to keep snapshots up to and including
+     * @return None
+     */
+    public void discardAfter(long stepCount){
+        // a snapshot at this step would be out of date as well, it is taken again on the next recordIfDue
+        for (SolarSystemSnapshot snapshot : keyframes.tailMap(stepCount, true).values()){
+            keyframeBytes -= snapshot.getEstimatedBytes();
+            snapshot.close();
+        }
+        keyframes.tailMap(stepCount, true).clear();
+    }
+
+    /**
+     * Forgets every snapshot, used when a different solar system is loaded
+     *
+     * @return None
+     */
+    public void clear(){
+        for (SolarSystemSnapshot snapshot : keyframes.values()){
+            snapshot.close();
+        }
+        keyframes.clear();
+        keyframeBytes = 0;
+        skippedKeyframes = 0;
+    }
+
+    /**
+     * Gets the simulated time of the earliest snapshot
+     *
+     * @return the simulated time in seconds, or -1 if there are no snapshots
+     */
+    public double getEarliestTimeSeconds(){
+        return keyframes.isEmpty() ? -1 : keyframes.firstEntry().getValue().getSimulatedTimeSeconds();
+    }
+
+    /**
+     * Gets the simulated time of the latest snapshot
+     *
+     * @return the simulated time in seconds, or -1 if there are no snapshots
+     */
+    public double getLatestTimeSeconds(){
+        return keyframes.isEmpty() ? -1 : keyframes.lastEntry().getValue().getSimulatedTimeSeconds();
+    }
+
+    /**
+     * Gets the number of snapshots being kept
+     *
+     * @return the number of snapshots
+     */
+    public int getNumberOfKeyframes(){
+        return keyframes.size();
+    }
+
+    /**
+     * Gets the estimated number of bytes the snapshots take up
+     *
+     * @return the estimated number of bytes
+     */
+    public long getKeyframeBytes(){
+        return keyframeBytes;
+    }
+
+    /**
+     * Gets the number of snapshots that were due but not taken because each would have been bigger than the memory
+     * budget on its own
+     *
+     * @return the number of skipped snapshots
+     */
+    public long getSkippedKeyframes(){
+        return skippedKeyframes;
+    }
+
+    /**
+     * Gets the number of steps between snapshots
+     *
+     * @return the number of steps between snapshots
+     */
+    public int getKeyframeIntervalSteps(){
+        return keyframeIntervalSteps;
+    }
+
+    /**
+     * Sets the number of steps between snapshots
+     *
+     * @param keyframeIntervalSteps the number of steps between snapshots
+     * @return None
+     */
+    public void setKeyframeIntervalSteps(int keyframeIntervalSteps){
+        this.keyframeIntervalSteps = keyframeIntervalSteps;
+    }
+
+    /**
+     * Gets the greatest number of bytes the snapshots can take up
+     *
+     * @return the memory budget in bytes
+     */
+    public long getMemoryBudgetBytes(){
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * Sets the greatest number of bytes the snapshots can take up, forgetting the oldest snapshots if they no longer
+     * fit, which can be all of them if the newest one is bigger than the new budget on its own
+     *
+     * @param memoryBudgetBytes the memory budget in bytes
+     * @return None
+     */
+    public void setMemoryBudgetBytes(long memoryBudgetBytes){
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        forgetOldestOverBudget();
+    }
+}
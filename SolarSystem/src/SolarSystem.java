@@ -1,15 +1,111 @@
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.function.Function;
 
 /**
- * Defines a solar system as an ArrayList of celestial bodies including only one Sun.
+ * Defines a solar system as an ArrayList of celestial bodies including only one Sun, and an ArrayList of asteroid belts.
  * Operations include adding and removing celestial bodies, modifying celestial bodies, printing a celestial body,
  * printing all celestial bodies, calculating the net force of gravity on a celestial body, and moving celestial bodies
  * over a time interval.
  */
 public class SolarSystem {
+    static final double GRAVITATION_CONSTANT = 6.6743E-11;
+    // how often each asteroid belt is reordered along a space filling curve, in steps
+    private static final int ASTEROID_REORDER_INTERVAL_STEPS = 1000;
+    // the fraction of a close pair's orbital or crossing time that each of its substeps may cover
+    private static final double ENCOUNTER_TIME_STEP_FRACTION = 0.01;
+
     private ArrayList<CelestialBody> celestialBodies;
+    // asteroids are kept apart from the celestial bodies since there can be millions of them
+    private ArrayList<AsteroidBelt> asteroidBelts;
+    // the displacement and mass of every celestial body gathered into arrays once a step for the asteroid belts, these
+    // are reused each step and only grow when celestial bodies are added
+    private double[] massiveXDisplacements;
+    private double[] massiveYDisplacements;
+    private double[] gravitationalParameters;
+    // the index of the celestial body with each name and with each image path, so that looking one up does not need
+    // a linear search. These are rebuilt whenever celestial bodies are removed or reordered
+    private HashMap<String, Integer> nameIndexes;
+    private HashMap<String, Integer> imagePathIndexes;
+    // counts every time celestial bodies are added, removed, or reordered, so anything that follows the bodies by
+    // index can tell cheaply whether they still mean the same bodies
+    private long celestialBodiesVersion;
+    // the index of the sun, or -1 if there is no sun
+    private int sunIndex;
+    // the greatest and smallest radius of any celestial body, kept up to date as celestial bodies are added and
+    // edited. If the celestial body with the greatest or smallest radius is removed or changed they are marked stale
+    // and found again the next time they are needed
+    private double greatestRadius;
+    private double smallestRadius;
+    private boolean radiusBoundsStale;
+    // the box that every celestial body's displacement is inside of and the greatest displacement, found while the
+    // planets are being moved so that they never need a separate pass
+    private double minimumXDisplacement;
+    private double maximumXDisplacement;
+    private double minimumYDisplacement;
+    private double maximumYDisplacement;
+    private double greatestDisplacementSquared;
+    private boolean displacementBoundsStale;
+    // a grid over the displacement of every celestial body and asteroid for finding bodies near a position. It is
+    // only rebuilt when it is used after something has moved, so steps that nobody queries cost nothing
+    private SpatialGrid spatialGrid;
+    private double[] bodyXDisplacements;
+    private double[] bodyYDisplacements;
+    private boolean spatialGridStale;
+    // whether celestial bodies that touch are merged. It is off unless turned on, since a solar system's radii are
+    // often chosen for how big the bodies look rather than how big they are, and bodies drawn close together can
+    // overlap
+    private boolean collisionsEnabled;
+    private CollisionDetector collisionDetector;
+    // where each celestial body was at the start of the step and how big it is, gathered for the collision detector.
+    // These are reused each step and only grow when celestial bodies are added
+    private double[] startXDisplacements;
+    private double[] startYDisplacements;
+    private double[] endXDisplacements;
+    private double[] endYDisplacements;
+    private double[] collisionRadii;
+    // which celestial bodies were merged into another this step and which have already taken part in a merge
+    private boolean[] absorbed;
+    private boolean[] merged;
+    // the number of times two celestial bodies have merged since the solar system was created
+    private long numberOfMerges;
+    // the Plummer softening length: gravity is calculated as if every distance were sqrt(r^2 + softening^2), so the
+    // pull between two bodies stops growing once they are closer than about the softening length
+    private double softeningLengthMeters;
+    // the most substeps a pair of celestial bodies in a close encounter is moved with, 1 turns substepping off
+    private int maximumEncounterSubsteps;
+    // the partner each celestial body is in a close encounter with this step, or -1, and how many substeps the pair
+    // needs. These are reused each step and only grow when celestial bodies are added
+    private int[] encounterPartners;
+    private int[] encounterSubsteps;
+    // how the planets are moved each step
+    private Integrator integrator;
+    private WisdomHolmanIntegrator wisdomHolmanIntegrator;
+    // finds the pulls between the bodies when they are all needed at once, which the Wisdom-Holman kicks are. Semi-
+    // implicit Euler moves each planet before the next one is pulled, so it always adds up the pulls itself
+    private ForceEngine forceEngine;
+    // the amount of time in seconds that the celestial bodies have been moved over since the solar system was loaded
+    private double simulatedTimeSeconds;
+    // the number of times movePlanetsOverTime has been called since the solar system was loaded
+    private long stepCount;
+    // the time interval in seconds of the last step, this is part of the state a checkpoint needs to resume a run
+    private double timeStepSeconds;
+    // the kinetic energy, momentum, and angular momentum about the sun of the planets at the end of the last step.
+    // They are added up as each planet is moved, while its displacement and velocity are already at hand
+    private double kineticEnergy;
+    private double xMomentum;
+    private double yMomentum;
+    private double angularMomentum;
+    // where the sun was during the last step, which the angular momentum is measured around
+    private double angularMomentumXOrigin;
+    private double angularMomentumYOrigin;
+    // the time spent finding the pulls between the celestial bodies in the last step. Semi-implicit Euler adds up
+    // each planet's pulls while it moves the planets, so for it this is the time the whole move took
+    private long forceNanoseconds;
 
     /**
      * Creates a new Solar System
@@ -18,6 +114,32 @@ public class SolarSystem {
      */
     public SolarSystem(){
         celestialBodies = new ArrayList<>();
+        asteroidBelts = new ArrayList<>();
+        massiveXDisplacements = new double[0];
+        massiveYDisplacements = new double[0];
+        gravitationalParameters = new double[0];
+        nameIndexes = new HashMap<>();
+        imagePathIndexes = new HashMap<>();
+        sunIndex = -1;
+        resetBounds();
+        spatialGrid = new SpatialGrid();
+        bodyXDisplacements = new double[0];
+        bodyYDisplacements = new double[0];
+        spatialGridStale = true;
+        collisionDetector = new CollisionDetector();
+        startXDisplacements = new double[0];
+        startYDisplacements = new double[0];
+        endXDisplacements = new double[0];
+        endYDisplacements = new double[0];
+        collisionRadii = new double[0];
+        absorbed = new boolean[0];
+        merged = new boolean[0];
+        maximumEncounterSubsteps = 1;
+        encounterPartners = new int[0];
+        encounterSubsteps = new int[0];
+        integrator = Integrator.SEMI_IMPLICIT_EULER;
+        wisdomHolmanIntegrator = new WisdomHolmanIntegrator();
+        forceEngine = new DirectSumForceEngine();
     }
 
     /**
@@ -28,19 +150,173 @@ public class SolarSystem {
      * with the name or image path
      */
     public int getIndexOfCelestialBody(String nameOrImagePath){
-        int index = -1;
+        // a name or image path shared by several celestial bodies finds the first of them
+        Integer nameIndex = nameIndexes.get(nameOrImagePath);
+        Integer imagePathIndex = imagePathIndexes.get(nameOrImagePath);
+
+        // if one celestial body's name is another's image path, the one that comes first is found
+        if (nameIndex == null){
+            return imagePathIndex == null ? -1 : imagePathIndex;
+        } else if (imagePathIndex == null){
+            return nameIndex;
+        }
 
-        for (int i = 0; i < celestialBodies.size(); i++){
-            // checks if any celestial body has the same name or image path
-            // assumes that all celestial bodies have a unique name and image path
-            if (celestialBodies.get(i).getName().equals(nameOrImagePath) ||
-                    celestialBodies.get(i).getImagePath().equals(nameOrImagePath)){
-                index = i;
-                break;
+        return Math.min(nameIndex, imagePathIndex);
+    }
+
+    /**
+     * Adds a celestial body to the end of the ArrayList and to the indexes
+     *
+     * @param c the celestial body to add
+     * @return None
+     */
+    private void addCelestialBody(CelestialBody c){
+        celestialBodies.add(c);
+        addToIndexes(celestialBodies.size() - 1);
+        celestialBodiesVersion++;
+
+        if (!radiusBoundsStale){
+            greatestRadius = Math.max(greatestRadius, c.getRadius());
+            smallestRadius = Math.min(smallestRadius, c.getRadius());
+        }
+        if (!displacementBoundsStale){
+            includeInDisplacementBounds(c.getXDisplacement(), c.getYDisplacement());
+        }
+        spatialGridStale = true;
+    }
+
+    /**
+     * Resets the radius and displacement bounds to those of a solar system with no celestial bodies, so that adding
+     * each celestial body extends them
+     *
+     * @return None
+     */
+    private void resetBounds(){
+        greatestRadius = Double.NEGATIVE_INFINITY;
+        smallestRadius = Double.POSITIVE_INFINITY;
+        radiusBoundsStale = false;
+
+        minimumXDisplacement = Double.POSITIVE_INFINITY;
+        maximumXDisplacement = Double.NEGATIVE_INFINITY;
+        minimumYDisplacement = Double.POSITIVE_INFINITY;
+        maximumYDisplacement = Double.NEGATIVE_INFINITY;
+        greatestDisplacementSquared = 0;
+        displacementBoundsStale = false;
+    }
+
+    /**
+     * Extends the displacement bounds to include a displacement
+     *
+     * @param xDisplacement the x-displacement
+     * @param yDisplacement the y-displacement
+     * @return None
+     */
+    private void includeInDisplacementBounds(double xDisplacement, double yDisplacement){
+        minimumXDisplacement = Math.min(minimumXDisplacement, xDisplacement);
+        maximumXDisplacement = Math.max(maximumXDisplacement, xDisplacement);
+        minimumYDisplacement = Math.min(minimumYDisplacement, yDisplacement);
+        maximumYDisplacement = Math.max(maximumYDisplacement, yDisplacement);
+
+        // comparing squared displacements avoids a square root for every celestial body
+        greatestDisplacementSquared = Math.max(greatestDisplacementSquared,
+                xDisplacement * xDisplacement + yDisplacement * yDisplacement);
+    }
+
+    /**
+     * Extends the displacement bounds to include every asteroid in an asteroid belt
+     *
+     * @param asteroidBelt the asteroid belt
+     * @return None
+     */
+    private void includeAsteroidBeltInDisplacementBounds(AsteroidBelt asteroidBelt){
+        if (asteroidBelt.getNumberOfAsteroids() > 0){
+            minimumXDisplacement = Math.min(minimumXDisplacement, asteroidBelt.getMinimumXDisplacement());
+            maximumXDisplacement = Math.max(maximumXDisplacement, asteroidBelt.getMaximumXDisplacement());
+            minimumYDisplacement = Math.min(minimumYDisplacement, asteroidBelt.getMinimumYDisplacement());
+            maximumYDisplacement = Math.max(maximumYDisplacement, asteroidBelt.getMaximumYDisplacement());
+            greatestDisplacementSquared = Math.max(greatestDisplacementSquared,
+                    asteroidBelt.getGreatestDisplacementSquared());
+        }
+    }
+
+    /**
+     * Finds the radius bounds again if they are stale
+     *
+     * @return None
+     */
+    private void updateRadiusBounds(){
+        if (radiusBoundsStale){
+            greatestRadius = Double.NEGATIVE_INFINITY;
+            smallestRadius = Double.POSITIVE_INFINITY;
+
+            for (CelestialBody c : celestialBodies){
+                greatestRadius = Math.max(greatestRadius, c.getRadius());
+                smallestRadius = Math.min(smallestRadius, c.getRadius());
+            }
+
+            radiusBoundsStale = false;
+        }
+    }
+
+    /**
+     * Finds the displacement bounds again if they are stale
+     *
+     * @return None
+     */
+    private void updateDisplacementBounds(){
+        if (displacementBoundsStale){
+            minimumXDisplacement = Double.POSITIVE_INFINITY;
+            maximumXDisplacement = Double.NEGATIVE_INFINITY;
+            minimumYDisplacement = Double.POSITIVE_INFINITY;
+            maximumYDisplacement = Double.NEGATIVE_INFINITY;
+            greatestDisplacementSquared = 0;
+
+            for (CelestialBody c : celestialBodies){
+                includeInDisplacementBounds(c.getXDisplacement(), c.getYDisplacement());
+            }
+            for (AsteroidBelt asteroidBelt : asteroidBelts){
+                includeAsteroidBeltInDisplacementBounds(asteroidBelt);
             }
+
+            displacementBoundsStale = false;
+        }
+    }
+
+    /**
+     * Adds the celestial body at an index to the name, image path, and sun indexes, keeping the first celestial body
+     * if more than one has the same name or image path so that lookups find the same one a linear search would
+     *
+     * @param index the index of the celestial body
+     * @return None
+     */
+    private void addToIndexes(int index){
+        CelestialBody c = celestialBodies.get(index);
+
+        nameIndexes.putIfAbsent(c.getName(), index);
+        imagePathIndexes.putIfAbsent(c.getImagePath(), index);
+
+        if (sunIndex == -1 && c instanceof Sun){
+            sunIndex = index;
         }
+    }
+
+    /**
+     * Rebuilds the name, image path, and sun indexes from the ArrayList, used whenever celestial bodies are removed or
+     * reordered since that changes the index of every celestial body after them
+     *
+     * @return None
+     */
+    private void rebuildIndexes(){
+        nameIndexes = new HashMap<>(celestialBodies.size() * 2);
+        imagePathIndexes = new HashMap<>(celestialBodies.size() * 2);
+        sunIndex = -1;
 
-        return index;
+        for (int i = 0; i < celestialBodies.size(); i++){
+            addToIndexes(i);
+        }
+        // body numbers follow the indexes, so the grid's numbers are out of date too
+        spatialGridStale = true;
+        celestialBodiesVersion++;
     }
 
     /**
@@ -60,7 +336,7 @@ public class SolarSystem {
      */
     public void addPlanet(String name, double mass, double radius, String imagePath, int displayPriority,
                           double xDisplacement, double yDisplacement, String type, double xVelocity, double yVelocity) {
-        celestialBodies.add(new Planet(name, mass, radius, imagePath, displayPriority, xDisplacement, yDisplacement,
+        addCelestialBody(new Planet(name, mass, radius, imagePath, displayPriority, xDisplacement, yDisplacement,
                 type, xVelocity, yVelocity));
     }
 
@@ -79,7 +355,7 @@ public class SolarSystem {
      */
     public void addSun(String name, double mass, double radius, String imagePath, int displayPriority,
                        double xDisplacement, double yDisplacement, double luminosity){
-        celestialBodies.add(new Sun(name, mass, radius, imagePath, displayPriority, xDisplacement, yDisplacement,
+        addCelestialBody(new Sun(name, mass, radius, imagePath, displayPriority, xDisplacement, yDisplacement,
                 luminosity));
     }
 
@@ -90,7 +366,15 @@ public class SolarSystem {
      * @return None
      */
     public void removeCelestialBody(int index){
-        celestialBodies.remove(index);
+        CelestialBody removed = celestialBodies.remove(index);
+        rebuildIndexes();
+
+        // the bounds only change if the removed celestial body was on one of them
+        if (removed.getRadius() == greatestRadius || removed.getRadius() == smallestRadius){
+            radiusBoundsStale = true;
+        }
+        displacementBoundsStale = true;
+        spatialGridStale = true;
     }
 
     /**
@@ -120,15 +404,280 @@ public class SolarSystem {
         return numPlanets;
     }
 
+    /**
+     * Adds an asteroid belt to the solar system, with every asteroid on a circular orbit around the sun
+     *
+     * @param template the template shared by every asteroid in the belt
+     * @param numberOfAsteroids the number of asteroids in the belt
+     * @param innerRadiusMeters the smallest distance of an asteroid from the sun
+     * @param outerRadiusMeters the greatest distance of an asteroid from the sun
+     * @param seed the seed used to place the asteroids
+     * @param storeType the kind of memory to keep the asteroids in
+     * @return false if there is no sun for the asteroids to orbit, true otherwise
+     * @throws IOException if the memory for the asteroids could not be set up
+     */
+    public boolean addAsteroidBelt(BodyTemplate template, int numberOfAsteroids, double innerRadiusMeters,
+                                   double outerRadiusMeters, long seed, BodyStoreType storeType) throws IOException {
+        if (sunIndex == -1){
+            return false;
+        }
+
+        CelestialBody sun = celestialBodies.get(sunIndex);
+        AsteroidBelt asteroidBelt = new AsteroidBelt(template, storeType.createStore(numberOfAsteroids),
+                innerRadiusMeters, outerRadiusMeters, seed);
+        asteroidBelt.generate(sun.getXDisplacement(), sun.getYDisplacement(), sun.getMass());
+        asteroidBelts.add(asteroidBelt);
+
+        if (!displacementBoundsStale){
+            includeAsteroidBeltInDisplacementBounds(asteroidBelt);
+        }
+        spatialGridStale = true;
+
+        return true;
+    }
+
+    /**
+     * Removes an asteroid belt from the solar system
+     *
+     * @param index the index of the asteroid belt
+     * @return None
+     */
+    public void removeAsteroidBelt(int index){
+        asteroidBelts.remove(index).close();
+        displacementBoundsStale = true;
+        spatialGridStale = true;
+    }
+
+    /**
+     * Moves an asteroid belt into another kind of memory
+     *
+     * @param index the index of the asteroid belt
+     * @param storeType the kind of memory to keep the asteroids in
+     * @return None
+     * @throws IOException if the memory for the asteroids could not be set up
+     */
+    public void setAsteroidBeltStoreType(int index, BodyStoreType storeType) throws IOException {
+        AsteroidBelt asteroidBelt = asteroidBelts.get(index);
+
+        asteroidBelts.set(index, asteroidBelt.copy(storeType));
+        asteroidBelt.close();
+        // a compact belt's asteroids are rounded, which can move the edges of the belt slightly
+        displacementBoundsStale = true;
+        spatialGridStale = true;
+    }
+
+    /**
+     * Releases the memory of every asteroid belt, used before the belts are replaced
+     *
+     * @return None
+     */
+    private void closeAsteroidBelts(){
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            asteroidBelt.close();
+        }
+    }
+
+    /**
+     * Gets the number of bodies in the solar system, counting every celestial body and every asteroid. Bodies are
+     * numbered with the celestial bodies first, in the same order as their indexes, followed by the asteroids of each
+     * belt in order of their ids
+     *
+     * @return the number of bodies
+     */
+    public int getNumberOfBodies(){
+        // bodies are numbered with ints, which is plenty for any belt that fits in memory
+        return Math.toIntExact(celestialBodies.size() + getNumberOfAsteroids());
+    }
+
+    /**
+     * Checks whether a body is a celestial body rather than an asteroid
+     *
+     * @param body the number of the body
+     * @return whether the body is a celestial body, if so its number is also its index
+     */
+    public boolean isCelestialBody(int body){
+        return body < celestialBodies.size();
+    }
+
+    /**
+     * Gets the name of a body
+     *
+     * @param body the number of the body
+     * @return the name of the body
+     */
+    public String getBodyName(int body){
+        if (isCelestialBody(body)){
+            return celestialBodies.get(body).getName();
+        }
+
+        int asteroid = body - celestialBodies.size();
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            if (asteroid < asteroidBelt.getNumberOfAsteroids()){
+                return asteroidBelt.getAsteroidName(asteroid);
+            }
+            asteroid -= asteroidBelt.getNumberOfAsteroids();
+        }
+
+        return null;
+    }
+
+    /**
+     * Prints the information of a body
+     *
+     * @param body the number of the body
+     * @return None
+     */
+    public void printBodyInformation(int body){
+        if (isCelestialBody(body)){
+            printCelestialBodyInformation(body);
+            return;
+        }
+
+        int asteroid = body - celestialBodies.size();
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            if (asteroid < asteroidBelt.getNumberOfAsteroids()){
+                asteroidBelt.printAsteroidInformation(asteroid);
+                return;
+            }
+            asteroid -= asteroidBelt.getNumberOfAsteroids();
+        }
+    }
+
+    /**
+     * Rebuilds the spatial grid from the current displacement of every body if anything has moved since it was built
+     *
+     * @return None
+     */
+    private void updateSpatialGrid(){
+        if (!spatialGridStale){
+            return;
+        }
+
+        int numberOfBodies = getNumberOfBodies();
+        if (bodyXDisplacements.length < numberOfBodies){
+            bodyXDisplacements = new double[numberOfBodies];
+            bodyYDisplacements = new double[numberOfBodies];
+        }
+
+        int body = 0;
+        for (CelestialBody c : celestialBodies){
+            bodyXDisplacements[body] = c.getXDisplacement();
+            bodyYDisplacements[body] = c.getYDisplacement();
+            body++;
+        }
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            for (int id = 0; id < asteroidBelt.getNumberOfAsteroids(); id++){
+                bodyXDisplacements[body] = asteroidBelt.getXDisplacement(id);
+                bodyYDisplacements[body] = asteroidBelt.getYDisplacement(id);
+                body++;
+            }
+        }
+
+        spatialGrid.rebuild(bodyXDisplacements, bodyYDisplacements, numberOfBodies);
+        spatialGridStale = false;
+    }
+
+    /**
+     * Finds the body nearest to a position, as long as it is close enough
+     *
+     * @param xDisplacement the x-displacement of the position
+     * @param yDisplacement the y-displacement of the position
+     * @param maximumDistance the greatest distance the body can be from the position in meters, use
+     * Double.POSITIVE_INFINITY to find the nearest body no matter how far away it is
+     * @return the number of the nearest body, or -1 if there are no bodies within the distance
+     */
+    public int findNearestBody(double xDisplacement, double yDisplacement, double maximumDistance){
+        updateSpatialGrid();
+        int body = spatialGrid.findNearest(xDisplacement, yDisplacement);
+
+        if (body == -1 || Math.hypot(bodyXDisplacements[body] - xDisplacement,
+                bodyYDisplacements[body] - yDisplacement) > maximumDistance){
+            return -1;
+        }
+
+        return body;
+    }
+
+    /**
+     * Finds the bodies nearest to a position
+     *
+     * @param xDisplacement the x-displacement of the position
+     * @param yDisplacement the y-displacement of the position
+     * @param k the number of bodies to find
+     * @return the numbers of the k nearest bodies, nearest first
+     */
+    public int[] findNearestBodies(double xDisplacement, double yDisplacement, int k){
+        updateSpatialGrid();
+        return spatialGrid.findNearest(xDisplacement, yDisplacement, k);
+    }
+
+    /**
+     * Finds every body within a distance of a position
+     *
+     * @param xDisplacement the x-displacement of the position
+     * @param yDisplacement the y-displacement of the position
+     * @param distance the greatest distance a body can be from the position in meters
+     * @return the numbers of the bodies within the distance, in no particular order
+     */
+    public int[] findBodiesWithin(double xDisplacement, double yDisplacement, double distance){
+        updateSpatialGrid();
+        return spatialGrid.findWithin(xDisplacement, yDisplacement, distance);
+    }
+
+    /**
+     * Gets the number of asteroid belts in the solar system
+     *
+     * @return the number of asteroid belts
+     */
+    public int getNumberOfAsteroidBelts(){
+        return asteroidBelts.size();
+    }
+
+    /**
+     * Gets an asteroid belt
+     *
+     * @param index the index of the asteroid belt
+     * @return the asteroid belt
+     */
+    public AsteroidBelt getAsteroidBelt(int index){
+        return asteroidBelts.get(index);
+    }
+
+    /**
+     * Calculates the number of asteroids in every asteroid belt
+     *
+     * @return the number of asteroids
+     */
+    public long getNumberOfAsteroids(){
+        long numberOfAsteroids = 0;
+
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            numberOfAsteroids += asteroidBelt.getNumberOfAsteroids();
+        }
+
+        return numberOfAsteroids;
+    }
+
     /**
      * Sorts celestial bodies by their display priority
      *
      * @return None
      */
     public void sortCelestialBodiesByDisplayPriority(){
+        // the sort is stable, so if the celestial bodies are already in order nothing would move and the indexes are
+        // left as they are
+        boolean sorted = true;
+        for (int i = 1; i < celestialBodies.size() && sorted; i++){
+            sorted = celestialBodies.get(i - 1).compareTo(celestialBodies.get(i)) <= 0;
+        }
+        if (sorted){
+            return;
+        }
+
         // since the celestial body class implements the comparable interface based on display priority, they can be
         // sorted used Collections.sort
         Collections.sort(celestialBodies);
+        rebuildIndexes();
     }
 
     /**
@@ -140,9 +689,18 @@ public class SolarSystem {
     public void loadSolarSystem(String filePath){
         BufferedReader reader;
         String line;
+        SolarSystemFileEvent event = new SolarSystemFileEvent();
+        event.begin();
 
         // reset the celestial bodies in case the user is loading after already having loaded a file
         celestialBodies = new ArrayList<>();
+        closeAsteroidBelts();
+        asteroidBelts = new ArrayList<>();
+        rebuildIndexes();
+        resetBounds();
+        simulatedTimeSeconds = 0;
+        stepCount = 0;
+        timeStepSeconds = 0;
 
         try{
             reader = new BufferedReader(new FileReader(filePath));
@@ -156,26 +714,58 @@ public class SolarSystem {
                 // the first element determines what type of celestial body is being added
                 if (celestialBodyInformation[0].equals("Sun")){
                     // all other information is added according to the file format for a sun
-                    celestialBodies.add(new Sun (celestialBodyInformation[1], Double.parseDouble(celestialBodyInformation[2]),
+                    addCelestialBody(new Sun (celestialBodyInformation[1], Double.parseDouble(celestialBodyInformation[2]),
                             Double.parseDouble(celestialBodyInformation[3]), celestialBodyInformation[4],
                             Integer.parseInt(celestialBodyInformation[5]), Double.parseDouble(celestialBodyInformation[6]),
                             Double.parseDouble(celestialBodyInformation[7]), Double.parseDouble(celestialBodyInformation[8])));
 
                 } else if (celestialBodyInformation[0].equals("Planet")){
                     // all other information is added according to the file format for a planet
-                    celestialBodies.add(new Planet(celestialBodyInformation[1], Double.parseDouble(celestialBodyInformation[2]),
+                    addCelestialBody(new Planet(celestialBodyInformation[1], Double.parseDouble(celestialBodyInformation[2]),
                             Double.parseDouble(celestialBodyInformation[3]), celestialBodyInformation[4],
                             Integer.parseInt(celestialBodyInformation[5]), Double.parseDouble(celestialBodyInformation[6]),
                             Double.parseDouble(celestialBodyInformation[7]), celestialBodyInformation[8],
                             Double.parseDouble(celestialBodyInformation[9]), Double.parseDouble(celestialBodyInformation[10])));
+
+                } else if (celestialBodyInformation[0].equals("AsteroidBelt")){
+                    // a belt is stored as what it was generated from, the asteroids are placed once the sun is loaded.
+                    // Files saved before belts could be kept off the heap have no store type, so they use the heap
+                    BodyStoreType storeType = celestialBodyInformation.length > 11 ?
+                            BodyStoreType.valueOf(celestialBodyInformation[11]) : BodyStoreType.HEAP;
+                    asteroidBelts.add(new AsteroidBelt(BodyTemplate.intern(celestialBodyInformation[1],
+                            Double.parseDouble(celestialBodyInformation[2]), Double.parseDouble(celestialBodyInformation[3]),
+                            celestialBodyInformation[4], Integer.parseInt(celestialBodyInformation[5]),
+                            celestialBodyInformation[6]), storeType.createStore(Integer.parseInt(celestialBodyInformation[7])),
+                            Double.parseDouble(celestialBodyInformation[8]), Double.parseDouble(celestialBodyInformation[9]),
+                            Long.parseLong(celestialBodyInformation[10])));
                 }
 
                 line = reader.readLine();
             }
             reader.close();
+
+            if (sunIndex != -1){
+                CelestialBody sun = celestialBodies.get(sunIndex);
+                for (AsteroidBelt asteroidBelt : asteroidBelts){
+                    asteroidBelt.generate(sun.getXDisplacement(), sun.getYDisplacement(), sun.getMass());
+                }
+            } else {
+                // there is nothing for the asteroids to orbit
+                closeAsteroidBelts();
+                asteroidBelts.clear();
+            }
+            displacementBoundsStale = true;
+            spatialGridStale = true;
         } catch (IOException iox){
             System.out.println("Error loading file!");
         }
+
+        event.end();
+        if (event.shouldCommit()){
+            event.describe(this);
+            event.setFile("Load", filePath);
+            event.commit();
+        }
     }
 
     /**
@@ -185,6 +775,8 @@ public class SolarSystem {
      */
     public void saveSolarSystem(String filePath){
         BufferedWriter out;
+        SolarSystemFileEvent event = new SolarSystemFileEvent();
+        event.begin();
         try {
             out = new BufferedWriter(new FileWriter(filePath, false));
 
@@ -204,11 +796,30 @@ public class SolarSystem {
                 out.newLine();
             }
 
+            // asteroid belts are saved as what they were generated from rather than as millions of lines, so they are
+            // generated again in their starting orbits when the file is loaded
+            for (AsteroidBelt asteroidBelt : asteroidBelts){
+                BodyTemplate template = asteroidBelt.getTemplate();
+                out.write("AsteroidBelt," + template.getName() + "," + template.getMass() + "," + template.getRadius() +
+                        "," + template.getImagePath() + "," + template.getDisplayPriority() + "," + template.getType() +
+                        "," + asteroidBelt.getNumberOfAsteroids() + "," + asteroidBelt.getInnerRadiusMeters() + "," +
+                        asteroidBelt.getOuterRadiusMeters() + "," + asteroidBelt.getSeed() + "," +
+                        asteroidBelt.getStoreType());
+                out.newLine();
+            }
+
             out.close();
         } catch (IOException iox){
             System.out.println("Error Loading file!");
         }
 
+        event.end();
+        if (event.shouldCommit()){
+            event.describe(this);
+            event.setFile("Save", filePath);
+            event.commit();
+        }
+
     }
 
     /**
@@ -229,7 +840,9 @@ public class SolarSystem {
      * @return None
      */
     public void setCelestialBodyName(int index, String name){
+        String oldName = celestialBodies.get(index).getName();
         celestialBodies.get(index).setName(name);
+        updateIndex(nameIndexes, CelestialBody::getName, oldName, name, index);
     }
 
     /**
@@ -271,7 +884,17 @@ public class SolarSystem {
      * @return None
      */
     public void setCelestialBodyRadius(int index, double radius){
+        double oldRadius = celestialBodies.get(index).getRadius();
         celestialBodies.get(index).setRadius(radius);
+
+        // growing past the greatest radius or shrinking past the smallest one just moves that bound, but changing the
+        // radius that was a bound means another celestial body might be the bound now
+        if (oldRadius == greatestRadius || oldRadius == smallestRadius){
+            radiusBoundsStale = true;
+        } else if (!radiusBoundsStale){
+            greatestRadius = Math.max(greatestRadius, radius);
+            smallestRadius = Math.min(smallestRadius, radius);
+        }
     }
 
     /**
@@ -292,7 +915,39 @@ public class SolarSystem {
      * @return None
      */
     public void setCelestialBodyImagePath(int index, String imagePath){
+        String oldImagePath = celestialBodies.get(index).getImagePath();
         celestialBodies.get(index).setImagePath(imagePath);
+        updateIndex(imagePathIndexes, CelestialBody::getImagePath, oldImagePath, imagePath, index);
+    }
+
+    /**
+     * Moves a celestial body from one key to another in a name or image path index after it is renamed
+     *
+     * @param indexes the name or image path index
+     * @param key gets the name or image path of a celestial body, whichever the index is of
+     * @param oldKey the celestial body's old name or image path
+     * @param newKey the celestial body's new name or image path
+     * @param index the index of the celestial body
+     * @return None
+     */
+    private void updateIndex(HashMap<String, Integer> indexes, Function<CelestialBody, String> key, String oldKey,
+                             String newKey, int index){
+        // names and image paths don't have to be unique and the index holds the first celestial body with each one, so
+        // if this celestial body held the old key the next one with it takes over. Every one before it with the old key
+        // would already hold it, so only the ones after it are searched
+        if (indexes.remove(oldKey, index)){
+            for (int i = index + 1; i < celestialBodies.size(); i++){
+                if (Objects.equals(oldKey, key.apply(celestialBodies.get(i)))){
+                    indexes.put(oldKey, i);
+                    break;
+                }
+            }
+        }
+
+        Integer existing = indexes.get(newKey);
+        if (existing == null || index < existing){
+            indexes.put(newKey, index);
+        }
     }
 
     /**
@@ -335,6 +990,26 @@ public class SolarSystem {
         return celestialBodies.get(index).getYDisplacement();
     }
 
+    /**
+     * Gets the x-velocity of a celestial body, a sun doesn't move so its velocity is 0
+     *
+     * @param index the index of the celestial body
+     * @return the x-velocity of a celestial body
+     */
+    public double getCelestialBodyXVelocity(int index){
+        return getXVelocity(celestialBodies.get(index));
+    }
+
+    /**
+     * Gets the y-velocity of a celestial body, a sun doesn't move so its velocity is 0
+     *
+     * @param index the index of the celestial body
+     * @return the y-velocity of a celestial body
+     */
+    public double getCelestialBodyYVelocity(int index){
+        return getYVelocity(celestialBodies.get(index));
+    }
+
     /**
      * Gets the type of a planet
      *
@@ -362,17 +1037,12 @@ public class SolarSystem {
      * @return the luminosity of the sun in watts
      */
     public double getSunLuminosity(){
-        double luminosity = -1;
-
         // assuming that there is exactly one sun object in the solar system class
-        for (CelestialBody c : celestialBodies){
-            if (c instanceof Sun){
-                luminosity = ((Sun) c).getLuminosity();
-                break;
-            }
+        if (sunIndex == -1){
+            return -1;
         }
 
-        return luminosity;
+        return ((Sun) celestialBodies.get(sunIndex)).getLuminosity();
     }
 
     /**
@@ -382,12 +1052,9 @@ public class SolarSystem {
      * @return None
      */
     public void setSunLuminosity(double luminosity){
-
         // assuming that there is exactly one sun object in the solar system class
-        for (CelestialBody c : celestialBodies){
-            if (c instanceof Sun){
-                ((Sun) c).setLuminosity(luminosity);
-            }
+        if (sunIndex != -1){
+            ((Sun) celestialBodies.get(sunIndex)).setLuminosity(luminosity);
         }
     }
 
@@ -397,17 +1064,8 @@ public class SolarSystem {
      * @return the index of the sun in a solar system
      */
     public int getSunIndex(){
-        int index = -1;
-
-        // assuming that there is exactly one sun object in the solar system class
-        for (int i = 0; i < celestialBodies.size(); i++){
-            if (celestialBodies.get(i) instanceof Sun){
-                index = i;
-                break;
-            }
-        }
-
-        return index;
+        // the index of the sun is kept up to date whenever celestial bodies are added, removed, or reordered
+        return sunIndex;
     }
 
     /**
@@ -419,6 +1077,10 @@ public class SolarSystem {
         for (CelestialBody c : celestialBodies){
             System.out.println(c);
         }
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            System.out.println(asteroidBelt.getTemplate().getName() + ": " + asteroidBelt.getNumberOfAsteroids() +
+                    " asteroids");
+        }
     }
 
     /**
@@ -469,54 +1131,91 @@ public class SolarSystem {
     }
 
     /**
-     * Calculates the displacement of the furthest celestial body
+     * Moves every asteroid belt over a time interval, using the celestial bodies' displacements after they have been
+     * moved the same way each planet uses the displacements of the planets moved before it
      *
-     * @return the displacement of the furthest celestial body
+     * @param timeSeconds the time interval in seconds
+     * @return None
      */
-    public double getGreatestCelestialBodyDisplacement(){
-        double displacement = 0;
+    private void moveAsteroidBelts(double timeSeconds){
+        int numberOfCelestialBodies = celestialBodies.size();
 
-        for (CelestialBody c : celestialBodies){
-            if (c.getDisplacementMagnitude() > displacement){
-                displacement = c.getDisplacementMagnitude();
-            }
+        if (massiveXDisplacements.length < numberOfCelestialBodies){
+            massiveXDisplacements = new double[numberOfCelestialBodies];
+            massiveYDisplacements = new double[numberOfCelestialBodies];
+            gravitationalParameters = new double[numberOfCelestialBodies];
+        }
+
+        // gathering the celestial bodies into arrays once means each asteroid only reads doubles from arrays
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            CelestialBody c = celestialBodies.get(i);
+            massiveXDisplacements[i] = c.getXDisplacement();
+            massiveYDisplacements[i] = c.getYDisplacement();
+            gravitationalParameters[i] = GRAVITATION_CONSTANT * c.getMass();
         }
 
-        return displacement;
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            // asteroids drift apart along their orbits, so they are put back in order every so often. This is tied to
+            // the step count so that a restored run reorders on the same steps as the original. A belt has only just
+            // been generated at the first step, so it is not reordered until its asteroids have had time to drift
+            if (stepCount > 0 && stepCount % ASTEROID_REORDER_INTERVAL_STEPS == 0){
+                asteroidBelt.reorderAlongCurve();
+            }
+
+            asteroidBelt.move(timeSeconds, massiveXDisplacements, massiveYDisplacements, gravitationalParameters,
+                    numberOfCelestialBodies, softeningLengthMeters * softeningLengthMeters);
+            includeAsteroidBeltInDisplacementBounds(asteroidBelt);
+        }
     }
 
     /**
-     * Calculate the radius of the smallest celestial body
+     * Calculates the displacement of the furthest celestial body or asteroid
      *
-     * @return the radius of the smallest celestial body
+     * @return the displacement of the furthest celestial body or asteroid
      */
-    public double getSmallestCelestialBodyRadius(){
-        double radius = celestialBodies.get(0).getRadius();
-
-        for (CelestialBody celestialBody : celestialBodies){
-            if (radius > celestialBody.getRadius()){
-                radius = celestialBody.getRadius();
-            }
-        }
-
-        return radius;
+    public double getGreatestCelestialBodyDisplacement(){
+        updateDisplacementBounds();
+        return Math.sqrt(greatestDisplacementSquared);
     }
 
     /**
-     * Calculate the radius of the largest celestial body
+     * Calculates the greatest distance of any celestial body or asteroid from the center along the x-axis
      *
-     * @return the radius of the largest celestial body
+     * @return the greatest absolute x-displacement, or 0 if there are no celestial bodies
      */
-    public double getGreatestCelestialBodyRadius(){
-        double radius = celestialBodies.get(0).getRadius();
+    public double getGreatestCelestialBodyXExtent(){
+        updateDisplacementBounds();
+        return celestialBodies.isEmpty() ? 0 : Math.max(-minimumXDisplacement, maximumXDisplacement);
+    }
 
-        for (CelestialBody celestialBody : celestialBodies){
-            if (radius < celestialBody.getRadius()){
-                radius = celestialBody.getRadius();
-            }
-        }
+    /**
+     * Calculates the greatest distance of any celestial body or asteroid from the center along the y-axis
+     *
+     * @return the greatest absolute y-displacement, or 0 if there are no celestial bodies
+     */
+    public double getGreatestCelestialBodyYExtent(){
+        updateDisplacementBounds();
+        return celestialBodies.isEmpty() ? 0 : Math.max(-minimumYDisplacement, maximumYDisplacement);
+    }
 
-        return radius;
+    /**
+     * Calculate the radius of the smallest celestial body
+     *
+     * @return the radius of the smallest celestial body
+     */
+    public double getSmallestCelestialBodyRadius(){
+        updateRadiusBounds();
+        return smallestRadius;
+    }
+
+    /**
+     * Calculate the radius of the largest celestial body
+     *
+     * @return the radius of the largest celestial body
+     */
+    public double getGreatestCelestialBodyRadius(){
+        updateRadiusBounds();
+        return greatestRadius;
     }
 
     /**
@@ -526,47 +1225,823 @@ public class SolarSystem {
      * @return None
      */
     public void movePlanetsOverTime(double timeSeconds){
+        IntegrationStepEvent stepEvent = new IntegrationStepEvent();
+        stepEvent.begin();
+
+        // the displacement bounds are found again from every celestial body's new displacement as they are moved
+        minimumXDisplacement = Double.POSITIVE_INFINITY;
+        maximumXDisplacement = Double.NEGATIVE_INFINITY;
+        minimumYDisplacement = Double.POSITIVE_INFINITY;
+        maximumYDisplacement = Double.NEGATIVE_INFINITY;
+        greatestDisplacementSquared = 0;
+
+        if (collisionsEnabled){
+            recordStartDisplacements();
+        }
+        clearConservedQuantities();
+
+        // the planets need a sun to orbit to be moved along Kepler orbits
+        if (integrator == Integrator.WISDOM_HOLMAN && sunIndex != -1){
+            wisdomHolmanIntegrator.step(celestialBodies, sunIndex, softeningLengthMeters * softeningLengthMeters,
+                    forceEngine, timeSeconds);
+            forceNanoseconds = wisdomHolmanIntegrator.getForceNanoseconds();
+
+            for (CelestialBody c : celestialBodies){
+                includeInDisplacementBounds(c.getXDisplacement(), c.getYDisplacement());
+                addConservedQuantities(c);
+            }
+        } else {
+            ForceEvaluationEvent forceEvent = new ForceEvaluationEvent();
+            forceEvent.begin();
+            long start = System.nanoTime();
+            moveWithSemiImplicitEuler(timeSeconds);
+            forceNanoseconds = System.nanoTime() - start;
+            forceEvent.end();
+            if (forceEvent.shouldCommit()){
+                forceEvent.describe(celestialBodies.size(), getForceEngineInUseName());
+                forceEvent.commit();
+            }
+        }
+
+        // bodies are merged before the asteroids are moved so that the asteroids are pulled by the merged bodies
+        boolean bodiesMerged = collisionsEnabled && mergeCollidingBodies();
+        // the sums still include the bodies that were merged away, and merging changes the kinetic energy
+        if (bodiesMerged){
+            updateConservedQuantities();
+        }
+
+        if (!asteroidBelts.isEmpty()){
+            moveAsteroidBelts(timeSeconds);
+        }
+        // the bounds still include the bodies that were merged away, so they are found again when next needed
+        displacementBoundsStale = bodiesMerged;
+        spatialGridStale = true;
+
+        simulatedTimeSeconds += timeSeconds;
+        stepCount++;
+        timeStepSeconds = timeSeconds;
+
+        stepEvent.end();
+        if (stepEvent.shouldCommit()){
+            stepEvent.describe(this);
+            stepEvent.setStep(integrator, stepCount, timeSeconds);
+            stepEvent.commit();
+        }
+    }
+
+    /**
+     * Moves every planet one after another, changing its velocity by the pull of every other celestial body and then
+     * its displacement by the new velocity. Pairs in a close encounter are moved in substeps afterwards
+     *
+     * @param timeSeconds the amount of time that has elapsed in seconds
+     * @return None
+     */
+    private void moveWithSemiImplicitEuler(double timeSeconds){
         Vector acceleration;
-        for (CelestialBody c : celestialBodies){
+        boolean closeEncounters = maximumEncounterSubsteps > 1 && findCloseEncounters(timeSeconds);
+
+        for (int i = 0; i < celestialBodies.size(); i++){
+            CelestialBody c = celestialBodies.get(i);
+            // a body in a close encounter is pulled by its partner and moved during the pair's substeps instead
+            int partner = closeEncounters ? encounterPartners[i] : -1;
+
             if (c instanceof Planet){
                 // calculates the acceleration using Newton's second law, since the only force on a planet is the
                 // gravity from other celestial bodies that can be divided by the mass of the planet to get its
                 // acceleration
 
-                acceleration = calculateNetGravity(c);
+                acceleration = calculateNetGravity(c, partner == -1 ? null : celestialBodies.get(partner));
                 acceleration.timesConstant(1 / (c.getMass()));
 
                 // use kinematics equations to alter the velocities of planets
                 ((Planet) c).setXVelocity(((Planet) c).getXVelocity() + acceleration.getX() * timeSeconds);
                 ((Planet) c).setYVelocity(((Planet) c).getYVelocity() + acceleration.getY() * timeSeconds);
 
-                // use kinematics equations with the modified velocities to alter the displacement of planets
-                c.setXDisplacement(c.getXDisplacement() + ((Planet) c).getXVelocity() * timeSeconds);
-                c.setYDisplacement(c.getYDisplacement() + ((Planet) c).getYVelocity() * timeSeconds);
+                if (partner == -1){
+                    // use kinematics equations with the modified velocities to alter the displacement of planets
+                    c.setXDisplacement(c.getXDisplacement() + ((Planet) c).getXVelocity() * timeSeconds);
+                    c.setYDisplacement(c.getYDisplacement() + ((Planet) c).getYVelocity() * timeSeconds);
+                }
+            }
+
+            if (partner == -1){
+                includeInDisplacementBounds(c.getXDisplacement(), c.getYDisplacement());
+                addConservedQuantities(c);
             }
         }
+
+        if (closeEncounters){
+            moveCloseEncounters(timeSeconds);
+        }
+    }
+
+    /**
+     * Finds the pairs of celestial bodies that are too close for a single step. A pair is close when the step is longer
+     * than a small fraction of the time it takes the pair to fall together or to pass each other, and each planet is
+     * paired with the partner it is closest to in that sense, as long as that partner picked it too. The sun doesn't
+     * move, so it can be the partner of any number of planets
+     *
+     * @param timeSeconds the time interval of the step
+     * @return whether any pairs were found
+     */
+    private boolean findCloseEncounters(double timeSeconds){
+        int numberOfCelestialBodies = celestialBodies.size();
+
+        if (encounterPartners.length < numberOfCelestialBodies){
+            encounterPartners = new int[numberOfCelestialBodies];
+            encounterSubsteps = new int[numberOfCelestialBodies];
+        }
+        Arrays.fill(encounterPartners, 0, numberOfCelestialBodies, -1);
+        Arrays.fill(encounterSubsteps, 0, numberOfCelestialBodies, 1);
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            CelestialBody c1 = celestialBodies.get(i);
+
+            for (int j = i + 1; j < numberOfCelestialBodies; j++){
+                CelestialBody c2 = celestialBodies.get(j);
+
+                if (!(c1 instanceof Planet) && !(c2 instanceof Planet)){
+                    continue;
+                }
+
+                int substeps = calculateEncounterSubsteps(c1, c2, timeSeconds);
+                if (c1 instanceof Planet && substeps > encounterSubsteps[i]){
+                    encounterPartners[i] = j;
+                    encounterSubsteps[i] = substeps;
+                }
+                if (c2 instanceof Planet && substeps > encounterSubsteps[j]){
+                    encounterPartners[j] = i;
+                    encounterSubsteps[j] = substeps;
+                }
+            }
+        }
+
+        // a planet whose partner is busy with a closer body is moved normally. Planets are only marked in the first
+        // pass, so every check is against the choices made above whichever planet is looked at first
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            int partner = encounterPartners[i];
+
+            if (partner != -1 && celestialBodies.get(partner) instanceof Planet && encounterPartners[partner] != i){
+                encounterSubsteps[i] = 0;
+            }
+        }
+
+        boolean found = false;
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            if (encounterSubsteps[i] == 0){
+                encounterPartners[i] = -1;
+            } else if (encounterPartners[i] != -1){
+                found = true;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Calculates how many substeps a pair of celestial bodies needs so that each covers only a small fraction of the
+     * time it takes them to fall together or to pass each other
+     *
+     * @param c1 the first celestial body
+     * @param c2 the second celestial body
+     * @param timeSeconds the time interval of the step
+     * @return the number of substeps, from 1 up to the greatest number allowed
+     */
+    private int calculateEncounterSubsteps(CelestialBody c1, CelestialBody c2, double timeSeconds){
+        double dx = c2.getXDisplacement() - c1.getXDisplacement();
+        double dy = c2.getYDisplacement() - c1.getYDisplacement();
+        double distance = Math.sqrt(dx * dx + dy * dy + softeningLengthMeters * softeningLengthMeters);
+        double dvx = getXVelocity(c2) - getXVelocity(c1);
+        double dvy = getYVelocity(c2) - getYVelocity(c1);
+
+        double freeFallTime = Math.sqrt(distance * distance * distance /
+                (GRAVITATION_CONSTANT * (c1.getMass() + c2.getMass())));
+        double crossingTime = distance / Math.sqrt(dvx * dvx + dvy * dvy);
+        double substeps = Math.ceil(timeSeconds / (ENCOUNTER_TIME_STEP_FRACTION *
+                Math.min(freeFallTime, crossingTime)));
+
+        // NaN from bodies at the same place or with no mass is not an encounter
+        return substeps > 1 ? (int) Math.min(substeps, maximumEncounterSubsteps) : 1;
+    }
+
+    /**
+     * Moves each pair of celestial bodies in a close encounter over the rest of the step. Both bodies have already
+     * been pulled by everything but each other, so each substep pulls them by each other and then moves them. The
+     * pull between them is equal and opposite, so the pair's momentum is the same as it would be without substeps
+     *
+     * @param timeSeconds the time interval of the step
+     * @return None
+     */
+    private void moveCloseEncounters(double timeSeconds){
+        double softeningLengthSquared = softeningLengthMeters * softeningLengthMeters;
+
+        for (int i = 0; i < celestialBodies.size(); i++){
+            int partner = encounterPartners[i];
+            // each pair of planets is moved once, from its first planet
+            if (partner == -1 || (celestialBodies.get(partner) instanceof Planet && partner < i)){
+                continue;
+            }
+
+            Planet p = (Planet) celestialBodies.get(i);
+            CelestialBody c = celestialBodies.get(partner);
+            Planet other = c instanceof Planet ? (Planet) c : null;
+            int substeps = encounterSubsteps[i];
+            double substepSeconds = timeSeconds / substeps;
+
+            // each substep is a half pull, a move, and another half pull, which is symmetric in time. The velocities
+            // this integrator keeps are half a step behind the displacements, so the pair's velocities are first
+            // caught up by half a step and at the end set back by half a step. With one substep this is exactly the
+            // same as a normal step, so the pair's orbit doesn't drift as the number of substeps changes
+            pullCloseEncounterPair(p, c, other, (timeSeconds + substepSeconds) / 2, softeningLengthSquared);
+            for (int k = 0; k < substeps; k++){
+                p.setXDisplacement(p.getXDisplacement() + p.getXVelocity() * substepSeconds);
+                p.setYDisplacement(p.getYDisplacement() + p.getYVelocity() * substepSeconds);
+                // the sun is held in place
+                if (other != null){
+                    other.setXDisplacement(other.getXDisplacement() + other.getXVelocity() * substepSeconds);
+                    other.setYDisplacement(other.getYDisplacement() + other.getYVelocity() * substepSeconds);
+                }
+
+                // the half pulls ending one substep and starting the next are done together
+                pullCloseEncounterPair(p, c, other, k == substeps - 1 ? (substepSeconds - timeSeconds) / 2 :
+                        substepSeconds, softeningLengthSquared);
+            }
+
+            includeInDisplacementBounds(p.getXDisplacement(), p.getYDisplacement());
+            addConservedQuantities(p);
+            if (other != null){
+                includeInDisplacementBounds(other.getXDisplacement(), other.getYDisplacement());
+                addConservedQuantities(other);
+            }
+        }
+    }
+
+    /**
+     * Changes the velocities of a pair of celestial bodies in a close encounter by the pull between them
+     *
+     * @param p the planet of the pair
+     * @param c the other celestial body of the pair
+     * @param other the other celestial body if it is a planet, or null if it is held in place
+     * @param timeSeconds the time interval the pull acts over
+     * @param softeningLengthSquared the square of the softening length
+     * @return None
+     */
+    private void pullCloseEncounterPair(Planet p, CelestialBody c, Planet other, double timeSeconds,
+                                        double softeningLengthSquared){
+        double dx = c.getXDisplacement() - p.getXDisplacement();
+        double dy = c.getYDisplacement() - p.getYDisplacement();
+        double distanceSquared = dx * dx + dy * dy + softeningLengthSquared;
+        double scale = GRAVITATION_CONSTANT / (distanceSquared * Math.sqrt(distanceSquared)) * timeSeconds;
+
+        p.setXVelocity(p.getXVelocity() + c.getMass() * scale * dx);
+        p.setYVelocity(p.getYVelocity() + c.getMass() * scale * dy);
+        if (other != null){
+            other.setXVelocity(other.getXVelocity() - p.getMass() * scale * dx);
+            other.setYVelocity(other.getYVelocity() - p.getMass() * scale * dy);
+        }
+    }
+
+    /**
+     * Gets the x-velocity of a celestial body, a sun doesn't move so its velocity is 0
+     *
+     * @param c the celestial body
+     * @return the x-velocity
+     */
+    private static double getXVelocity(CelestialBody c){
+        return c instanceof Planet ? ((Planet) c).getXVelocity() : 0;
+    }
+
+    /**
+     * Gets the y-velocity of a celestial body, a sun doesn't move so its velocity is 0
+     *
+     * @param c the celestial body
+     * @return the y-velocity
+     */
+    private static double getYVelocity(CelestialBody c){
+        return c instanceof Planet ? ((Planet) c).getYVelocity() : 0;
+    }
+
+    /**
+     * Clears the kinetic energy, momentum, and angular momentum before they are added up again, and finds where the
+     * sun is for the angular momentum
+     *
+     * @return None
+     */
+    private void clearConservedQuantities(){
+        kineticEnergy = 0;
+        xMomentum = 0;
+        yMomentum = 0;
+        angularMomentum = 0;
+        angularMomentumXOrigin = sunIndex == -1 ? 0 : celestialBodies.get(sunIndex).getXDisplacement();
+        angularMomentumYOrigin = sunIndex == -1 ? 0 : celestialBodies.get(sunIndex).getYDisplacement();
+    }
+
+    /**
+     * Adds a celestial body's kinetic energy, momentum, and angular momentum to the solar system's, a sun doesn't move
+     * so it adds nothing
+     *
+     * @param c the celestial body, after it has been moved
+     * @return None
+     */
+    private void addConservedQuantities(CelestialBody c){
+        if (c instanceof Planet){
+            double mass = c.getMass();
+            double xVelocity = ((Planet) c).getXVelocity();
+            double yVelocity = ((Planet) c).getYVelocity();
+
+            kineticEnergy += mass * (xVelocity * xVelocity + yVelocity * yVelocity) / 2;
+            xMomentum += mass * xVelocity;
+            yMomentum += mass * yVelocity;
+            angularMomentum += mass * ((c.getXDisplacement() - angularMomentumXOrigin) * yVelocity -
+                    (c.getYDisplacement() - angularMomentumYOrigin) * xVelocity);
+        }
+    }
+
+    /**
+     * Adds up the kinetic energy, momentum, and angular momentum of every planet from scratch, for when the
+     * celestial bodies have changed since the last step
+     *
+     * @return None
+     */
+    public void updateConservedQuantities(){
+        clearConservedQuantities();
+        for (CelestialBody c : celestialBodies){
+            addConservedQuantities(c);
+        }
+    }
+
+    /**
+     * Copies where every celestial body is at the start of a step, before any of them are moved
+     *
+     * @return None
+     */
+    private void recordStartDisplacements(){
+        int numberOfCelestialBodies = celestialBodies.size();
+
+        if (startXDisplacements.length < numberOfCelestialBodies){
+            startXDisplacements = new double[numberOfCelestialBodies];
+            startYDisplacements = new double[numberOfCelestialBodies];
+            endXDisplacements = new double[numberOfCelestialBodies];
+            endYDisplacements = new double[numberOfCelestialBodies];
+            collisionRadii = new double[numberOfCelestialBodies];
+            absorbed = new boolean[numberOfCelestialBodies];
+            merged = new boolean[numberOfCelestialBodies];
+        }
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            CelestialBody c = celestialBodies.get(i);
+            startXDisplacements[i] = c.getXDisplacement();
+            startYDisplacements[i] = c.getYDisplacement();
+        }
+    }
+
+    /**
+     * Merges every pair of celestial bodies that touched during the step, in order of when they touched. Each body is
+     * treated as moving in a straight line from where it started the step to where it ended it, so bodies that passed
+     * through each other are merged too
+     *
+     * @return whether any celestial bodies were merged
+     */
+    private boolean mergeCollidingBodies(){
+        int numberOfCelestialBodies = celestialBodies.size();
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            CelestialBody c = celestialBodies.get(i);
+            endXDisplacements[i] = c.getXDisplacement();
+            endYDisplacements[i] = c.getYDisplacement();
+            collisionRadii[i] = c.getRadius();
+        }
+
+        int numberOfCollisions = collisionDetector.detect(startXDisplacements, startYDisplacements, endXDisplacements,
+                endYDisplacements, collisionRadii, numberOfCelestialBodies);
+        if (numberOfCollisions == 0){
+            return false;
+        }
+
+        Arrays.fill(absorbed, 0, numberOfCelestialBodies, false);
+        Arrays.fill(merged, 0, numberOfCelestialBodies, false);
+
+        for (int i = 0; i < numberOfCollisions; i++){
+            int first = collisionDetector.getFirstBody(i);
+            int second = collisionDetector.getSecondBody(i);
+
+            if (absorbed[first] || absorbed[second]){
+                continue;
+            }
+
+            CelestialBody c1 = celestialBodies.get(first);
+            CelestialBody c2 = celestialBodies.get(second);
+            // a body that has already merged this step has grown and moved to the center of mass of what it merged
+            // with, so it only merges again if it still touches the other body
+            if ((merged[first] || merged[second]) && c1.distanceTo(c2) > c1.getRadius() + c2.getRadius()){
+                continue;
+            }
+
+            // the sun is never merged into a planet, otherwise the heavier body keeps its name and image
+            boolean firstSurvives = c1 instanceof Sun || (!(c2 instanceof Sun) && c1.getMass() >= c2.getMass());
+            mergeCelestialBodies(firstSurvives ? c1 : c2, firstSurvives ? c2 : c1);
+
+            absorbed[firstSurvives ? second : first] = true;
+            merged[firstSurvives ? first : second] = true;
+            numberOfMerges++;
+        }
+
+        // every merged away body is removed in one pass, so the indexes are only rebuilt once
+        ArrayList<CelestialBody> remaining = new ArrayList<>(numberOfCelestialBodies);
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            if (!absorbed[i]){
+                remaining.add(celestialBodies.get(i));
+            }
+        }
+        celestialBodies = remaining;
+        rebuildIndexes();
+        radiusBoundsStale = true;
+
+        return true;
+    }
+
+    /**
+     * Merges one celestial body into another in a perfectly inelastic collision. Momentum is conserved, so the merged
+     * body moves with the velocity of the pair's center of mass, and is placed at that center of mass. The merged body
+     * has the volume of both bodies together. The sun is held in place, so when a planet falls into it the sun takes
+     * the planet's mass and momentum without moving
+     *
+     * @param survivor the celestial body that is kept
+     * @param other the celestial body that is merged into the survivor
+     * @return None
+     */
+    private void mergeCelestialBodies(CelestialBody survivor, CelestialBody other){
+        double mass = survivor.getMass() + other.getMass();
+        double otherXVelocity = other instanceof Planet ? ((Planet) other).getXVelocity() : 0;
+        double otherYVelocity = other instanceof Planet ? ((Planet) other).getYVelocity() : 0;
+
+        // two massless bodies have no center of mass, so the survivor stays where it is and keeps its velocity
+        if (survivor instanceof Planet && mass > 0){
+            Planet p = (Planet) survivor;
+
+            p.setXVelocity((p.getMass() * p.getXVelocity() + other.getMass() * otherXVelocity) / mass);
+            p.setYVelocity((p.getMass() * p.getYVelocity() + other.getMass() * otherYVelocity) / mass);
+            p.setXDisplacement((p.getMass() * p.getXDisplacement() + other.getMass() * other.getXDisplacement()) /
+                    mass);
+            p.setYDisplacement((p.getMass() * p.getYDisplacement() + other.getMass() * other.getYDisplacement()) /
+                    mass);
+        }
+
+        survivor.setMass(mass);
+        survivor.setRadius(Math.cbrt(Math.pow(survivor.getRadius(), 3) + Math.pow(other.getRadius(), 3)));
+    }
+
+    /**
+     * Turns merging celestial bodies that touch on or off
+     *
+     * @param collisionsEnabled whether celestial bodies that touch are merged
+     * @return None
+     */
+    public void setCollisionsEnabled(boolean collisionsEnabled){
+        this.collisionsEnabled = collisionsEnabled;
+    }
+
+    /**
+     * Checks whether celestial bodies that touch are merged
+     *
+     * @return whether collisions are on
+     */
+    public boolean isCollisionsEnabled(){
+        return collisionsEnabled;
+    }
+
+    /**
+     * Sets the Plummer softening length used for the gravity between every pair of bodies
+     *
+     * @param softeningLengthMeters the softening length in meters, 0 for unsoftened gravity
+     * @return None
+     */
+    public void setSofteningLengthMeters(double softeningLengthMeters){
+        this.softeningLengthMeters = softeningLengthMeters;
+    }
+
+    /**
+     * Gets the Plummer softening length used for the gravity between every pair of bodies
+     *
+     * @return the softening length in meters
+     */
+    public double getSofteningLengthMeters(){
+        return softeningLengthMeters;
+    }
+
+    /**
+     * Sets the greatest number of substeps a pair of celestial bodies in a close encounter is moved with
+     *
+     * @param maximumEncounterSubsteps the greatest number of substeps, 1 turns substepping off
+     * @return None
+     */
+    public void setMaximumEncounterSubsteps(int maximumEncounterSubsteps){
+        this.maximumEncounterSubsteps = maximumEncounterSubsteps;
+    }
+
+    /**
+     * Gets the greatest number of substeps a pair of celestial bodies in a close encounter is moved with
+     *
+     * @return the greatest number of substeps, 1 if substepping is off
+     */
+    public int getMaximumEncounterSubsteps(){
+        return maximumEncounterSubsteps;
+    }
+
+    /**
+     * Sets how the planets are moved each step
+     *
+     * @param integrator the way to move the planets
+     * @return None
+     */
+    public void setIntegrator(Integrator integrator){
+        this.integrator = integrator;
+    }
+
+    /**
+     * Gets how the planets are moved each step
+     *
+     * @return the way the planets are moved
+     */
+    public Integrator getIntegrator(){
+        return integrator;
+    }
+
+    /**
+     * Sets the force engine that finds the pulls between the bodies when the integrator needs them all at once
+     *
+     * @param forceEngine the force engine
+     * @return None
+     */
+    public void setForceEngine(ForceEngine forceEngine){
+        this.forceEngine = forceEngine;
+    }
+
+    /**
+     * Gets the force engine that finds the pulls between the bodies when the integrator needs them all at once
+     *
+     * @return the force engine
+     */
+    public ForceEngine getForceEngine(){
+        return forceEngine;
+    }
+
+    /**
+     * Gets the name of whatever finds the pulls between the celestial bodies: the force engine when Wisdom-Holman is
+     * moving the planets, since semi-implicit Euler, and Wisdom-Holman without a sun, add up every pull themselves
+     *
+     * @return the name
+     */
+    public String getForceEngineInUseName(){
+        return integrator == Integrator.WISDOM_HOLMAN && sunIndex != -1 ? forceEngine.getName() :
+                "Direct sum (semi-implicit Euler)";
+    }
+
+    /**
+     * Gets the time spent finding the pulls between the celestial bodies in the last step, which for semi-implicit
+     * Euler is the time it took to move the celestial bodies
+     *
+     * @return the time in nanoseconds
+     */
+    public long getForceNanoseconds(){
+        return forceNanoseconds;
+    }
+
+    /**
+     * Gets the kinetic energy of the planets at the end of the last step, or when updateConservedQuantities was last
+     * called
+     *
+     * @return the kinetic energy in joules
+     */
+    public double getKineticEnergy(){
+        return kineticEnergy;
+    }
+
+    /**
+     * Gets the x-momentum of the planets at the end of the last step
+     *
+     * @return the x-momentum in kg m/s
+     */
+    public double getXMomentum(){
+        return xMomentum;
+    }
+
+    /**
+     * Gets the y-momentum of the planets at the end of the last step
+     *
+     * @return the y-momentum in kg m/s
+     */
+    public double getYMomentum(){
+        return yMomentum;
+    }
+
+    /**
+     * Gets the angular momentum of the planets around the sun at the end of the last step, anticlockwise is positive
+     *
+     * @return the angular momentum in kg m^2/s
+     */
+    public double getAngularMomentum(){
+        return angularMomentum;
+    }
+
+    /**
+     * Estimates how much memory a snapshot of the solar system would take up, without taking one
+     *
+     * @return the estimated number of bytes
+     */
+    public long getEstimatedSnapshotBytes(){
+        long asteroidBeltBytes = 0;
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            asteroidBeltBytes += asteroidBelt.getEstimatedBytes();
+        }
+
+        return SolarSystemSnapshot.estimateBytes(celestialBodies.size(), asteroidBeltBytes);
+    }
+
+    /**
+     * Gets a number that changes whenever celestial bodies are added, removed, merged, or reordered, which is when the
+     * index of a celestial body may stop meaning the same body
+     *
+     * @return the version of the celestial bodies
+     */
+    public long getCelestialBodiesVersion(){
+        return celestialBodiesVersion;
+    }
+
+    /**
+     * Gets the number of times two celestial bodies have merged
+     *
+     * @return the number of merges
+     */
+    public long getNumberOfMerges(){
+        return numberOfMerges;
+    }
+
+    /**
+     * Gets the amount of time the celestial bodies have been moved over
+     *
+     * @return the simulated time in seconds
+     */
+    public double getSimulatedTimeSeconds(){
+        return simulatedTimeSeconds;
+    }
+
+    /**
+     * Gets the number of steps the celestial bodies have been moved
+     *
+     * @return the number of steps
+     */
+    public long getStepCount(){
+        return stepCount;
+    }
+
+    /**
+     * Gets the time interval of the last step
+     *
+     * @return the time interval of the last step in seconds or 0 if no step has been taken
+     */
+    public double getTimeStepSeconds(){
+        return timeStepSeconds;
+    }
+
+    /**
+     * Copies the simulated time followed by the x-displacement, y-displacement, x-velocity, and y-velocity of every
+     * celestial body into a trajectory frame. A sun does not move, so its velocity is recorded as 0. Asteroids in
+     * asteroid belts are not part of a frame
+     *
+     * @param frame the array to copy into, it must have room for 1 + 4 values for each celestial body
+     * @return None
+     */
+    public void copyTrajectoryFrame(double[] frame){
+        frame[0] = simulatedTimeSeconds;
+
+        int position = 1;
+        for (CelestialBody c : celestialBodies){
+            frame[position] = c.getXDisplacement();
+            frame[position + 1] = c.getYDisplacement();
+
+            if (c instanceof Planet){
+                frame[position + 2] = ((Planet) c).getXVelocity();
+                frame[position + 3] = ((Planet) c).getYVelocity();
+            } else {
+                frame[position + 2] = 0;
+                frame[position + 3] = 0;
+            }
+
+            position += TrajectoryMetadata.VALUES_PER_BODY;
+        }
+    }
+
+    /**
+     * Copies the current state of every celestial body into a snapshot. The snapshot shares nothing that can change
+     * with the solar system, so it can be used on another thread while the solar system keeps moving
+     *
+     * @return a snapshot of the solar system
+     */
+    public SolarSystemSnapshot createSnapshot(){
+        SolarSystemSnapshot snapshot = createCelestialBodySnapshot();
+
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            snapshot.addAsteroidBelt(asteroidBelt.copy(), asteroidBelt.getStoreType());
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Copies the current state of every celestial body into a snapshot without the asteroid belts, for readers that
+     * only look at the celestial bodies. Leaving the belts out means millions of asteroids are not copied for them,
+     * and the snapshot holds no memory that has to be released
+     *
+     * @return a snapshot of the celestial bodies of the solar system
+     */
+    public SolarSystemSnapshot createCelestialBodySnapshot(){
+        SolarSystemSnapshot snapshot = new SolarSystemSnapshot(celestialBodies.size(), simulatedTimeSeconds,
+                stepCount, timeStepSeconds);
+        snapshot.setSimulationSettings(integrator, softeningLengthMeters, maximumEncounterSubsteps, collisionsEnabled,
+                forceEngine);
+
+        for (int i = 0; i < celestialBodies.size(); i++){
+            snapshot.setCelestialBody(i, celestialBodies.get(i));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Replaces the state of the solar system with the state stored in a snapshot, settings included. The celestial
+     * bodies are restored in the same order they were in, since the order they are moved in affects the result of
+     * every step
+     *
+     * @param snapshot the snapshot to restore
+     * @return None
+     */
+    public void restoreSnapshot(SolarSystemSnapshot snapshot){
+        celestialBodies = new ArrayList<>(snapshot.getNumberOfCelestialBodies());
+
+        for (int i = 0; i < snapshot.getNumberOfCelestialBodies(); i++){
+            celestialBodies.add(snapshot.createCelestialBody(i));
+        }
+        // the snapshot's belts are copied again so that the snapshot can be restored more than once, and are put back
+        // in the kind of memory they were taken from
+        closeAsteroidBelts();
+        asteroidBelts = new ArrayList<>(snapshot.getNumberOfAsteroidBelts());
+        for (int i = 0; i < snapshot.getNumberOfAsteroidBelts(); i++){
+            AsteroidBelt asteroidBelt = snapshot.getAsteroidBelt(i);
+
+            try {
+                asteroidBelts.add(asteroidBelt.copy(snapshot.getAsteroidBeltStoreType(i)));
+            } catch (IOException iox){
+                System.out.println("Error creating body store file!");
+                // the belt is copied as the snapshot keeps it instead, which falls back to direct memory for a file
+                // backed belt, so the run can go on without its file
+                asteroidBelts.add(asteroidBelt.copy());
+            }
+        }
+        rebuildIndexes();
+        radiusBoundsStale = true;
+        displacementBoundsStale = true;
+        spatialGridStale = true;
+
+        simulatedTimeSeconds = snapshot.getSimulatedTimeSeconds();
+        stepCount = snapshot.getStepCount();
+        timeStepSeconds = snapshot.getTimeStepSeconds();
+        // the settings decide how the next step is taken, so without them the restored run would not follow on from
+        // the one the snapshot was taken from
+        integrator = snapshot.getIntegrator();
+        softeningLengthMeters = snapshot.getSofteningLengthMeters();
+        maximumEncounterSubsteps = snapshot.getMaximumEncounterSubsteps();
+        collisionsEnabled = snapshot.isCollisionsEnabled();
+        forceEngine = snapshot.getForceEngine();
     }
 
     /**
      * Calculates the net gravity acting on a celestial body
      *
      * @param c1 the celestial body whose net gravity is being calculated
+     * @param excluded a celestial body whose gravity is left out, or null to include every celestial body
      * @return the net gravity acting on a celestial body
      */
-    private Vector calculateNetGravity(CelestialBody c1){
-
-        final double GRAVITATION_CONSTANT = 6.6743E-11;
-
+    private Vector calculateNetGravity(CelestialBody c1, CelestialBody excluded){
         double netGravityX = 0;
         double netGravityY = 0;
+        double softeningLengthSquared = softeningLengthMeters * softeningLengthMeters;
 
         for (CelestialBody c2 : celestialBodies){
             // ensure that c2 is not c1 so that there is not a divide by 0 error
-            if (!c1.equals(c2)){
+            if (!c1.equals(c2) && c2 != excluded){
                 // use Newton's law of universal gravitation (Fg = (Gm1m2 / r^2) to calculate the gravity that each
                 // celestial body has on c1
+                double distance = c1.distanceTo(c2);
+                double softenedDistanceSquared = Math.pow(distance, 2) + softeningLengthSquared;
                 double magnitudeOfGravity = (GRAVITATION_CONSTANT * c1.getMass() *
-                        c2.getMass()) / (Math.pow((c1.distanceTo(c2)) ,2));
+                        c2.getMass()) / softenedDistanceSquared;
+
+                // with softening the pull is Gm1m2r / (r^2 + softening^2)^(3/2), which goes to 0 instead of infinity
+                // as the bodies meet
+                if (softeningLengthSquared > 0){
+                    magnitudeOfGravity *= distance / Math.sqrt(softenedDistanceSquared);
+                }
 
                 double angleBetween = c2.getAngleBetweenDisplacements(c1);
 
@@ -0,0 +1,165 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Defines a solar system edit queue as a way for any thread to change a solar system that another thread is moving.
+ * The solar system itself is only ever touched by the thread running the simulation, so edits are queued and that
+ * thread applies every waiting edit between two steps, which means a step never sees half of an edit and every edit
+ * sees the bodies as they were after a whole step. A thread that wants to read the solar system asks for a snapshot
+ * of its celestial bodies, which is taken between the same two steps after the edits, so it never sees a step or a
+ * batch of edits halfway done. Celestial bodies are named by their name or image path rather than by index, since the
+ * indexes change as bodies are added, removed, merged, and sorted between when an edit is submitted and when it is
+ * applied. Operations include submitting edits, asking for a snapshot, and applying what is waiting.
+ */
+public class SolarSystemEditQueue {
+    private final ConcurrentLinkedQueue<Consumer<SolarSystem>> pendingEdits;
+    // the snapshot every reader since the last step boundary is waiting on, or null if nobody is waiting. Readers that
+    // ask between the same two steps share one snapshot, since they would get the same state anyway
+    private final AtomicReference<CompletableFuture<SolarSystemSnapshot>> requestedSnapshot;
+
+    /**
+     * Creates a new empty solar system edit queue
+     *
+     * @return None
+     */
+    public SolarSystemEditQueue(){
+        pendingEdits = new ConcurrentLinkedQueue<>();
+        requestedSnapshot = new AtomicReference<>();
+    }
+
+    /**
+     * Submits an edit to be applied to the solar system at the next step boundary, after every edit submitted before
+     * it
+     *
+     * @param edit the edit, which is run on the thread running the simulation
+     * @return None
+     */
+    public void submit(Consumer<SolarSystem> edit){
+        pendingEdits.add(edit);
+    }
+
+    /**
+     * Submits adding a planet to the solar system
+     *
+     * @param name the name of the planet
+     * @param mass the mass of the planet, a negative mass is treated as 0
+     * @param radius the radius of the planet, a negative radius is treated as 0
+     * @param imagePath the image path for the planet
+     * @param displayPriority the display priority of the planet
+     * @param xDisplacement the x-displacement of the planet
+     * @param yDisplacement the y-displacement of the planet
+     * @param type the type of planet
+     * @param xVelocity the x-velocity of the planet
+     * @param yVelocity the y-velocity of the planet
+     * @return None
+     */
+    public void submitAddPlanet(String name, double mass, double radius, String imagePath, int displayPriority,
+                                double xDisplacement, double yDisplacement, String type, double xVelocity,
+                                double yVelocity){
+        double clampedMass = Math.max(0, mass);
+        double clampedRadius = Math.max(0, radius);
+
+        submit(solarSystem -> solarSystem.addPlanet(name, clampedMass, clampedRadius, imagePath, displayPriority,
+                xDisplacement, yDisplacement, type, xVelocity, yVelocity));
+    }
+
+    /**
+     * Submits changing the mass of a celestial body
+     *
+     * @param nameOrImagePath the name or image path of the celestial body
+     * @param mass the new mass, a negative mass is treated as 0
+     * @return None
+     */
+    public void submitSetCelestialBodyMass(String nameOrImagePath, double mass){
+        double clampedMass = Math.max(0, mass);
+
+        submit(solarSystem -> {
+            int index = findCelestialBody(solarSystem, nameOrImagePath);
+            if (index != -1){
+                solarSystem.setCelestialBodyMass(index, clampedMass);
+            }
+        });
+    }
+
+    /**
+     * Submits removing a celestial body
+     *
+     * @param nameOrImagePath the name or image path of the celestial body
+     * @return None
+     */
+    public void submitRemoveCelestialBody(String nameOrImagePath){
+        submit(solarSystem -> {
+            int index = findCelestialBody(solarSystem, nameOrImagePath);
+            if (index != -1){
+                solarSystem.removeCelestialBody(index);
+            }
+        });
+    }
+
+    /**
+     * Finds a celestial body an edit names, which may have been removed or merged away since the edit was submitted
+     *
+     * @param solarSystem the solar system
+     * @param nameOrImagePath the name or image path of the celestial body
+     * @return the index of the celestial body, or -1 if there is none
+     */
+    private static int findCelestialBody(SolarSystem solarSystem, String nameOrImagePath){
+        int index = solarSystem.getIndexOfCelestialBody(nameOrImagePath);
+
+        if (index == -1){
+            System.out.println("Error editing " + nameOrImagePath + ", there is no such celestial body!");
+        }
+        return index;
+    }
+
+    /**
+     * Asks for a snapshot of the solar system taken at the next step boundary, after the edits waiting then are
+     * applied. The snapshot leaves out the asteroid belts, so the readers sharing it never have to agree on who
+     * releases them
+     *
+     * @return the snapshot once it has been taken
+     */
+    public CompletableFuture<SolarSystemSnapshot> requestSnapshot(){
+        CompletableFuture<SolarSystemSnapshot> request = new CompletableFuture<>();
+        CompletableFuture<SolarSystemSnapshot> waiting = requestedSnapshot.compareAndExchange(null, request);
+
+        return waiting == null ? request : waiting;
+    }
+
+    /**
+     * Applies every edit that is waiting, in the order they were submitted, and then takes the snapshot readers are
+     * waiting on. Only the thread running the simulation calls this, between two steps
+     *
+     * @param solarSystem the solar system
+     * @return the number of edits applied
+     */
+    public int applyPending(SolarSystem solarSystem){
+        int numberOfEdits = 0;
+        // the request is taken before the edits are counted, so every edit submitted before a snapshot was asked for
+        // is applied before it is taken. A request that comes in after this waits for the next step boundary
+        CompletableFuture<SolarSystemSnapshot> request = requestedSnapshot.getAndSet(null);
+
+        // edits submitted while these are applied are left for the next step boundary, so a steady stream of edits
+        // can't hold the simulation up
+        for (int waiting = pendingEdits.size(); numberOfEdits < waiting; numberOfEdits++){
+            pendingEdits.poll().accept(solarSystem);
+        }
+
+        if (request != null){
+            request.complete(solarSystem.createCelestialBodySnapshot());
+        }
+
+        return numberOfEdits;
+    }
+
+    /**
+     * Checks whether anything is waiting for the next step boundary, which is cheap enough to do every step
+     *
+     * @return whether there is an edit or a snapshot request waiting
+     */
+    public boolean hasPending(){
+        return !pendingEdits.isEmpty() || requestedSnapshot.get() != null;
+    }
+}
@@ -0,0 +1,30 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Defines a solar system file event as a flight recorder event for loading a solar system from a file or saving one to
+ * a file, the whole of which is the event's duration.
+ */
+@Name("SolarSystem.File")
+@Label("Solar System File")
+@Description("A solar system loaded from or saved to a file")
+public class SolarSystemFileEvent extends SimulationEvent {
+    @Label("Operation")
+    String operation;
+
+    @Label("Path")
+    String path;
+
+    /**
+     * Fills in what was done with which file
+     *
+     * @param operation "Load" or "Save"
+     * @param path the file path
+     * @return None
+     */
+    public void setFile(String operation, String path){
+        this.operation = operation;
+        this.path = path;
+    }
+}
@@ -1,5 +1,10 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class SolarSystemRunner {
@@ -7,12 +12,47 @@ public class SolarSystemRunner {
     static final String SAVED_SOLAR_SYSTEM_PATH = "SolarSystems/";
     static final String IMAGES_PATH = "Images/";
     static final String SIMULATION_ICON_PATH = "Images/simulationIcon.png";
+    static final String CHECKPOINT_PATH = "Checkpoints/checkpoint.bin";
+    static final String TRAJECTORIES_PATH = "Trajectories/";
     static final int DEFAULT_SIMULATION_WIDTH = 700;
     static final int DEFAULT_SIMULATION_HEIGHT = 700;
+    // the time interval in seconds that planets are being moved over, a smaller number will lead to more
+    // precise calculations
+    static final double DEFAULT_TIME_INTERVAL_SECONDS = 0.01;
+    // the number of steps between checkpoints, 0 turns checkpoints off
+    static final int DEFAULT_CHECKPOINT_INTERVAL_STEPS = 100000;
+    // how far from a body in pixels a click in the simulation window can be and still pick it
+    static final int PICK_RADIUS_PIXELS = 15;
+    // how long a paused simulation waits before checking whether it has been resumed
+    static final int PAUSED_WAIT_MILLIS = 50;
     static final Scanner READER = new Scanner(System.in);
     static SolarSystem solarSystem = null;
     static Simulation simulation = new Simulation(SIMULATION_NAME, SIMULATION_ICON_PATH, DEFAULT_SIMULATION_WIDTH,
             DEFAULT_SIMULATION_HEIGHT);
+    static double timeIntervalSeconds = DEFAULT_TIME_INTERVAL_SECONDS;
+    static int checkpointIntervalSteps = DEFAULT_CHECKPOINT_INTERVAL_STEPS;
+    // the step count of the solar system when the last checkpoint was submitted
+    static long lastCheckpointStepCount = 0;
+    static final CheckpointWriter CHECKPOINT_WRITER = new CheckpointWriter(CHECKPOINT_PATH);
+    // the number of steps between recorded trajectory frames, 0 turns recording off
+    static int trajectorySampleIntervalSteps = 0;
+    static String trajectoryRecordingName = "recording";
+    static TrajectoryCompression trajectoryCompression = TrajectoryCompression.NONE;
+    static double trajectoryToleranceMeters = 1;
+    // only exists while a simulation is running with recording turned on
+    static TrajectoryRecorder trajectoryRecorder = null;
+    // the number of steps between timeline snapshots and the memory they can take up, a snapshot of a solar system
+    // with 10 celestial bodies takes up under 1 KB
+    static final int DEFAULT_TIMELINE_INTERVAL_STEPS = 10000;
+    static final long DEFAULT_TIMELINE_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
+    static final SimulationTimeline SIMULATION_TIMELINE = new SimulationTimeline(DEFAULT_TIMELINE_INTERVAL_STEPS,
+            DEFAULT_TIMELINE_MEMORY_BUDGET_BYTES);
+    // checks the energy, momentum, and angular momentum after every step of a run, null turns it off
+    static ConservationMonitor conservationMonitor = null;
+    // edits to the solar system submitted from other threads while it runs, applied between steps
+    static final SolarSystemEditQueue SOLAR_SYSTEM_EDITS = new SolarSystemEditQueue();
+    // the live counters and controls of the running simulation that can be read and used over JMX
+    static final SimulationMetrics SIMULATION_METRICS = new SimulationMetrics(SOLAR_SYSTEM_EDITS);
 
     // throwing InterruptedException is needed for calling Thread.sleep to pause the program
     public static void mainMenu() throws InterruptedException {
@@ -36,9 +76,11 @@ public class SolarSystemRunner {
                 System.out.println("2 Save Solar System to file");
                 System.out.println("3 Manage Solar System");
                 System.out.println("4 Manage Simulation");
+                System.out.println("5 Restore Solar System from last checkpoint");
+                System.out.println("6 Generate a Solar System to a file");
                 System.out.println("0 Exit");
 
-                choice = getInt("> ", 0, 4);
+                choice = getInt("> ", 0, 6);
 
                 switch (choice){
                     case 0:
@@ -61,6 +103,14 @@ public class SolarSystemRunner {
                         manageSimulationMenu();
                         break;
 
+                    case 5:
+                        restoreCheckpoint();
+                        break;
+
+                    case 6:
+                        generateSolarSystem();
+                        break;
+
                 }
             }
         }
@@ -70,6 +120,8 @@ public class SolarSystemRunner {
 
         String fileName = getImagePath(SAVED_SOLAR_SYSTEM_PATH, "Enter a filename to load (default location " + SAVED_SOLAR_SYSTEM_PATH + "): ");
         solarSystem.loadSolarSystem(fileName);
+        lastCheckpointStepCount = 0;
+        SIMULATION_TIMELINE.clear();
 
         System.out.println("Success!");
     }
@@ -86,6 +138,123 @@ public class SolarSystemRunner {
         System.out.println("Success!");
     }
 
+    public static void restoreCheckpoint(){
+        System.out.println();
+
+        try {
+            SolarSystemSnapshot snapshot = CheckpointWriter.readCheckpoint(CHECKPOINT_PATH);
+            solarSystem.restoreSnapshot(snapshot);
+            // the solar system has copies of the snapshot's belts, only the settings are read from it from here on
+            snapshot.close();
+
+            // continue with the same time interval the checkpoint was taken with so the run resumes exactly
+            if (snapshot.getTimeStepSeconds() > 0){
+                timeIntervalSeconds = snapshot.getTimeStepSeconds();
+            }
+            lastCheckpointStepCount = snapshot.getStepCount();
+            SIMULATION_TIMELINE.clear();
+
+            System.out.printf("Restored checkpoint at %.2f simulated seconds (step %d) \n",
+                    snapshot.getSimulatedTimeSeconds(), snapshot.getStepCount());
+            // the checkpoint brings its own settings with it, which may not be the ones the user had set
+            System.out.println("Integrator: " + solarSystem.getIntegrator() + ", force engine: " +
+                    solarSystem.getForceEngine().getName());
+        } catch (IOException iox){
+            System.out.println("Error loading checkpoint!");
+        }
+
+        waiting();
+    }
+
+    public static void generateSolarSystem(){
+        // the same seed always generates the same bodies, so a benchmark input can be made again instead of kept
+        ScenarioGenerator generator = new ScenarioGenerator(getDouble("Mass of the sun (1e14 is typical): ", 0,
+                Double.MAX_VALUE), getInt("Seed: ", 0, Integer.MAX_VALUE));
+        boolean adding = true;
+
+        while (adding){
+            System.out.println();
+            System.out.println("Bodies so far: " + generator.getNumberOfCelestialBodies());
+            System.out.println("1 Add a belt around the sun");
+            System.out.println("2 Add a planet with a ring");
+            System.out.println("3 Add a companion star");
+            System.out.println("0 Write the Solar System");
+
+            switch (getInt("> ", 0, 3)){
+                case 0:
+                    adding = false;
+                    break;
+
+                case 1:
+                    System.out.println();
+                    System.out.print("Name of belt: ");
+                    String name = READER.nextLine();
+                    double mass = getDouble("Mass of each body: ", 0, Double.MAX_VALUE);
+                    int numberOfBodies = getInt("Number of bodies: ", 1, Integer.MAX_VALUE);
+                    double innerRadius = getDouble("Inner radius of the belt (m): ", 0, Double.MAX_VALUE);
+                    double outerRadius = getDouble("Outer radius of the belt (m): ", innerRadius, Double.MAX_VALUE);
+                    // 0 spreads the bodies evenly over the belt's area, bigger powers bunch them towards the inside
+                    double densityPower = getDouble("Power the density falls off with (0 for even): ", -10, 10);
+                    double maximumEccentricity = getDouble("Greatest eccentricity (0 to 0.99): ", 0, 0.99);
+                    generator.addBelt(BodyTemplate.intern(name, mass, 5, IMAGES_PATH + "asteroid.png", 1, "Asteroid"),
+                            numberOfBodies, innerRadius, outerRadius, densityPower, maximumEccentricity);
+                    break;
+
+                case 2:
+                    System.out.println();
+                    System.out.print("Name of planet: ");
+                    String planetName = READER.nextLine();
+                    double planetMass = getDouble("Mass of the planet: ", 0, Double.MAX_VALUE);
+                    double orbitRadius = getDouble("Distance from the sun (m): ", 0, Double.MAX_VALUE);
+                    int numberOfRingBodies = getInt("Number of bodies in the ring: ", 0, Integer.MAX_VALUE);
+                    double innerRingRadius = getDouble("Inner radius of the ring (m): ", 0, Double.MAX_VALUE);
+                    double outerRingRadius = getDouble("Outer radius of the ring (m): ", innerRingRadius,
+                            Double.MAX_VALUE);
+                    generator.addRingedPlanet(planetName, planetMass, 30, IMAGES_PATH + "saturn.png", orbitRadius,
+                            BodyTemplate.intern(planetName + " ring", 1, 2, IMAGES_PATH + "moon.png", 2, "Ring"),
+                            numberOfRingBodies, innerRingRadius, outerRingRadius);
+                    break;
+
+                case 3:
+                    System.out.println();
+                    System.out.print("Name of star: ");
+                    String starName = READER.nextLine();
+                    generator.addCompanionStar(starName, getDouble("Mass of the star: ", 0, Double.MAX_VALUE), 40,
+                            getDouble("Distance from the sun (m): ", 0, Double.MAX_VALUE));
+                    break;
+            }
+        }
+
+        System.out.println("0 Csv file, can be edited and loaded from the main menu");
+        System.out.println("1 Snapshot file, keeps every double exactly and loads faster");
+        boolean snapshot = getInt("> ", 0, 1) == 1;
+        System.out.println();
+        System.out.print("Enter a filename to write to (default location " + SAVED_SOLAR_SYSTEM_PATH + "): ");
+        String filePath = SAVED_SOLAR_SYSTEM_PATH + READER.nextLine();
+
+        System.out.println("Writing " + generator.getNumberOfCelestialBodies() + " bodies...");
+        if (!(snapshot ? generator.writeSnapshot(filePath) : generator.writeCsv(filePath))){
+            return;
+        }
+        System.out.println("Success!");
+
+        if (getInt("Load it now? (0 no, 1 yes): ", 0, 1) == 1){
+            if (snapshot){
+                try {
+                    SolarSystemSnapshot loaded = CheckpointWriter.readCheckpoint(filePath);
+                    solarSystem.restoreSnapshot(loaded);
+                    loaded.close();
+                } catch (IOException iox){
+                    System.out.println("Error loading snapshot!");
+                }
+            } else {
+                solarSystem.loadSolarSystem(filePath);
+            }
+            lastCheckpointStepCount = 0;
+            SIMULATION_TIMELINE.clear();
+        }
+    }
+
     public static void manageSolarSystemMenu(){
         boolean running = true;
 
@@ -106,9 +275,13 @@ public class SolarSystemRunner {
             System.out.println("10 Edit Celestial body display priority");
             System.out.println("11 Edit a planet’s type");
             System.out.println("12 Edit the sun’s luminosity");
+            System.out.println("13 Add an asteroid belt");
+            System.out.println("14 Remove an asteroid belt");
+            System.out.println("15 Change an asteroid belt’s storage");
+            System.out.println("16 Find bodies near a position");
             System.out.println("0 Exit");
 
-            int choice = getInt("> ", 0, 12);
+            int choice = getInt("> ", 0, 16);
 
             switch (choice){
                 case 0:
@@ -162,6 +335,28 @@ public class SolarSystemRunner {
                 case 12:
                     editSunLuminosity();
                     break;
+
+                case 13:
+                    addAsteroidBelt();
+                    break;
+
+                case 14:
+                    removeAsteroidBelt();
+                    break;
+
+                case 15:
+                    editAsteroidBeltStorage();
+                    break;
+
+                case 16:
+                    findBodiesNearPosition();
+                    break;
+            }
+
+            // adding, removing, or editing a celestial body means the timeline's later snapshots no longer follow from
+            // the current state
+            if (choice >= 4 && choice <= 15){
+                SIMULATION_TIMELINE.discardAfter(solarSystem.getStepCount());
             }
         }
     }
@@ -222,6 +417,124 @@ public class SolarSystemRunner {
         waiting();
     }
 
+    public static void addAsteroidBelt(){
+        System.out.println();
+        // every asteroid in the belt shares this information, so it is only entered once
+        System.out.print("Name of asteroid belt: ");
+        String name = READER.nextLine();
+
+        String imagePath = getImagePath(IMAGES_PATH, "Image name (default location " + IMAGES_PATH + "): ");
+
+        double mass = getDouble("Mass of each asteroid: ", 0, Double.MAX_VALUE);
+
+        double radius = getDouble("Radius of each asteroid: ", 0, Double.MAX_VALUE);
+
+        int displayPriority = getInt("Display priority: ", 0, Integer.MAX_VALUE);
+
+        int numberOfAsteroids = getInt("Number of asteroids: ", 1, Integer.MAX_VALUE);
+
+        double innerRadius = getDouble("Inner radius of the belt (m): ", 0, Double.MAX_VALUE);
+
+        double outerRadius = getDouble("Outer radius of the belt (m): ", innerRadius, Double.MAX_VALUE);
+
+        BodyStoreType storeType = selectBodyStoreType();
+
+        // the seed is chosen here and saved with the belt so that loading the file places the asteroids the same way
+        long seed = System.nanoTime();
+
+        try {
+            if (solarSystem.addAsteroidBelt(BodyTemplate.intern(name, mass, radius, imagePath, displayPriority,
+                    "Asteroid"), numberOfAsteroids, innerRadius, outerRadius, seed, storeType)){
+                System.out.println("Asteroid belt has been added!");
+            } else {
+                System.out.println("An asteroid belt needs a sun to orbit");
+            }
+        } catch (IOException iox){
+            System.out.println("Error creating body store file!");
+        }
+
+        waiting();
+    }
+
+    public static void removeAsteroidBelt(){
+        int asteroidBeltIndex = selectAsteroidBelt();
+
+        if (asteroidBeltIndex != -1){
+            solarSystem.removeAsteroidBelt(asteroidBeltIndex);
+            System.out.println("Asteroid belt has been removed!");
+        }
+
+        waiting();
+    }
+
+    public static void findBodiesNearPosition(){
+        System.out.println();
+
+        double xDisplacement = getDouble("X-displacement (m): ", -Double.MAX_VALUE, Double.MAX_VALUE);
+        double yDisplacement = getDouble("Y-displacement (m): ", -Double.MAX_VALUE, Double.MAX_VALUE);
+
+        System.out.println("0 - the nearest bodies, 1 - every body within a distance");
+        int[] bodies;
+        if (getInt("> ", 0, 1) == 0){
+            bodies = solarSystem.findNearestBodies(xDisplacement, yDisplacement,
+                    getInt("Number of bodies: ", 1, Integer.MAX_VALUE));
+        } else {
+            bodies = solarSystem.findBodiesWithin(xDisplacement, yDisplacement,
+                    getDouble("Distance (m): ", 0, Double.MAX_VALUE));
+        }
+
+        if (bodies.length == 0){
+            System.out.println("There are no bodies there");
+        }
+        for (int body : bodies){
+            System.out.println(solarSystem.getBodyName(body));
+        }
+
+        waiting();
+    }
+
+    public static void editAsteroidBeltStorage(){
+        int asteroidBeltIndex = selectAsteroidBelt();
+
+        if (asteroidBeltIndex != -1){
+            System.out.println("Current storage: " + solarSystem.getAsteroidBelt(asteroidBeltIndex).getStoreType());
+
+            try {
+                solarSystem.setAsteroidBeltStoreType(asteroidBeltIndex, selectBodyStoreType());
+                System.out.println("Asteroid belt storage has been changed!");
+            } catch (IOException iox){
+                System.out.println("Error creating body store file!");
+            }
+        }
+
+        waiting();
+    }
+
+    public static int selectAsteroidBelt(){
+        System.out.println();
+
+        if (solarSystem.getNumberOfAsteroidBelts() == 0){
+            System.out.println("There are no asteroid belts");
+            return -1;
+        }
+
+        for (int i = 0; i < solarSystem.getNumberOfAsteroidBelts(); i++){
+            AsteroidBelt asteroidBelt = solarSystem.getAsteroidBelt(i);
+            System.out.println(i + " - " + asteroidBelt.getTemplate().getName() + " (" +
+                    asteroidBelt.getNumberOfAsteroids() + " asteroids, " + asteroidBelt.getStoreType() + ")");
+        }
+
+        return getInt("> ", 0, solarSystem.getNumberOfAsteroidBelts() - 1);
+    }
+
+    public static BodyStoreType selectBodyStoreType(){
+        // belts too big for the heap can be kept in direct memory or in a file that the operating system pages in, and
+        // belts that do not need full precision can be kept as floats in half the memory
+        System.out.println("Storage: 0 - heap, 1 - off-heap, 2 - memory mapped file, 3 - compact");
+
+        return BodyStoreType.values()[getInt("> ", 0, BodyStoreType.values().length - 1)];
+    }
+
     public static void removePlanet(){
         int planetIndex = selectPlanet();
 
@@ -324,9 +637,24 @@ public class SolarSystemRunner {
             System.out.println("4 Speed up simulation");
             System.out.println("5 Slow down simulation");
             System.out.println("6 Run simulation");
+            System.out.println("7 Run simulation without a window");
+            System.out.println("8 Edit checkpoint interval");
+            System.out.println("9 Edit trajectory recording");
+            System.out.println("10 Replay a recorded trajectory");
+            System.out.println("11 Query a recorded trajectory");
+            System.out.println("12 Jump to a simulated time");
+            System.out.println("13 Edit timeline snapshots");
+            System.out.println("14 Compare compact asteroid storage accuracy");
+            System.out.println("15 Edit collisions");
+            System.out.println("16 Edit softening and close encounters");
+            System.out.println("17 Edit integrator");
+            System.out.println("18 Edit force engine");
+            System.out.println("19 Benchmark force engines");
+            System.out.println("20 Benchmark performance");
+            System.out.println("21 Edit conservation monitor");
             System.out.println("0 Exit");
 
-            int choice = getInt("> ", 0, 6);
+            int choice = getInt("> ", 0, 21);
 
             switch (choice){
                 case 0:
@@ -356,6 +684,66 @@ public class SolarSystemRunner {
                 case 6:
                     runSimulation();
                     break;
+
+                case 7:
+                    runHeadlessSimulation();
+                    break;
+
+                case 8:
+                    editCheckpointInterval();
+                    break;
+
+                case 9:
+                    editTrajectoryRecording();
+                    break;
+
+                case 10:
+                    replayTrajectory();
+                    break;
+
+                case 11:
+                    queryTrajectory();
+                    break;
+
+                case 12:
+                    jumpToTime();
+                    break;
+
+                case 13:
+                    editTimeline();
+                    break;
+
+                case 14:
+                    compareStorageAccuracy();
+                    break;
+
+                case 15:
+                    editCollisions();
+                    break;
+
+                case 16:
+                    editCloseEncounters();
+                    break;
+
+                case 17:
+                    editIntegrator();
+                    break;
+
+                case 18:
+                    editForceEngine();
+                    break;
+
+                case 19:
+                    benchmarkForceEngines();
+                    break;
+
+                case 20:
+                    benchmarkPerformance();
+                    break;
+
+                case 21:
+                    editConservationMonitor();
+                    break;
             }
         }
     }
@@ -366,6 +754,46 @@ public class SolarSystemRunner {
         System.out.println("Simulation height: " + simulation.getHeight() + " pixels");
         System.out.printf("Current scale: %.2f meters per pixel \n", simulation.getDistanceScale());
         System.out.println("Simulation speed: " + simulation.getSpeed());
+        System.out.printf("Simulated time: %.2f seconds (step %d) \n", solarSystem.getSimulatedTimeSeconds(),
+                solarSystem.getStepCount());
+        System.out.println("Time interval: " + timeIntervalSeconds + " seconds");
+        System.out.println("Checkpoint interval: " + checkpointIntervalSteps + " steps");
+        // checkpoints are written on another thread, so the last one submitted may not be on the disk yet
+        long lastWrittenStepCount = CHECKPOINT_WRITER.getLastWrittenStepCount();
+        System.out.println("Last checkpoint written: " + (lastWrittenStepCount == -1 ? "none yet" :
+                "step " + lastWrittenStepCount));
+        System.out.println("Collisions: " + (solarSystem.isCollisionsEnabled() ? "on, " +
+                solarSystem.getNumberOfMerges() + " merges so far" : "off"));
+        System.out.println("Integrator: " + solarSystem.getIntegrator());
+        System.out.println("Force engine: " + solarSystem.getForceEngine().getName());
+        System.out.println("Softening length: " + solarSystem.getSofteningLengthMeters() + " meters");
+        System.out.println("Close encounter substeps: " + (solarSystem.getMaximumEncounterSubsteps() > 1 ? "up to " +
+                solarSystem.getMaximumEncounterSubsteps() : "off"));
+        if (SIMULATION_TIMELINE.getNumberOfKeyframes() > 0){
+            System.out.printf("Timeline: %d snapshots from %.2f to %.2f seconds using %d of %d bytes \n",
+                    SIMULATION_TIMELINE.getNumberOfKeyframes(), SIMULATION_TIMELINE.getEarliestTimeSeconds(),
+                    SIMULATION_TIMELINE.getLatestTimeSeconds(), SIMULATION_TIMELINE.getKeyframeBytes(),
+                    SIMULATION_TIMELINE.getMemoryBudgetBytes());
+        } else if (SIMULATION_TIMELINE.getSkippedKeyframes() > 0){
+            System.out.println("Timeline: no snapshots, the solar system is bigger than the memory budget of " +
+                    SIMULATION_TIMELINE.getMemoryBudgetBytes() + " bytes");
+        } else {
+            System.out.println("Timeline: no snapshots yet, they are taken while the simulation runs");
+        }
+        if (trajectorySampleIntervalSteps > 0){
+            System.out.println("Recording trajectories every " + trajectorySampleIntervalSteps + " steps to " +
+                    TRAJECTORIES_PATH + trajectoryRecordingName + " with " + trajectoryCompression + " compression");
+        } else {
+            System.out.println("Trajectory recording is off");
+        }
+        if (conservationMonitor != null){
+            System.out.printf("Conservation drifts since the last run started: energy %.2e, momentum %.2e, " +
+                    "angular momentum %.2e (tolerance %.2e) \n", conservationMonitor.getEnergyDrift(),
+                    conservationMonitor.getMomentumDrift(), conservationMonitor.getAngularMomentumDrift(),
+                    conservationMonitor.getTolerance());
+        } else {
+            System.out.println("Conservation monitor is off");
+        }
 
         waiting();
 
@@ -417,54 +845,508 @@ public class SolarSystemRunner {
         simulation.setSpeed(simulation.getSpeed() * ((double) 1 / speedScale));
     }
 
-    // throwing InterruptedException is needed for calling Thread.sleep to pause the program
-    public static void runSimulation() throws InterruptedException {
+    public static void editCheckpointInterval(){
+        System.out.println();
+        System.out.println("Current checkpoint interval: " + checkpointIntervalSteps + " steps");
 
-        // reset labels and re-add all of them in case celestial bodies were added since the last time the simulation
-        // was run
+        // 0 is allowed so that checkpoints can be turned off
+        checkpointIntervalSteps = getInt("New checkpoint interval in steps (0 to turn off): ", 0, Integer.MAX_VALUE);
+    }
 
-        simulation.resetLabelsAndFrame();
+    public static void checkpointIfDue(){
+        // a checkpoint asked for over JMX is written whether or not one is due
+        if (SIMULATION_METRICS.takeCheckpointRequest() || checkpointIntervalSteps > 0 &&
+                solarSystem.getStepCount() - lastCheckpointStepCount >= checkpointIntervalSteps){
+            // only copying the state happens here, writing it to the disk happens on the checkpoint writer's thread
+            CHECKPOINT_WRITER.submit(solarSystem.createSnapshot(), solarSystem.getForceEngineInUseName());
+            lastCheckpointStepCount = solarSystem.getStepCount();
+        }
+    }
 
-        // sort them by display priority before displaying
-        solarSystem.sortCelestialBodiesByDisplayPriority();
+    public static void editTimeline(){
+        System.out.println();
+        System.out.println("Current timeline snapshot interval: " + SIMULATION_TIMELINE.getKeyframeIntervalSteps() +
+                " steps");
+        System.out.println("Current timeline memory budget: " + SIMULATION_TIMELINE.getMemoryBudgetBytes() / 1024 +
+                " KB");
+
+        // a shorter interval makes jumps faster, a bigger budget lets the timeline reach further back
+        SIMULATION_TIMELINE.setKeyframeIntervalSteps(getInt("New snapshot interval in steps: ", 1, Integer.MAX_VALUE));
+        SIMULATION_TIMELINE.setMemoryBudgetBytes(getInt("New memory budget in KB: ", 1, Integer.MAX_VALUE) * 1024L);
+    }
 
-        double greatestCelestialBodyRadius = solarSystem.getGreatestCelestialBodyRadius();
-        double smallestCelestialBodyRadius = solarSystem.getSmallestCelestialBodyRadius();
+    public static void jumpToTime(){
+        System.out.println();
 
-        // this buffer will ensure that the furthest celestial body is not displayed on the very edge of the screen
-        final double SCALE_BUFFER = 1.5;
-        simulation.calculateDistanceScale(solarSystem.getGreatestCelestialBodyDisplacement() * SCALE_BUFFER);
+        // the snapshot of the current state is the starting point of any jump forward
+        SIMULATION_TIMELINE.recordIfDue(solarSystem);
 
-        for (int i = 0; i < solarSystem.getNumberOfCelestialBodies(); i++){
-            simulation.addLabel(solarSystem.getCelestialBodyImagePath(i), solarSystem.getCelestialBodyXDisplacement(i),
-                    solarSystem.getCelestialBodyYDisplacement(i), solarSystem.getCelestialBodyRadius(i),
-                    greatestCelestialBodyRadius, smallestCelestialBodyRadius);
+        // a solar system too big for the memory budget has no snapshots to jump from
+        if (SIMULATION_TIMELINE.getNumberOfKeyframes() == 0){
+            System.out.println("The timeline has no snapshots, the solar system is bigger than its memory budget");
+            waiting();
+            return;
         }
 
-        simulation.displaySimulation();
+        System.out.printf("Current simulated time: %.2f seconds \n", solarSystem.getSimulatedTimeSeconds());
+        System.out.printf("The timeline can jump back to %.2f seconds, or to any time after that \n",
+                SIMULATION_TIMELINE.getEarliestTimeSeconds());
 
-        int numberOfCalculationsEachStep;
-        int waitTimeAfterEachStepInMillis;
+        double targetTimeSeconds = getDouble("Simulated time to jump to in seconds: ",
+                SIMULATION_TIMELINE.getEarliestTimeSeconds(), Double.MAX_VALUE);
 
-        if (simulation.getSpeed() <= 1){
-            waitTimeAfterEachStepInMillis = (int) (1 / simulation.getSpeed());
-            numberOfCalculationsEachStep = 1;
+        if (!SIMULATION_TIMELINE.seek(solarSystem, targetTimeSeconds, timeIntervalSeconds)){
+            System.out.println("That time is before the earliest snapshot");
         } else {
-            waitTimeAfterEachStepInMillis = 1;
-            numberOfCalculationsEachStep = (int) simulation.getSpeed();
+            System.out.printf("Jumped to %.2f seconds (step %d) \n", solarSystem.getSimulatedTimeSeconds(),
+                    solarSystem.getStepCount());
         }
 
+        waiting();
+    }
+
+    public static void editCollisions(){
+        System.out.println();
+        System.out.println("Collisions are currently " + (solarSystem.isCollisionsEnabled() ? "on" : "off"));
+        System.out.println("When collisions are on, celestial bodies that touch merge into one");
+
+        solarSystem.setCollisionsEnabled(getInt("Turn collisions on (1) or off (0): ", 0, 1) == 1);
+        // the timeline's later snapshots were taken with the old setting, so they no longer follow from the earlier
+        // ones
+        SIMULATION_TIMELINE.clear();
+    }
+
+    public static void editCloseEncounters(){
+        System.out.println();
+        System.out.println("Current softening length: " + solarSystem.getSofteningLengthMeters() + " meters");
+        System.out.println("Current greatest number of close encounter substeps: " +
+                solarSystem.getMaximumEncounterSubsteps());
+
+        // gravity between bodies closer than about the softening length stops growing, so a close pass can't fling
+        // them apart
+        solarSystem.setSofteningLengthMeters(getDouble("New softening length in meters (0 to turn off): ", 0,
+                Double.MAX_VALUE));
+        // a pair that passes close to each other is moved in up to this many smaller steps while everything else
+        // takes one
+        solarSystem.setMaximumEncounterSubsteps(getInt("New greatest number of substeps (1 to turn off): ", 1,
+                Integer.MAX_VALUE));
+        // the timeline's later snapshots were taken with the old settings, so they no longer follow from the earlier
+        // ones
+        SIMULATION_TIMELINE.clear();
+    }
+
+    public static void editIntegrator(){
+        System.out.println();
+        System.out.println("Current integrator: " + solarSystem.getIntegrator());
+        System.out.println("0 Semi-implicit Euler, every pull is applied each step, needs small time intervals");
+        System.out.println("1 Wisdom-Holman, planets follow their orbits around the sun exactly, so the time " +
+                "interval can be a sizeable fraction of the shortest orbit");
+        System.out.println("Close encounter substeps are only used by semi-implicit Euler");
+
+        solarSystem.setIntegrator(Integrator.values()[getInt("> ", 0, 1)]);
+        // the timeline's later snapshots were taken with the old integrator, so they no longer follow from the
+        // earlier ones
+        SIMULATION_TIMELINE.clear();
+    }
+
+    public static void editConservationMonitor(){
+        System.out.println();
+        System.out.println("The conservation monitor is currently " + (conservationMonitor != null ? "on" : "off"));
+        System.out.println("When it is on, a warning is printed the first time the energy, momentum, or angular " +
+                "momentum of a run drifts further from where it started than the tolerance");
+
+        if (getInt("Turn the conservation monitor on (1) or off (0): ", 0, 1) == 0){
+            conservationMonitor = null;
+            return;
+        }
+
+        // the potential energy needs every pair of bodies, so with many bodies it is only worth finding every so often
+        int potentialIntervalSteps = getInt("Steps between potential energy calculations: ", 1, Integer.MAX_VALUE);
+        double openingAngle = getDouble("Barnes-Hut opening angle for the potential energy (0 for exact): ", 0, 1);
+        double tolerance = getDouble("Greatest relative drift before a warning: ", 0, Double.MAX_VALUE);
+        conservationMonitor = new ConservationMonitor(potentialIntervalSteps, openingAngle, tolerance);
+    }
+
+    public static boolean applySolarSystemEdits(){
+        // checking for nothing waiting is cheap enough to do every step
+        if (!SOLAR_SYSTEM_EDITS.hasPending() || SOLAR_SYSTEM_EDITS.applyPending(solarSystem) == 0){
+            return false;
+        }
+
+        // the edits change the totals the conservation monitor compares against, so it starts again from them
+        if (conservationMonitor != null){
+            conservationMonitor.start(solarSystem);
+        }
+        // as with edits from the menu, the timeline's later snapshots no longer follow from the current state
+        SIMULATION_TIMELINE.discardAfter(solarSystem.getStepCount());
+        return true;
+    }
+
+    public static void checkConservation(){
+        if (conservationMonitor != null){
+            conservationMonitor.check(solarSystem);
+        }
+    }
+
+    public static void editForceEngine(){
+        System.out.println();
+        System.out.println("Current force engine: " + solarSystem.getForceEngine().getName());
+        System.out.println("The force engine finds the pulls between bodies for the Wisdom-Holman integrator");
+        System.out.println("0 Direct sum, exact but the time grows with the square of the number of bodies");
+        System.out.println("1 Barnes-Hut tree code, far groups of bodies pull as a point");
+        System.out.println("2 Fast multipole, far groups of bodies pull as an expansion of a chosen order");
+        System.out.println("3 Particle-mesh, far pulls are read off a grid and the heaviest bodies pull directly");
+        System.out.println("4 Auto-tuned, times the others on the first steps and keeps the fastest exact enough one");
+
+        switch (getInt("> ", 0, 4)){
+            case 0:
+                solarSystem.setForceEngine(new DirectSumForceEngine());
+                break;
+
+            case 1:
+                // a group is treated as a point when its radius is less than this fraction of its distance
+                solarSystem.setForceEngine(new BarnesHutForceEngine(getDouble("Opening angle (0.5 is typical): ",
+                        0, 1)));
+                break;
+
+            case 2:
+                // each order makes the pulls of far groups a few times more exact
+                solarSystem.setForceEngine(new FastMultipoleForceEngine(getInt("Expansion order (8 is typical): ",
+                        1, 20)));
+                break;
+
+            case 3:
+                // the grid is rounded down to a power of two for the Fourier transform, and the direct bodies are
+                // meant to be the sun and its planets
+                solarSystem.setForceEngine(new ParticleMeshForceEngine(getInt("Grid size (256 is typical): ", 16,
+                        2048), getInt("Number of direct bodies: ", 0, 100)));
+                break;
+
+            case 4:
+                // the direct sum is always exact enough, so there is always an engine to fall back on
+                ForceEngine[] engines = {new DirectSumForceEngine(), new BarnesHutForceEngine(0.5),
+                        new BarnesHutForceEngine(0.2), new FastMultipoleForceEngine(8),
+                        new ParticleMeshForceEngine(256, 16)};
+                solarSystem.setForceEngine(new AutoTuningForceEngine(engines,
+                        getDouble("Greatest median relative error (1e-3 is typical): ", 0, 1)));
+                break;
+        }
+        // the timeline's later snapshots were taken with the old engine, so they no longer follow from the earlier
+        // ones
+        SIMULATION_TIMELINE.clear();
+    }
+
+    public static void benchmarkForceEngines(){
+        int expansionOrder = getInt("Expansion order of the fast multipole engine: ", 1, 20);
+        int gridSize = getInt("Grid size of the particle-mesh engine: ", 16, 2048);
+        int greatestNumberOfBodies = getInt("Greatest number of bodies: ", 100, Integer.MAX_VALUE / 4);
+
+        // 1, 2, and 5 of each power of ten, so the crossovers are found to within a factor of about 2
+        int[] numbersOfBodies = new int[0];
+        for (int numberOfBodies = 100, step = 0; numberOfBodies <= greatestNumberOfBodies; step++){
+            numbersOfBodies = Arrays.copyOf(numbersOfBodies, numbersOfBodies.length + 1);
+            numbersOfBodies[numbersOfBodies.length - 1] = numberOfBodies;
+            numberOfBodies = step % 3 == 1 ? numberOfBodies / 2 * 5 : numberOfBodies * 2;
+        }
+
+        // the tree code is run with a typical opening angle and a much smaller one, since the fast multipole engine
+        // is only worth comparing with a tree code that is nearly as exact. The benchmark's bodies all weigh the same,
+        // so the particle-mesh engine has no direct bodies
+        ForceEngine[] engines = {new DirectSumForceEngine(), new BarnesHutForceEngine(0.5),
+                new BarnesHutForceEngine(0.2), new FastMultipoleForceEngine(expansionOrder),
+                new ParticleMeshForceEngine(gridSize, 0)};
+        System.out.println("Benchmarking, engines that take over a few seconds are stopped...");
+        ForceEngineBenchmark benchmark = ForceEngineBenchmark.run(engines, numbersOfBodies);
+
+        System.out.println();
+        for (int engine = 0; engine < benchmark.getNumberOfEngines(); engine++){
+            System.out.println(engine + " " + benchmark.getEngineName(engine));
+        }
+        System.out.println();
+        System.out.printf("%10s", "Bodies");
+        for (int engine = 0; engine < benchmark.getNumberOfEngines(); engine++){
+            System.out.printf(" %12s %9s", engine + " ms", engine + " error");
+        }
+        System.out.println();
+
+        for (int size = 0; size < benchmark.getNumberOfSizes(); size++){
+            System.out.printf("%10d", benchmark.getNumberOfBodies(size));
+            for (int engine = 0; engine < benchmark.getNumberOfEngines(); engine++){
+                if (Double.isNaN(benchmark.getSecondsPerCalculation(engine, size))){
+                    System.out.printf(" %12s %9s", "-", "-");
+                } else {
+                    System.out.printf(" %12.3f %9.2e", benchmark.getSecondsPerCalculation(engine, size) * 1000,
+                            benchmark.getRelativeError(engine, size));
+                }
+            }
+            System.out.println();
+        }
+
+        System.out.println();
+        for (int engine = 1; engine < benchmark.getNumberOfEngines(); engine++){
+            for (int otherEngine = 0; otherEngine < engine; otherEngine++){
+                int crossover = benchmark.findCrossover(engine, otherEngine);
+                System.out.println(benchmark.getEngineName(engine) + " is faster than " +
+                        benchmark.getEngineName(otherEngine) + (crossover == -1 ? ": never in this range" :
+                        " from " + crossover + " bodies"));
+            }
+        }
+
+        waiting();
+    }
+
+    public static void benchmarkPerformance(){
+        int greatestNumberOfBodies = getInt("Greatest number of bodies (10 to 1000000): ", 10, 1000000);
+        System.out.println("Benchmarking, sizes that would take over a few seconds per operation are skipped...");
+        // the labels of the simulation are moved around by the benchmark, they are added again by the next run
+        PerformanceBenchmark benchmark = PerformanceBenchmark.run(greatestNumberOfBodies, simulation);
+
+        System.out.println();
+        for (int b = 0; b < benchmark.getNumberOfBenchmarks(); b++){
+            System.out.println(benchmark.getBenchmarkName(b));
+            for (int size = 0; size < benchmark.getNumberOfSizes(); size++){
+                double nanoseconds = benchmark.getNanosecondsPerOperation(b, size);
+
+                if (Double.isNaN(nanoseconds)){
+                    System.out.printf("%10d bodies: -\n", benchmark.getNumberOfBodies(size));
+                } else {
+                    System.out.printf("%10d bodies: %14.3f ms ± %.3f\n", benchmark.getNumberOfBodies(size),
+                            nanoseconds / 1e6, benchmark.getStandardDeviation(b, size) / 1e6);
+                }
+            }
+        }
+
+        waiting();
+    }
+
+    public static void compareStorageAccuracy(){
+        int asteroidBeltIndex = selectAsteroidBelt();
+
+        if (asteroidBeltIndex != -1){
+            int numberOfSteps = getInt("Number of steps to compare over: ", 1, Integer.MAX_VALUE);
+            System.out.println("Comparing...");
+
+            try {
+                StoreAccuracyReport report = StoreAccuracyReport.compare(solarSystem, asteroidBeltIndex,
+                        BodyStoreType.COMPACT, numberOfSteps, timeIntervalSeconds);
+
+                System.out.printf("After %d steps of %.2f seconds with %d asteroids: \n", report.getNumberOfSteps(),
+                        report.getTimeStepSeconds(), report.getNumberOfAsteroids());
+                System.out.printf("Greatest displacement error: %.4g meters (%.3g of the belt's outer radius) \n",
+                        report.getGreatestDisplacementErrorMeters(), report.getRelativeDisplacementError());
+                System.out.printf("Root mean square displacement error: %.4g meters \n",
+                        report.getRootMeanSquareDisplacementErrorMeters());
+                System.out.printf("Greatest velocity error: %.4g meters per second \n",
+                        report.getGreatestVelocityErrorMetersPerSecond());
+                System.out.println("Memory: " + report.getComparedBytes() / 1024 + " KB compact, " +
+                        report.getReferenceBytes() / 1024 + " KB full precision");
+            } catch (IOException iox){
+                System.out.println("Error creating body store file!");
+            }
+        }
+
+        waiting();
+    }
+
+    public static void editTrajectoryRecording(){
+        System.out.println();
+        System.out.println("Current trajectory recording interval: " + trajectorySampleIntervalSteps + " steps");
+
+        // 0 is allowed so that recording can be turned off
+        trajectorySampleIntervalSteps = getInt("Record a frame every how many steps (0 to turn off): ", 0,
+                Integer.MAX_VALUE);
+
+        if (trajectorySampleIntervalSteps > 0){
+            System.out.println();
+            System.out.print("Recording name (saved in " + TRAJECTORIES_PATH + "): ");
+            trajectoryRecordingName = READER.nextLine();
+
+            System.out.println();
+            System.out.println("Compression:");
+            System.out.println("0 None, store every frame in full");
+            System.out.println("1 Linear, store a body only when it leaves a straight line prediction");
+            System.out.println("2 Kepler, store a body only when it leaves its predicted orbit around the sun");
+            trajectoryCompression = TrajectoryCompression.values()[getInt("> ", 0, 2)];
+
+            if (trajectoryCompression != TrajectoryCompression.NONE){
+                trajectoryToleranceMeters = getDouble("Greatest position error allowed (m): ", Double.MIN_VALUE,
+                        Double.MAX_VALUE);
+            }
+        }
+    }
+
+    public static void startTrajectoryRecording(){
+        if (trajectorySampleIntervalSteps > 0){
+            // a frame has a slot for each celestial body, and an asteroid belt can hold millions of asteroids that
+            // would make every frame that much bigger, so the asteroids are left out rather than recorded
+            if (solarSystem.getNumberOfAsteroidBelts() > 0){
+                System.out.println("Warning, the " + solarSystem.getNumberOfAsteroids() + " asteroids in asteroid " +
+                        "belts are not recorded, only the celestial bodies are");
+            }
+
+            try {
+                trajectoryRecorder = new TrajectoryRecorder(TRAJECTORIES_PATH + trajectoryRecordingName, solarSystem,
+                        timeIntervalSeconds, trajectorySampleIntervalSteps, trajectoryCompression,
+                        trajectoryToleranceMeters);
+            } catch (IOException iox){
+                System.out.println("Error starting trajectory recording!");
+            } catch (IllegalArgumentException iae){
+                // the tolerance can only be checked against the bodies once the recording starts
+                System.out.println("Error starting trajectory recording, the tolerance is too small for this solar " +
+                        "system!");
+            }
+        }
+    }
+
+    public static void recordTrajectoryIfDue(){
+        if (trajectoryRecorder != null && solarSystem.getStepCount() % trajectorySampleIntervalSteps == 0){
+            // copying the frame is the only work done here, writing it happens on the recorder's thread
+            if (!trajectoryRecorder.record(solarSystem)){
+                // the writer thread has already said why it failed
+                if (trajectoryRecorder.hasFailed()){
+                    System.out.println("Error recording trajectory, the recording was stopped!");
+                } else {
+                    System.out.println("Trajectory recording stopped, the celestial bodies changed");
+                }
+                stopTrajectoryRecording();
+            }
+        }
+    }
+
+    public static void stopTrajectoryRecording(){
+        if (trajectoryRecorder != null){
+            try {
+                trajectoryRecorder.close();
+                System.out.println("Recorded " + trajectoryRecorder.getWrittenFrames() + " trajectory frames");
+            } catch (InterruptedException ie){
+                System.out.println("Error finishing trajectory recording!");
+            }
+            trajectoryRecorder = null;
+        }
+    }
+
+    // throwing InterruptedException is needed for calling Thread.sleep to wait while the simulation is paused
+    public static void runHeadlessSimulation() throws InterruptedException {
+        System.out.println();
+
+        long numberOfSteps = getInt("Number of steps to run: ", 1, Integer.MAX_VALUE);
+        // print progress roughly every percent so the user knows the run is still going
+        long progressInterval = Math.max(1, numberOfSteps / 100);
+
+        startTrajectoryRecording();
+        SIMULATION_TIMELINE.recordIfDue(solarSystem);
+        if (conservationMonitor != null){
+            conservationMonitor.start(solarSystem);
+        }
+        SIMULATION_METRICS.startRun(solarSystem, simulation.getSpeed());
+
+        for (long i = 1; i <= numberOfSteps; i++){
+            applySolarSystemEdits();
+            while (SIMULATION_METRICS.isPaused()){
+                Thread.sleep(PAUSED_WAIT_MILLIS);
+                applySolarSystemEdits();
+            }
+
+            solarSystem.movePlanetsOverTime(timeIntervalSeconds);
+            checkConservation();
+            SIMULATION_METRICS.recordStep(solarSystem, conservationMonitor);
+            recordTrajectoryIfDue();
+            SIMULATION_TIMELINE.recordIfDue(solarSystem);
+            checkpointIfDue();
+
+            if (i % progressInterval == 0){
+                System.out.printf("Step %d of %d, simulated time: %.2f seconds \n", i, numberOfSteps,
+                        solarSystem.getSimulatedTimeSeconds());
+            }
+        }
+
+        stopTrajectoryRecording();
+        SIMULATION_METRICS.endRun();
+        System.out.println("Done!");
+
+        waiting();
+    }
+
+    // throwing InterruptedException is needed for calling Thread.sleep to pause the program
+    public static void runSimulation() throws InterruptedException {
+
+        // sort them by display priority before displaying
+        solarSystem.sortCelestialBodiesByDisplayPriority();
+
+        // this buffer will ensure that the furthest celestial body is not displayed on the very edge of the screen
+        final double SCALE_BUFFER = 1.5;
+        simulation.calculateDistanceScale(solarSystem.getGreatestCelestialBodyDisplacement() * SCALE_BUFFER);
+
+        displayCelestialBodies();
+        long numberOfMerges = solarSystem.getNumberOfMerges();
+
         System.out.println("Close the simulation window to exit the simulation");
 
-        // the time interval in seconds that planets are being moved over, a smaller number will lead to more
-        // precise calculations
-        final double TIME_INTERVAL_SECONDS = 0.01;
+        startTrajectoryRecording();
+        SIMULATION_TIMELINE.recordIfDue(solarSystem);
+        if (conservationMonitor != null){
+            conservationMonitor.start(solarSystem);
+        }
+        SIMULATION_METRICS.startRun(solarSystem, simulation.getSpeed());
 
         while (simulation.isDisplayed()){
+            long frameStart = System.nanoTime();
+            RenderFrameEvent frameEvent = new RenderFrameEvent();
+            frameEvent.begin();
+
+            // bodies added or removed between frames need labels, and a new body is put in its display order
+            if (applySolarSystemEdits()){
+                solarSystem.sortCelestialBodiesByDisplayPriority();
+                displayCelestialBodies();
+            }
+
+            // the speed can be changed over JMX while the simulation is running
+            double requestedSpeed = SIMULATION_METRICS.takeRequestedSpeed();
+            if (!Double.isNaN(requestedSpeed)){
+                simulation.setSpeed(requestedSpeed);
+            }
+
+            int numberOfCalculationsEachStep;
+            int waitTimeAfterEachStepInMillis;
+
+            if (simulation.getSpeed() <= 1){
+                waitTimeAfterEachStepInMillis = (int) (1 / simulation.getSpeed());
+                numberOfCalculationsEachStep = 1;
+            } else {
+                waitTimeAfterEachStepInMillis = 1;
+                numberOfCalculationsEachStep = (int) simulation.getSpeed();
+            }
+
+            // a paused simulation is still drawn, so the window can be clicked on and closed
+            if (SIMULATION_METRICS.isPaused()){
+                numberOfCalculationsEachStep = 0;
+                waitTimeAfterEachStepInMillis = Math.max(waitTimeAfterEachStepInMillis, PAUSED_WAIT_MILLIS);
+            }
+
             for (int i = 0; i < numberOfCalculationsEachStep; i++) {
-                solarSystem.movePlanetsOverTime(TIME_INTERVAL_SECONDS);
+                solarSystem.movePlanetsOverTime(timeIntervalSeconds);
+                checkConservation();
+                SIMULATION_METRICS.recordStep(solarSystem, conservationMonitor);
+                recordTrajectoryIfDue();
+                SIMULATION_TIMELINE.recordIfDue(solarSystem);
             }
 
+            checkpointIfDue();
+
+            // the furthest extent along each axis is found while the planets are moved, so following them as they
+            // drift costs nothing extra
+            simulation.rescaleToFit(solarSystem.getGreatestCelestialBodyXExtent(),
+                    solarSystem.getGreatestCelestialBodyYExtent(), SCALE_BUFFER);
+
+            // merged bodies are removed and the survivors grow, so the labels no longer match the celestial bodies
+            if (solarSystem.getNumberOfMerges() != numberOfMerges){
+                numberOfMerges = solarSystem.getNumberOfMerges();
+                displayCelestialBodies();
+            }
+
+            double greatestCelestialBodyRadius = solarSystem.getGreatestCelestialBodyRadius();
+            double smallestCelestialBodyRadius = solarSystem.getSmallestCelestialBodyRadius();
+
             for (int i = 0; i < solarSystem.getNumberOfCelestialBodies(); i++) {
                 // the arrayList labels in the simulation class is a parallel arrayList with the celestial bodies array
                 // in the solar system class
@@ -477,9 +1359,239 @@ public class SolarSystemRunner {
 
             }
 
+            drawAsteroidBelts();
+            inspectClickedBody();
+            SIMULATION_METRICS.recordFrame(System.nanoTime() - frameStart);
+            frameEvent.end();
+            if (frameEvent.shouldCommit()){
+                frameEvent.describe(solarSystem);
+                frameEvent.setSteps(numberOfCalculationsEachStep);
+                frameEvent.commit();
+            }
+
             // pauses the program for waitTimeAfterEachStepInMillis milliseconds
             Thread.sleep(waitTimeAfterEachStepInMillis);
         }
+
+        stopTrajectoryRecording();
+        SIMULATION_METRICS.endRun();
+    }
+
+    public static void displayCelestialBodies(){
+        // reset labels and re-add all of them in case celestial bodies were added since the last time the simulation
+        // was run
+        simulation.resetLabelsAndFrame();
+
+        double greatestCelestialBodyRadius = solarSystem.getGreatestCelestialBodyRadius();
+        double smallestCelestialBodyRadius = solarSystem.getSmallestCelestialBodyRadius();
+
+        for (int i = 0; i < solarSystem.getNumberOfCelestialBodies(); i++){
+            simulation.addLabel(solarSystem.getCelestialBodyImagePath(i), solarSystem.getCelestialBodyXDisplacement(i),
+                    solarSystem.getCelestialBodyYDisplacement(i), solarSystem.getCelestialBodyRadius(i),
+                    greatestCelestialBodyRadius, smallestCelestialBodyRadius);
+        }
+
+        if (solarSystem.getNumberOfAsteroidBelts() > 0){
+            simulation.addAsteroidLayer();
+            drawAsteroidBelts();
+        }
+
+        simulation.displaySimulation();
+    }
+
+    public static void inspectClickedBody(){
+        double[] clickedDisplacement = simulation.takeClickedDisplacement();
+
+        if (clickedDisplacement == null){
+            return;
+        }
+
+        // the spatial grid finds the nearest body without looking at every asteroid, and a click only picks it if it
+        // is close enough to where the user clicked
+        int body = solarSystem.findNearestBody(clickedDisplacement[0], clickedDisplacement[1],
+                PICK_RADIUS_PIXELS * simulation.getDistanceScale());
+
+        if (body != -1){
+            solarSystem.printBodyInformation(body);
+        }
+    }
+
+    public static void drawAsteroidBelts(){
+        if (solarSystem.getNumberOfAsteroidBelts() == 0){
+            return;
+        }
+
+        simulation.clearAsteroids();
+
+        for (int i = 0; i < solarSystem.getNumberOfAsteroidBelts(); i++){
+            AsteroidBelt asteroidBelt = solarSystem.getAsteroidBelt(i);
+
+            for (int id = 0; id < asteroidBelt.getNumberOfAsteroids(); id++){
+                simulation.drawAsteroid(asteroidBelt.getXDisplacement(id), asteroidBelt.getYDisplacement(id));
+            }
+        }
+
+        simulation.showAsteroids();
+    }
+
+    // throwing InterruptedException is needed for calling Thread.sleep to pause the program
+    public static void replayTrajectory() throws InterruptedException {
+        System.out.println();
+        System.out.print("Recording name to replay (saved in " + TRAJECTORIES_PATH + "): ");
+        String recordingName = READER.nextLine();
+
+        TrajectoryReader reader;
+        try {
+            reader = new TrajectoryReader(TRAJECTORIES_PATH + recordingName);
+        } catch (IOException iox){
+            System.out.println("Error loading recording!");
+            return;
+        }
+
+        if (reader.getNumberOfFrames() == 0){
+            System.out.println("The recording has no frames");
+            reader.close();
+            return;
+        }
+
+        TrajectoryMetadata metadata = reader.getMetadata();
+        int numberOfCelestialBodies = metadata.getNumberOfCelestialBodies();
+        double[] frame = new double[1 + TrajectoryMetadata.VALUES_PER_BODY * numberOfCelestialBodies];
+
+        simulation.resetLabelsAndFrame();
+
+        // labels are displayed in the order they are added, so they are added by display priority like they are when
+        // running the simulation, order[i] is the index of the celestial body shown by label i
+        Integer[] order = new Integer[numberOfCelestialBodies];
+        double greatestCelestialBodyRadius = 0;
+        double smallestCelestialBodyRadius = Double.MAX_VALUE;
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            order[i] = i;
+            greatestCelestialBodyRadius = Math.max(greatestCelestialBodyRadius, metadata.getRadius(i));
+            smallestCelestialBodyRadius = Math.min(smallestCelestialBodyRadius, metadata.getRadius(i));
+        }
+        Arrays.sort(order, (a, b) -> metadata.getDisplayPriority(b) - metadata.getDisplayPriority(a));
+
+        // the scale is taken from the first frame the same way it is taken from the solar system when running
+        reader.readFrame(0, frame);
+        double greatestDisplacement = 0;
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * i;
+            greatestDisplacement = Math.max(greatestDisplacement, Math.hypot(frame[position], frame[position + 1]));
+        }
+
+        // this buffer will ensure that the furthest celestial body is not displayed on the very edge of the screen
+        final double SCALE_BUFFER = 1.5;
+        simulation.calculateDistanceScale(greatestDisplacement * SCALE_BUFFER);
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * order[i];
+            simulation.addLabel(metadata.getImagePath(order[i]), frame[position], frame[position + 1],
+                    metadata.getRadius(order[i]), greatestCelestialBodyRadius, smallestCelestialBodyRadius);
+        }
+
+        simulation.addReplayControls((int) Math.min(Integer.MAX_VALUE, reader.getNumberOfFrames()));
+        simulation.displaySimulation();
+
+        System.out.println("Close the simulation window to exit the replay");
+        System.out.println("Space pauses, the left and right arrow keys change direction, the up and down arrow keys " +
+                "change speed, and the slider scrubs through the recording");
+
+        // at a replay rate of 1 the replay is shown at the same speed the simulation would run at, each recorded frame
+        // is sampleIntervalSteps steps and the simulation does simulation.getSpeed() steps between each display
+        double framesPerDisplay = simulation.getSpeed() / metadata.getSampleIntervalSteps();
+        double framePosition = 0;
+
+        while (simulation.isDisplayed()){
+            int requestedFrame = simulation.takeRequestedReplayFrame();
+
+            if (requestedFrame >= 0){
+                framePosition = requestedFrame;
+            } else if (!simulation.isReplayPaused()){
+                framePosition += framesPerDisplay * simulation.getReplayRate();
+            }
+
+            // stop at either end of the recording instead of wrapping around
+            framePosition = Math.max(0, Math.min(reader.getNumberOfFrames() - 1, framePosition));
+
+            // no physics is calculated, the frame is read straight from the recording
+            reader.readFrame((long) framePosition, frame);
+
+            for (int i = 0; i < numberOfCelestialBodies; i++){
+                int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * order[i];
+                simulation.updateLabelPosition(i, frame[position], frame[position + 1], metadata.getRadius(order[i]),
+                        greatestCelestialBodyRadius, smallestCelestialBodyRadius);
+            }
+
+            simulation.setReplayPosition((int) framePosition, frame[0]);
+
+            Thread.sleep(1);
+        }
+
+        reader.close();
+    }
+
+    public static void queryTrajectory(){
+        System.out.println();
+        System.out.print("Recording name to query (saved in " + TRAJECTORIES_PATH + "): ");
+        String recordingName = READER.nextLine();
+
+        TrajectoryQuery query;
+        try {
+            query = new TrajectoryQuery(TRAJECTORIES_PATH + recordingName);
+        } catch (IOException iox){
+            System.out.println("Error loading recording!");
+            return;
+        }
+
+        System.out.print("Name of the celestial body: ");
+        int bodyIndex = query.getBodyIndex(READER.nextLine());
+
+        if (bodyIndex == -1){
+            System.out.println("The recording has no celestial body with that name");
+            closeTrajectoryQuery(query);
+            return;
+        }
+
+        System.out.println("Choose a query:");
+        System.out.println("1 Positions between two times");
+        System.out.println("2 Celestial bodies within a distance at a time");
+
+        try {
+            if (getInt("> ", 1, 2) == 1){
+                double startTime = getDouble("Start time in seconds: ", 0, Double.MAX_VALUE);
+                double endTime = getDouble("End time in seconds: ", startTime, Double.MAX_VALUE);
+                double[] trajectory = query.getBodyTrajectory(bodyIndex, startTime, endTime);
+
+                for (int i = 0; i < trajectory.length; i += TrajectoryQuery.VALUES_PER_STATE){
+                    System.out.println("t = " + trajectory[i] + " s: (" + trajectory[i + 1] + ", " +
+                            trajectory[i + 2] + ") m, (" + trajectory[i + 3] + ", " + trajectory[i + 4] + ") m/s");
+                }
+                System.out.println(trajectory.length / TrajectoryQuery.VALUES_PER_STATE + " frames found");
+            } else {
+                double time = getDouble("Time in seconds: ", 0, Double.MAX_VALUE);
+                double distance = getDouble("Distance in meters: ", 0, Double.MAX_VALUE);
+                int[] found = query.findBodiesWithin(bodyIndex, distance, time);
+
+                for (int index : found){
+                    System.out.println(query.getMetadata().getName(index));
+                }
+                System.out.println(found.length + " celestial bodies found");
+            }
+        } catch (IOException iox){
+            System.out.println("Error reading recording!");
+        }
+
+        closeTrajectoryQuery(query);
+    }
+
+    public static void closeTrajectoryQuery(TrajectoryQuery query){
+        try {
+            query.close();
+        } catch (IOException iox){
+            System.out.println("Error closing recording!");
+        }
     }
 
     public static int selectCelestialBody(){
@@ -650,11 +1762,24 @@ public class SolarSystemRunner {
         READER.nextLine();
     }
 
+    public static void registerSimulationMetrics(){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(SIMULATION_METRICS,
+                    new ObjectName(SimulationMetrics.OBJECT_NAME));
+        } catch (JMException jme){
+            // the simulation runs just as well without them, it just can't be watched
+            System.out.println("Error registering the simulation metrics!");
+        }
+    }
+
     // throwing InterruptedException is needed for calling Thread.sleep to pause the program
     public static void main(String[] args) throws InterruptedException {
         System.out.println("--- SOLAR SYSTEM SIMULATION ---");
         System.out.println();
+        registerSimulationMetrics();
         mainMenu();
+        // let a checkpoint that is still being written finish before exiting
+        CHECKPOINT_WRITER.shutdown();
         System.out.println();
         System.out.println("Thank you for using SOLAR SYSTEM SIMULATION");
         System.out.println("Have a good day!");
@@ -0,0 +1,715 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Defines a snapshot of a solar system as parallel arrays holding the state of every celestial body at one instant,
+ * along with the simulated time, the number of steps taken, the time step being used, and the settings that decide how
+ * the next step is taken: the integrator, the softening length, the close encounter substeps, whether collisions are
+ * on, and the force engine. A snapshot is a copy, so it
+ * can be written to disk on another thread while the solar system keeps moving. Operations include writing a snapshot
+ * to a stream and reading one back, with every double stored exactly so that a restored run continues bit-for-bit.
+ */
+public class SolarSystemSnapshot {
+    // identifies a checkpoint file, these are the bytes for "SSCP"
+    private static final int MAGIC_NUMBER = 0x53534350;
+    // version 2 added asteroid belts, version 3 added the kind of memory each belt is kept in, version 4 added compact
+    // belts, version 5 added the order of the asteroids in a belt, and version 6 added the simulation settings, older
+    // checkpoints can still be read
+    private static final int FORMAT_VERSION = 6;
+    private static final byte SUN = 0;
+    private static final byte PLANET = 1;
+    // the kinds of force engine a checkpoint can hold, an engine is written as its kind followed by its settings
+    private static final byte DIRECT_SUM = 0;
+    private static final byte BARNES_HUT = 1;
+    private static final byte FAST_MULTIPOLE = 2;
+    private static final byte PARTICLE_MESH = 3;
+    private static final byte AUTO_TUNING = 4;
+
+    private final double simulatedTimeSeconds;
+    private final long stepCount;
+    private final double timeStepSeconds;
+    // the settings of the solar system, checkpoints older than version 6 have none so they get a new solar system's
+    private Integrator integrator;
+    private double softeningLengthMeters;
+    private int maximumEncounterSubsteps;
+    private boolean collisionsEnabled;
+    // a snapshot taken in memory shares the solar system's engine, one read from a file has a new one
+    private ForceEngine forceEngine;
+
+    // all arrays are parallel with the celestial bodies ArrayList at the time the snapshot was taken
+    private final byte[] kinds;
+    private final String[] names;
+    private final double[] masses;
+    private final double[] radii;
+    private final String[] imagePaths;
+    private final int[] displayPriorities;
+    private final double[] xDisplacements;
+    private final double[] yDisplacements;
+    // only used by planets
+    private final String[] types;
+    private final double[] xVelocities;
+    private final double[] yVelocities;
+    // only used by suns
+    private final double[] luminosities;
+    // copies of the solar system's asteroid belts, and the kind of memory each one was taken from
+    private final ArrayList<AsteroidBelt> asteroidBelts;
+    private final ArrayList<BodyStoreType> asteroidBeltStoreTypes;
+
+    /**
+     * Creates a new snapshot with room for a number of celestial bodies, the arrays are then filled in by the solar
+     * system or by readFrom
+     *
+     * @param numberOfCelestialBodies the number of celestial bodies in the snapshot
+     * @param simulatedTimeSeconds the simulated time in seconds at which the snapshot was taken
+     * @param stepCount the number of steps the solar system had been moved when the snapshot was taken
+     * @param timeStepSeconds the time step in seconds being used when the snapshot was taken
+     * @return None
+     */
+    SolarSystemSnapshot(int numberOfCelestialBodies, double simulatedTimeSeconds, long stepCount,
+                        double timeStepSeconds){
+        this.simulatedTimeSeconds = simulatedTimeSeconds;
+        this.stepCount = stepCount;
+        this.timeStepSeconds = timeStepSeconds;
+        integrator = Integrator.SEMI_IMPLICIT_EULER;
+        softeningLengthMeters = 0;
+        maximumEncounterSubsteps = 1;
+        collisionsEnabled = false;
+        forceEngine = new DirectSumForceEngine();
+
+        kinds = new byte[numberOfCelestialBodies];
+        names = new String[numberOfCelestialBodies];
+        masses = new double[numberOfCelestialBodies];
+        radii = new double[numberOfCelestialBodies];
+        imagePaths = new String[numberOfCelestialBodies];
+        displayPriorities = new int[numberOfCelestialBodies];
+        xDisplacements = new double[numberOfCelestialBodies];
+        yDisplacements = new double[numberOfCelestialBodies];
+        types = new String[numberOfCelestialBodies];
+        xVelocities = new double[numberOfCelestialBodies];
+        yVelocities = new double[numberOfCelestialBodies];
+        luminosities = new double[numberOfCelestialBodies];
+        asteroidBelts = new ArrayList<>();
+        asteroidBeltStoreTypes = new ArrayList<>();
+    }
+
+    /**
+     * Sets the settings that decide how the solar system takes its next step
+     *
+     * @param integrator the way the planets are moved
+     * @param softeningLengthMeters the Plummer softening length in meters
+     * @param maximumEncounterSubsteps the greatest number of close encounter substeps
+     * @param collisionsEnabled whether celestial bodies that touch are merged
+     * @param forceEngine the force engine
+     * @return None
+     */
+    void setSimulationSettings(Integrator integrator, double softeningLengthMeters, int maximumEncounterSubsteps,
+                               boolean collisionsEnabled, ForceEngine forceEngine){
+        this.integrator = integrator;
+        this.softeningLengthMeters = softeningLengthMeters;
+        this.maximumEncounterSubsteps = maximumEncounterSubsteps;
+        this.collisionsEnabled = collisionsEnabled;
+        this.forceEngine = forceEngine;
+    }
+
+    /**
+     * Gets the way the planets were being moved when the snapshot was taken
+     *
+     * @return the integrator
+     */
+    Integrator getIntegrator(){
+        return integrator;
+    }
+
+    /**
+     * Gets the softening length being used when the snapshot was taken
+     *
+     * @return the softening length in meters
+     */
+    double getSofteningLengthMeters(){
+        return softeningLengthMeters;
+    }
+
+    /**
+     * Gets the greatest number of close encounter substeps being used when the snapshot was taken
+     *
+     * @return the greatest number of substeps
+     */
+    int getMaximumEncounterSubsteps(){
+        return maximumEncounterSubsteps;
+    }
+
+    /**
+     * Checks whether collisions were on when the snapshot was taken
+     *
+     * @return whether collisions were on
+     */
+    boolean isCollisionsEnabled(){
+        return collisionsEnabled;
+    }
+
+    /**
+     * Gets the force engine being used when the snapshot was taken
+     *
+     * @return the force engine
+     */
+    ForceEngine getForceEngine(){
+        return forceEngine;
+    }
+
+    /**
+     * Copies the state of a celestial body into the snapshot
+     *
+     * @param index the index of the celestial body
+     * @param c the celestial body
+     * @return None
+     */
+    void setCelestialBody(int index, CelestialBody c){
+        names[index] = c.getName();
+        masses[index] = c.getMass();
+        radii[index] = c.getRadius();
+        imagePaths[index] = c.getImagePath();
+        displayPriorities[index] = c.getDisplayPriority();
+        xDisplacements[index] = c.getXDisplacement();
+        yDisplacements[index] = c.getYDisplacement();
+
+        if (c instanceof Sun){
+            kinds[index] = SUN;
+            luminosities[index] = ((Sun) c).getLuminosity();
+        } else {
+            kinds[index] = PLANET;
+            types[index] = ((Planet) c).getType();
+            xVelocities[index] = ((Planet) c).getXVelocity();
+            yVelocities[index] = ((Planet) c).getYVelocity();
+        }
+    }
+
+    /**
+     * Creates a new celestial body from the state stored in the snapshot
+     *
+     * @param index the index of the celestial body
+     * @return a new celestial body with the stored state
+     */
+    CelestialBody createCelestialBody(int index){
+        if (kinds[index] == SUN){
+            return new Sun(names[index], masses[index], radii[index], imagePaths[index], displayPriorities[index],
+                    xDisplacements[index], yDisplacements[index], luminosities[index]);
+        }
+
+        return new Planet(names[index], masses[index], radii[index], imagePaths[index], displayPriorities[index],
+                xDisplacements[index], yDisplacements[index], types[index], xVelocities[index], yVelocities[index]);
+    }
+
+    /**
+     * Adds a copy of an asteroid belt to the snapshot
+     *
+     * @param asteroidBelt the asteroid belt, it must not be changed after being added
+     * @param storeType the kind of memory the belt should be put back in when the snapshot is restored
+     * @return None
+     */
+    void addAsteroidBelt(AsteroidBelt asteroidBelt, BodyStoreType storeType){
+        asteroidBelts.add(asteroidBelt);
+        asteroidBeltStoreTypes.add(storeType);
+    }
+
+    /**
+     * Gets the number of asteroid belts in the snapshot
+     *
+     * @return the number of asteroid belts
+     */
+    int getNumberOfAsteroidBelts(){
+        return asteroidBelts.size();
+    }
+
+    /**
+     * Gets an asteroid belt in the snapshot, it must be copied before it is moved
+     *
+     * @param index the index of the asteroid belt
+     * @return the asteroid belt
+     */
+    AsteroidBelt getAsteroidBelt(int index){
+        return asteroidBelts.get(index);
+    }
+
+    /**
+     * Gets the kind of memory an asteroid belt should be put back in when the snapshot is restored
+     *
+     * @param index the index of the asteroid belt
+     * @return the type of body store
+     */
+    BodyStoreType getAsteroidBeltStoreType(int index){
+        return asteroidBeltStoreTypes.get(index);
+    }
+
+    /**
+     * Releases the memory and files of the snapshot's asteroid belts, the snapshot must not be used afterwards. The
+     * belts may be outside of the heap where the garbage collector does not see how much memory they take up, so
+     * whoever is done with a snapshot closes it rather than waiting for it to be collected
+     *
+     * @return None
+     */
+    public void close(){
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            asteroidBelt.close();
+        }
+    }
+
+    /**
+     * Gets the number of celestial bodies in the snapshot
+     *
+     * @return the number of celestial bodies in the snapshot
+     */
+    public int getNumberOfCelestialBodies(){
+        return kinds.length;
+    }
+
+    /**
+     * Gets the number of bodies in the snapshot, asteroids included
+     *
+     * @return the number of bodies
+     */
+    public long getNumberOfBodies(){
+        long numberOfBodies = kinds.length;
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            numberOfBodies += asteroidBelt.getNumberOfAsteroids();
+        }
+
+        return numberOfBodies;
+    }
+
+    /**
+     * Estimates how much memory the snapshot takes up
+     *
+     * @return the estimated number of bytes
+     */
+    public long getEstimatedBytes(){
+        long asteroidBeltBytes = 0;
+        for (AsteroidBelt asteroidBelt : asteroidBelts){
+            asteroidBeltBytes += asteroidBelt.getEstimatedBytes();
+        }
+
+        return estimateBytes(kinds.length, asteroidBeltBytes);
+    }
+
+    /**
+     * Estimates how much memory a snapshot would take up, so it can be known before the snapshot is taken
+     *
+     * @param numberOfCelestialBodies the number of celestial bodies in the snapshot
+     * @param asteroidBeltBytes the estimated number of bytes of the asteroid belts in the snapshot
+     * @return the estimated number of bytes
+     */
+    static long estimateBytes(int numberOfCelestialBodies, long asteroidBeltBytes){
+        // each celestial body has a byte, an int, 8 doubles, and 4 references (assuming compressed 4 byte references).
+        // The strings are shared with the celestial bodies they were copied from, so they are not counted
+        final int BYTES_PER_CELESTIAL_BODY = 1 + Integer.BYTES + 8 * Double.BYTES + 4 * 4;
+        // the object itself and the headers of its 12 arrays
+        final int OVERHEAD_BYTES = 256;
+
+        return OVERHEAD_BYTES + (long) BYTES_PER_CELESTIAL_BODY * numberOfCelestialBodies + asteroidBeltBytes;
+    }
+
+    /**
+     * Gets the simulated time at which the snapshot was taken
+     *
+     * @return the simulated time in seconds
+     */
+    public double getSimulatedTimeSeconds(){
+        return simulatedTimeSeconds;
+    }
+
+    /**
+     * Gets the number of steps the solar system had been moved when the snapshot was taken
+     *
+     * @return the number of steps
+     */
+    public long getStepCount(){
+        return stepCount;
+    }
+
+    /**
+     * Gets the time step being used when the snapshot was taken
+     *
+     * @return the time step in seconds
+     */
+    public double getTimeStepSeconds(){
+        return timeStepSeconds;
+    }
+
+    /**
+     * Writes the snapshot to a stream followed by a checksum of everything written
+     *
+     * @param outputStream the stream to write to
+     * @return None
+     * @throws IOException if the snapshot could not be written
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(outputStream, new CRC32());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked));
+
+        writeHeader(out, simulatedTimeSeconds, stepCount, timeStepSeconds, integrator, softeningLengthMeters,
+                maximumEncounterSubsteps, collisionsEnabled, forceEngine, kinds.length);
+        for (int i = 0; i < kinds.length; i++){
+            if (kinds[i] == SUN){
+                writeSun(out, names[i], masses[i], radii[i], imagePaths[i], displayPriorities[i], xDisplacements[i],
+                        yDisplacements[i], luminosities[i]);
+            } else {
+                writePlanet(out, names[i], masses[i], radii[i], imagePaths[i], displayPriorities[i],
+                        xDisplacements[i], yDisplacements[i], types[i], xVelocities[i], yVelocities[i]);
+            }
+        }
+
+        out.writeInt(asteroidBelts.size());
+        for (int j = 0; j < asteroidBelts.size(); j++){
+            AsteroidBelt asteroidBelt = asteroidBelts.get(j);
+            BodyTemplate template = asteroidBelt.getTemplate();
+            out.writeUTF(template.getName());
+            out.writeDouble(template.getMass());
+            out.writeDouble(template.getRadius());
+            out.writeUTF(template.getImagePath());
+            out.writeInt(template.getDisplayPriority());
+            out.writeUTF(template.getType());
+            out.writeInt(asteroidBelt.getNumberOfAsteroids());
+            out.writeDouble(asteroidBelt.getInnerRadiusMeters());
+            out.writeDouble(asteroidBelt.getOuterRadiusMeters());
+            out.writeLong(asteroidBelt.getSeed());
+            out.writeByte(asteroidBeltStoreTypes.get(j).ordinal());
+
+            // the asteroids are written in slot order along with which asteroid is in each slot, so that a restored
+            // belt is laid out in memory the same way
+            BodyStore store = asteroidBelt.getStore();
+            out.writeBoolean(store.isReordered());
+            if (store.isReordered()){
+                for (int slot = 0; slot < store.getCapacity(); slot++){
+                    out.writeInt(store.getId(slot));
+                }
+            }
+
+            // a compact belt writes its floats as they are, since the doubles read from it could not be turned back
+            // into exactly the same floats
+            if (store instanceof CompactBodyStore){
+                ((CompactBodyStore) store).writeTo(out);
+            } else {
+                for (int slot = 0; slot < store.getCapacity(); slot++){
+                    out.writeDouble(store.getXDisplacement(slot));
+                    out.writeDouble(store.getYDisplacement(slot));
+                    out.writeDouble(store.getXVelocity(slot));
+                    out.writeDouble(store.getYVelocity(slot));
+                }
+            }
+        }
+
+        // the checksum must be taken after everything else has gone through the checked stream
+        out.flush();
+        out.writeLong(checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * Writes the start of a snapshot, which is followed by the celestial bodies one after another. This and the other
+     * write methods let a snapshot be streamed to disk a body at a time without ever holding all of them
+     *
+     * @param out the stream to write to, which should be checked by a CRC32 checksum that is written at the end
+     * @param simulatedTimeSeconds the simulated time in seconds
+     * @param stepCount the number of steps taken
+     * @param timeStepSeconds the time step in seconds
+     * @param integrator the way the planets are moved
+     * @param softeningLengthMeters the Plummer softening length in meters
+     * @param maximumEncounterSubsteps the greatest number of close encounter substeps
+     * @param collisionsEnabled whether celestial bodies that touch are merged
+     * @param forceEngine the force engine
+     * @param numberOfCelestialBodies the number of celestial bodies that will follow
+     * @return None
+     * @throws IOException if the stream could not be written to
+     */
+    static void writeHeader(DataOutputStream out, double simulatedTimeSeconds, long stepCount, double timeStepSeconds,
+                            Integrator integrator, double softeningLengthMeters, int maximumEncounterSubsteps,
+                            boolean collisionsEnabled, ForceEngine forceEngine, int numberOfCelestialBodies)
+            throws IOException {
+        out.writeInt(MAGIC_NUMBER);
+        out.writeInt(FORMAT_VERSION);
+        // DataOutputStream writes the raw bits of each double so nothing is lost to rounding like it would be in
+        // the csv format
+        out.writeDouble(simulatedTimeSeconds);
+        out.writeLong(stepCount);
+        out.writeDouble(timeStepSeconds);
+        out.writeByte(integrator.ordinal());
+        out.writeDouble(softeningLengthMeters);
+        out.writeInt(maximumEncounterSubsteps);
+        out.writeBoolean(collisionsEnabled);
+        writeForceEngine(out, forceEngine);
+        out.writeInt(numberOfCelestialBodies);
+    }
+
+    /**
+     * Writes a force engine as its kind followed by its settings. An auto-tuning engine also writes the engine it
+     * picked, so a restored run carries on with it instead of timing the engines again
+     *
+     * @param out the stream to write to
+     * @param forceEngine the force engine
+     * @return None
+     * @throws IOException if the stream could not be written to
+     */
+    private static void writeForceEngine(DataOutputStream out, ForceEngine forceEngine) throws IOException {
+        if (forceEngine instanceof BarnesHutForceEngine){
+            out.writeByte(BARNES_HUT);
+            out.writeDouble(((BarnesHutForceEngine) forceEngine).getOpeningAngle());
+        } else if (forceEngine instanceof FastMultipoleForceEngine){
+            out.writeByte(FAST_MULTIPOLE);
+            out.writeInt(((FastMultipoleForceEngine) forceEngine).getExpansionOrder());
+        } else if (forceEngine instanceof ParticleMeshForceEngine){
+            out.writeByte(PARTICLE_MESH);
+            out.writeInt(((ParticleMeshForceEngine) forceEngine).getGridSize());
+            out.writeInt(((ParticleMeshForceEngine) forceEngine).getNumberOfDirectBodies());
+        } else if (forceEngine instanceof AutoTuningForceEngine){
+            AutoTuningForceEngine autoTuningEngine = (AutoTuningForceEngine) forceEngine;
+            ForceEngine[] engines = autoTuningEngine.getEngines();
+
+            out.writeByte(AUTO_TUNING);
+            out.writeDouble(autoTuningEngine.getTolerance());
+            out.writeInt(engines.length);
+            for (ForceEngine engine : engines){
+                writeForceEngine(out, engine);
+            }
+            out.writeInt(autoTuningEngine.getTunedNumberOfBodies());
+            out.writeInt(autoTuningEngine.getChosenEngineIndex());
+        } else {
+            // the direct sum, or an engine the format doesn't know of, which is restored as the direct sum since it
+            // finds the same pulls as any exact engine
+            out.writeByte(DIRECT_SUM);
+        }
+    }
+
+    /**
+     * Reads a force engine written by writeForceEngine
+     *
+     * @param in the stream to read from
+     * @return a new force engine with the settings that were written
+     * @throws IOException if the engine could not be read or is of an unknown kind
+     */
+    private static ForceEngine readForceEngine(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+
+        switch (kind){
+            case DIRECT_SUM:
+                return new DirectSumForceEngine();
+
+            case BARNES_HUT:
+                return new BarnesHutForceEngine(in.readDouble());
+
+            case FAST_MULTIPOLE:
+                return new FastMultipoleForceEngine(in.readInt());
+
+            case PARTICLE_MESH:
+                return new ParticleMeshForceEngine(in.readInt(), in.readInt());
+
+            case AUTO_TUNING:
+                double tolerance = in.readDouble();
+                int numberOfEngines = in.readInt();
+                if (numberOfEngines < 0){
+                    throw new IOException("Checkpoint file is corrupted");
+                }
+                ForceEngine[] engines = new ForceEngine[numberOfEngines];
+                for (int i = 0; i < numberOfEngines; i++){
+                    engines[i] = readForceEngine(in);
+                }
+
+                AutoTuningForceEngine autoTuningEngine = new AutoTuningForceEngine(engines, tolerance);
+                autoTuningEngine.restoreChoice(in.readInt(), in.readInt());
+                return autoTuningEngine;
+
+            default:
+                throw new IOException("Unknown force engine in checkpoint");
+        }
+    }
+
+    /**
+     * Writes a sun of a snapshot
+     *
+     * @param out the stream to write to
+     * @param name the name of the sun
+     * @param mass the mass of the sun
+     * @param radius the radius of the sun
+     * @param imagePath the image path of the sun
+     * @param displayPriority the display priority of the sun
+     * @param xDisplacement the x-displacement of the sun
+     * @param yDisplacement the y-displacement of the sun
+     * @param luminosity the luminosity of the sun
+     * @return None
+     * @throws IOException if the stream could not be written to
+     */
+    static void writeSun(DataOutputStream out, String name, double mass, double radius, String imagePath,
+                         int displayPriority, double xDisplacement, double yDisplacement, double luminosity)
+            throws IOException {
+        out.writeByte(SUN);
+        writeCelestialBody(out, name, mass, radius, imagePath, displayPriority, xDisplacement, yDisplacement);
+        out.writeDouble(luminosity);
+    }
+
+    /**
+     * Writes a planet of a snapshot
+     *
+     * @param out the stream to write to
+     * @param name the name of the planet
+     * @param mass the mass of the planet
+     * @param radius the radius of the planet
+     * @param imagePath the image path of the planet
+     * @param displayPriority the display priority of the planet
+     * @param xDisplacement the x-displacement of the planet
+     * @param yDisplacement the y-displacement of the planet
+     * @param type the type of the planet
+     * @param xVelocity the x-velocity of the planet
+     * @param yVelocity the y-velocity of the planet
+     * @return None
+     * @throws IOException if the stream could not be written to
+     */
+    static void writePlanet(DataOutputStream out, String name, double mass, double radius, String imagePath,
+                            int displayPriority, double xDisplacement, double yDisplacement, String type,
+                            double xVelocity, double yVelocity) throws IOException {
+        out.writeByte(PLANET);
+        writeCelestialBody(out, name, mass, radius, imagePath, displayPriority, xDisplacement, yDisplacement);
+        out.writeUTF(type);
+        out.writeDouble(xVelocity);
+        out.writeDouble(yVelocity);
+    }
+
+    /**
+     * Writes what suns and planets both have
+     *
+     * @param out the stream to write to
+     * @param name the name of the celestial body
+     * @param mass the mass of the celestial body
+     * @param radius the radius of the celestial body
+     * @param imagePath the image path of the celestial body
+     * @param displayPriority the display priority of the celestial body
+     * @param xDisplacement the x-displacement of the celestial body
+     * @param yDisplacement the y-displacement of the celestial body
+     * @return None
+     * @throws IOException if the stream could not be written to
+     */
+    private static void writeCelestialBody(DataOutputStream out, String name, double mass, double radius,
+                                           String imagePath, int displayPriority, double xDisplacement,
+                                           double yDisplacement) throws IOException {
+        out.writeUTF(name);
+        out.writeDouble(mass);
+        out.writeDouble(radius);
+        out.writeUTF(imagePath);
+        out.writeInt(displayPriority);
+        out.writeDouble(xDisplacement);
+        out.writeDouble(yDisplacement);
+    }
+
+    /**
+     * Reads a snapshot that was written by writeTo
+     *
+     * @param inputStream the stream to read from
+     * @return the snapshot that was read
+     * @throws IOException if the snapshot could not be read or is corrupted
+     */
+    public static SolarSystemSnapshot readFrom(InputStream inputStream) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(inputStream), new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+
+        if (in.readInt() != MAGIC_NUMBER){
+            throw new IOException("Not a checkpoint file");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > FORMAT_VERSION){
+            throw new IOException("Unsupported checkpoint version");
+        }
+
+        double simulatedTimeSeconds = in.readDouble();
+        long stepCount = in.readLong();
+        double timeStepSeconds = in.readDouble();
+        Integrator integrator = Integrator.SEMI_IMPLICIT_EULER;
+        double softeningLengthMeters = 0;
+        int maximumEncounterSubsteps = 1;
+        boolean collisionsEnabled = false;
+        ForceEngine forceEngine = new DirectSumForceEngine();
+        if (version >= 6){
+            byte integratorOrdinal = in.readByte();
+            if (integratorOrdinal < 0 || integratorOrdinal >= Integrator.values().length){
+                throw new IOException("Checkpoint file is corrupted");
+            }
+            integrator = Integrator.values()[integratorOrdinal];
+            softeningLengthMeters = in.readDouble();
+            maximumEncounterSubsteps = in.readInt();
+            collisionsEnabled = in.readBoolean();
+            forceEngine = readForceEngine(in);
+        }
+        int numberOfCelestialBodies = in.readInt();
+
+        SolarSystemSnapshot snapshot = new SolarSystemSnapshot(numberOfCelestialBodies, simulatedTimeSeconds, stepCount, timeStepSeconds);
+        snapshot.setSimulationSettings(integrator, softeningLengthMeters, maximumEncounterSubsteps, collisionsEnabled,
+                forceEngine);
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            snapshot.kinds[i] = in.readByte();
+            snapshot.names[i] = in.readUTF();
+            snapshot.masses[i] = in.readDouble();
+            snapshot.radii[i] = in.readDouble();
+            snapshot.imagePaths[i] = in.readUTF();
+            snapshot.displayPriorities[i] = in.readInt();
+            snapshot.xDisplacements[i] = in.readDouble();
+            snapshot.yDisplacements[i] = in.readDouble();
+
+            if (snapshot.kinds[i] == SUN){
+                snapshot.luminosities[i] = in.readDouble();
+            } else {
+                snapshot.types[i] = in.readUTF();
+                snapshot.xVelocities[i] = in.readDouble();
+                snapshot.yVelocities[i] = in.readDouble();
+            }
+        }
+
+        int numberOfAsteroidBelts = version >= 2 ? in.readInt() : 0;
+        try {
+            for (int j = 0; j < numberOfAsteroidBelts; j++){
+                BodyTemplate template = BodyTemplate.intern(in.readUTF(), in.readDouble(), in.readDouble(),
+                        in.readUTF(), in.readInt(), in.readUTF());
+                int numberOfAsteroids = in.readInt();
+                double innerRadiusMeters = in.readDouble();
+                double outerRadiusMeters = in.readDouble();
+                long seed = in.readLong();
+                BodyStoreType storeType = version >= 3 ? BodyStoreType.values()[in.readByte()] : BodyStoreType.HEAP;
+
+                // a belt is read back into the kind of memory it was taken from, so a belt too big for direct memory
+                // is read into a file of its own. It is added before it is filled so that it is released if the
+                // rest of the file can't be read
+                BodyStore store = storeType.createStore(numberOfAsteroids);
+                AsteroidBelt asteroidBelt = new AsteroidBelt(template, store, innerRadiusMeters, outerRadiusMeters,
+                        seed);
+                snapshot.addAsteroidBelt(asteroidBelt, storeType);
+
+                // older checkpoints have every asteroid in the slot matching its id
+                if (version >= 5 && in.readBoolean()){
+                    for (int slot = 0; slot < numberOfAsteroids; slot++){
+                        store.setId(slot, in.readInt());
+                    }
+                }
+
+                if (storeType == BodyStoreType.COMPACT){
+                    ((CompactBodyStore) store).readFrom(in);
+                } else {
+                    for (int slot = 0; slot < numberOfAsteroids; slot++){
+                        store.set(slot, in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                    }
+                }
+                asteroidBelt.updateBounds();
+            }
+
+            // the expected checksum has to be read before reading the stored one, since reading it changes the
+            // checksum
+            long expectedChecksum = checked.getChecksum().getValue();
+            if (in.readLong() != expectedChecksum){
+                throw new IOException("Checkpoint file is corrupted");
+            }
+        } catch (IOException | RuntimeException e){
+            snapshot.close();
+            throw e;
+        }
+
+        return snapshot;
+    }
+}
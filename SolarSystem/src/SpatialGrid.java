@@ -0,0 +1,396 @@
+import java.util.Arrays;
+
+/**
+ * Defines a spatial grid as a uniform grid of square cells laid over a set of points, with the points of each cell
+ * stored next to each other. The cell size is chosen from the area the points cover and how many there are, so each
+ * cell holds a couple of points on average. Rebuilding the grid is a counting sort that takes two passes over the
+ * points, which is cheap enough to do every step. Operations include finding the nearest point, the k nearest points,
+ * and every point within a distance of a position.
+ */
+public final class SpatialGrid {
+    // the average number of points in a cell, fewer makes the grid bigger and more makes each cell slower to search
+    private static final int POINTS_PER_CELL = 2;
+
+    private double[] xDisplacements;
+    private double[] yDisplacements;
+    private int numberOfPoints;
+
+    private double minimumXDisplacement;
+    private double minimumYDisplacement;
+    private double cellSize;
+    private int columns;
+    private int rows;
+    // the points of cell i are cellPoints[cellStarts[i]] up to cellPoints[cellStarts[i + 1]], cells are numbered
+    // row by row
+    private int[] cellStarts;
+    private int[] cellPoints;
+    // the cell of each point, or -1 if the point is not a finite position and so is left out of the grid
+    private int[] pointCells;
+
+    /**
+     * Creates a new spatial grid with no points
+     *
+     * @return None
+     */
+    public SpatialGrid(){
+        // the class is final, so rebuild can't be overridden to see the grid before it is set up
+        rebuild(new double[0], new double[0], 0);
+    }
+
+    /**
+     * Puts a new set of points into the grid. The arrays are kept rather than copied, so they must not be changed
+     * until the grid is rebuilt
+     *
+     * @param xDisplacements the x-displacement of each point
+     * @param yDisplacements the y-displacement of each point
+     * @param numberOfPoints the number of points, which may be less than the length of the arrays
+     * @return None
+     */
+    public void rebuild(double[] xDisplacements, double[] yDisplacements, int numberOfPoints){
+        this.xDisplacements = xDisplacements;
+        this.yDisplacements = yDisplacements;
+        this.numberOfPoints = numberOfPoints;
+
+        minimumXDisplacement = Double.POSITIVE_INFINITY;
+        minimumYDisplacement = Double.POSITIVE_INFINITY;
+        double maximumXDisplacement = Double.NEGATIVE_INFINITY;
+        double maximumYDisplacement = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numberOfPoints; i++){
+            // a body flung off to infinity by a close encounter can't be put in a cell
+            if (isFinite(i)){
+                minimumXDisplacement = Math.min(minimumXDisplacement, xDisplacements[i]);
+                maximumXDisplacement = Math.max(maximumXDisplacement, xDisplacements[i]);
+                minimumYDisplacement = Math.min(minimumYDisplacement, yDisplacements[i]);
+                maximumYDisplacement = Math.max(maximumYDisplacement, yDisplacements[i]);
+            }
+        }
+
+        double width = maximumXDisplacement - minimumXDisplacement;
+        double height = maximumYDisplacement - minimumYDisplacement;
+        if (!(width >= 0)){
+            // there are no finite points, so a single empty cell is enough
+            minimumXDisplacement = 0;
+            minimumYDisplacement = 0;
+            width = 0;
+            height = 0;
+        }
+
+        // square cells that split the area between the points evenly. The cells are never smaller than the longer
+        // side split into the target number of cells, so points on a line or a thin strip don't make the grid huge,
+        // and the grid never has more than about three times the target number of cells
+        int targetCells = Math.max(1, numberOfPoints / POINTS_PER_CELL);
+        cellSize = Math.max(Math.sqrt(width * height / targetCells), Math.max(width, height) / targetCells);
+        if (!(cellSize > 0)){
+            cellSize = 1;
+        }
+        columns = (int) Math.floor(width / cellSize) + 1;
+        rows = (int) Math.floor(height / cellSize) + 1;
+
+        int numberOfCells = columns * rows;
+        if (cellStarts == null || cellStarts.length < numberOfCells + 1){
+            cellStarts = new int[numberOfCells + 1];
+        } else {
+            Arrays.fill(cellStarts, 0, numberOfCells + 1, 0);
+        }
+        if (cellPoints == null || cellPoints.length < numberOfPoints){
+            cellPoints = new int[numberOfPoints];
+            pointCells = new int[numberOfPoints];
+        }
+
+        // a counting sort: count the points in each cell, turn the counts into where each cell starts, then place
+        // each point at the next free spot of its cell
+        for (int i = 0; i < numberOfPoints; i++){
+            pointCells[i] = isFinite(i) ? getCell(getColumn(xDisplacements[i]), getRow(yDisplacements[i])) : -1;
+            if (pointCells[i] != -1){
+                cellStarts[pointCells[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < numberOfCells; i++){
+            cellStarts[i + 1] += cellStarts[i];
+        }
+        int[] nextFree = Arrays.copyOf(cellStarts, numberOfCells);
+        for (int i = 0; i < numberOfPoints; i++){
+            if (pointCells[i] != -1){
+                cellPoints[nextFree[pointCells[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a point is at a finite position
+     *
+     * @param point the index of the point
+     * @return whether both of the point's displacements are finite
+     */
+    private boolean isFinite(int point){
+        return Double.isFinite(xDisplacements[point]) && Double.isFinite(yDisplacements[point]);
+    }
+
+    /**
+     * Finds the column an x-displacement is in, positions outside of the grid are put in the nearest column
+     *
+     * @param xDisplacement the x-displacement
+     * @return the column
+     */
+    private int getColumn(double xDisplacement){
+        double cell = Math.floor((xDisplacement - minimumXDisplacement) / cellSize);
+        return (int) Math.max(0, Math.min(columns - 1, cell));
+    }
+
+    /**
+     * Finds the row a y-displacement is in, positions outside of the grid are put in the nearest row
+     *
+     * @param yDisplacement the y-displacement
+     * @return the row
+     */
+    private int getRow(double yDisplacement){
+        double cell = Math.floor((yDisplacement - minimumYDisplacement) / cellSize);
+        return (int) Math.max(0, Math.min(rows - 1, cell));
+    }
+
+    /**
+     * Finds the number of a cell
+     *
+     * @param column the column of the cell
+     * @param row the row of the cell
+     * @return the number of the cell
+     */
+    private int getCell(int column, int row){
+        return row * columns + column;
+    }
+
+    /**
+     * Calculates the square of the distance from a position to a point
+     *
+     * @param point the index of the point
+     * @param xDisplacement the x-displacement of the position
+     * @param yDisplacement the y-displacement of the position
+     * @return the distance squared
+     */
+    private double getDistanceSquared(int point, double xDisplacement, double yDisplacement){
+        double dx = xDisplacements[point] - xDisplacement;
+        double dy = yDisplacements[point] - yDisplacement;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Gets the number of points in the grid
+     *
+     * @return the number of points
+     */
+    public int getNumberOfPoints(){
+        return numberOfPoints;
+    }
+
+    /**
+     * Finds the point nearest to a position
+     *
+     * @param xDisplacement the x-displacement of the position
+     * @param yDisplacement the y-displacement of the position
+     * @return the index of the nearest point, or -1 if there are no points
+     */
+    public int findNearest(double xDisplacement, double yDisplacement){
+        int[] nearest = findNearest(xDisplacement, yDisplacement, 1);
+        return nearest.length == 0 ? -1 : nearest[0];
+    }
+
+    /**
+     * Finds the k points nearest to a position. Rings of cells are searched outwards from the position's cell until
+     * no cell outside of the rings could hold a point nearer than the kth nearest one found
+     *
+     * @param xDisplacement the x-displacement of the position
+     * @param yDisplacement the y-displacement of the position
+     * @param k the number of points to find
+     * @return the indexes of the nearest points, nearest first. There are fewer than k if the grid has fewer points
+     */
+    public int[] findNearest(double xDisplacement, double yDisplacement, int k){
+        k = Math.min(k, numberOfPoints);
+        // the k nearest points found so far, kept as a max heap on distance so the furthest one can be swapped out
+        double[] heapDistances = new double[Math.max(k, 0)];
+        int[] heapPoints = new int[Math.max(k, 0)];
+        int heapSize = 0;
+
+        if (k > 0 && Double.isFinite(xDisplacement) && Double.isFinite(yDisplacement)){
+            int centerColumn = getColumn(xDisplacement);
+            int centerRow = getRow(yDisplacement);
+
+            for (int ring = 0; ; ring++){
+                int firstColumn = centerColumn - ring;
+                int lastColumn = centerColumn + ring;
+                int firstRow = centerRow - ring;
+                int lastRow = centerRow + ring;
+
+                for (int row = Math.max(0, firstRow); row <= Math.min(rows - 1, lastRow); row++){
+                    // only the edge of the ring is new, the inside was searched by the smaller rings
+                    boolean edgeRow = row == firstRow || row == lastRow;
+                    int step = edgeRow ? 1 : lastColumn - firstColumn;
+
+                    for (int column = firstColumn; column <= lastColumn; column += Math.max(1, step)){
+                        if (column < 0 || column >= columns){
+                            continue;
+                        }
+
+                        int cell = getCell(column, row);
+                        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++){
+                            int point = cellPoints[i];
+                            double distanceSquared = getDistanceSquared(point, xDisplacement, yDisplacement);
+
+                            if (heapSize < k){
+                                heapSize = pushHeap(heapDistances, heapPoints, heapSize, distanceSquared, point);
+                            } else if (distanceSquared < heapDistances[0]){
+                                replaceHeapTop(heapDistances, heapPoints, heapSize, distanceSquared, point);
+                            }
+                        }
+                    }
+                }
+
+                // the nearest any unsearched cell can be is the distance to the nearest side of the searched square
+                // that is not the edge of the grid
+                double unsearchedDistance = Double.POSITIVE_INFINITY;
+                if (firstColumn > 0){
+                    unsearchedDistance = Math.min(unsearchedDistance,
+                            xDisplacement - (minimumXDisplacement + firstColumn * cellSize));
+                }
+                if (lastColumn < columns - 1){
+                    unsearchedDistance = Math.min(unsearchedDistance,
+                            minimumXDisplacement + (lastColumn + 1) * cellSize - xDisplacement);
+                }
+                if (firstRow > 0){
+                    unsearchedDistance = Math.min(unsearchedDistance,
+                            yDisplacement - (minimumYDisplacement + firstRow * cellSize));
+                }
+                if (lastRow < rows - 1){
+                    unsearchedDistance = Math.min(unsearchedDistance,
+                            minimumYDisplacement + (lastRow + 1) * cellSize - yDisplacement);
+                }
+
+                if (unsearchedDistance == Double.POSITIVE_INFINITY){
+                    break;
+                }
+                if (heapSize == k && unsearchedDistance * unsearchedDistance >= heapDistances[0]){
+                    break;
+                }
+            }
+        }
+
+        // taking the furthest point off the heap each time fills the result from the back
+        int[] nearest = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--){
+            nearest[i] = heapPoints[0];
+            heapDistances[0] = heapDistances[i];
+            heapPoints[0] = heapPoints[i];
+            siftDown(heapDistances, heapPoints, i, 0);
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Finds every point within a distance of a position
+     *
+     * @param xDisplacement the x-displacement of the position
+     * @param yDisplacement the y-displacement of the position
+     * @param distance the greatest distance a point can be from the position
+     * @return the indexes of the points within the distance, in no particular order
+     */
+    public int[] findWithin(double xDisplacement, double yDisplacement, double distance){
+        int[] within = new int[16];
+        int numberWithin = 0;
+
+        if (distance < 0 || !Double.isFinite(xDisplacement) || !Double.isFinite(yDisplacement)){
+            return new int[0];
+        }
+
+        double distanceSquared = distance * distance;
+        for (int row = getRow(yDisplacement - distance); row <= getRow(yDisplacement + distance); row++){
+            for (int column = getColumn(xDisplacement - distance); column <= getColumn(xDisplacement + distance);
+                 column++){
+                int cell = getCell(column, row);
+
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++){
+                    int point = cellPoints[i];
+
+                    if (getDistanceSquared(point, xDisplacement, yDisplacement) <= distanceSquared){
+                        if (numberWithin == within.length){
+                            within = Arrays.copyOf(within, within.length * 2);
+                        }
+                        within[numberWithin++] = point;
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(within, numberWithin);
+    }
+
+    /**
+     * Adds a point to a max heap
+     *
+     * @param distances the distance squared of each point in the heap
+     * @param points the points in the heap
+     * @param size the number of points in the heap
+     * @param distanceSquared the distance squared of the point being added
+     * @param point the point being added
+     * @return the new number of points in the heap
+     */
+    private static int pushHeap(double[] distances, int[] points, int size, double distanceSquared, int point){
+        int i = size;
+
+        // move the new point up past every parent nearer than it
+        while (i > 0 && distances[(i - 1) / 2] < distanceSquared){
+            distances[i] = distances[(i - 1) / 2];
+            points[i] = points[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        distances[i] = distanceSquared;
+        points[i] = point;
+
+        return size + 1;
+    }
+
+    /**
+     * Replaces the furthest point in a max heap with a nearer one
+     *
+     * @param distances the distance squared of each point in the heap
+     * @param points the points in the heap
+     * @param size the number of points in the heap
+     * @param distanceSquared the distance squared of the new point
+     * @param point the new point
+     * @return None
+     */
+    private static void replaceHeapTop(double[] distances, int[] points, int size, double distanceSquared, int point){
+        distances[0] = distanceSquared;
+        points[0] = point;
+        siftDown(distances, points, size, 0);
+    }
+
+    /**
+     * Moves a point down a max heap until both of its children are nearer than it
+     *
+     * @param distances the distance squared of each point in the heap
+     * @param points the points in the heap
+     * @param size the number of points in the heap
+     * @param i the position of the point to move down
+     * @return None
+     */
+    private static void siftDown(double[] distances, int[] points, int size, int i){
+        double distanceSquared = distances[i];
+        int point = points[i];
+
+        while (2 * i + 1 < size){
+            int child = 2 * i + 1;
+            if (child + 1 < size && distances[child + 1] > distances[child]){
+                child++;
+            }
+            if (distances[child] <= distanceSquared){
+                break;
+            }
+
+            distances[i] = distances[child];
+            points[i] = points[child];
+            i = child;
+        }
+        distances[i] = distanceSquared;
+        points[i] = point;
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+
+/**
+ * Defines a store accuracy report as how far an asteroid belt kept in one kind of memory drifts from the same belt kept
+ * in full doubles on the heap, after both have been moved the same number of steps. Stores other than COMPACT keep
+ * every value exactly, so they always report no error. Operations include running the comparison and getting the
+ * errors and memory used.
+ */
+public class StoreAccuracyReport {
+    private final BodyStoreType storeType;
+    private final int numberOfAsteroids;
+    private final int numberOfSteps;
+    private final double timeStepSeconds;
+    private final double greatestDisplacementErrorMeters;
+    private final double rootMeanSquareDisplacementErrorMeters;
+    private final double greatestVelocityErrorMetersPerSecond;
+    private final double outerRadiusMeters;
+    private final long referenceBytes;
+    private final long comparedBytes;
+
+    /**
+     * Creates a new store accuracy report, use compare to make one
+     *
+     * @param storeType the kind of memory that was compared with full doubles
+     * @param numberOfAsteroids the number of asteroids compared
+     * @param numberOfSteps the number of steps both belts were moved
+     * @param timeStepSeconds the time step in seconds both belts were moved with
+     * @param greatestDisplacementErrorMeters the greatest distance between an asteroid and its full double position
+     * @param rootMeanSquareDisplacementErrorMeters the root mean square of the distances
+     * @param greatestVelocityErrorMetersPerSecond the greatest difference between an asteroid's velocity and its full
+     * double velocity
+     * @param outerRadiusMeters the outer radius of the belt, to put the errors in proportion
+     * @param referenceBytes the memory used by the full double belt
+     * @param comparedBytes the memory used by the compared belt
+     * @return None
+     */
+    private StoreAccuracyReport(BodyStoreType storeType, int numberOfAsteroids, int numberOfSteps,
+                                double timeStepSeconds, double greatestDisplacementErrorMeters,
+                                double rootMeanSquareDisplacementErrorMeters,
+                                double greatestVelocityErrorMetersPerSecond, double outerRadiusMeters,
+                                long referenceBytes, long comparedBytes){
+        this.storeType = storeType;
+        this.numberOfAsteroids = numberOfAsteroids;
+        this.numberOfSteps = numberOfSteps;
+        this.timeStepSeconds = timeStepSeconds;
+        this.greatestDisplacementErrorMeters = greatestDisplacementErrorMeters;
+        this.rootMeanSquareDisplacementErrorMeters = rootMeanSquareDisplacementErrorMeters;
+        this.greatestVelocityErrorMetersPerSecond = greatestVelocityErrorMetersPerSecond;
+        this.outerRadiusMeters = outerRadiusMeters;
+        this.referenceBytes = referenceBytes;
+        this.comparedBytes = comparedBytes;
+    }
+
+    /**
+     * Moves two copies of an asteroid belt and the rest of the solar system the same number of steps, one kept in full
+     * doubles on the heap and one kept in another kind of memory, and measures how far apart their asteroids end up.
+     * The solar system itself is not changed
+     *
+     * @param solarSystem the solar system the belt is in
+     * @param asteroidBeltIndex the index of the asteroid belt to compare
+     * @param storeType the kind of memory to compare with full doubles
+     * @param numberOfSteps the number of steps to move both copies
+     * @param timeStepSeconds the time step in seconds to move both copies with
+     * @return the report
+     * @throws IOException if the memory for a copy could not be set up
+     */
+    public static StoreAccuracyReport compare(SolarSystem solarSystem, int asteroidBeltIndex, BodyStoreType storeType,
+                                              int numberOfSteps, double timeStepSeconds) throws IOException {
+        SolarSystemSnapshot snapshot = solarSystem.createSnapshot();
+        SolarSystem reference = new SolarSystem();
+        SolarSystem compared = new SolarSystem();
+        reference.restoreSnapshot(snapshot);
+        compared.restoreSnapshot(snapshot);
+        // both copies have belts of their own, so the snapshot's are not needed any longer
+        snapshot.close();
+
+        // only the chosen belt is compared, the others would just slow both runs down. Asteroids are test particles,
+        // so removing the other belts does not change how the chosen one moves
+        for (int i = solarSystem.getNumberOfAsteroidBelts() - 1; i >= 0; i--){
+            if (i != asteroidBeltIndex){
+                reference.removeAsteroidBelt(i);
+                compared.removeAsteroidBelt(i);
+            }
+        }
+        reference.setAsteroidBeltStoreType(0, BodyStoreType.HEAP);
+        compared.setAsteroidBeltStoreType(0, storeType);
+
+        for (int i = 0; i < numberOfSteps; i++){
+            reference.movePlanetsOverTime(timeStepSeconds);
+            compared.movePlanetsOverTime(timeStepSeconds);
+        }
+
+        AsteroidBelt referenceBelt = reference.getAsteroidBelt(0);
+        AsteroidBelt comparedBelt = compared.getAsteroidBelt(0);
+        double greatestDisplacementError = 0;
+        double sumOfSquaredDisplacementErrors = 0;
+        double greatestVelocityError = 0;
+
+        for (int i = 0; i < referenceBelt.getNumberOfAsteroids(); i++){
+            double displacementError = Math.hypot(comparedBelt.getXDisplacement(i) - referenceBelt.getXDisplacement(i),
+                    comparedBelt.getYDisplacement(i) - referenceBelt.getYDisplacement(i));
+            double velocityError = Math.hypot(comparedBelt.getXVelocity(i) - referenceBelt.getXVelocity(i),
+                    comparedBelt.getYVelocity(i) - referenceBelt.getYVelocity(i));
+
+            greatestDisplacementError = Math.max(greatestDisplacementError, displacementError);
+            sumOfSquaredDisplacementErrors += displacementError * displacementError;
+            greatestVelocityError = Math.max(greatestVelocityError, velocityError);
+        }
+
+        StoreAccuracyReport report = new StoreAccuracyReport(storeType, referenceBelt.getNumberOfAsteroids(),
+                numberOfSteps, timeStepSeconds, greatestDisplacementError,
+                Math.sqrt(sumOfSquaredDisplacementErrors / referenceBelt.getNumberOfAsteroids()), greatestVelocityError,
+                referenceBelt.getOuterRadiusMeters(), referenceBelt.getEstimatedBytes(), comparedBelt.getEstimatedBytes());
+
+        // the copies may be backed by files
+        reference.removeAsteroidBelt(0);
+        compared.removeAsteroidBelt(0);
+
+        return report;
+    }
+
+    /**
+     * Gets the kind of memory that was compared with full doubles
+     *
+     * @return the type of body store
+     */
+    public BodyStoreType getStoreType(){
+        return storeType;
+    }
+
+    /**
+     * Gets the number of asteroids that were compared
+     *
+     * @return the number of asteroids
+     */
+    public int getNumberOfAsteroids(){
+        return numberOfAsteroids;
+    }
+
+    /**
+     * Gets the number of steps both belts were moved
+     *
+     * @return the number of steps
+     */
+    public int getNumberOfSteps(){
+        return numberOfSteps;
+    }
+
+    /**
+     * Gets the time step both belts were moved with
+     *
+     * @return the time step in seconds
+     */
+    public double getTimeStepSeconds(){
+        return timeStepSeconds;
+    }
+
+    /**
+     * Gets the greatest distance between an asteroid and where it is in full doubles
+     *
+     * @return the greatest displacement error in meters
+     */
+    public double getGreatestDisplacementErrorMeters(){
+        return greatestDisplacementErrorMeters;
+    }
+
+    /**
+     * Gets the root mean square of the distances between each asteroid and where it is in full doubles
+     *
+     * @return the root mean square displacement error in meters
+     */
+    public double getRootMeanSquareDisplacementErrorMeters(){
+        return rootMeanSquareDisplacementErrorMeters;
+    }
+
+    /**
+     * Gets the greatest difference between an asteroid's velocity and its velocity in full doubles
+     *
+     * @return the greatest velocity error in meters per second
+     */
+    public double getGreatestVelocityErrorMetersPerSecond(){
+        return greatestVelocityErrorMetersPerSecond;
+    }
+
+    /**
+     * Gets the greatest displacement error as a fraction of the outer radius of the belt
+     *
+     * @return the relative displacement error
+     */
+    public double getRelativeDisplacementError(){
+        return greatestDisplacementErrorMeters / outerRadiusMeters;
+    }
+
+    /**
+     * Gets the memory used by the belt kept in full doubles
+     *
+     * @return the estimated number of bytes
+     */
+    public long getReferenceBytes(){
+        return referenceBytes;
+    }
+
+    /**
+     * Gets the memory used by the belt kept in the compared kind of memory
+     *
+     * @return the estimated number of bytes
+     */
+    public long getComparedBytes(){
+        return comparedBytes;
+    }
+}
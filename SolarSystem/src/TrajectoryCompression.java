@@ -0,0 +1,11 @@
+/**
+ * The ways a trajectory recording can be stored. NONE stores every value of every frame. LINEAR and KEPLER only store a
+ * body when its position has drifted further than a tolerance from where it was predicted to be, predicting either a
+ * straight line at the last stored velocity, or the orbit around the sun that the last stored position and velocity
+ * would give.
+ */
+public enum TrajectoryCompression {
+    NONE,
+    LINEAR,
+    KEPLER
+}
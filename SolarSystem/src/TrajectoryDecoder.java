@@ -0,0 +1,184 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Defines a trajectory decoder as the last stored state of every body in a compressed recording, along with the same
+ * predictor that encoded it. Decoding a frame updates the bodies stored in it, and any frame can then be rebuilt by
+ * predicting every body forward from its last stored state. Operations include decoding a frame, skipping over a
+ * frame, and rebuilding a full frame at a time.
+ */
+public class TrajectoryDecoder {
+    private final TrajectoryPredictor predictor;
+    private final double positionQuantum;
+    private final double velocityQuantum;
+    private final int numberOfCelestialBodies;
+
+    private final double[] storedTimes;
+    private final double[] storedXDisplacements;
+    private final double[] storedYDisplacements;
+    private final double[] storedXVelocities;
+    private final double[] storedYVelocities;
+    private final double[] prediction;
+
+    /**
+     * Creates a new trajectory decoder
+     *
+     * @param metadata the metadata of the recording being decoded
+     * @return None
+     */
+    public TrajectoryDecoder(TrajectoryMetadata metadata){
+        predictor = metadata.createPredictor();
+        positionQuantum = metadata.getPositionQuantum();
+        velocityQuantum = metadata.getVelocityQuantum();
+        numberOfCelestialBodies = metadata.getNumberOfCelestialBodies();
+
+        storedTimes = new double[numberOfCelestialBodies];
+        storedXDisplacements = new double[numberOfCelestialBodies];
+        storedYDisplacements = new double[numberOfCelestialBodies];
+        storedXVelocities = new double[numberOfCelestialBodies];
+        storedYVelocities = new double[numberOfCelestialBodies];
+        prediction = new double[4];
+    }
+
+    /**
+     * Decodes a frame, updating the stored state of every body stored in it
+     *
+     * @param in the buffer to read from, positioned at the start of the frame
+     * @param keyframe whether the frame is a keyframe
+     * @return the simulated time of the frame in seconds
+     */
+    public double decodeFrame(ByteBuffer in, boolean keyframe){
+        double time = in.getDouble();
+        long numberStored = readVariableLong(in);
+
+        int index = -1;
+        for (long j = 0; j < numberStored; j++){
+            index += (int) readVariableLong(in) + 1;
+
+            if (keyframe){
+                prediction[0] = 0;
+                prediction[1] = 0;
+                prediction[2] = 0;
+                prediction[3] = 0;
+            } else {
+                predict(index, time);
+            }
+
+            storedXDisplacements[index] = decodeValue(in, prediction[0], positionQuantum);
+            storedYDisplacements[index] = decodeValue(in, prediction[1], positionQuantum);
+            storedXVelocities[index] = decodeValue(in, prediction[2], velocityQuantum);
+            storedYVelocities[index] = decodeValue(in, prediction[3], velocityQuantum);
+            storedTimes[index] = time;
+        }
+
+        return time;
+    }
+
+    /**
+     * Rebuilds a full frame by predicting every body forward from its last stored state
+     *
+     * @param time the simulated time in seconds of the frame
+     * @param frame the array to write to, it must have room for 1 + 4 values for each body
+     * @return None
+     */
+    public void reconstructFrame(double time, double[] frame){
+        frame[0] = time;
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * i;
+
+            predict(i, time);
+            frame[position] = prediction[0];
+            frame[position + 1] = prediction[1];
+            frame[position + 2] = prediction[2];
+            frame[position + 3] = prediction[3];
+        }
+    }
+
+    /**
+     * Rebuilds the state of one body at a time from its last stored state
+     *
+     * @param index the index of the body
+     * @param time the simulated time in seconds
+     * @param state an array of at least 4 values that the x, y, x-velocity, and y-velocity are put in
+     * @return None
+     */
+    public void reconstructBody(int index, double time, double[] state){
+        predictor.predict(storedXDisplacements[index], storedYDisplacements[index], storedXVelocities[index],
+                storedYVelocities[index], time - storedTimes[index], state);
+    }
+
+    /**
+     * Predicts where a body is at a time from its last stored state, the result is put in prediction
+     *
+     * @param index the index of the body
+     * @param time the simulated time in seconds
+     * @return None
+     */
+    private void predict(int index, double time){
+        reconstructBody(index, time, prediction);
+    }
+
+    /**
+     * Reads a value stored as a whole number of quanta away from its prediction, the same way TrajectoryEncoder
+     * wrote it
+     *
+     * @param in the buffer to read from
+     * @param predicted the predicted value
+     * @param quantum the value that stored values are multiples of
+     * @return the decoded value
+     */
+    private static double decodeValue(ByteBuffer in, double predicted, double quantum){
+        long difference = unZigZag(readVariableLong(in));
+        // an out of range prediction was stored against 0, see TrajectoryEncoder.encodeValue
+        long predictedQuanta = TrajectoryEncoder.fitsInQuanta(predicted, quantum) ? Math.round(predicted / quantum) : 0;
+        return (predictedQuanta + difference) * quantum;
+    }
+
+    /**
+     * Moves a buffer past a frame without decoding it
+     *
+     * @param in the buffer to read from, positioned at the start of the frame
+     * @return the simulated time of the frame in seconds
+     */
+    public static double skipFrame(ByteBuffer in){
+        double time = in.getDouble();
+        long numberStored = readVariableLong(in);
+
+        // each stored body is a gap and four differences
+        for (long j = 0; j < numberStored * (1 + TrajectoryMetadata.VALUES_PER_BODY); j++){
+            readVariableLong(in);
+        }
+
+        return time;
+    }
+
+    /**
+     * Reverses TrajectoryEncoder.zigZag
+     *
+     * @param value the unsigned value
+     * @return the signed value
+     */
+    static long unZigZag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a long written by TrajectoryEncoder.writeVariableLong
+     *
+     * @param in the buffer to read from
+     * @return the value
+     */
+    static long readVariableLong(ByteBuffer in){
+        long value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
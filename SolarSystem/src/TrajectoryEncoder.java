@@ -0,0 +1,222 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Defines a trajectory encoder as the state of every body as the decoder will see it, along with a predictor and the
+ * tolerance of the recording. A body is only stored in a frame when its actual position is further than the tolerance
+ * from where it is predicted to be, and then only as the difference between its actual and predicted values rounded
+ * to whole quanta, written as variable length integers so that small differences take one or two bytes. Since the
+ * encoder predicts from exactly what the decoder will have, every decoded position is within the tolerance.
+ *
+ * A compressed frame is the time as a double, the number of bodies stored as a variable length integer, and then for
+ * each stored body the gap since the previous stored body's index followed by the four differences. Keyframes store
+ * every body, with a prediction of 0 so the differences are the whole values.
+ */
+public class TrajectoryEncoder {
+    // a variable length long takes at most 10 bytes, 7 bits at a time
+    static final int MAXIMUM_VARIABLE_LONG_BYTES = 10;
+    // stored values are kept to at most 2^52 quanta from 0, where a double still holds every whole number of quanta
+    // exactly, so rounding to quanta and back never moves a value by more than half a quantum and a difference between
+    // two numbers of quanta can't overflow a long
+    static final double MAXIMUM_QUANTA = 0x1p52;
+
+    private final TrajectoryPredictor predictor;
+    private final double toleranceMeters;
+    private final double positionQuantum;
+    private final double velocityQuantum;
+    private final int numberOfCelestialBodies;
+
+    // the last stored time and state of each body, exactly as the decoder will decode them
+    private final double[] storedTimes;
+    private final double[] storedXDisplacements;
+    private final double[] storedYDisplacements;
+    private final double[] storedXVelocities;
+    private final double[] storedYVelocities;
+
+    // reused for every frame so that encoding does not create any objects
+    private final int[] bodiesToStore;
+    private final double[] prediction;
+
+    /**
+     * Creates a new trajectory encoder
+     *
+     * @param metadata the metadata of the recording being encoded
+     * @return None
+     */
+    public TrajectoryEncoder(TrajectoryMetadata metadata){
+        predictor = metadata.createPredictor();
+        toleranceMeters = metadata.getToleranceMeters();
+        positionQuantum = metadata.getPositionQuantum();
+        velocityQuantum = metadata.getVelocityQuantum();
+        numberOfCelestialBodies = metadata.getNumberOfCelestialBodies();
+
+        storedTimes = new double[numberOfCelestialBodies];
+        storedXDisplacements = new double[numberOfCelestialBodies];
+        storedYDisplacements = new double[numberOfCelestialBodies];
+        storedXVelocities = new double[numberOfCelestialBodies];
+        storedYVelocities = new double[numberOfCelestialBodies];
+
+        bodiesToStore = new int[numberOfCelestialBodies];
+        prediction = new double[4];
+    }
+
+    /**
+     * Calculates the greatest number of bytes one encoded frame can take up
+     *
+     * @return the greatest number of bytes in an encoded frame
+     */
+    public long getMaximumFrameBytes(){
+        // the time, the number of stored bodies, and for each body the gap and four differences
+        return Double.BYTES + MAXIMUM_VARIABLE_LONG_BYTES +
+                (long) numberOfCelestialBodies * (1 + TrajectoryMetadata.VALUES_PER_BODY) * MAXIMUM_VARIABLE_LONG_BYTES;
+    }
+
+    /**
+     * Checks whether every value of a frame is close enough to 0 to be stored as a whole number of quanta
+     *
+     * @param frame the frame, the time followed by the x-displacement, y-displacement, x-velocity, and y-velocity of
+     *              every body
+     * @return false if a value is too far from 0 for the tolerance of the recording, or is not a number
+     */
+    public boolean canEncode(double[] frame){
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * i;
+
+            if (!fitsInQuanta(frame[position], positionQuantum) ||
+                    !fitsInQuanta(frame[position + 1], positionQuantum) ||
+                    !fitsInQuanta(frame[position + 2], velocityQuantum) ||
+                    !fitsInQuanta(frame[position + 3], velocityQuantum)){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a value is close enough to 0 to be stored as a whole number of quanta
+     *
+     * @param value the value
+     * @param quantum the value that stored values are multiples of
+     * @return false if the value is too far from 0 or is not a number
+     */
+    static boolean fitsInQuanta(double value, double quantum){
+        // written so that NaN fails the comparison
+        return Math.abs(value / quantum) <= MAXIMUM_QUANTA;
+    }
+
+    /**
+     * Encodes a frame, every value of which must pass canEncode
+     *
+     * @param frame the frame, the time followed by the x-displacement, y-displacement, x-velocity, and y-velocity of
+     *              every body
+     * @param keyframe whether every body should be stored in full
+     * @param out the buffer to write to, it must have at least getMaximumFrameBytes() bytes remaining
+     * @return the number of bodies stored
+     */
+    public int encodeFrame(double[] frame, boolean keyframe, ByteBuffer out){
+        double time = frame[0];
+        int numberToStore = 0;
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            if (keyframe){
+                bodiesToStore[numberToStore++] = i;
+            } else {
+                int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * i;
+                predict(i, time);
+
+                // only bodies that have drifted further than the tolerance from their prediction are stored
+                if (Math.hypot(frame[position] - prediction[0], frame[position + 1] - prediction[1]) >
+                        toleranceMeters){
+                    bodiesToStore[numberToStore++] = i;
+                }
+            }
+        }
+
+        out.putDouble(time);
+        writeVariableLong(out, numberToStore);
+
+        int previousIndex = -1;
+        for (int j = 0; j < numberToStore; j++){
+            int i = bodiesToStore[j];
+            int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * i;
+
+            // the gap between stored bodies is small when many bodies are stored, and the indices are always increasing
+            writeVariableLong(out, i - previousIndex - 1);
+            previousIndex = i;
+
+            if (keyframe){
+                prediction[0] = 0;
+                prediction[1] = 0;
+                prediction[2] = 0;
+                prediction[3] = 0;
+            } else {
+                predict(i, time);
+            }
+
+            storedXDisplacements[i] = encodeValue(out, frame[position], prediction[0], positionQuantum);
+            storedYDisplacements[i] = encodeValue(out, frame[position + 1], prediction[1], positionQuantum);
+            storedXVelocities[i] = encodeValue(out, frame[position + 2], prediction[2], velocityQuantum);
+            storedYVelocities[i] = encodeValue(out, frame[position + 3], prediction[3], velocityQuantum);
+            storedTimes[i] = time;
+        }
+
+        return numberToStore;
+    }
+
+    /**
+     * Predicts where a body is at a time from its last stored state, the result is put in prediction
+     *
+     * @param index the index of the body
+     * @param time the simulated time in seconds
+     * @return None
+     */
+    private void predict(int index, double time){
+        predictor.predict(storedXDisplacements[index], storedYDisplacements[index], storedXVelocities[index],
+                storedYVelocities[index], time - storedTimes[index], prediction);
+    }
+
+    /**
+     * Writes the difference between a value and its prediction as a whole number of quanta
+     *
+     * @param out the buffer to write to
+     * @param actual the actual value
+     * @param predicted the predicted value
+     * @param quantum the value that stored values are multiples of
+     * @return the value the decoder will decode
+     */
+    private static double encodeValue(ByteBuffer out, double actual, double predicted, double quantum){
+        // a prediction can run further out than any stored value, so one that is out of range is treated as 0 and the
+        // whole value is stored instead, which the decoder does the same way since it makes the same prediction
+        long predictedQuanta = fitsInQuanta(predicted, quantum) ? Math.round(predicted / quantum) : 0;
+        long difference = Math.round(actual / quantum) - predictedQuanta;
+
+        writeVariableLong(out, zigZag(difference));
+
+        return (predictedQuanta + difference) * quantum;
+    }
+
+    /**
+     * Maps a signed long to an unsigned one so that numbers close to 0, positive or negative, stay small
+     *
+     * @param value the signed value
+     * @return 0, -1, 1, -2, 2, ... mapped to 0, 1, 2, 3, 4, ...
+     */
+    static long zigZag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Writes a long 7 bits at a time, with the top bit of each byte set if there are more bytes to come
+     *
+     * @param out the buffer to write to
+     * @param value the value, treated as unsigned
+     * @return None
+     */
+    static void writeVariableLong(ByteBuffer out, long value){
+        while ((value & ~0x7FL) != 0){
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.*;
+import java.nio.file.Path;
+
+/**
+ * Defines a trajectory index as the time and byte offset of every keyframe interval's first frame in one segment file.
+ * The index is sparse, so it is small enough to always keep in memory, and finding a time only has to look inside the
+ * one interval the index narrows it down to. The recorder writes an index file next to each segment when the segment
+ * is finished. Operations include finding the interval a time is in, and writing and reading index files.
+ */
+public class TrajectoryIndex {
+    // identifies a trajectory index file, these are the bytes for "SSTI"
+    private static final int MAGIC_NUMBER = 0x53535449;
+    private static final int FORMAT_VERSION = 1;
+
+    // entry i is for frame i * KEYFRAME_INTERVAL_FRAMES of the segment
+    private final double[] times;
+    // byte offsets are from the start of the frame data, just after the segment header
+    private final long[] offsets;
+
+    /**
+     * Creates a new trajectory index
+     *
+     * @param times the time of the first frame of each interval
+     * @param offsets the byte offset of the first frame of each interval
+     * @return None
+     */
+    public TrajectoryIndex(double[] times, long[] offsets){
+        this.times = times;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Gets the number of entries in the index
+     *
+     * @return the number of entries
+     */
+    public int getNumberOfEntries(){
+        return times.length;
+    }
+
+    /**
+     * Gets the time of the first frame of an interval
+     *
+     * @param entry the number of the entry
+     * @return the time in seconds
+     */
+    public double getTime(int entry){
+        return times[entry];
+    }
+
+    /**
+     * Gets the byte offset of the first frame of an interval
+     *
+     * @param entry the number of the entry
+     * @return the byte offset from the start of the frame data
+     */
+    public long getOffset(int entry){
+        return offsets[entry];
+    }
+
+    /**
+     * Finds the last entry whose time is at or before a time
+     *
+     * @param timeSeconds the time in seconds
+     * @return the number of the entry, or 0 if the time is before the first entry
+     */
+    public int findEntry(double timeSeconds){
+        int low = 0;
+        int high = times.length - 1;
+
+        while (low < high){
+            int middle = (low + high + 1) / 2;
+
+            if (times[middle] <= timeSeconds){
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Writes the index to a file
+     *
+     * @param path the path of the index file
+     * @return None
+     * @throws IOException if the file could not be written
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(path.toFile(), false)))){
+            out.writeInt(MAGIC_NUMBER);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(times.length);
+
+            for (int i = 0; i < times.length; i++){
+                out.writeDouble(times[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads an index file
+     *
+     * @param path the path of the index file
+     * @return the index
+     * @throws IOException if the file could not be read
+     */
+    public static TrajectoryIndex read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))){
+            if (in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION){
+                throw new IOException("Not a trajectory index");
+            }
+
+            int numberOfEntries = in.readInt();
+            double[] times = new double[numberOfEntries];
+            long[] offsets = new long[numberOfEntries];
+
+            for (int i = 0; i < numberOfEntries; i++){
+                times[i] = in.readDouble();
+                offsets[i] = in.readLong();
+            }
+
+            return new TrajectoryIndex(times, offsets);
+        }
+    }
+}
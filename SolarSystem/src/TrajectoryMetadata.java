@@ -0,0 +1,347 @@
+import java.io.*;
+import java.nio.file.Path;
+
+/**
+ * Defines the metadata of a trajectory recording as the information about each celestial body that does not change
+ * while it is recorded (name, image path, radius, and display priority), the time step, the number of steps between
+ * recorded frames, and how the frames are compressed. The metadata is stored once per recording in a file next to the
+ * segment files, which only hold the positions and velocities. This class also holds the layout of the segment files
+ * so that the classes that write and read them agree on it. Operations include writing and reading the metadata file
+ * and naming segment files.
+ */
+public class TrajectoryMetadata {
+    static final String METADATA_FILE_NAME = "trajectory.meta";
+    // identifies a trajectory metadata file, these are the bytes for "SSTM"
+    static final int METADATA_MAGIC_NUMBER = 0x5353544D;
+    // identifies a trajectory segment file, these are the bytes for "SSTR"
+    static final int SEGMENT_MAGIC_NUMBER = 0x53535452;
+    // version 1 recordings were always stored without compression and have no compression fields
+    static final int FORMAT_VERSION = 2;
+
+    // the layout of the header at the start of every segment file, all values are little endian
+    static final int SEGMENT_HEADER_BYTES = 64;
+    static final int MAGIC_NUMBER_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int BODY_COUNT_OFFSET = 8;
+    static final int FRAME_COUNT_OFFSET = 16;
+    static final int FIRST_TIME_OFFSET = 24;
+    static final int LAST_TIME_OFFSET = 32;
+    // the number of bytes of frame data in a compressed segment, compressed frames are not all the same size
+    static final int DATA_BYTES_OFFSET = 40;
+
+    // each frame is the time followed by the x-displacement, y-displacement, x-velocity, and y-velocity of every body
+    static final int VALUES_PER_BODY = 4;
+    // in a compressed segment every body is stored in full at this interval, so decoding a frame never has to start
+    // further back than this many frames, segment indexes also have one entry per interval
+    static final int KEYFRAME_INTERVAL_FRAMES = 256;
+
+    private final String[] names;
+    private final String[] imagePaths;
+    private final double[] radii;
+    private final int[] displayPriorities;
+    private final double timeStepSeconds;
+    private final int sampleIntervalSteps;
+    private final TrajectoryCompression compression;
+    // the greatest distance in meters between a recorded position and where it is decoded to
+    private final double toleranceMeters;
+    // compressed values are stored as whole multiples of these
+    private final double positionQuantum;
+    private final double velocityQuantum;
+    // the central body used for Kepler prediction
+    private final double gravitationalParameter;
+    private final double centralXDisplacement;
+    private final double centralYDisplacement;
+
+    /**
+     * Creates new trajectory metadata for a recording without compression
+     *
+     * @param names the names of the celestial bodies
+     * @param imagePaths the image paths of the celestial bodies
+     * @param radii the radii of the celestial bodies
+     * @param displayPriorities the display priorities of the celestial bodies
+     * @param timeStepSeconds the time step in seconds used while recording
+     * @param sampleIntervalSteps the number of steps between recorded frames
+     * @return None
+     */
+    public TrajectoryMetadata(String[] names, String[] imagePaths, double[] radii, int[] displayPriorities,
+                              double timeStepSeconds, int sampleIntervalSteps){
+        this(names, imagePaths, radii, displayPriorities, timeStepSeconds, sampleIntervalSteps,
+                TrajectoryCompression.NONE, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates new trajectory metadata
+     *
+     * @param names the names of the celestial bodies
+     * @param imagePaths the image paths of the celestial bodies
+     * @param radii the radii of the celestial bodies
+     * @param displayPriorities the display priorities of the celestial bodies
+     * @param timeStepSeconds the time step in seconds used while recording
+     * @param sampleIntervalSteps the number of steps between recorded frames
+     * @param compression the type of compression
+     * @param toleranceMeters the greatest distance in meters between a recorded position and where it is decoded to
+     * @param gravitationalParameter the gravitational constant times the mass of the central body
+     * @param centralXDisplacement the x-displacement of the central body
+     * @param centralYDisplacement the y-displacement of the central body
+     * @return None
+     */
+    public TrajectoryMetadata(String[] names, String[] imagePaths, double[] radii, int[] displayPriorities,
+                              double timeStepSeconds, int sampleIntervalSteps, TrajectoryCompression compression,
+                              double toleranceMeters, double gravitationalParameter, double centralXDisplacement,
+                              double centralYDisplacement){
+        this.names = names;
+        this.imagePaths = imagePaths;
+        this.radii = radii;
+        this.displayPriorities = displayPriorities;
+        this.timeStepSeconds = timeStepSeconds;
+        this.sampleIntervalSteps = sampleIntervalSteps;
+        this.compression = compression;
+        this.toleranceMeters = toleranceMeters;
+        this.gravitationalParameter = gravitationalParameter;
+        this.centralXDisplacement = centralXDisplacement;
+        this.centralYDisplacement = centralYDisplacement;
+
+        // rounding a stored position to a multiple of a quarter of the tolerance moves it by at most an eighth of the
+        // tolerance, well inside the bound
+        positionQuantum = toleranceMeters / 4;
+        // a velocity rounded to this is at most far enough off to drift one position quantum over 16 frames, which
+        // keeps predictions from stored velocities good without storing digits that don't matter
+        double frameIntervalSeconds = timeStepSeconds * sampleIntervalSteps;
+        velocityQuantum = frameIntervalSeconds > 0 ? positionQuantum / (16 * frameIntervalSeconds) : positionQuantum;
+    }
+
+    /**
+     * Gets the number of celestial bodies in each frame
+     *
+     * @return the number of celestial bodies
+     */
+    public int getNumberOfCelestialBodies(){
+        return names.length;
+    }
+
+    /**
+     * Gets the name of a celestial body
+     *
+     * @param index the index of the celestial body
+     * @return the name of the celestial body
+     */
+    public String getName(int index){
+        return names[index];
+    }
+
+    /**
+     * Gets the image path of a celestial body
+     *
+     * @param index the index of the celestial body
+     * @return the image path of the celestial body
+     */
+    public String getImagePath(int index){
+        return imagePaths[index];
+    }
+
+    /**
+     * Gets the radius of a celestial body
+     *
+     * @param index the index of the celestial body
+     * @return the radius of the celestial body
+     */
+    public double getRadius(int index){
+        return radii[index];
+    }
+
+    /**
+     * Gets the display priority of a celestial body
+     *
+     * @param index the index of the celestial body
+     * @return the display priority of the celestial body
+     */
+    public int getDisplayPriority(int index){
+        return displayPriorities[index];
+    }
+
+    /**
+     * Gets the time step used while recording
+     *
+     * @return the time step in seconds
+     */
+    public double getTimeStepSeconds(){
+        return timeStepSeconds;
+    }
+
+    /**
+     * Gets the number of steps between recorded frames
+     *
+     * @return the number of steps between recorded frames
+     */
+    public int getSampleIntervalSteps(){
+        return sampleIntervalSteps;
+    }
+
+    /**
+     * Gets the type of compression of the recording
+     *
+     * @return the type of compression
+     */
+    public TrajectoryCompression getCompression(){
+        return compression;
+    }
+
+    /**
+     * Gets the greatest distance between a recorded position and where it is decoded to
+     *
+     * @return the tolerance in meters, 0 if the recording is not compressed
+     */
+    public double getToleranceMeters(){
+        return toleranceMeters;
+    }
+
+    /**
+     * Gets the value that compressed positions are stored as multiples of
+     *
+     * @return the position quantum in meters
+     */
+    public double getPositionQuantum(){
+        return positionQuantum;
+    }
+
+    /**
+     * Gets the value that compressed velocities are stored as multiples of
+     *
+     * @return the velocity quantum in meters per second
+     */
+    public double getVelocityQuantum(){
+        return velocityQuantum;
+    }
+
+    /**
+     * Creates a predictor for the compression of the recording
+     *
+     * @return a new trajectory predictor
+     */
+    public TrajectoryPredictor createPredictor(){
+        return new TrajectoryPredictor(compression, gravitationalParameter, centralXDisplacement,
+                centralYDisplacement);
+    }
+
+    /**
+     * Calculates the number of bytes taken up by one uncompressed frame in a segment file
+     *
+     * @return the number of bytes in an uncompressed frame
+     */
+    public long getFrameBytes(){
+        // one double for the time and VALUES_PER_BODY doubles for each body
+        return Double.BYTES * (1 + (long) VALUES_PER_BODY * names.length);
+    }
+
+    /**
+     * Writes the metadata file into a recording directory
+     *
+     * @param directory the recording directory
+     * @return None
+     * @throws IOException if the file could not be written
+     */
+    public void write(Path directory) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(directory.resolve(METADATA_FILE_NAME).toFile(), false)))){
+            out.writeInt(METADATA_MAGIC_NUMBER);
+            out.writeInt(FORMAT_VERSION);
+            out.writeDouble(timeStepSeconds);
+            out.writeInt(sampleIntervalSteps);
+            out.writeUTF(compression.name());
+            out.writeDouble(toleranceMeters);
+            out.writeDouble(gravitationalParameter);
+            out.writeDouble(centralXDisplacement);
+            out.writeDouble(centralYDisplacement);
+            out.writeInt(names.length);
+
+            for (int i = 0; i < names.length; i++){
+                out.writeUTF(names[i]);
+                out.writeUTF(imagePaths[i]);
+                out.writeDouble(radii[i]);
+                out.writeInt(displayPriorities[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads the metadata file from a recording directory
+     *
+     * @param directory the recording directory
+     * @return the metadata of the recording
+     * @throws IOException if the file could not be read
+     */
+    public static TrajectoryMetadata read(Path directory) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(directory.resolve(METADATA_FILE_NAME).toFile())))){
+            if (in.readInt() != METADATA_MAGIC_NUMBER){
+                throw new IOException("Not a trajectory recording");
+            }
+            int version = in.readInt();
+            if (version != 1 && version != FORMAT_VERSION){
+                throw new IOException("Unsupported trajectory version");
+            }
+
+            double timeStepSeconds = in.readDouble();
+            int sampleIntervalSteps = in.readInt();
+
+            TrajectoryCompression compression = TrajectoryCompression.NONE;
+            double toleranceMeters = 0;
+            double gravitationalParameter = 0;
+            double centralXDisplacement = 0;
+            double centralYDisplacement = 0;
+
+            if (version >= 2){
+                try {
+                    compression = TrajectoryCompression.valueOf(in.readUTF());
+                } catch (IllegalArgumentException iae){
+                    throw new IOException("Unknown trajectory compression");
+                }
+                toleranceMeters = in.readDouble();
+                gravitationalParameter = in.readDouble();
+                centralXDisplacement = in.readDouble();
+                centralYDisplacement = in.readDouble();
+            }
+
+            int numberOfCelestialBodies = in.readInt();
+
+            String[] names = new String[numberOfCelestialBodies];
+            String[] imagePaths = new String[numberOfCelestialBodies];
+            double[] radii = new double[numberOfCelestialBodies];
+            int[] displayPriorities = new int[numberOfCelestialBodies];
+
+            for (int i = 0; i < numberOfCelestialBodies; i++){
+                names[i] = in.readUTF();
+                imagePaths[i] = in.readUTF();
+                radii[i] = in.readDouble();
+                displayPriorities[i] = in.readInt();
+            }
+
+            return new TrajectoryMetadata(names, imagePaths, radii, displayPriorities, timeStepSeconds,
+                    sampleIntervalSteps, compression, toleranceMeters, gravitationalParameter, centralXDisplacement,
+                    centralYDisplacement);
+        }
+    }
+
+    /**
+     * Gets the path of a segment file in a recording directory
+     *
+     * @param directory the recording directory
+     * @param segmentNumber the number of the segment, starting from 0
+     * @return the path of the segment file
+     */
+    public static Path getSegmentPath(Path directory, int segmentNumber){
+        // padded with zeros so that listing the directory shows the segments in order
+        return directory.resolve(String.format("segment-%06d.traj", segmentNumber));
+    }
+
+    /**
+     * Gets the path of the index file of a segment in a recording directory
+     *
+     * @param directory the recording directory
+     * @param segmentNumber the number of the segment, starting from 0
+     * @return the path of the index file
+     */
+    public static Path getIndexPath(Path directory, int segmentNumber){
+        return directory.resolve(String.format("segment-%06d.idx", segmentNumber));
+    }
+}
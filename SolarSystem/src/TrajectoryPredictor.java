@@ -0,0 +1,63 @@
+/**
+ * Defines a trajectory predictor as a type of compression and, for Kepler prediction, the gravitational parameter and
+ * displacement of the central body. The encoder and decoder of a compressed recording each have a predictor made from
+ * the same metadata, so they always make exactly the same predictions. Operations include predicting where a body will
+ * be after a time interval.
+ */
+public class TrajectoryPredictor {
+    private final TrajectoryCompression compression;
+    private final double gravitationalParameter;
+    private final double centralXDisplacement;
+    private final double centralYDisplacement;
+    // reused so that predicting does not create an array every time
+    private final double[] relativeState;
+
+    /**
+     * Creates a new trajectory predictor
+     *
+     * @param compression the type of compression
+     * @param gravitationalParameter the gravitational constant times the mass of the central body
+     * @param centralXDisplacement the x-displacement of the central body
+     * @param centralYDisplacement the y-displacement of the central body
+     * @return None
+     */
+    public TrajectoryPredictor(TrajectoryCompression compression, double gravitationalParameter,
+                               double centralXDisplacement, double centralYDisplacement){
+        this.compression = compression;
+        this.gravitationalParameter = gravitationalParameter;
+        this.centralXDisplacement = centralXDisplacement;
+        this.centralYDisplacement = centralYDisplacement;
+        relativeState = new double[4];
+    }
+
+    /**
+     * Predicts the position and velocity of a body after a time interval
+     *
+     * @param x the x-displacement of the body
+     * @param y the y-displacement of the body
+     * @param xVelocity the x-velocity of the body
+     * @param yVelocity the y-velocity of the body
+     * @param timeSeconds the time interval in seconds
+     * @param prediction an array of at least 4 values that the predicted x, y, x-velocity, and y-velocity are put in
+     * @return None
+     */
+    public void predict(double x, double y, double xVelocity, double yVelocity, double timeSeconds,
+                        double[] prediction){
+        if (compression == TrajectoryCompression.KEPLER &&
+                KeplerPropagator.propagate(gravitationalParameter, x - centralXDisplacement,
+                        y - centralYDisplacement, xVelocity, yVelocity, timeSeconds, relativeState)){
+            prediction[0] = relativeState[0] + centralXDisplacement;
+            prediction[1] = relativeState[1] + centralYDisplacement;
+            prediction[2] = relativeState[2];
+            prediction[3] = relativeState[3];
+            return;
+        }
+
+        // a straight line is used for linear prediction and whenever the Kepler solver can't find an answer, the
+        // encoder and decoder fall back in the same cases so they still agree
+        prediction[0] = x + xVelocity * timeSeconds;
+        prediction[1] = y + yVelocity * timeSeconds;
+        prediction[2] = xVelocity;
+        prediction[3] = yVelocity;
+    }
+}
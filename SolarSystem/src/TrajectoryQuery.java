@@ -0,0 +1,561 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Defines a trajectory query as the metadata, segment file channels, and sparse time indexes of a recording, used to
+ * answer questions about where bodies were at given times without reading the whole recording. The segment headers
+ * and indexes narrow a time down to one keyframe interval of one segment, and then only the bytes that are needed are
+ * read with positional reads. In an uncompressed segment every value of every body is at a fixed offset, so a query
+ * about one body reads only that body's values. A compressed segment can only be decoded from a keyframe, so a query
+ * reads the keyframe intervals that overlap it. Results are returned as arrays of doubles or ints rather than objects.
+ * Operations include finding a body by name, getting the trajectory of a body over a time range, getting the state of
+ * a body at a time, and finding all bodies within a distance of a body at a time.
+ */
+public class TrajectoryQuery {
+    // the number of values returned for each frame of a trajectory: the time, x, y, x-velocity, and y-velocity
+    public static final int VALUES_PER_STATE = 5;
+    // a range of uncompressed frames smaller than this is read all at once rather than one frame at a time, since one
+    // bigger read is faster than many small ones
+    private static final int COALESCED_READ_BYTES = 64 * 1024;
+
+    private final TrajectoryMetadata metadata;
+    private final HashMap<String, Integer> bodyIndexes;
+
+    // parallel ArrayLists, one element for each segment file
+    private final ArrayList<FileChannel> channels;
+    private final ArrayList<TrajectoryIndex> indexes;
+    private final ArrayList<Long> framesInSegments;
+    private final ArrayList<Double> firstTimes;
+    private final ArrayList<Long> dataBytes;
+
+    // null if the recording is not compressed
+    private final TrajectoryDecoder decoder;
+    private final double[] state;
+
+    /**
+     * Opens a recording for querying, reading each segment's header and index. If a segment has no index file,
+     * because the recording was stopped before the segment was finished, the index is built from the segment
+     *
+     * @param directoryPath the directory the recording was written to
+     * @return None
+     * @throws IOException if the recording could not be read
+     */
+    public TrajectoryQuery(String directoryPath) throws IOException {
+        Path directory = Paths.get(directoryPath);
+        metadata = TrajectoryMetadata.read(directory);
+
+        bodyIndexes = new HashMap<>();
+        for (int i = 0; i < metadata.getNumberOfCelestialBodies(); i++){
+            bodyIndexes.put(metadata.getName(i), i);
+        }
+
+        channels = new ArrayList<>();
+        indexes = new ArrayList<>();
+        framesInSegments = new ArrayList<>();
+        firstTimes = new ArrayList<>();
+        dataBytes = new ArrayList<>();
+
+        if (metadata.getCompression() == TrajectoryCompression.NONE){
+            decoder = null;
+        } else {
+            decoder = new TrajectoryDecoder(metadata);
+        }
+        state = new double[TrajectoryMetadata.VALUES_PER_BODY];
+
+        ByteBuffer header = ByteBuffer.allocate(TrajectoryMetadata.SEGMENT_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; Files.exists(TrajectoryMetadata.getSegmentPath(directory, i)); i++){
+            FileChannel channel = FileChannel.open(TrajectoryMetadata.getSegmentPath(directory, i),
+                    StandardOpenOption.READ);
+            readFully(channel, header.clear(), 0);
+
+            if (header.getInt(TrajectoryMetadata.MAGIC_NUMBER_OFFSET) != TrajectoryMetadata.SEGMENT_MAGIC_NUMBER){
+                channel.close();
+                throw new IOException("Not a trajectory segment");
+            }
+
+            long framesInSegment = header.getLong(TrajectoryMetadata.FRAME_COUNT_OFFSET);
+            if (framesInSegment == 0){
+                channel.close();
+                continue;
+            }
+
+            channels.add(channel);
+            framesInSegments.add(framesInSegment);
+            firstTimes.add(header.getDouble(TrajectoryMetadata.FIRST_TIME_OFFSET));
+            dataBytes.add(decoder == null ? framesInSegment * metadata.getFrameBytes() :
+                    header.getLong(TrajectoryMetadata.DATA_BYTES_OFFSET));
+
+            Path indexPath = TrajectoryMetadata.getIndexPath(directory, i);
+            if (Files.exists(indexPath)){
+                indexes.add(TrajectoryIndex.read(indexPath));
+            } else {
+                indexes.add(buildIndex(channels.size() - 1));
+            }
+        }
+    }
+
+    /**
+     * Gets the metadata of the recording
+     *
+     * @return the metadata of the recording
+     */
+    public TrajectoryMetadata getMetadata(){
+        return metadata;
+    }
+
+    /**
+     * Gets the index of a body from its name
+     *
+     * @param name the name of the body
+     * @return the index of the body, or -1 if there is no body with the name
+     */
+    public int getBodyIndex(String name){
+        Integer index = bodyIndexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the trajectory of a body over a time range
+     *
+     * @param bodyIndex the index of the body
+     * @param startTimeSeconds the start of the time range in seconds, inclusive
+     * @param endTimeSeconds the end of the time range in seconds, inclusive
+     * @return the time, x-displacement, y-displacement, x-velocity, and y-velocity of the body in every recorded frame
+     * in the range, one after the other, so frame i starts at index VALUES_PER_STATE * i
+     * @throws IOException if the recording could not be read
+     */
+    public double[] getBodyTrajectory(int bodyIndex, double startTimeSeconds, double endTimeSeconds)
+            throws IOException {
+        if (channels.isEmpty() || endTimeSeconds < startTimeSeconds){
+            return new double[0];
+        }
+
+        if (decoder == null){
+            return getUncompressedBodyTrajectory(bodyIndex, startTimeSeconds, endTimeSeconds);
+        }
+
+        return getCompressedBodyTrajectory(bodyIndex, startTimeSeconds, endTimeSeconds);
+    }
+
+    /**
+     * Gets the state of a body in the last recorded frame at or before a time
+     *
+     * @param bodyIndex the index of the body
+     * @param timeSeconds the time in seconds
+     * @return the time of the frame, x-displacement, y-displacement, x-velocity, and y-velocity of the body, or an
+     * empty array if the time is before the recording starts
+     * @throws IOException if the recording could not be read
+     */
+    public double[] getBodyState(int bodyIndex, double timeSeconds) throws IOException {
+        if (channels.isEmpty() || timeSeconds < firstTimes.get(0)){
+            return new double[0];
+        }
+
+        int segment = findSegment(timeSeconds);
+        double[] result = new double[VALUES_PER_STATE];
+
+        if (decoder == null){
+            long frame = findUncompressedFrame(segment, timeSeconds);
+            ByteBuffer buffer = ByteBuffer.allocate(4 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            result[0] = readUncompressedTime(segment, frame);
+            readFully(channels.get(segment), buffer, getBodyOffset(frame, bodyIndex));
+            for (int i = 0; i < TrajectoryMetadata.VALUES_PER_BODY; i++){
+                result[i + 1] = buffer.getDouble(i * Double.BYTES);
+            }
+        } else {
+            result[0] = decodeUpTo(segment, timeSeconds);
+            decoder.reconstructBody(bodyIndex, result[0], state);
+            System.arraycopy(state, 0, result, 1, TrajectoryMetadata.VALUES_PER_BODY);
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds every body within a distance of a body in the last recorded frame at or before a time
+     *
+     * @param bodyIndex the index of the body
+     * @param distanceMeters the distance in meters
+     * @param timeSeconds the time in seconds
+     * @return the indexes of the bodies within the distance, not including the body itself
+     * @throws IOException if the recording could not be read
+     */
+    public int[] findBodiesWithin(int bodyIndex, double distanceMeters, double timeSeconds) throws IOException {
+        if (channels.isEmpty() || timeSeconds < firstTimes.get(0)){
+            return new int[0];
+        }
+
+        int numberOfCelestialBodies = metadata.getNumberOfCelestialBodies();
+        double[] frame = new double[1 + TrajectoryMetadata.VALUES_PER_BODY * numberOfCelestialBodies];
+        int segment = findSegment(timeSeconds);
+
+        // every body is needed, so the whole frame is read
+        if (decoder == null){
+            long frameNumber = findUncompressedFrame(segment, timeSeconds);
+            ByteBuffer buffer = ByteBuffer.allocate((int) metadata.getFrameBytes()).order(ByteOrder.LITTLE_ENDIAN);
+
+            readFully(channels.get(segment), buffer, TrajectoryMetadata.SEGMENT_HEADER_BYTES +
+                    frameNumber * metadata.getFrameBytes());
+            buffer.flip();
+            buffer.asDoubleBuffer().get(frame);
+        } else {
+            decoder.reconstructFrame(decodeUpTo(segment, timeSeconds), frame);
+        }
+
+        double x = frame[1 + TrajectoryMetadata.VALUES_PER_BODY * bodyIndex];
+        double y = frame[2 + TrajectoryMetadata.VALUES_PER_BODY * bodyIndex];
+        int[] found = new int[numberOfCelestialBodies];
+        int numberFound = 0;
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            int position = 1 + TrajectoryMetadata.VALUES_PER_BODY * i;
+
+            if (i != bodyIndex && Math.hypot(frame[position] - x, frame[position + 1] - y) <= distanceMeters){
+                found[numberFound++] = i;
+            }
+        }
+
+        return Arrays.copyOf(found, numberFound);
+    }
+
+    /**
+     * Gets the trajectory of a body over a time range from an uncompressed recording
+     *
+     * @param bodyIndex the index of the body
+     * @param startTimeSeconds the start of the time range in seconds, inclusive
+     * @param endTimeSeconds the end of the time range in seconds, inclusive
+     * @return the states of the body, as described in getBodyTrajectory
+     * @throws IOException if the recording could not be read
+     */
+    private double[] getUncompressedBodyTrajectory(int bodyIndex, double startTimeSeconds, double endTimeSeconds)
+            throws IOException {
+        double[] result = new double[0];
+        int resultLength = 0;
+        ByteBuffer values = ByteBuffer.allocate(4 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int segment = findSegment(startTimeSeconds); segment < channels.size() &&
+                firstTimes.get(segment) <= endTimeSeconds; segment++){
+            long firstFrame = findUncompressedFrame(segment, startTimeSeconds);
+            if (readUncompressedTime(segment, firstFrame) < startTimeSeconds){
+                firstFrame++;
+            }
+            long lastFrame = findUncompressedFrame(segment, endTimeSeconds);
+
+            if (firstFrame > lastFrame){
+                continue;
+            }
+
+            int numberOfFrames = (int) (lastFrame - firstFrame + 1);
+            if (resultLength + numberOfFrames * VALUES_PER_STATE > result.length){
+                result = Arrays.copyOf(result, resultLength + numberOfFrames * VALUES_PER_STATE);
+            }
+
+            long frameBytes = metadata.getFrameBytes();
+            long rangeStart = TrajectoryMetadata.SEGMENT_HEADER_BYTES + firstFrame * frameBytes;
+
+            if (numberOfFrames * frameBytes <= COALESCED_READ_BYTES){
+                // the range is small, so it is read all at once and the body's values are picked out of it
+                ByteBuffer range = ByteBuffer.allocate((int) (numberOfFrames * frameBytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channels.get(segment), range, rangeStart);
+
+                for (int i = 0; i < numberOfFrames; i++){
+                    int frameStart = (int) (i * frameBytes);
+                    int bodyStart = (int) (getBodyOffset(firstFrame + i, bodyIndex) - rangeStart);
+
+                    result[resultLength++] = range.getDouble(frameStart);
+                    for (int j = 0; j < TrajectoryMetadata.VALUES_PER_BODY; j++){
+                        result[resultLength++] = range.getDouble(bodyStart + j * Double.BYTES);
+                    }
+                }
+            } else {
+                // otherwise only the time and the body's four values are read from each frame
+                for (long frame = firstFrame; frame <= lastFrame; frame++){
+                    result[resultLength++] = readUncompressedTime(segment, frame);
+
+                    readFully(channels.get(segment), values.clear(), getBodyOffset(frame, bodyIndex));
+                    for (int j = 0; j < TrajectoryMetadata.VALUES_PER_BODY; j++){
+                        result[resultLength++] = values.getDouble(j * Double.BYTES);
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(result, resultLength);
+    }
+
+    /**
+     * Gets the trajectory of a body over a time range from a compressed recording
+     *
+     * @param bodyIndex the index of the body
+     * @param startTimeSeconds the start of the time range in seconds, inclusive
+     * @param endTimeSeconds the end of the time range in seconds, inclusive
+     * @return the states of the body, as described in getBodyTrajectory
+     * @throws IOException if the recording could not be read
+     */
+    private double[] getCompressedBodyTrajectory(int bodyIndex, double startTimeSeconds, double endTimeSeconds)
+            throws IOException {
+        double[] result = new double[16 * VALUES_PER_STATE];
+        int resultLength = 0;
+        boolean finished = false;
+
+        int segment = findSegment(startTimeSeconds);
+        int entry = indexes.get(segment).findEntry(startTimeSeconds);
+
+        while (!finished && segment < channels.size()){
+            TrajectoryIndex index = indexes.get(segment);
+            ByteBuffer block = readCompressedBlock(segment, entry);
+            int framesInBlock = getFramesInBlock(segment, entry);
+
+            // each interval starts with a keyframe, so it can be decoded without anything before it
+            for (int i = 0; i < framesInBlock && !finished; i++){
+                double time = decoder.decodeFrame(block, i == 0);
+
+                if (time > endTimeSeconds){
+                    finished = true;
+                } else if (time >= startTimeSeconds){
+                    if (resultLength + VALUES_PER_STATE > result.length){
+                        result = Arrays.copyOf(result, result.length * 2);
+                    }
+
+                    decoder.reconstructBody(bodyIndex, time, state);
+                    result[resultLength++] = time;
+                    for (int j = 0; j < TrajectoryMetadata.VALUES_PER_BODY; j++){
+                        result[resultLength++] = state[j];
+                    }
+                }
+            }
+
+            entry++;
+            if (entry == index.getNumberOfEntries()){
+                segment++;
+                entry = 0;
+            }
+        }
+
+        return Arrays.copyOf(result, resultLength);
+    }
+
+    /**
+     * Decodes a compressed segment up to the last frame at or before a time
+     *
+     * @param segment the index of the segment
+     * @param timeSeconds the time in seconds
+     * @return the time of the last frame decoded
+     * @throws IOException if the segment could not be read
+     */
+    private double decodeUpTo(int segment, double timeSeconds) throws IOException {
+        int entry = indexes.get(segment).findEntry(timeSeconds);
+        ByteBuffer block = readCompressedBlock(segment, entry);
+        int framesInBlock = getFramesInBlock(segment, entry);
+
+        double time = decoder.decodeFrame(block, true);
+        for (int i = 1; i < framesInBlock; i++){
+            // look at the next frame's time without moving past it
+            if (block.getDouble(block.position()) > timeSeconds){
+                break;
+            }
+            time = decoder.decodeFrame(block, false);
+        }
+
+        return time;
+    }
+
+    /**
+     * Reads one keyframe interval of a compressed segment
+     *
+     * @param segment the index of the segment
+     * @param entry the index entry of the interval
+     * @return a buffer holding the frames of the interval
+     * @throws IOException if the segment could not be read
+     */
+    private ByteBuffer readCompressedBlock(int segment, int entry) throws IOException {
+        TrajectoryIndex index = indexes.get(segment);
+        long start = index.getOffset(entry);
+        long end = entry + 1 < index.getNumberOfEntries() ? index.getOffset(entry + 1) : dataBytes.get(segment);
+
+        ByteBuffer block = ByteBuffer.allocate((int) (end - start)).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channels.get(segment), block, TrajectoryMetadata.SEGMENT_HEADER_BYTES + start);
+        block.flip();
+
+        return block;
+    }
+
+    /**
+     * Calculates the number of frames in one keyframe interval of a segment
+     *
+     * @param segment the index of the segment
+     * @param entry the index entry of the interval
+     * @return the number of frames in the interval
+     */
+    private int getFramesInBlock(int segment, int entry){
+        long firstFrame = (long) entry * TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES;
+        return (int) Math.min(TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES, framesInSegments.get(segment) - firstFrame);
+    }
+
+    /**
+     * Finds the last frame of an uncompressed segment at or before a time, using the index to narrow the search down
+     * to one interval and then a binary search over the times in that interval
+     *
+     * @param segment the index of the segment
+     * @param timeSeconds the time in seconds
+     * @return the frame number within the segment, or 0 if the time is before the segment starts
+     * @throws IOException if the segment could not be read
+     */
+    private long findUncompressedFrame(int segment, double timeSeconds) throws IOException {
+        int entry = indexes.get(segment).findEntry(timeSeconds);
+        long low = (long) entry * TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES;
+        long high = low + getFramesInBlock(segment, entry) - 1;
+
+        while (low < high){
+            long middle = (low + high + 1) / 2;
+
+            if (readUncompressedTime(segment, middle) <= timeSeconds){
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Reads the time of a frame in an uncompressed segment
+     *
+     * @param segment the index of the segment
+     * @param frame the frame number within the segment
+     * @return the time of the frame in seconds
+     * @throws IOException if the segment could not be read
+     */
+    private double readUncompressedTime(int segment, long frame) throws IOException {
+        ByteBuffer time = ByteBuffer.allocate(Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channels.get(segment), time, TrajectoryMetadata.SEGMENT_HEADER_BYTES +
+                frame * metadata.getFrameBytes());
+        return time.getDouble(0);
+    }
+
+    /**
+     * Calculates the position in an uncompressed segment file of a body's values in a frame. Every frame is the same
+     * size and every body takes up the same number of bytes, so this acts as an index of every body in every frame
+     * without storing one
+     *
+     * @param frame the frame number within the segment
+     * @param bodyIndex the index of the body
+     * @return the byte position in the segment file
+     */
+    private long getBodyOffset(long frame, int bodyIndex){
+        // the time comes first in each frame, then the values of each body in order
+        return TrajectoryMetadata.SEGMENT_HEADER_BYTES + frame * metadata.getFrameBytes() + Double.BYTES +
+                (long) bodyIndex * TrajectoryMetadata.VALUES_PER_BODY * Double.BYTES;
+    }
+
+    /**
+     * Finds the last segment that starts at or before a time
+     *
+     * @param timeSeconds the time in seconds
+     * @return the index of the segment, or 0 if the time is before the recording starts
+     */
+    private int findSegment(double timeSeconds){
+        int low = 0;
+        int high = firstTimes.size() - 1;
+
+        while (low < high){
+            int middle = (low + high + 1) / 2;
+
+            if (firstTimes.get(middle) <= timeSeconds){
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Builds the index of a segment that has no index file
+     *
+     * @param segment the index of the segment
+     * @return the index of the segment
+     * @throws IOException if the segment could not be read
+     */
+    private TrajectoryIndex buildIndex(int segment) throws IOException {
+        long framesInSegment = framesInSegments.get(segment);
+        int numberOfEntries = (int) ((framesInSegment + TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES - 1) /
+                TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES);
+        double[] times = new double[numberOfEntries];
+        long[] offsets = new long[numberOfEntries];
+
+        if (decoder == null){
+            // uncompressed frames are all the same size, so only the times need to be read
+            for (int i = 0; i < numberOfEntries; i++){
+                long frame = (long) i * TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES;
+                offsets[i] = frame * metadata.getFrameBytes();
+                times[i] = readUncompressedTime(segment, frame);
+            }
+        } else {
+            // compressed frames are different sizes, so every frame has to be skipped over to find where they start
+            ByteBuffer data = ByteBuffer.allocate((int) (long) dataBytes.get(segment)).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channels.get(segment), data, TrajectoryMetadata.SEGMENT_HEADER_BYTES);
+            data.flip();
+
+            for (long frame = 0; frame < framesInSegment; frame++){
+                int position = data.position();
+                double time = TrajectoryDecoder.skipFrame(data);
+
+                if (frame % TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES == 0){
+                    int entry = (int) (frame / TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES);
+                    times[entry] = time;
+                    offsets[entry] = position;
+                }
+            }
+        }
+
+        return new TrajectoryIndex(times, offsets);
+    }
+
+    /**
+     * Reads from a file channel at a position until the buffer is full
+     *
+     * @param channel the channel to read from
+     * @param buffer the buffer to read into
+     * @param position the byte position in the file to start reading at
+     * @return None
+     * @throws IOException if the end of the file is reached before the buffer is full
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        // a positional read does not move the channel's own position, so reads from different places don't interfere
+        while (buffer.hasRemaining()){
+            int read = channel.read(buffer, position);
+
+            if (read < 0){
+                throw new IOException("Unexpected end of trajectory segment");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Closes every segment file
+     *
+     * @return None
+     * @throws IOException if a segment file could not be closed
+     */
+    public void close() throws IOException {
+        for (FileChannel channel : channels){
+            channel.close();
+        }
+    }
+}
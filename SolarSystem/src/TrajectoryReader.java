@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Defines a trajectory reader as the metadata and memory mapped segment files of a recording made by a trajectory
+ * recorder. Frames are numbered from 0 across all segments, so a frame can be read without knowing which segment it
+ * is in. Whenever reading moves into a different segment, the segment after it in the direction of reading is loaded
+ * into memory on a background thread so that playing a recording forwards or backwards does not wait on the disk.
+ * Compressed recordings are decoded from the nearest keyframe at or before the frame being read, or from the last
+ * frame read if that is closer, so playing forwards only decodes each frame once. Operations include reading a frame,
+ * reading the time of a frame, and finding the frame closest to a time.
+ */
+public class TrajectoryReader {
+    private final TrajectoryMetadata metadata;
+    // parallel ArrayLists, one element for each segment file
+    private final ArrayList<MappedByteBuffer> segments;
+    private final ArrayList<DoubleBuffer> segmentFrames;
+    private final ArrayList<ByteBuffer> segmentData;
+    // for compressed segments, the byte offset and time of every frame, found the first time a segment is read
+    private final ArrayList<int[]> frameOffsets;
+    private final ArrayList<double[]> frameTimes;
+    // the number of the first frame in each segment, this is sorted so a segment can be found with a binary search
+    private final ArrayList<Long> firstFrameNumbers;
+    private final long numberOfFrames;
+    private final int valuesPerFrame;
+
+    // null if the recording is not compressed
+    private final TrajectoryDecoder decoder;
+    // the segment and frame within it that the decoder was last moved to, or -1 if it has not been used
+    private int decodedSegment;
+    private int decodedFrame;
+
+    private final ExecutorService readAheadExecutor;
+    private int lastSegmentRead;
+
+    /**
+     * Opens a recording
+     *
+     * @param directoryPath the directory the recording was written to
+     * @return None
+     * @throws IOException if the recording could not be read
+     */
+    public TrajectoryReader(String directoryPath) throws IOException {
+        Path directory = Paths.get(directoryPath);
+        metadata = TrajectoryMetadata.read(directory);
+        valuesPerFrame = (int) (metadata.getFrameBytes() / Double.BYTES);
+
+        segments = new ArrayList<>();
+        segmentFrames = new ArrayList<>();
+        segmentData = new ArrayList<>();
+        frameOffsets = new ArrayList<>();
+        frameTimes = new ArrayList<>();
+        firstFrameNumbers = new ArrayList<>();
+
+        long frames = 0;
+        for (int i = 0; Files.exists(TrajectoryMetadata.getSegmentPath(directory, i)); i++){
+            MappedByteBuffer segment;
+
+            try (FileChannel channel = FileChannel.open(TrajectoryMetadata.getSegmentPath(directory, i),
+                    StandardOpenOption.READ)){
+                // the mapping stays valid after the channel is closed
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (segment.getInt(TrajectoryMetadata.MAGIC_NUMBER_OFFSET) != TrajectoryMetadata.SEGMENT_MAGIC_NUMBER){
+                throw new IOException("Not a trajectory segment");
+            }
+
+            long framesInSegment = segment.getLong(TrajectoryMetadata.FRAME_COUNT_OFFSET);
+
+            // slice resets the byte order, so it is set again before viewing the frames
+            segment.position(TrajectoryMetadata.SEGMENT_HEADER_BYTES);
+            ByteBuffer data = segment.slice().order(ByteOrder.LITTLE_ENDIAN);
+            segments.add(segment);
+            segmentData.add(data);
+            segmentFrames.add(data.asDoubleBuffer());
+            frameOffsets.add(null);
+            frameTimes.add(null);
+            firstFrameNumbers.add(frames);
+
+            frames += framesInSegment;
+        }
+
+        numberOfFrames = frames;
+        lastSegmentRead = -1;
+
+        if (metadata.getCompression() == TrajectoryCompression.NONE){
+            decoder = null;
+        } else {
+            decoder = new TrajectoryDecoder(metadata);
+        }
+        decodedSegment = -1;
+        decodedFrame = -1;
+
+        readAheadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trajectory-read-ahead");
+            // reading ahead should never keep the program running after the user exits
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the metadata of the recording
+     *
+     * @return the metadata of the recording
+     */
+    public TrajectoryMetadata getMetadata(){
+        return metadata;
+    }
+
+    /**
+     * Gets the number of frames in the recording
+     *
+     * @return the number of frames
+     */
+    public long getNumberOfFrames(){
+        return numberOfFrames;
+    }
+
+    /**
+     * Finds the segment that a frame is in
+     *
+     * @param frameNumber the number of the frame
+     * @return the index of the segment
+     */
+    private int findSegment(long frameNumber){
+        // binary search for the last segment whose first frame is at or before frameNumber
+        int low = 0;
+        int high = firstFrameNumbers.size() - 1;
+
+        while (low < high){
+            int middle = (low + high + 1) / 2;
+
+            if (firstFrameNumbers.get(middle) <= frameNumber){
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Reads a frame, the frame is the simulated time followed by the x-displacement, y-displacement, x-velocity, and
+     * y-velocity of every celestial body
+     *
+     * @param frameNumber the number of the frame, from 0 to the number of frames - 1
+     * @param frame the array to read into, it must have room for 1 + 4 values for each celestial body
+     * @return None
+     */
+    public void readFrame(long frameNumber, double[] frame){
+        int segment = findSegment(frameNumber);
+        int frameInSegment = (int) (frameNumber - firstFrameNumbers.get(segment));
+
+        if (decoder == null){
+            // an absolute bulk get copies the whole frame at once and does not change the buffer's position, so the
+            // same buffer can be read from anywhere without seeking
+            segmentFrames.get(segment).get(frameInSegment * valuesPerFrame, frame, 0, valuesPerFrame);
+        } else {
+            moveDecoderTo(segment, frameInSegment);
+            decoder.reconstructFrame(frameTimes.get(segment)[frameInSegment], frame);
+        }
+
+        if (segment != lastSegmentRead){
+            // load the next segment in the direction the recording is being read in
+            readAhead(lastSegmentRead <= segment ? segment + 1 : segment - 1);
+            lastSegmentRead = segment;
+        }
+    }
+
+    /**
+     * Reads the simulated time of a frame
+     *
+     * @param frameNumber the number of the frame
+     * @return the simulated time in seconds
+     */
+    public double getFrameTime(long frameNumber){
+        int segment = findSegment(frameNumber);
+        int frameInSegment = (int) (frameNumber - firstFrameNumbers.get(segment));
+
+        if (decoder != null){
+            return getFrameTimes(segment)[frameInSegment];
+        }
+
+        // the time is the first value of a frame
+        return segmentFrames.get(segment).get(frameInSegment * valuesPerFrame);
+    }
+
+    /**
+     * Gets the time of every frame in a compressed segment, finding the offset and time of every frame the first
+     * time the segment is used
+     *
+     * @param segment the index of the segment
+     * @return the times of the frames in the segment
+     */
+    private double[] getFrameTimes(int segment){
+        if (frameTimes.get(segment) == null){
+            MappedByteBuffer mapped = segments.get(segment);
+            int numberOfFramesInSegment = (int) mapped.getLong(TrajectoryMetadata.FRAME_COUNT_OFFSET);
+            int[] offsets = new int[numberOfFramesInSegment];
+            double[] times = new double[numberOfFramesInSegment];
+
+            // duplicate so that moving through the frames does not change the position of the shared buffer
+            ByteBuffer data = segmentData.get(segment).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < numberOfFramesInSegment; i++){
+                offsets[i] = data.position();
+                times[i] = TrajectoryDecoder.skipFrame(data);
+            }
+
+            frameOffsets.set(segment, offsets);
+            frameTimes.set(segment, times);
+        }
+
+        return frameTimes.get(segment);
+    }
+
+    /**
+     * Decodes frames of a compressed segment until the decoder has decoded a frame
+     *
+     * @param segment the index of the segment
+     * @param frameInSegment the number of the frame within the segment
+     * @return None
+     */
+    private void moveDecoderTo(int segment, int frameInSegment){
+        getFrameTimes(segment);
+        int keyframe = frameInSegment - frameInSegment % TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES;
+
+        // carry on from the last decoded frame if it is between the keyframe and the frame being read, otherwise
+        // start over from the keyframe
+        int start = keyframe;
+        if (decodedSegment == segment && keyframe <= decodedFrame && decodedFrame <= frameInSegment){
+            start = decodedFrame + 1;
+        }
+
+        ByteBuffer data = segmentData.get(segment).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = start; i <= frameInSegment; i++){
+            data.position(frameOffsets.get(segment)[i]);
+            decoder.decodeFrame(data, i % TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES == 0);
+        }
+
+        decodedSegment = segment;
+        decodedFrame = frameInSegment;
+    }
+
+    /**
+     * Finds the last frame at or before a simulated time
+     *
+     * @param timeSeconds the simulated time in seconds
+     * @return the number of the frame, or 0 if the time is before the first frame
+     */
+    public long findFrame(double timeSeconds){
+        // frames are recorded in order, so their times are sorted
+        long low = 0;
+        long high = numberOfFrames - 1;
+
+        while (low < high){
+            long middle = (low + high + 1) / 2;
+
+            if (getFrameTime(middle) <= timeSeconds){
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Loads a segment into memory on the background thread so that the first reads from it do not wait on the disk
+     *
+     * @param segment the index of the segment
+     * @return None
+     */
+    private void readAhead(int segment){
+        if (0 <= segment && segment < segments.size()){
+            MappedByteBuffer mapped = segments.get(segment);
+            readAheadExecutor.execute(mapped::load);
+        }
+    }
+
+    /**
+     * Stops the read ahead thread
+     *
+     * @return None
+     */
+    public void close(){
+        readAheadExecutor.shutdownNow();
+    }
+}
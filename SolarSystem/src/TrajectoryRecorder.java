@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Defines a trajectory recorder as a ring buffer of frames that the thread running the simulation copies into, and a
+ * background thread that appends those frames to segment files. A frame is the simulated time followed by
+ * the x-displacement, y-displacement, x-velocity, and y-velocity of every celestial body, asteroids in asteroid belts
+ * are not recorded. When a segment file is full the next frame starts a new one, so a recording is a directory of
+ * segment files plus a metadata file. There is exactly one thread adding frames and one thread writing them, which
+ * means the ring buffer only needs two counters and no locks. Frames can be compressed by a trajectory encoder as they
+ * are written, which also happens on the background thread. When a segment is finished a sparse index of it is written
+ * next to it, so a recording can be searched by time without reading every frame. Operations include recording a frame,
+ * and closing the recorder once all frames have been written.
+ */
+public class TrajectoryRecorder {
+    // segment files are mapped into memory all at once when they are read, so they are kept well below the 2 GB limit
+    // of a mapping
+    static final long DEFAULT_SEGMENT_BYTES = 256L * 1024 * 1024;
+    static final int DEFAULT_RING_CAPACITY_FRAMES = 8;
+    // frames are gathered into a buffer of about this size and written to the segment file together, so that small
+    // frames don't each need a write of their own
+    private static final int PENDING_DATA_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final TrajectoryMetadata metadata;
+    private final long segmentBytes;
+    private final long framesPerSegment;
+    // null if the recording is not compressed
+    private final TrajectoryEncoder encoder;
+    // the version of the celestial bodies the metadata was written from, frames are only recorded while it holds
+    private final long celestialBodiesVersion;
+
+    // each element of the ring buffer is a whole frame, they are allocated once and reused
+    private final double[][] ring;
+    // the number of frames the simulation thread has put into the ring buffer
+    private final AtomicLong publishedFrames;
+    // the number of frames the writer thread has copied out of the ring buffer
+    private final AtomicLong writtenFrames;
+    // the number of times the simulation thread had to wait because the ring buffer was full
+    private long fullRingWaits;
+
+    private final Thread writerThread;
+    private volatile boolean running;
+    private volatile boolean failed;
+
+    // only used by the writer thread. Segments are written through their file channel rather than mapped, so that a
+    // segment file only ever grows as frames are added and never has to be cut down to size while it is still mapped
+    private int segmentNumber;
+    private FileChannel segment;
+    private final ByteBuffer segmentHeader;
+    // frames that have been encoded but not yet written to the current segment file
+    private final ByteBuffer pendingData;
+    // the number of bytes of frame data already written to the current segment file
+    private long writtenDataBytes;
+    private long framesInSegment;
+    private double firstTimeInSegment;
+    private double lastTimeInSegment;
+    // the time and offset of the first frame of each keyframe interval in the current segment
+    private ArrayList<Double> indexTimes;
+    private ArrayList<Long> indexOffsets;
+
+    /**
+     * Creates a new trajectory recorder, writing the metadata file and starting the writer thread
+     *
+     * @param directoryPath the directory the recording is written to
+     * @param solarSystem the solar system being recorded
+     * @param timeStepSeconds the time step in seconds the solar system is being moved with
+     * @param sampleIntervalSteps the number of steps between recorded frames
+     * @return None
+     * @throws IOException if the recording directory or metadata file could not be created
+     */
+    public TrajectoryRecorder(String directoryPath, SolarSystem solarSystem, double timeStepSeconds,
+                              int sampleIntervalSteps) throws IOException {
+        this(directoryPath, solarSystem, timeStepSeconds, sampleIntervalSteps, TrajectoryCompression.NONE, 0);
+    }
+
+    /**
+     * Creates a new trajectory recorder, writing the metadata file and starting the writer thread
+     *
+     * @param directoryPath the directory the recording is written to
+     * @param solarSystem the solar system being recorded
+     * @param timeStepSeconds the time step in seconds the solar system is being moved with
+     * @param sampleIntervalSteps the number of steps between recorded frames
+     * @param compression the type of compression
+     * @param toleranceMeters the greatest distance in meters between a recorded position and where it is decoded to,
+     *                        only used if the recording is compressed
+     * @return None
+     * @throws IOException if the recording directory or metadata file could not be created
+     */
+    public TrajectoryRecorder(String directoryPath, SolarSystem solarSystem, double timeStepSeconds,
+                              int sampleIntervalSteps, TrajectoryCompression compression, double toleranceMeters)
+            throws IOException {
+        this(directoryPath, solarSystem, timeStepSeconds, sampleIntervalSteps, compression, toleranceMeters,
+                DEFAULT_RING_CAPACITY_FRAMES, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Creates a new trajectory recorder, writing the metadata file and starting the writer thread
+     *
+     * @param directoryPath the directory the recording is written to
+     * @param solarSystem the solar system being recorded
+     * @param timeStepSeconds the time step in seconds the solar system is being moved with
+     * @param sampleIntervalSteps the number of steps between recorded frames
+     * @param compression the type of compression
+     * @param toleranceMeters the greatest distance in meters between a recorded position and where it is decoded to,
+     *                        only used if the recording is compressed
+     * @param ringCapacityFrames the number of frames the ring buffer can hold
+     * @param segmentBytes the target size of each segment file in bytes
+     * @return None
+     * @throws IOException if the recording directory or metadata file could not be created
+     */
+    public TrajectoryRecorder(String directoryPath, SolarSystem solarSystem, double timeStepSeconds,
+                              int sampleIntervalSteps, TrajectoryCompression compression, double toleranceMeters,
+                              int ringCapacityFrames, long segmentBytes) throws IOException {
+        directory = Paths.get(directoryPath);
+        Files.createDirectories(directory);
+
+        // remove the segments of an older recording in the same directory so they are not read as part of this one
+        for (int i = 0; Files.exists(TrajectoryMetadata.getSegmentPath(directory, i)); i++){
+            Files.delete(TrajectoryMetadata.getSegmentPath(directory, i));
+            Files.deleteIfExists(TrajectoryMetadata.getIndexPath(directory, i));
+        }
+
+        celestialBodiesVersion = solarSystem.getCelestialBodiesVersion();
+        int numberOfCelestialBodies = solarSystem.getNumberOfCelestialBodies();
+        String[] names = new String[numberOfCelestialBodies];
+        String[] imagePaths = new String[numberOfCelestialBodies];
+        double[] radii = new double[numberOfCelestialBodies];
+        int[] displayPriorities = new int[numberOfCelestialBodies];
+
+        for (int i = 0; i < numberOfCelestialBodies; i++){
+            names[i] = solarSystem.getCelestialBodyName(i);
+            imagePaths[i] = solarSystem.getCelestialBodyImagePath(i);
+            radii[i] = solarSystem.getCelestialBodyRadius(i);
+            displayPriorities[i] = solarSystem.getCelestialBodyDisplayPriority(i);
+        }
+
+        // Kepler prediction is done around the sun, which does not move
+        double gravitationalParameter = 0;
+        double centralXDisplacement = 0;
+        double centralYDisplacement = 0;
+        int sunIndex = solarSystem.getSunIndex();
+
+        if (sunIndex != -1){
+            gravitationalParameter = SolarSystem.GRAVITATION_CONSTANT * solarSystem.getCelestialBodyMass(sunIndex);
+            centralXDisplacement = solarSystem.getCelestialBodyXDisplacement(sunIndex);
+            centralYDisplacement = solarSystem.getCelestialBodyYDisplacement(sunIndex);
+        }
+
+        if (compression != TrajectoryCompression.NONE && toleranceMeters <= 0){
+            throw new IllegalArgumentException("A compressed recording needs a tolerance greater than 0");
+        }
+
+        metadata = new TrajectoryMetadata(names, imagePaths, radii, displayPriorities, timeStepSeconds,
+                sampleIntervalSteps, compression, toleranceMeters, gravitationalParameter, centralXDisplacement,
+                centralYDisplacement);
+
+        ring = new double[ringCapacityFrames][(int) (metadata.getFrameBytes() / Double.BYTES)];
+        // the quanta are set by the tolerance, so a tolerance too small for how far the bodies are from the center or
+        // how fast they move would need more quanta than can be stored. It is checked against where the bodies are
+        // now, before anything is written
+        if (compression != TrajectoryCompression.NONE){
+            solarSystem.copyTrajectoryFrame(ring[0]);
+            if (!new TrajectoryEncoder(metadata).canEncode(ring[0])){
+                throw new IllegalArgumentException("The tolerance is too small for the size of the solar system");
+            }
+        }
+        metadata.write(directory);
+
+        if (compression == TrajectoryCompression.NONE){
+            encoder = null;
+            // a segment always holds at least one frame, even if one frame is bigger than the target segment size
+            framesPerSegment = Math.max(1, (segmentBytes - TrajectoryMetadata.SEGMENT_HEADER_BYTES) /
+                    metadata.getFrameBytes());
+            this.segmentBytes = TrajectoryMetadata.SEGMENT_HEADER_BYTES + framesPerSegment * metadata.getFrameBytes();
+        } else {
+            encoder = new TrajectoryEncoder(metadata);
+            // compressed frames are different sizes, so a segment is full when the largest possible frame won't fit
+            framesPerSegment = Long.MAX_VALUE;
+            this.segmentBytes = Math.max(segmentBytes,
+                    TrajectoryMetadata.SEGMENT_HEADER_BYTES + encoder.getMaximumFrameBytes());
+        }
+
+        // a direct buffer is written to the file without first being copied out of the heap
+        segmentHeader = ByteBuffer.allocateDirect(TrajectoryMetadata.SEGMENT_HEADER_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long maximumFrameBytes = encoder == null ? metadata.getFrameBytes() : encoder.getMaximumFrameBytes();
+        pendingData = ByteBuffer.allocateDirect((int) Math.max(PENDING_DATA_BYTES, maximumFrameBytes))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        publishedFrames = new AtomicLong();
+        writtenFrames = new AtomicLong();
+
+        running = true;
+        writerThread = new Thread(this::writeFrames, "trajectory-writer");
+        // the writer should never keep the program running after the user exits
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Copies the current state of the solar system into the ring buffer to be written by the writer thread. If the
+     * ring buffer is full this waits for the writer thread to catch up rather than losing the frame
+     *
+     * @param solarSystem the solar system being recorded
+     * @return whether the frame was recorded, false if celestial bodies have been added, removed, merged, or reordered
+     * since the recording started or the writer thread has failed
+     */
+    public boolean record(SolarSystem solarSystem){
+        // the metadata names a celestial body for each slot of a frame, so a frame of different or reordered bodies
+        // would be read back as the wrong bodies even if there are as many of them
+        if (failed || solarSystem.getCelestialBodiesVersion() != celestialBodiesVersion){
+            return false;
+        }
+
+        long sequence = publishedFrames.get();
+
+        while (sequence - writtenFrames.get() >= ring.length){
+            fullRingWaits++;
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(50_000);
+
+            if (failed){
+                return false;
+            }
+        }
+
+        solarSystem.copyTrajectoryFrame(ring[(int) (sequence % ring.length)]);
+
+        // only this thread ever changes publishedFrames, so an ordered write is enough to make the frame visible to
+        // the writer thread without the cost of a full memory fence
+        publishedFrames.lazySet(sequence + 1);
+        LockSupport.unpark(writerThread);
+
+        return true;
+    }
+
+    /**
+     * Copies frames out of the ring buffer and into the segment files until the recorder is closed and every frame has
+     * been written, this is run by the writer thread
+     *
+     * @return None
+     */
+    private void writeFrames(){
+        try {
+            while (running || writtenFrames.get() < publishedFrames.get()){
+                long sequence = writtenFrames.get();
+
+                if (sequence < publishedFrames.get()){
+                    writeFrame(ring[(int) (sequence % ring.length)]);
+                    // only this thread ever changes writtenFrames
+                    writtenFrames.lazySet(sequence + 1);
+                } else {
+                    // nothing to write, so the frames gathered so far are written out while waiting until the
+                    // simulation thread publishes a frame, which keeps the segment files close behind the simulation
+                    flushSegment();
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+
+            closeSegment();
+        } catch (IOException iox){
+            failed = true;
+            System.out.println("Error writing trajectory!");
+        }
+    }
+
+    /**
+     * Appends a frame to the current segment, starting a new segment if the current one is full
+     *
+     * @param frame the frame to write
+     * @return None
+     * @throws IOException if a new segment file could not be created or the segment could not be written to
+     */
+    private void writeFrame(double[] frame) throws IOException {
+        long maximumFrameBytes = encoder == null ? metadata.getFrameBytes() : encoder.getMaximumFrameBytes();
+
+        if (segment == null || framesInSegment == framesPerSegment || (encoder != null &&
+                getDataBytes() + maximumFrameBytes > segmentBytes - TrajectoryMetadata.SEGMENT_HEADER_BYTES)){
+            closeSegment();
+            openSegment();
+        }
+        if (pendingData.remaining() < maximumFrameBytes){
+            flushSegment();
+        }
+        // a body that has moved far enough away or sped up enough since the recording started can no longer be stored
+        // within the tolerance, so the recording stops there rather than storing wrong values
+        if (encoder != null && !encoder.canEncode(frame)){
+            throw new IOException("A body is out of the range the tolerance can store");
+        }
+
+        if (framesInSegment % TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES == 0){
+            indexTimes.add(frame[0]);
+            indexOffsets.add(getDataBytes());
+        }
+
+        if (encoder == null){
+            // a bulk put copies the whole frame at once instead of one double at a time, the view has its own position
+            // so the buffer's is moved past the frame afterwards
+            pendingData.asDoubleBuffer().put(frame);
+            pendingData.position(pendingData.position() + frame.length * Double.BYTES);
+        } else {
+            // every segment starts with a keyframe so that segments can be decoded on their own
+            encoder.encodeFrame(frame, framesInSegment % TrajectoryMetadata.KEYFRAME_INTERVAL_FRAMES == 0,
+                    pendingData);
+        }
+
+        if (framesInSegment == 0){
+            firstTimeInSegment = frame[0];
+        }
+        lastTimeInSegment = frame[0];
+        framesInSegment++;
+    }
+
+    /**
+     * Gets the number of bytes of frame data in the current segment, including the frames not yet written to the file
+     *
+     * @return the number of bytes
+     */
+    private long getDataBytes(){
+        return writtenDataBytes + pendingData.position();
+    }
+
+    /**
+     * Creates the next segment file and writes its header
+     *
+     * @return None
+     * @throws IOException if the segment file could not be created
+     */
+    private void openSegment() throws IOException {
+        segment = FileChannel.open(TrajectoryMetadata.getSegmentPath(directory, segmentNumber),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+
+        pendingData.clear();
+        writtenDataBytes = 0;
+        framesInSegment = 0;
+        firstTimeInSegment = 0;
+        lastTimeInSegment = 0;
+        writeSegmentHeader();
+
+        indexTimes = new ArrayList<>();
+        indexOffsets = new ArrayList<>();
+        segmentNumber++;
+    }
+
+    /**
+     * Writes the header of the current segment for the frames that are in the file
+     *
+     * @return None
+     * @throws IOException if the header could not be written
+     */
+    private void writeSegmentHeader() throws IOException {
+        segmentHeader.clear();
+        segmentHeader.putInt(TrajectoryMetadata.MAGIC_NUMBER_OFFSET, TrajectoryMetadata.SEGMENT_MAGIC_NUMBER);
+        segmentHeader.putInt(TrajectoryMetadata.VERSION_OFFSET, TrajectoryMetadata.FORMAT_VERSION);
+        segmentHeader.putInt(TrajectoryMetadata.BODY_COUNT_OFFSET, metadata.getNumberOfCelestialBodies());
+        segmentHeader.putLong(TrajectoryMetadata.FRAME_COUNT_OFFSET, framesInSegment);
+        segmentHeader.putDouble(TrajectoryMetadata.FIRST_TIME_OFFSET, firstTimeInSegment);
+        segmentHeader.putDouble(TrajectoryMetadata.LAST_TIME_OFFSET, lastTimeInSegment);
+        // the data size is only needed for compressed segments, uncompressed frames are all the same size
+        segmentHeader.putLong(TrajectoryMetadata.DATA_BYTES_OFFSET, encoder == null ? 0 : writtenDataBytes);
+
+        while (segmentHeader.hasRemaining()){
+            segment.write(segmentHeader, segmentHeader.position());
+        }
+    }
+
+    /**
+     * Writes the frames gathered so far to the end of the current segment file and then updates its header
+     *
+     * @return None
+     * @throws IOException if the segment file could not be written to
+     */
+    private void flushSegment() throws IOException {
+        if (segment == null || pendingData.position() == 0){
+            return;
+        }
+
+        pendingData.flip();
+        while (pendingData.hasRemaining()){
+            segment.write(pendingData, TrajectoryMetadata.SEGMENT_HEADER_BYTES + writtenDataBytes +
+                    pendingData.position());
+        }
+        writtenDataBytes += pendingData.limit();
+        pendingData.clear();
+
+        // the header is written after the frames so that a reader never sees a frame that has not been completely
+        // written
+        writeSegmentHeader();
+    }
+
+    /**
+     * Writes the rest of the current segment, flushes it to the disk, and writes its index
+     *
+     * @return None
+     * @throws IOException if the segment file could not be written or the index file could not be written
+     */
+    private void closeSegment() throws IOException {
+        if (segment != null){
+            flushSegment();
+            segment.force(true);
+            segment.close();
+            segment = null;
+
+            double[] times = new double[indexTimes.size()];
+            long[] offsets = new long[indexOffsets.size()];
+            for (int i = 0; i < times.length; i++){
+                times[i] = indexTimes.get(i);
+                offsets[i] = indexOffsets.get(i);
+            }
+            // openSegment has already moved segmentNumber on to the next segment
+            new TrajectoryIndex(times, offsets).write(TrajectoryMetadata.getIndexPath(directory, segmentNumber - 1));
+        }
+    }
+
+    /**
+     * Gets the number of frames that have been written to the segment files
+     *
+     * @return the number of frames written
+     */
+    public long getWrittenFrames(){
+        return writtenFrames.get();
+    }
+
+    /**
+     * Checks whether the writer thread stopped because a frame could not be written
+     *
+     * @return whether the writer thread has failed
+     */
+    public boolean hasFailed(){
+        return failed;
+    }
+
+    /**
+     * Gets the number of times the simulation had to wait for the writer thread because the ring buffer was full
+     *
+     * @return the number of waits
+     */
+    public long getFullRingWaits(){
+        return fullRingWaits;
+    }
+
+    /**
+     * Waits for every recorded frame to be written and stops the writer thread
+     *
+     * @return None
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writerThread);
+        writerThread.join();
+    }
+}
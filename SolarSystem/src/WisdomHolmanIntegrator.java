@@ -0,0 +1,372 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Defines a Wisdom-Holman integrator as a way of moving planets that splits the pull on each planet into the sun's pull,
+ * which is followed exactly by moving the planet along its Kepler orbit, and the much smaller pulls of the other
+ * bodies, which change its velocity in two half kicks on either side of that. The sun is held in place, so a planet's
+ * displacement from the sun is already measured from a point that doesn't move and nothing else is needed for the
+ * split. A moon inside its planet's Hill sphere is pulled harder by its planet than that split can handle, so the pair
+ * is split in Jacobi coordinates instead: the pair's center of mass moves along its orbit around the sun and the moon
+ * moves along its orbit around the planet, and only the difference between the sun's pull on each and its pull on the
+ * center of mass is a kick. The pulls between the bodies in the kicks are found all at once by a force engine, so a
+ * system with a great many bodies can use a faster engine than adding up every pair. Operations include moving the
+ * planets of a solar system one step.
+ */
+public class WisdomHolmanIntegrator {
+    private double[] xDisplacements;
+    private double[] yDisplacements;
+    private double[] xVelocities;
+    private double[] yVelocities;
+    private double[] masses;
+    // the gravitational parameter of every body but the sun, whose pull is part of the Kepler orbits instead
+    private double[] gravitationalParameters;
+    private double[] xAccelerations;
+    private double[] yAccelerations;
+    private boolean[] planets;
+    // the other body of the pair each planet is in, or -1 if the planet orbits the sun on its own
+    private int[] partners;
+    // the planet whose Hill sphere each planet is deepest inside of, or -1 if it is inside none
+    private int[] hosts;
+    // each planet's distance from its host as a fraction of the host's Hill radius, 1 if it has no host
+    private double[] hostFractions;
+    // finds the bodies inside each planet's Hill sphere without checking every pair
+    private final SpatialGrid spatialGrid;
+    // a moon's distance from its planet as a fraction of the planet's Hill radius, with the moon's number in the lower
+    // bits so that sorting them sorts the moons from most to least tightly bound
+    private long[] pairKeys;
+    private final double[] result;
+    private final double[] pairResult;
+    // the time the force engine took in the kicks of the last step
+    private long forceNanoseconds;
+
+    /**
+     * Creates a new Wisdom-Holman integrator
+     *
+     * @return None
+     */
+    public WisdomHolmanIntegrator(){
+        xDisplacements = new double[0];
+        yDisplacements = new double[0];
+        xVelocities = new double[0];
+        yVelocities = new double[0];
+        masses = new double[0];
+        gravitationalParameters = new double[0];
+        xAccelerations = new double[0];
+        yAccelerations = new double[0];
+        planets = new boolean[0];
+        partners = new int[0];
+        hosts = new int[0];
+        hostFractions = new double[0];
+        spatialGrid = new SpatialGrid();
+        pairKeys = new long[0];
+        result = new double[4];
+        pairResult = new double[4];
+    }
+
+    /**
+     * Moves every planet one step: a half kick by the pulls that aren't part of any Kepler orbit, a step along every
+     * Kepler orbit, and another half kick. Every body that isn't a planet is held in place
+     *
+     * @param celestialBodies the celestial bodies of the solar system
+     * @param sunIndex the index of the sun the planets orbit
+     * @param softeningLengthSquared the square of the Plummer softening length used for the kicks, 0 for unsoftened
+     * gravity. The Kepler orbits can't be softened, so the difference is part of the kicks
+     * @param forceEngine the force engine that finds the pulls between the bodies for the kicks
+     * @param timeSeconds the time interval in seconds
+     * @return None
+     */
+    public void step(ArrayList<CelestialBody> celestialBodies, int sunIndex, double softeningLengthSquared,
+                     ForceEngine forceEngine, double timeSeconds){
+        int numberOfBodies = celestialBodies.size();
+
+        if (xDisplacements.length < numberOfBodies){
+            xDisplacements = new double[numberOfBodies];
+            yDisplacements = new double[numberOfBodies];
+            xVelocities = new double[numberOfBodies];
+            yVelocities = new double[numberOfBodies];
+            masses = new double[numberOfBodies];
+            gravitationalParameters = new double[numberOfBodies];
+            xAccelerations = new double[numberOfBodies];
+            yAccelerations = new double[numberOfBodies];
+            planets = new boolean[numberOfBodies];
+            partners = new int[numberOfBodies];
+            hosts = new int[numberOfBodies];
+            hostFractions = new double[numberOfBodies];
+            pairKeys = new long[numberOfBodies];
+        }
+
+        for (int i = 0; i < numberOfBodies; i++){
+            CelestialBody c = celestialBodies.get(i);
+            xDisplacements[i] = c.getXDisplacement();
+            yDisplacements[i] = c.getYDisplacement();
+            masses[i] = c.getMass();
+            gravitationalParameters[i] = i == sunIndex ? 0 : SolarSystem.GRAVITATION_CONSTANT * masses[i];
+            planets[i] = c instanceof Planet;
+            xVelocities[i] = planets[i] ? ((Planet) c).getXVelocity() : 0;
+            yVelocities[i] = planets[i] ? ((Planet) c).getYVelocity() : 0;
+        }
+
+        // the pairs are found once so that both kicks and the drift in between split the pulls the same way
+        findPairs(numberOfBodies, sunIndex);
+
+        forceNanoseconds = 0;
+        kick(numberOfBodies, sunIndex, softeningLengthSquared, forceEngine, timeSeconds / 2);
+        drift(numberOfBodies, sunIndex, timeSeconds);
+        kick(numberOfBodies, sunIndex, softeningLengthSquared, forceEngine, timeSeconds / 2);
+
+        for (int i = 0; i < numberOfBodies; i++){
+            if (planets[i]){
+                Planet p = (Planet) celestialBodies.get(i);
+                p.setXDisplacement(xDisplacements[i]);
+                p.setYDisplacement(yDisplacements[i]);
+                p.setXVelocity(xVelocities[i]);
+                p.setYVelocity(yVelocities[i]);
+            }
+        }
+    }
+
+    /**
+     * Pairs each moon with the planet whose Hill sphere it is inside of. A planet's Hill sphere is the region where its
+     * pull on a moon matters more than the difference between the sun's pull on the two. Each planet is in at most one
+     * pair, with the most tightly bound moons paired first. Only the bodies a spatial grid finds inside each planet's
+     * Hill sphere are checked, so a system of many planets with small Hill spheres is not searched pair by pair
+     *
+     * @param numberOfBodies the number of bodies
+     * @param sunIndex the index of the sun
+     * @return None
+     */
+    private void findPairs(int numberOfBodies, int sunIndex){
+        Arrays.fill(partners, 0, numberOfBodies, -1);
+        Arrays.fill(hosts, 0, numberOfBodies, -1);
+        Arrays.fill(hostFractions, 0, numberOfBodies, 1);
+        spatialGrid.rebuild(xDisplacements, yDisplacements, numberOfBodies);
+
+        // the planets are gone through in order and a moon only moves to a planet it is strictly deeper inside of, so
+        // a moon equally deep inside two planets keeps the first one
+        for (int planet = 0; planet < numberOfBodies; planet++){
+            if (!planets[planet]){
+                continue;
+            }
+
+            double hillRadius = Math.hypot(xDisplacements[planet] - xDisplacements[sunIndex],
+                    yDisplacements[planet] - yDisplacements[sunIndex]) *
+                    Math.cbrt(masses[planet] / (3 * masses[sunIndex]));
+            // the grid compares squared distances, so the search reaches a little past the Hill radius to never miss
+            // a moon whose rounded fraction is just below 1
+            for (int moon : spatialGrid.findWithin(xDisplacements[planet], yDisplacements[planet],
+                    hillRadius * (1 + 1e-9))){
+                // only a heavier planet can hold a moon, which also stops two planets from each being the other's
+                // moon
+                if (!planets[moon] || masses[planet] <= masses[moon]){
+                    continue;
+                }
+
+                double fraction = Math.hypot(xDisplacements[moon] - xDisplacements[planet],
+                        yDisplacements[moon] - yDisplacements[planet]) / hillRadius;
+                if (fraction < hostFractions[moon]){
+                    hostFractions[moon] = fraction;
+                    hosts[moon] = planet;
+                }
+            }
+        }
+
+        int numberOfCandidates = 0;
+        for (int moon = 0; moon < numberOfBodies; moon++){
+            if (hosts[moon] != -1){
+                // the fraction is below 1, so its top 31 bits are enough to sort by and leave room for the moon
+                pairKeys[numberOfCandidates++] = (long) (hostFractions[moon] * Integer.MAX_VALUE) << 32 | moon;
+            }
+        }
+
+        // a planet can be a moon of one planet and the host of another, so it goes in whichever pair is tighter
+        Arrays.sort(pairKeys, 0, numberOfCandidates);
+        for (int i = 0; i < numberOfCandidates; i++){
+            int moon = (int) pairKeys[i];
+            int host = hosts[moon];
+
+            if (partners[moon] == -1 && partners[host] == -1){
+                partners[moon] = host;
+                partners[host] = moon;
+            }
+        }
+    }
+
+    /**
+     * Changes the velocity of every planet by the pulls that aren't followed by the Kepler orbits
+     *
+     * @param numberOfBodies the number of bodies
+     * @param sunIndex the index of the sun
+     * @param softeningLengthSquared the square of the softening length
+     * @param forceEngine the force engine that finds the pulls between the bodies
+     * @param timeSeconds the time interval of the kick
+     * @return None
+     */
+    private void kick(int numberOfBodies, int sunIndex, double softeningLengthSquared, ForceEngine forceEngine,
+                      double timeSeconds){
+        // the sun's gravitational parameter is 0, so this is the pull of every body but the sun
+        ForceEvaluationEvent event = new ForceEvaluationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        forceEngine.calculateAccelerations(xDisplacements, yDisplacements, gravitationalParameters, numberOfBodies,
+                softeningLengthSquared, xAccelerations, yAccelerations);
+        forceNanoseconds += System.nanoTime() - start;
+        event.end();
+        if (event.shouldCommit()){
+            event.describe(numberOfBodies, forceEngine.getName());
+            event.commit();
+        }
+
+        for (int i = 0; i < numberOfBodies; i++){
+            if (!planets[i]){
+                continue;
+            }
+
+            int partner = partners[i];
+            double accelerationX = xAccelerations[i];
+            double accelerationY = yAccelerations[i];
+
+            double sunX = xDisplacements[sunIndex] - xDisplacements[i];
+            double sunY = yDisplacements[sunIndex] - yDisplacements[i];
+
+            if (partner == -1){
+                // the Kepler orbit follows the unsoftened pull of the sun, so only softening is left over
+                if (softeningLengthSquared > 0){
+                    double scale = masses[sunIndex] * (pullScale(sunX, sunY, softeningLengthSquared) -
+                            pullScale(sunX, sunY, 0));
+                    accelerationX += scale * sunX;
+                    accelerationY += scale * sunY;
+                }
+            } else {
+                // the center of mass's orbit follows the sun's pull on the center of mass, so the difference between
+                // that and its pull on this body is left over
+                double pairMass = masses[i] + masses[partner];
+                double centerX = xDisplacements[sunIndex] -
+                        (masses[i] * xDisplacements[i] + masses[partner] * xDisplacements[partner]) / pairMass;
+                double centerY = yDisplacements[sunIndex] -
+                        (masses[i] * yDisplacements[i] + masses[partner] * yDisplacements[partner]) / pairMass;
+                double scale = masses[sunIndex] * pullScale(sunX, sunY, softeningLengthSquared);
+                double centerScale = masses[sunIndex] * pullScale(centerX, centerY, 0);
+                accelerationX += scale * sunX - centerScale * centerX;
+                accelerationY += scale * sunY - centerScale * centerY;
+
+                // the pair's own orbit follows the unsoftened pull between them, so all that is left of the partner's
+                // softened pull from the force engine is the softening
+                double partnerX = xDisplacements[partner] - xDisplacements[i];
+                double partnerY = yDisplacements[partner] - yDisplacements[i];
+                double partnerScale = masses[partner] * pullScale(partnerX, partnerY, 0);
+                accelerationX -= partnerScale * partnerX;
+                accelerationY -= partnerScale * partnerY;
+            }
+
+            // the velocities aren't read by the other planets' kicks, so they can be changed as each is found
+            xVelocities[i] += accelerationX * timeSeconds;
+            yVelocities[i] += accelerationY * timeSeconds;
+        }
+    }
+
+    /**
+     * Calculates G / r^3 for a displacement, which multiplied by a mass and the displacement gives the pull towards
+     * the end of the displacement
+     *
+     * @param dx the x part of the displacement
+     * @param dy the y part of the displacement
+     * @param softeningLengthSquared the square of the softening length
+     * @return the scale of the pull
+     */
+    private static double pullScale(double dx, double dy, double softeningLengthSquared){
+        double distanceSquared = dx * dx + dy * dy + softeningLengthSquared;
+        return SolarSystem.GRAVITATION_CONSTANT / (distanceSquared * Math.sqrt(distanceSquared));
+    }
+
+    /**
+     * Moves every planet along its Kepler orbit, and every pair's center of mass and moon along theirs
+     *
+     * @param numberOfBodies the number of bodies
+     * @param sunIndex the index of the sun
+     * @param timeSeconds the time interval of the drift
+     * @return None
+     */
+    private void drift(int numberOfBodies, int sunIndex, double timeSeconds){
+        double sunGravitationalParameter = SolarSystem.GRAVITATION_CONSTANT * masses[sunIndex];
+
+        for (int i = 0; i < numberOfBodies; i++){
+            if (!planets[i]){
+                continue;
+            }
+
+            int partner = partners[i];
+
+            if (partner == -1){
+                moveAlongOrbit(sunGravitationalParameter, xDisplacements[i] - xDisplacements[sunIndex],
+                        yDisplacements[i] - yDisplacements[sunIndex], xVelocities[i], yVelocities[i], timeSeconds,
+                        result);
+                xDisplacements[i] = xDisplacements[sunIndex] + result[0];
+                yDisplacements[i] = yDisplacements[sunIndex] + result[1];
+                xVelocities[i] = result[2];
+                yVelocities[i] = result[3];
+            } else if (i < partner){
+                // each pair is moved once
+                double pairMass = masses[i] + masses[partner];
+                double iShare = masses[i] / pairMass;
+                double partnerShare = masses[partner] / pairMass;
+
+                moveAlongOrbit(sunGravitationalParameter,
+                        iShare * xDisplacements[i] + partnerShare * xDisplacements[partner] - xDisplacements[sunIndex],
+                        iShare * yDisplacements[i] + partnerShare * yDisplacements[partner] - yDisplacements[sunIndex],
+                        iShare * xVelocities[i] + partnerShare * xVelocities[partner],
+                        iShare * yVelocities[i] + partnerShare * yVelocities[partner], timeSeconds, result);
+                moveAlongOrbit(SolarSystem.GRAVITATION_CONSTANT * pairMass,
+                        xDisplacements[partner] - xDisplacements[i], yDisplacements[partner] - yDisplacements[i],
+                        xVelocities[partner] - xVelocities[i], yVelocities[partner] - yVelocities[i], timeSeconds,
+                        pairResult);
+
+                // each body is off the center of mass by the other body's share of the displacement between them
+                xDisplacements[i] = xDisplacements[sunIndex] + result[0] - partnerShare * pairResult[0];
+                yDisplacements[i] = yDisplacements[sunIndex] + result[1] - partnerShare * pairResult[1];
+                xVelocities[i] = result[2] - partnerShare * pairResult[2];
+                yVelocities[i] = result[3] - partnerShare * pairResult[3];
+                xDisplacements[partner] = xDisplacements[sunIndex] + result[0] + iShare * pairResult[0];
+                yDisplacements[partner] = yDisplacements[sunIndex] + result[1] + iShare * pairResult[1];
+                xVelocities[partner] = result[2] + iShare * pairResult[2];
+                yVelocities[partner] = result[3] + iShare * pairResult[3];
+            }
+        }
+    }
+
+    /**
+     * Moves a body along its Kepler orbit around a central body. If the orbit can't be solved, for example because
+     * the body is at the center, it is moved with a single semi-implicit Euler step instead
+     *
+     * @param gravitationalParameter the gravitational constant times the mass of the central body
+     * @param x the x-displacement of the body from the central body
+     * @param y the y-displacement of the body from the central body
+     * @param xVelocity the x-velocity of the body relative to the central body
+     * @param yVelocity the y-velocity of the body relative to the central body
+     * @param timeSeconds the time interval in seconds
+     * @param result an array of at least 4 values that the new x, y, x-velocity, and y-velocity are put in
+     * @return None
+     */
+    private static void moveAlongOrbit(double gravitationalParameter, double x, double y, double xVelocity,
+                                       double yVelocity, double timeSeconds, double[] result){
+        if (KeplerPropagator.propagate(gravitationalParameter, x, y, xVelocity, yVelocity, timeSeconds, result)){
+            return;
+        }
+
+        double distanceSquared = x * x + y * y;
+        double scale = -gravitationalParameter / (distanceSquared * Math.sqrt(distanceSquared)) * timeSeconds;
+        result[2] = xVelocity + scale * x;
+        result[3] = yVelocity + scale * y;
+        result[0] = x + result[2] * timeSeconds;
+        result[1] = y + result[3] * timeSeconds;
+    }
+
+    /**
+     * Gets the time the force engine took to find the pulls in both kicks of the last step
+     *
+     * @return the time in nanoseconds
+     */
+    public long getForceNanoseconds(){
+        return forceNanoseconds;
+    }
+}